@@ -0,0 +1,157 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import bdv.BigDataViewer;
+import bdv.spimdata.SequenceDescriptionMinimal;
+import bdv.spimdata.SpimDataMinimal;
+import bdv.tools.brightness.ConverterSetup;
+import bdv.viewer.DisplayMode;
+import bdv.viewer.Interpolation;
+import bdv.viewer.SourceAndConverter;
+import bdv.viewer.state.SourceGroup;
+import bdv.viewer.state.ViewerState;
+import mpicbg.spim.data.registration.ViewRegistration;
+import mpicbg.spim.data.registration.ViewRegistrations;
+import mpicbg.spim.data.sequence.FinalVoxelDimensions;
+import mpicbg.spim.data.sequence.TimePoint;
+import mpicbg.spim.data.sequence.TimePoints;
+import mpicbg.spim.data.generic.sequence.BasicViewSetup;
+import net.imglib2.FinalDimensions;
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * Synthetic data sets and standard viewer transforms shared by the
+ * benchmarks.
+ */
+public class BenchmarkData
+{
+	public static final long[] DIMENSIONS = new long[] { 1024, 1024, 256 };
+
+	public static final int[] CELL_DIMENSIONS = new int[] { 32, 32, 32 };
+
+	public static final int NUM_SCALES = 4;
+
+	/**
+	 * Standard viewer transforms, for a {@code width x height} screen
+	 * centered on the data.
+	 */
+	public static enum ViewTransform
+	{
+		/** XY plane, 1 screen pixel per voxel. */
+		AXIS_ALIGNED( 0, 0, 1 ),
+		/** rotated about two axes, 1 screen pixel per voxel. */
+		OBLIQUE( 0.5, 0.3, 1 ),
+		/** XY plane, 4 screen pixels per voxel. */
+		ZOOMED_IN( 0, 0, 4 ),
+		/** XY plane, 1 screen pixel per 4 voxels. */
+		ZOOMED_OUT( 0, 0, 0.25 );
+
+		private final double angleX;
+
+		private final double angleY;
+
+		private final double zoom;
+
+		private ViewTransform( final double angleX, final double angleY, final double zoom )
+		{
+			this.angleX = angleX;
+			this.angleY = angleY;
+			this.zoom = zoom;
+		}
+
+		public AffineTransform3D get( final int width, final int height )
+		{
+			final AffineTransform3D t = new AffineTransform3D();
+			t.translate( -DIMENSIONS[ 0 ] / 2.0, -DIMENSIONS[ 1 ] / 2.0, -DIMENSIONS[ 2 ] / 2.0 );
+			t.rotate( 0, angleX );
+			t.rotate( 1, angleY );
+			t.scale( zoom );
+			t.translate( width / 2.0, height / 2.0, 0 );
+			return t;
+		}
+	}
+
+	/**
+	 * Create a data set with {@code numSetups} setups and one timepoint, backed
+	 * by a {@link SyntheticImageLoader}.
+	 */
+	public static SpimDataMinimal createSpimData( final int numSetups, final int numFetcherThreads )
+	{
+		final SyntheticImageLoader imgLoader = new SyntheticImageLoader( DIMENSIONS, CELL_DIMENSIONS, NUM_SCALES, numFetcherThreads );
+		final HashMap< Integer, BasicViewSetup > setups = new HashMap<>();
+		final ArrayList< ViewRegistration > registrations = new ArrayList<>();
+		for ( int setupId = 0; setupId < numSetups; ++setupId )
+		{
+			setups.put( setupId, new BasicViewSetup( setupId, "setup " + setupId, new FinalDimensions( DIMENSIONS ), new FinalVoxelDimensions( "px", 1, 1, 1 ) ) );
+			registrations.add( new ViewRegistration( 0, setupId ) );
+		}
+		final TimePoints timepoints = new TimePoints( Collections.singletonList( new TimePoint( 0 ) ) );
+		final SequenceDescriptionMinimal seq = new SequenceDescriptionMinimal( timepoints, setups, imgLoader, null );
+		return new SpimDataMinimal( null, seq, new ViewRegistrations( registrations ) );
+	}
+
+	/**
+	 * Create sources for all setups of {@code spimData}, as
+	 * {@link BigDataViewer} does.
+	 */
+	public static List< SourceAndConverter< ? > > createSources( final SpimDataMinimal spimData )
+	{
+		final List< ConverterSetup > converterSetups = new ArrayList<>();
+		final List< SourceAndConverter< ? > > sources = new ArrayList<>();
+		BigDataViewer.initSetups( spimData, converterSetups, sources );
+		for ( final ConverterSetup setup : converterSetups )
+			setup.setDisplayRange( 0, 2000 );
+		return sources;
+	}
+
+	/**
+	 * Create a {@link ViewerState} showing all {@code sources} fused, with
+	 * the given transform and interpolation.
+	 */
+	public static ViewerState createState(
+			final List< SourceAndConverter< ? > > sources,
+			final ViewTransform transform,
+			final Interpolation interpolation,
+			final int width,
+			final int height )
+	{
+		final ViewerState state = new ViewerState( sources, new ArrayList< SourceGroup >(), 1 );
+		state.setDisplayMode( DisplayMode.FUSED );
+		state.setInterpolation( interpolation );
+		state.setViewerTransform( transform.get( width, height ) );
+		return state;
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.imglib2.Cursor;
+import net.imglib2.display.LookupTableRealARGBColorConverter;
+import net.imglib2.display.RealARGBColorConverter;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+/**
+ * Converts a 512x512 uint16 image to ARGB with
+ * {@link RealARGBColorConverter} and {@link LookupTableRealARGBColorConverter}.
+ * Scores are ns per pixel.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@Fork( 1 )
+public class ConverterBenchmark
+{
+	static final int WIDTH = 512;
+
+	static final int HEIGHT = 512;
+
+	private ArrayImg< UnsignedShortType, ShortArray > input;
+
+	private ArrayImg< ARGBType, IntArray > output;
+
+	private RealARGBColorConverter< UnsignedShortType > converter;
+
+	private RealARGBColorConverter< UnsignedShortType > lutConverter;
+
+	@Setup
+	public void setup()
+	{
+		input = ArrayImgs.unsignedShorts( WIDTH, HEIGHT );
+		final Random random = new Random( 1 );
+		for ( final UnsignedShortType t : input )
+			t.set( random.nextInt( 2000 ) );
+		output = ArrayImgs.argbs( WIDTH, HEIGHT );
+		converter = new RealARGBColorConverter.Imp0<>( 100, 1800 );
+		converter.setColor( new ARGBType( 0xff00ff00 ) );
+		lutConverter = new LookupTableRealARGBColorConverter<>( 100, 1800, 65536 );
+		lutConverter.setColor( new ARGBType( 0xff00ff00 ) );
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( WIDTH * HEIGHT )
+	public ArrayImg< ARGBType, IntArray > convert()
+	{
+		return convert( converter );
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( WIDTH * HEIGHT )
+	public ArrayImg< ARGBType, IntArray > convertLookupTable()
+	{
+		return convert( lutConverter );
+	}
+
+	private ArrayImg< ARGBType, IntArray > convert( final RealARGBColorConverter< UnsignedShortType > c )
+	{
+		final Cursor< UnsignedShortType > in = input.cursor();
+		final Cursor< ARGBType > out = output.cursor();
+		while ( in.hasNext() )
+			c.convert( in.next(), out.next() );
+		return output;
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bdv.benchmark.BenchmarkData.ViewTransform;
+import bdv.viewer.Interpolation;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealRandomAccess;
+import net.imglib2.interpolation.randomaccess.ClampingNLinearInterpolatorFactory;
+import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+import net.imglib2.view.Views;
+
+/**
+ * Samples a cached volatile uint16 image on a 512x512 screen plane, with
+ * nearest-neighbor or {@code ClampingNLinearInterpolatorFactory}
+ * interpolation. Scores are ns per sample.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@Fork( 1 )
+public class InterpolatorBenchmark
+{
+	static final int WIDTH = 512;
+
+	static final int HEIGHT = 512;
+
+	@Param( { "AXIS_ALIGNED", "OBLIQUE" } )
+	public ViewTransform transform;
+
+	@Param( { "NEARESTNEIGHBOR", "NLINEAR" } )
+	public Interpolation interpolation;
+
+	private RealRandomAccess< VolatileUnsignedShortType > access;
+
+	private double[] origin;
+
+	private double[] dx;
+
+	private double[] dy;
+
+	@Setup
+	public void setup()
+	{
+		final SyntheticImageLoader imgLoader = new SyntheticImageLoader( BenchmarkData.DIMENSIONS, BenchmarkData.CELL_DIMENSIONS, 1, 1 );
+		final RandomAccessibleInterval< VolatileUnsignedShortType > img = imgLoader.getSetupImgLoader( 0 ).getVolatileImage( 0, 0 );
+		final VolatileUnsignedShortType zero = new VolatileUnsignedShortType( 0 );
+		zero.setValid( true );
+		access = ( interpolation == Interpolation.NLINEAR
+				? Views.interpolate( Views.extendValue( img, zero ), new ClampingNLinearInterpolatorFactory< VolatileUnsignedShortType >() )
+				: Views.interpolate( Views.extendValue( img, zero ), new NearestNeighborInterpolatorFactory< VolatileUnsignedShortType >() ) )
+				.realRandomAccess();
+
+		final AffineTransform3D screenToSource = transform.get( WIDTH, HEIGHT ).inverse();
+		origin = new double[ 3 ];
+		dx = new double[ 3 ];
+		dy = new double[ 3 ];
+		screenToSource.apply( new double[ 3 ], origin );
+		for ( int d = 0; d < 3; ++d )
+		{
+			dx[ d ] = screenToSource.d( 0 ).getDoublePosition( d );
+			dy[ d ] = screenToSource.d( 1 ).getDoublePosition( d );
+		}
+
+		// load all cells touched by the screen (volatile access enqueues them)
+		while ( !sample() )
+		{
+			try
+			{
+				Thread.sleep( 10 );
+			}
+			catch ( final InterruptedException e )
+			{
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Sample the screen plane.
+	 *
+	 * @return whether all samples were valid.
+	 */
+	@Benchmark
+	@OperationsPerInvocation( WIDTH * HEIGHT )
+	public boolean sample()
+	{
+		final double[] pos = new double[ 3 ];
+		boolean valid = true;
+		for ( int y = 0; y < HEIGHT; ++y )
+		{
+			for ( int d = 0; d < 3; ++d )
+				pos[ d ] = origin[ d ] + y * dy[ d ];
+			for ( int x = 0; x < WIDTH; ++x )
+			{
+				access.setPosition( pos );
+				valid &= access.get().isValid();
+				for ( int d = 0; d < 3; ++d )
+					pos[ d ] += dx[ d ];
+			}
+		}
+		return valid;
+	}
+}
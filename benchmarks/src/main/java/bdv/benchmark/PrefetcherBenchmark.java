@@ -0,0 +1,109 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bdv.benchmark.BenchmarkData.ViewTransform;
+import bdv.img.cache.VolatileCachedCellImg;
+import bdv.viewer.Interpolation;
+import bdv.viewer.render.Prefetcher;
+import net.imglib2.FinalDimensions;
+import net.imglib2.RandomAccess;
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * Enumerates (and requests) the cells needed for a 512x512 screen with
+ * {@link Prefetcher#fetchCells}, with all cells already cached. Scores are
+ * time per screen.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@Fork( 1 )
+public class PrefetcherBenchmark
+{
+	static final int WIDTH = 512;
+
+	static final int HEIGHT = 512;
+
+	@Param( { "AXIS_ALIGNED", "OBLIQUE", "ZOOMED_IN", "ZOOMED_OUT" } )
+	public ViewTransform transform;
+
+	@Param( { "NEARESTNEIGHBOR", "NLINEAR" } )
+	public Interpolation interpolation;
+
+	private AffineTransform3D sourceToScreen;
+
+	private int[] cellDimensions;
+
+	private long[] dimensions;
+
+	private FinalDimensions screenInterval;
+
+	private RandomAccess< ? > cellsRandomAccess;
+
+	@Setup
+	public void setup()
+	{
+		final SyntheticImageLoader imgLoader = new SyntheticImageLoader( BenchmarkData.DIMENSIONS, BenchmarkData.CELL_DIMENSIONS, 1, 1 );
+		final VolatileCachedCellImg< ?, ? > img = ( VolatileCachedCellImg< ?, ? > ) imgLoader.getSetupImgLoader( 0 ).getImage( 0, 0 );
+		sourceToScreen = transform.get( WIDTH, HEIGHT );
+		cellDimensions = new int[ 3 ];
+		img.getCellGrid().cellDimensions( cellDimensions );
+		dimensions = new long[ 3 ];
+		img.dimensions( dimensions );
+		screenInterval = new FinalDimensions( WIDTH, HEIGHT );
+		cellsRandomAccess = img.getCells().randomAccess();
+
+		// load all cells touched by the screen
+		Prefetcher.fetchCells( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellsRandomAccess );
+	}
+
+	@Benchmark
+	public void fetchCells()
+	{
+		Prefetcher.fetchCells( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellsRandomAccess );
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bdv.benchmark.BenchmarkData.ViewTransform;
+import bdv.spimdata.SpimDataMinimal;
+import bdv.viewer.Interpolation;
+import bdv.viewer.SourceAndConverter;
+import bdv.viewer.render.AccumulateProjectorARGB;
+import bdv.viewer.render.OffscreenRenderer;
+import bdv.viewer.state.ViewerState;
+
+/**
+ * Renders a full frame of 1, 4, or 16 fused synthetic sources with a warm
+ * cache. This covers {@code VolatileHierarchyProjector},
+ * {@link AccumulateProjectorARGB}, {@code RealARGBColorConverter}, the
+ * interpolators, and projector setup (including prefetching).
+ *
+ * <p>
+ * Scores are ns per screen pixel. Run with {@code -prof gc} to get the
+ * allocation rate.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@Fork( 1 )
+public class RenderBenchmark
+{
+	static final int WIDTH = 512;
+
+	static final int HEIGHT = 512;
+
+	@Param( { "1", "4", "16" } )
+	public int numSources;
+
+	@Param( { "AXIS_ALIGNED", "OBLIQUE", "ZOOMED_IN", "ZOOMED_OUT" } )
+	public ViewTransform transform;
+
+	@Param( { "NEARESTNEIGHBOR", "NLINEAR" } )
+	public Interpolation interpolation;
+
+	@Param( { "1" } )
+	public int numRenderingThreads;
+
+	private ExecutorService renderingExecutorService;
+
+	private OffscreenRenderer renderer;
+
+	private ViewerState state;
+
+	@Setup
+	public void setup()
+	{
+		final SpimDataMinimal spimData = BenchmarkData.createSpimData( numSources, Runtime.getRuntime().availableProcessors() );
+		final List< SourceAndConverter< ? > > sources = BenchmarkData.createSources( spimData );
+		state = BenchmarkData.createState( sources, transform, interpolation, WIDTH, HEIGHT );
+		final SyntheticImageLoader imgLoader = ( SyntheticImageLoader ) spimData.getSequenceDescription().getImgLoader();
+		renderingExecutorService = Executors.newFixedThreadPool( numRenderingThreads );
+		renderer = new OffscreenRenderer(
+				WIDTH, HEIGHT, numRenderingThreads, renderingExecutorService,
+				true, AccumulateProjectorARGB.factory, imgLoader.getCacheControl() );
+
+		// load all cells required for the frame
+		renderer.render( state );
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		renderingExecutorService.shutdown();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( WIDTH * HEIGHT )
+	public BufferedImage render()
+	{
+		return renderer.render( state );
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.benchmark;
+
+import bdv.AbstractViewerSetupImgLoader;
+import bdv.ViewerImgLoader;
+import bdv.ViewerSetupImgLoader;
+import bdv.cache.CacheControl;
+import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.VolatileCachedCellImg;
+import bdv.img.cache.VolatileGlobalCellCache;
+import bdv.util.MipmapTransforms;
+import mpicbg.spim.data.generic.sequence.ImgLoaderHint;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+
+/**
+ * In-memory {@link ViewerImgLoader} with synthetic uint16 data. All setups
+ * have the same size and mipmap pyramid, and differ only in content. Cells are
+ * computed, not read, so benchmarks measure rendering and caching without
+ * I/O.
+ */
+public class SyntheticImageLoader implements ViewerImgLoader
+{
+	private final long[][] dimensions;
+
+	private final int[] cellDimensions;
+
+	private final double[][] mipmapResolutions;
+
+	private final AffineTransform3D[] mipmapTransforms;
+
+	private final VolatileGlobalCellCache cache;
+
+	private final int numScales;
+
+	/**
+	 * @param dimensions
+	 *            full resolution image size.
+	 * @param cellDimensions
+	 *            cell size (on all levels).
+	 * @param numScales
+	 *            number of mipmap levels, each downsampled by 2 in all
+	 *            dimensions.
+	 * @param numFetcherThreads
+	 *            number of threads computing cells.
+	 */
+	public SyntheticImageLoader( final long[] dimensions, final int[] cellDimensions, final int numScales, final int numFetcherThreads )
+	{
+		this.numScales = numScales;
+		this.cellDimensions = cellDimensions.clone();
+		this.dimensions = new long[ numScales ][ 3 ];
+		mipmapResolutions = new double[ numScales ][ 3 ];
+		mipmapTransforms = new AffineTransform3D[ numScales ];
+		for ( int level = 0; level < numScales; ++level )
+		{
+			final int s = 1 << level;
+			for ( int d = 0; d < 3; ++d )
+			{
+				this.dimensions[ level ][ d ] = Math.max( 1, dimensions[ d ] / s );
+				mipmapResolutions[ level ][ d ] = s;
+			}
+			mipmapTransforms[ level ] = MipmapTransforms.getMipmapTransformDefault( mipmapResolutions[ level ] );
+		}
+		cache = new VolatileGlobalCellCache( numScales, numFetcherThreads );
+	}
+
+	public long[] getDimensions( final int level )
+	{
+		return dimensions[ level ].clone();
+	}
+
+	@Override
+	public CacheControl getCacheControl()
+	{
+		return cache;
+	}
+
+	public VolatileGlobalCellCache getCache()
+	{
+		return cache;
+	}
+
+	@Override
+	public ViewerSetupImgLoader< UnsignedShortType, VolatileUnsignedShortType > getSetupImgLoader( final int setupId )
+	{
+		return new SetupImgLoader( setupId );
+	}
+
+	private < T extends NativeType< T > > VolatileCachedCellImg< T, VolatileShortArray > prepareCachedImage( final int timepointId, final int setupId, final int level, final LoadingStrategy loadingStrategy, final T type )
+	{
+		final CellGrid grid = new CellGrid( dimensions[ level ], cellDimensions );
+		final int priority = numScales - 1 - level;
+		final CacheHints cacheHints = new CacheHints( loadingStrategy, priority, false );
+		return cache.createImg( grid, timepointId, setupId, level, cacheHints, new SyntheticArrayLoader(), type );
+	}
+
+	/**
+	 * View of the {@link SyntheticImageLoader} for one setup.
+	 */
+	private class SetupImgLoader extends AbstractViewerSetupImgLoader< UnsignedShortType, VolatileUnsignedShortType >
+	{
+		private final int setupId;
+
+		SetupImgLoader( final int setupId )
+		{
+			super( new UnsignedShortType(), new VolatileUnsignedShortType() );
+			this.setupId = setupId;
+		}
+
+		@Override
+		public RandomAccessibleInterval< UnsignedShortType > getImage( final int timepointId, final int level, final ImgLoaderHint... hints )
+		{
+			return prepareCachedImage( timepointId, setupId, level, LoadingStrategy.BLOCKING, type );
+		}
+
+		@Override
+		public RandomAccessibleInterval< VolatileUnsignedShortType > getVolatileImage( final int timepointId, final int level, final ImgLoaderHint... hints )
+		{
+			return prepareCachedImage( timepointId, setupId, level, LoadingStrategy.VOLATILE, volatileType );
+		}
+
+		@Override
+		public double[][] getMipmapResolutions()
+		{
+			return mipmapResolutions;
+		}
+
+		@Override
+		public AffineTransform3D[] getMipmapTransforms()
+		{
+			return mipmapTransforms;
+		}
+
+		@Override
+		public int numMipmapLevels()
+		{
+			return numScales;
+		}
+	}
+
+	/**
+	 * Computes cells of smooth blobs with a setup-dependent phase, in full
+	 * resolution coordinates.
+	 */
+	static class SyntheticArrayLoader implements CacheArrayLoader< VolatileShortArray >
+	{
+		@Override
+		public int getBytesPerElement()
+		{
+			return 2;
+		}
+
+		@Override
+		public VolatileShortArray loadArray( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min )
+		{
+			final int s = 1 << level;
+			final short[] data = new short[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
+			int i = 0;
+			for ( int z = 0; z < dimensions[ 2 ]; ++z )
+			{
+				final double fz = Math.sin( ( min[ 2 ] + z ) * s * 0.05 + setup );
+				for ( int y = 0; y < dimensions[ 1 ]; ++y )
+				{
+					final double fy = Math.sin( ( min[ 1 ] + y ) * s * 0.03 + setup );
+					for ( int x = 0; x < dimensions[ 0 ]; ++x )
+					{
+						final double fx = Math.sin( ( min[ 0 ] + x ) * s * 0.02 + setup );
+						data[ i++ ] = ( short ) ( 1000 + 999 * fx * fy * fz );
+					}
+				}
+			}
+			return new VolatileShortArray( data, true );
+		}
+	}
+}
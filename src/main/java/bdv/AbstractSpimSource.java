@@ -36,6 +36,7 @@ import java.util.Set;
 
 import bdv.viewer.Interpolation;
 import bdv.viewer.Source;
+import bdv.viewer.render.DefaultInterpolatedSource;
 import mpicbg.spim.data.generic.AbstractSpimData;
 import mpicbg.spim.data.generic.sequence.AbstractSequenceDescription;
 import mpicbg.spim.data.registration.ViewRegistration;
@@ -56,7 +57,7 @@ import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.numeric.NumericType;
 import net.imglib2.view.Views;
 
-public abstract class AbstractSpimSource< T extends NumericType< T > > implements Source< T >
+public abstract class AbstractSpimSource< T extends NumericType< T > > implements Source< T >, DefaultInterpolatedSource
 {
 	protected static class ImgKey
 	{
@@ -238,6 +239,13 @@ public abstract class AbstractSpimSource< T extends NumericType< T > > implement
 		return getInterpolatedSource( t, level, method, Thread.currentThread().getThreadGroup() );
 	}
 
+	@Override
+	public boolean isDefaultInterpolated()
+	{
+		return interpolatorFactories[ iNearestNeighborMethod ].getClass() == NearestNeighborInterpolatorFactory.class
+				&& interpolatorFactories[ iNLinearMethod ].getClass() == ClampingNLinearInterpolatorFactory.class;
+	}
+
 	public synchronized RealRandomAccessible< T > getInterpolatedSource( final int t, final int level, final Interpolation method, final ThreadGroup threadGroup )
 	{
 		if ( t != currentTimePointIndex )
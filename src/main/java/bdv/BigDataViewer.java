@@ -29,6 +29,8 @@
  */
 package bdv;
 
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
@@ -67,6 +69,7 @@ import bdv.tools.bookmarks.Bookmarks;
 import bdv.tools.bookmarks.BookmarksEditor;
 import bdv.tools.brightness.BrightnessDialog;
 import bdv.tools.brightness.ConverterSetup;
+import bdv.tools.brightness.HistogramService;
 import bdv.tools.brightness.MinMaxGroup;
 import bdv.tools.brightness.RealARGBColorConverterSetup;
 import bdv.tools.brightness.SetupAssignments;
@@ -86,6 +89,7 @@ import mpicbg.spim.data.generic.sequence.BasicViewSetup;
 import mpicbg.spim.data.sequence.Angle;
 import mpicbg.spim.data.sequence.Channel;
 import net.imglib2.Volatile;
+import net.imglib2.display.LookupTableRealARGBColorConverter;
 import net.imglib2.display.RealARGBColorConverter;
 import net.imglib2.display.ScaledARGBConverter;
 import net.imglib2.type.numeric.ARGBType;
@@ -106,6 +110,8 @@ public class BigDataViewer
 
 	protected final BrightnessDialog brightnessDialog;
 
+	protected final HistogramService histogramService;
+
 	protected final CropDialog cropDialog;
 
 	protected final RecordMovieDialog movieDialog;
@@ -162,6 +168,27 @@ public class BigDataViewer
 		return name;
 	}
 
+	/**
+	 * Create a converter for sources of the given {@code type}. Small integer
+	 * types get a {@link LookupTableRealARGBColorConverter}, other types a
+	 * {@link RealARGBColorConverter.Imp0} (volatile) or
+	 * {@link RealARGBColorConverter.Imp1} (non-volatile).
+	 */
+	private static < R extends RealType< ? > > RealARGBColorConverter< R > createRealARGBColorConverter(
+			final RealType< ? > type,
+			final double min,
+			final double max,
+			final boolean isVolatile )
+	{
+		final int lutSize = LookupTableRealARGBColorConverter.lookupTableSize( type );
+		if ( lutSize > 0 )
+			return new LookupTableRealARGBColorConverter<>( min, max, lutSize );
+		else if ( isVolatile )
+			return new RealARGBColorConverter.Imp0<>( min, max );
+		else
+			return new RealARGBColorConverter.Imp1<>( min, max );
+	}
+
 	private static < T extends RealType< T >, V extends Volatile< T > & RealType< V > > void initSetupRealType(
 			final AbstractSpimData< ? > spimData,
 			final BasicViewSetup setup,
@@ -176,9 +203,9 @@ public class BigDataViewer
 		}
 		final double typeMin = Math.max( 0, Math.min( type.getMinValue(), 65535 ) );
 		final double typeMax = Math.max( 0, Math.min( type.getMaxValue(), 65535 ) );
-		final RealARGBColorConverter< V > vconverter = new RealARGBColorConverter.Imp0<>( typeMin, typeMax );
+		final RealARGBColorConverter< V > vconverter = createRealARGBColorConverter( type, typeMin, typeMax, true );
 		vconverter.setColor( new ARGBType( 0xffffffff ) );
-		final RealARGBColorConverter< T > converter = new RealARGBColorConverter.Imp1<>( typeMin, typeMax );
+		final RealARGBColorConverter< T > converter = createRealARGBColorConverter( type, typeMin, typeMax, false );
 		converter.setColor( new ARGBType( 0xffffffff ) );
 
 		final int setupId = setup.getId();
@@ -207,7 +234,7 @@ public class BigDataViewer
 	{
 		final double typeMin = type.getMinValue();
 		final double typeMax = type.getMaxValue();
-		final RealARGBColorConverter< T > converter = new RealARGBColorConverter.Imp1<>( typeMin, typeMax );
+		final RealARGBColorConverter< T > converter = createRealARGBColorConverter( type, typeMin, typeMax, false );
 		converter.setColor( new ARGBType( 0xffffffff ) );
 
 		final int setupId = setup.getId();
@@ -360,6 +387,16 @@ public class BigDataViewer
 
 		brightnessDialog = new BrightnessDialog( viewerFrame, setupAssignments );
 
+		histogramService = new HistogramService( Math.max( 1, Runtime.getRuntime().availableProcessors() / 2 ) );
+		viewerFrame.addWindowListener( new WindowAdapter()
+		{
+			@Override
+			public void windowClosing( final WindowEvent e )
+			{
+				histogramService.shutdown();
+			}
+		} );
+
 		if (spimData != null )
 			viewer.getSourceInfoOverlayRenderer().setTimePointsOrdered( spimData.getSequenceDescription().getTimePoints().getTimePointsOrdered() );
 
@@ -493,7 +530,7 @@ public class BigDataViewer
 		final SpimDataMinimal spimData = new XmlIoSpimDataMinimal().load( xmlFilename );
 		final BigDataViewer bdv = open( spimData, windowTitle, progressWriter, options );
 		if ( !bdv.tryLoadSettings( xmlFilename ) )
-			InitializeViewerState.initBrightness( 0.001, 0.999, bdv.viewer, bdv.setupAssignments );
+			bdv.histogramService.initBrightness( 0.001, 0.999, bdv.viewer.getState(), bdv.setupAssignments );
 		return bdv;
 	}
 
@@ -527,6 +564,11 @@ public class BigDataViewer
 		return setupAssignments;
 	}
 
+	public HistogramService getHistogramService()
+	{
+		return histogramService;
+	}
+
 	public boolean tryLoadSettings( final String xmlFilename )
 	{
 		proposedSettingsFile = null;
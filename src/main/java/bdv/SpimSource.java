@@ -30,12 +30,14 @@
 package bdv;
 
 import mpicbg.spim.data.generic.AbstractSpimData;
+import bdv.viewer.RangeReadableSource;
 import mpicbg.spim.data.generic.sequence.AbstractSequenceDescription;
+import net.imglib2.Interval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.numeric.NumericType;
 
-public class SpimSource< T extends NumericType< T > > extends AbstractSpimSource< T >
+public class SpimSource< T extends NumericType< T > > extends AbstractSpimSource< T > implements RangeReadableSource< T >
 {
 	protected final ViewerSetupImgLoader< T, ? > imgLoader;
 
@@ -60,6 +62,14 @@ public class SpimSource< T extends NumericType< T > > extends AbstractSpimSource
 		return imgLoader.getImage( timepointId, level );
 	}
 
+	@Override
+	public RandomAccessibleInterval< T > readRange( final int t, final int level, final Interval interval ) throws InterruptedException
+	{
+		if ( !isPresent( t ) )
+			return null;
+		return imgLoader.readRange( timePointsOrdered.get( t ).getId(), level, interval );
+	}
+
 	@Override
 	protected AffineTransform3D[] getMipmapTransforms()
 	{
@@ -31,6 +31,7 @@ package bdv;
 
 import mpicbg.spim.data.generic.sequence.BasicMultiResolutionSetupImgLoader;
 import mpicbg.spim.data.generic.sequence.ImgLoaderHint;
+import net.imglib2.Interval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.Volatile;
 
@@ -39,4 +40,21 @@ public interface ViewerSetupImgLoader< T, V extends Volatile< T > > extends Basi
 	public RandomAccessibleInterval< V > getVolatileImage( final int timepointId, final int level, ImgLoaderHint... hints );
 
 	public V getVolatileImageType();
+
+	/**
+	 * Read the voxels in a (small) interval, without loading complete cache
+	 * cells. Implementing classes should override this if the data back-end
+	 * supports such reads. The default implementation returns {@code null},
+	 * which means that ranged reads are not supported.
+	 *
+	 * @param interval
+	 *            the interval to read, clipped to the image.
+	 * @return the voxels in {@code interval}, or {@code null} if the image
+	 *         does not exist or does not intersect the interval, or ranged
+	 *         reads are not supported.
+	 */
+	public default RandomAccessibleInterval< T > readRange( final int timepointId, final int level, final Interval interval ) throws InterruptedException
+	{
+		return null;
+	}
 }
@@ -0,0 +1,232 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.export;
+
+import bdv.export.WriteSequenceToHdf5.AfterEachPlane;
+import bdv.export.WriteSequenceToHdf5.DefaultLoopbackHeuristic;
+import bdv.export.WriteSequenceToHdf5.LoopbackHeuristic;
+import bdv.export.WriteSequenceToHdf5.PerPlaneLoopbackHeuristic;
+import net.imglib2.RandomAccessibleInterval;
+
+/**
+ * A {@link LoopbackHeuristic} that measures, instead of guessing, whether it is
+ * cheaper to generate a resolution level from the original image or from the
+ * finer resolution level already written to the hdf5 file.
+ *
+ * <p>
+ * For every level for which loopback is possible, the first two planes of
+ * chunks are generated once from the original image and once by loopback,
+ * without timing, to warm up both code paths (JIT compilation, caches). Then
+ * the strategies alternate for the next {@code 2 * numTrialPlanes} planes, so
+ * that both are measured under the same conditions. The time per plane is
+ * measured through the {@link AfterEachPlane} callback, and the faster
+ * strategy is used for the remaining planes of the level. Levels with too few
+ * planes for a fair comparison are decided by a fallback heuristic (by default
+ * the {@link DefaultLoopbackHeuristic}).
+ *
+ * <p>
+ * Because timings are taken in {@link #afterEachPlane(boolean)}, the same
+ * instance must be passed as both {@code loopbackHeuristic} and
+ * {@code afterEachPlane} to {@link WriteSequenceToHdf5}. An existing
+ * {@link AfterEachPlane} can be wrapped, it is called after the timing of each
+ * plane is taken.
+ */
+public class AdaptiveLoopbackHeuristic implements PerPlaneLoopbackHeuristic, AfterEachPlane
+{
+	private final LoopbackHeuristic fallback;
+
+	private final AfterEachPlane afterEachPlane;
+
+	private final int numTrialPlanes;
+
+	private final ProgressWriter progressWriter;
+
+	/**
+	 * Whether loopback is possible for the current level.
+	 */
+	private boolean loopbackPossible;
+
+	/**
+	 * Decision of the fallback heuristic for the current level.
+	 */
+	private boolean fallbackDecision;
+
+	/**
+	 * Final decision for the remaining planes of the current level, or
+	 * {@code null} while still measuring.
+	 */
+	private Boolean decision;
+
+	/**
+	 * Accumulated time (ns) and number of measured planes, indexed by
+	 * {@code usedLoopBack ? 1 : 0}.
+	 */
+	private final long[] trialNanos = new long[ 2 ];
+
+	private final int[] trialPlanes = new int[ 2 ];
+
+	/**
+	 * How many planes of the current level were handed out for warm-up and
+	 * measuring.
+	 */
+	private int numStartedPlanes;
+
+	private long planeStartNanos;
+
+	private boolean planePending;
+
+	private boolean planeTimed;
+
+	/**
+	 * How many planes per strategy are generated without timing before
+	 * measuring.
+	 */
+	private static final int NUM_WARMUP_PLANES = 1;
+
+	/**
+	 * @param numTrialPlanes
+	 *            how many planes of chunks to measure for each strategy.
+	 * @param fallback
+	 *            heuristic used for levels with too few planes to measure.
+	 * @param afterEachPlane
+	 *            called after each plane, once the timing has been taken. may
+	 *            be null.
+	 * @param progressWriter
+	 *            decisions and timings are printed here. may be null, then
+	 *            nothing is printed.
+	 */
+	public AdaptiveLoopbackHeuristic( final int numTrialPlanes, final LoopbackHeuristic fallback, final AfterEachPlane afterEachPlane, final ProgressWriter progressWriter )
+	{
+		if ( numTrialPlanes < 1 )
+			throw new IllegalArgumentException( "numTrialPlanes must be at least 1" );
+		this.numTrialPlanes = numTrialPlanes;
+		this.fallback = fallback;
+		this.afterEachPlane = afterEachPlane;
+		this.progressWriter = progressWriter;
+	}
+
+	public AdaptiveLoopbackHeuristic( final AfterEachPlane afterEachPlane, final ProgressWriter progressWriter )
+	{
+		this( 1, new DefaultLoopbackHeuristic(), afterEachPlane, progressWriter );
+	}
+
+	@Override
+	public synchronized boolean decide( final RandomAccessibleInterval< ? > originalImg, final int[] factorsToOriginalImg, final int previousLevel, final int[] factorsToPreviousLevel, final int[] chunkSize )
+	{
+		loopbackPossible = previousLevel >= 0;
+		fallbackDecision = fallback.decide( originalImg, factorsToOriginalImg, previousLevel, factorsToPreviousLevel, chunkSize );
+		decision = null;
+		trialNanos[ 0 ] = trialNanos[ 1 ] = 0;
+		trialPlanes[ 0 ] = trialPlanes[ 1 ] = 0;
+		numStartedPlanes = 0;
+		planePending = false;
+		return fallbackDecision;
+	}
+
+	@Override
+	public synchronized boolean decidePlane( final int plane, final int numPlanes )
+	{
+		if ( decision == null )
+		{
+			if ( !loopbackPossible )
+				decision = false;
+			else if ( numPlanes <= 2 * ( NUM_WARMUP_PLANES + numTrialPlanes ) )
+			{
+				// The last plane may be smaller than the others, so we need
+				// at least one more plane than we warm up and measure.
+				decision = fallbackDecision;
+				print( "loopback: %d planes are too few to measure, using %s\n",
+						numPlanes, strategy( decision ) );
+			}
+			else if ( planePending )
+			{
+				// afterEachPlane() was not called for the previous plane, so
+				// nothing can be measured.
+				decision = fallbackDecision;
+				print( "loopback: no timings available, using %s\n", strategy( decision ) );
+			}
+			else if ( numStartedPlanes < 2 * ( NUM_WARMUP_PLANES + numTrialPlanes ) )
+			{
+				// alternate original (even) and loopback (odd) planes
+				final int i = numStartedPlanes++;
+				return startPlane( i % 2 == 1, i >= 2 * NUM_WARMUP_PLANES );
+			}
+			else
+			{
+				final double originalNanosPerPlane = ( double ) trialNanos[ 0 ] / trialPlanes[ 0 ];
+				final double loopbackNanosPerPlane = ( double ) trialNanos[ 1 ] / trialPlanes[ 1 ];
+				decision = loopbackNanosPerPlane < originalNanosPerPlane;
+				print( "loopback: original %.1f ms/plane, loopback %.1f ms/plane, using %s\n",
+						originalNanosPerPlane / 1e6, loopbackNanosPerPlane / 1e6, strategy( decision ) );
+			}
+		}
+		return decision;
+	}
+
+	@Override
+	public void afterEachPlane( final boolean usedLoopBack )
+	{
+		final long t = System.nanoTime();
+		synchronized ( this )
+		{
+			if ( planePending )
+			{
+				if ( planeTimed )
+				{
+					final int i = usedLoopBack ? 1 : 0;
+					trialNanos[ i ] += t - planeStartNanos;
+					++trialPlanes[ i ];
+				}
+				planePending = false;
+			}
+		}
+		if ( afterEachPlane != null )
+			afterEachPlane.afterEachPlane( usedLoopBack );
+	}
+
+	private boolean startPlane( final boolean useLoopBack, final boolean timed )
+	{
+		planePending = true;
+		planeTimed = timed;
+		planeStartNanos = System.nanoTime();
+		return useLoopBack;
+	}
+
+	private void print( final String format, final Object... args )
+	{
+		if ( progressWriter != null )
+			progressWriter.out().printf( format, args );
+	}
+
+	private static String strategy( final boolean useLoopBack )
+	{
+		return useLoopBack ? "loopback" : "original image";
+	}
+}
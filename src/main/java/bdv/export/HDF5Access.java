@@ -30,8 +30,15 @@
 package bdv.export;
 
 import static bdv.img.hdf5.Util.reorder;
+
+import bdv.img.hdf5.DataTypes;
+import bdv.img.hdf5.DataTypes.DataType;
 import bdv.img.hdf5.Util;
+import bdv.util.Prefs;
+import ch.systemsx.cisd.base.mdarray.MDByteArray;
+import ch.systemsx.cisd.base.mdarray.MDFloatArray;
 import ch.systemsx.cisd.base.mdarray.MDShortArray;
+import ch.systemsx.cisd.hdf5.HDF5FloatStorageFeatures;
 import ch.systemsx.cisd.hdf5.HDF5IntStorageFeatures;
 import ch.systemsx.cisd.hdf5.IHDF5Writer;
 
@@ -51,19 +58,27 @@ class HDF5Access implements IHDF5Access
 	}
 
 	@Override
-	public void writeMipmapDescription( final int setupIdPartition, final ExportMipmapInfo mipmapInfo )
+	public void writeMipmapDescription( final int setupIdPartition, final ExportMipmapInfo mipmapInfo, final DataType< ?, ?, ? > dataType )
 	{
-		hdf5Writer.writeDoubleMatrix( Util.getResolutionsPath( setupIdPartition ), mipmapInfo.getResolutions() );
-		hdf5Writer.writeIntMatrix( Util.getSubdivisionsPath( setupIdPartition ), mipmapInfo.getSubdivisions() );
+		writeMipmapDescription( hdf5Writer, setupIdPartition, mipmapInfo, dataType );
 	}
 
 	@Override
-	public void createAndOpenDataset( final String path, final long[] dimensions, final int[] cellDimensions, final HDF5IntStorageFeatures features )
+	public void createAndOpenDataset( final String path, final long[] dimensions, final int[] cellDimensions, final DataType< ?, ?, ? > dataType, final boolean deflate )
 	{
-		hdf5Writer.int16().createMDArray( path, reorder( dimensions ), reorder( cellDimensions ), features );
+		createDataset( hdf5Writer, path, dimensions, cellDimensions, dataType, deflate );
 		this.datasetPath = path;
 	}
 
+	@Override
+	public void writeBlockWithOffset( final byte[] data, final long[] blockDimensions, final long[] offset )
+	{
+		reorder( blockDimensions, reorderedDimensions );
+		reorder( offset, reorderedOffset );
+		final MDByteArray array = new MDByteArray( data, reorderedDimensions );
+		hdf5Writer.uint8().writeMDArrayBlockWithOffset( datasetPath, array, reorderedOffset );
+	}
+
 	@Override
 	public void writeBlockWithOffset( final short[] data, final long[] blockDimensions, final long[] offset )
 	{
@@ -73,10 +88,25 @@ class HDF5Access implements IHDF5Access
 		hdf5Writer.int16().writeMDArrayBlockWithOffset( datasetPath, array, reorderedOffset );
 	}
 
+	@Override
+	public void writeBlockWithOffset( final float[] data, final long[] blockDimensions, final long[] offset )
+	{
+		reorder( blockDimensions, reorderedDimensions );
+		reorder( offset, reorderedOffset );
+		final MDFloatArray array = new MDFloatArray( data, reorderedDimensions );
+		hdf5Writer.float32().writeMDArrayBlockWithOffset( datasetPath, array, reorderedOffset );
+	}
+
 	@Override
 	public void closeDataset()
 	{}
 
+	@Override
+	public void writeEmptyCells( final String path, final long[] emptyCells )
+	{
+		hdf5Writer.int64().writeArray( path, emptyCells );
+	}
+
 	@Override
 	public void close()
 	{
@@ -88,4 +118,43 @@ class HDF5Access implements IHDF5Access
 	{
 		return hdf5Writer;
 	}
+
+	static void writeMipmapDescription( final IHDF5Writer hdf5Writer, final int setupIdPartition, final ExportMipmapInfo mipmapInfo, final DataType< ?, ?, ? > dataType )
+	{
+		hdf5Writer.writeDoubleMatrix( Util.getResolutionsPath( setupIdPartition ), mipmapInfo.getResolutions() );
+		hdf5Writer.writeIntMatrix( Util.getSubdivisionsPath( setupIdPartition ), mipmapInfo.getSubdivisions() );
+		DataTypes.writeDataType( hdf5Writer, setupIdPartition, dataType );
+	}
+
+	/**
+	 * Create a chunked dataset with the hdf5 storage type matching
+	 * {@code dataType}. {@link DataTypes#UnsignedShort} is stored as
+	 * {@code int16}, as it always has been. If {@link Prefs#hdf5ContiguousExport()}
+	 * is set, uncompressed datasets are created with contiguous layout
+	 * instead.
+	 */
+	static void createDataset( final IHDF5Writer hdf5Writer, final String path, final long[] dimensions, final int[] cellDimensions, final DataType< ?, ?, ? > dataType, final boolean deflate )
+	{
+		final boolean contiguous = !deflate && Prefs.hdf5ContiguousExport();
+		final HDF5IntStorageFeatures intStorage = deflate
+				? HDF5IntStorageFeatures.INT_AUTO_SCALING_DEFLATE
+				: contiguous
+						? HDF5IntStorageFeatures.INT_CONTIGUOUS
+						: HDF5IntStorageFeatures.INT_AUTO_SCALING;
+		if ( dataType == DataTypes.UnsignedByte )
+			hdf5Writer.uint8().createMDArray( path, reorder( dimensions ), reorder( cellDimensions ), intStorage );
+		else if ( dataType == DataTypes.UnsignedShort )
+			hdf5Writer.int16().createMDArray( path, reorder( dimensions ), reorder( cellDimensions ), intStorage );
+		else if ( dataType == DataTypes.Float )
+		{
+			final HDF5FloatStorageFeatures floatStorage = deflate
+					? HDF5FloatStorageFeatures.FLOAT_DEFLATE
+					: contiguous
+							? HDF5FloatStorageFeatures.FLOAT_CONTIGUOUS
+							: HDF5FloatStorageFeatures.FLOAT_NO_COMPRESSION;
+			hdf5Writer.float32().createMDArray( path, reorder( dimensions ), reorder( cellDimensions ), floatStorage );
+		}
+		else
+			throw new IllegalArgumentException( "unsupported data type " + dataType.getName() );
+	}
 }
@@ -39,12 +39,13 @@ import static ch.systemsx.cisd.hdf5.hdf5lib.H5S.H5Screate_simple;
 import static ch.systemsx.cisd.hdf5.hdf5lib.H5S.H5Sselect_hyperslab;
 import static ch.systemsx.cisd.hdf5.hdf5lib.HDF5Constants.H5P_DEFAULT;
 import static ch.systemsx.cisd.hdf5.hdf5lib.HDF5Constants.H5S_SELECT_SET;
+import static ch.systemsx.cisd.hdf5.hdf5lib.HDF5Constants.H5T_NATIVE_FLOAT;
 import static ch.systemsx.cisd.hdf5.hdf5lib.HDF5Constants.H5T_NATIVE_INT16;
+import static ch.systemsx.cisd.hdf5.hdf5lib.HDF5Constants.H5T_NATIVE_UINT8;
 
 import java.lang.reflect.Field;
 
-import bdv.img.hdf5.Util;
-import ch.systemsx.cisd.hdf5.HDF5IntStorageFeatures;
+import bdv.img.hdf5.DataTypes.DataType;
 import ch.systemsx.cisd.hdf5.IHDF5Writer;
 
 class HDF5AccessHack implements IHDF5Access
@@ -77,10 +78,9 @@ class HDF5AccessHack implements IHDF5Access
 	}
 
 	@Override
-	public void writeMipmapDescription( final int setupIdPartition, final ExportMipmapInfo mipmapInfo )
+	public void writeMipmapDescription( final int setupIdPartition, final ExportMipmapInfo mipmapInfo, final DataType< ?, ?, ? > dataType )
 	{
-		hdf5Writer.writeDoubleMatrix( Util.getResolutionsPath( setupIdPartition ), mipmapInfo.getResolutions() );
-		hdf5Writer.writeIntMatrix( Util.getSubdivisionsPath( setupIdPartition ), mipmapInfo.getSubdivisions() );
+		HDF5Access.writeMipmapDescription( hdf5Writer, setupIdPartition, mipmapInfo, dataType );
 	}
 
 	@Override
@@ -91,22 +91,54 @@ class HDF5AccessHack implements IHDF5Access
 	}
 
 	@Override
-	public void createAndOpenDataset( final String path, final long[] dimensions, final int[] cellDimensions, final HDF5IntStorageFeatures features )
+	public void createAndOpenDataset( final String path, final long[] dimensions, final int[] cellDimensions, final DataType< ?, ?, ? > dataType, final boolean deflate )
 	{
-		hdf5Writer.int16().createMDArray( path, reorder( dimensions ), reorder( cellDimensions ), features );
+		HDF5Access.createDataset( hdf5Writer, path, dimensions, cellDimensions, dataType, deflate );
 		dataSetId = H5Dopen( fileId, path, H5P_DEFAULT );
 		fileSpaceId = H5Dget_space( dataSetId );
 	}
 
+	@Override
+	public void writeBlockWithOffset( final byte[] data, final long[] blockDimensions, final long[] offset )
+	{
+		final int memorySpaceId = selectBlock( blockDimensions, offset );
+		H5Dwrite( dataSetId, H5T_NATIVE_UINT8, memorySpaceId, fileSpaceId, H5P_DEFAULT, data );
+		H5Sclose( memorySpaceId );
+	}
+
 	@Override
 	public void writeBlockWithOffset( final short[] data, final long[] blockDimensions, final long[] offset )
+	{
+		final int memorySpaceId = selectBlock( blockDimensions, offset );
+		H5Dwrite( dataSetId, H5T_NATIVE_INT16, memorySpaceId, fileSpaceId, H5P_DEFAULT, data );
+		H5Sclose( memorySpaceId );
+	}
+
+	@Override
+	public void writeBlockWithOffset( final float[] data, final long[] blockDimensions, final long[] offset )
+	{
+		final int memorySpaceId = selectBlock( blockDimensions, offset );
+		H5Dwrite( dataSetId, H5T_NATIVE_FLOAT, memorySpaceId, fileSpaceId, H5P_DEFAULT, data );
+		H5Sclose( memorySpaceId );
+	}
+
+	/**
+	 * Select the block in the file space and create a matching memory space.
+	 * The returned memory space must be closed by the caller.
+	 */
+	private int selectBlock( final long[] blockDimensions, final long[] offset )
 	{
 		reorder( blockDimensions, reorderedDimensions );
 		reorder( offset, reorderedOffset );
 		final int memorySpaceId = H5Screate_simple( reorderedDimensions.length, reorderedDimensions, null );
 		H5Sselect_hyperslab( fileSpaceId, H5S_SELECT_SET, reorderedOffset, null, reorderedDimensions, null );
-		H5Dwrite( dataSetId, H5T_NATIVE_INT16, memorySpaceId, fileSpaceId, H5P_DEFAULT, data );
-		H5Sclose( memorySpaceId );
+		return memorySpaceId;
+	}
+
+	@Override
+	public void writeEmptyCells( final String path, final long[] emptyCells )
+	{
+		hdf5Writer.int64().writeArray( path, emptyCells );
 	}
 
 	@Override
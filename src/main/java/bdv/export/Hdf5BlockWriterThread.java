@@ -34,8 +34,9 @@ import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 
+import bdv.img.hdf5.DataTypes.DataType;
+import bdv.img.hdf5.Hdf5HandlePool;
 import ch.systemsx.cisd.hdf5.HDF5Factory;
-import ch.systemsx.cisd.hdf5.HDF5IntStorageFeatures;
 import ch.systemsx.cisd.hdf5.IHDF5Writer;
 
 class Hdf5BlockWriterThread extends Thread implements IHDF5Access
@@ -61,6 +62,7 @@ class Hdf5BlockWriterThread extends Thread implements IHDF5Access
 
 	public Hdf5BlockWriterThread( final File hdf5File, final int queueLength )
 	{
+		Hdf5HandlePool.getInstance().closeUnusedReader( hdf5File );
 		final IHDF5Writer hdf5Writer = HDF5Factory.open( hdf5File );
 		IHDF5Access hdf5Access;
 		try
@@ -142,19 +144,40 @@ class Hdf5BlockWriterThread extends Thread implements IHDF5Access
 	}
 
 	@Override
-	public void writeMipmapDescription( final int setupIdPartition, final ExportMipmapInfo mipmapInfo )
+	public void writeMipmapDescription( final int setupIdPartition, final ExportMipmapInfo mipmapInfo, final DataType< ?, ?, ? > dataType )
 	{
-		put( new WriteMipmapDescriptionTask( setupIdPartition, mipmapInfo ) );
+		put( new WriteMipmapDescriptionTask( setupIdPartition, mipmapInfo, dataType ) );
 	}
 
 	@Override
-	public void createAndOpenDataset( final String path, final long[] dimensions, final int[] cellDimensions, final HDF5IntStorageFeatures features )
+	public void createAndOpenDataset( final String path, final long[] dimensions, final int[] cellDimensions, final DataType< ?, ?, ? > dataType, final boolean deflate )
 	{
-		put( new CreateAndOpenDatasetTask( path, dimensions, cellDimensions, features ) );
+		put( new CreateAndOpenDatasetTask( path, dimensions, cellDimensions, dataType, deflate ) );
+	}
+
+	@Override
+	public void writeBlockWithOffset( final byte[] data, final long[] blockDimensions, final long[] offset )
+	{
+		writeArrayBlockWithOffset( data, blockDimensions, offset );
 	}
 
 	@Override
 	public void writeBlockWithOffset( final short[] data, final long[] blockDimensions, final long[] offset )
+	{
+		writeArrayBlockWithOffset( data, blockDimensions, offset );
+	}
+
+	@Override
+	public void writeBlockWithOffset( final float[] data, final long[] blockDimensions, final long[] offset )
+	{
+		writeArrayBlockWithOffset( data, blockDimensions, offset );
+	}
+
+	/**
+	 * Enqueue writing a block, where {@code data} is the {@code byte[]},
+	 * {@code short[]}, or {@code float[]} storage array of the block.
+	 */
+	void writeArrayBlockWithOffset( final Object data, final long[] blockDimensions, final long[] offset )
 	{
 		put( new WriteBlockWithOffsetTask( data, blockDimensions, offset ) );
 	}
@@ -165,6 +188,12 @@ class Hdf5BlockWriterThread extends Thread implements IHDF5Access
 		put( new CloseDatasetTask() );
 	}
 
+	@Override
+	public void writeEmptyCells( final String path, final long[] emptyCells )
+	{
+		put( new WriteEmptyCellsTask( path, emptyCells ) );
+	}
+
 	private boolean put( final Hdf5BlockWriterThread.Hdf5Task task )
 	{
 		try
@@ -184,17 +213,19 @@ class Hdf5BlockWriterThread extends Thread implements IHDF5Access
 
 		private final ExportMipmapInfo mipmapInfo;
 
-		public WriteMipmapDescriptionTask( final int setupIdPartition, final ExportMipmapInfo mipmapInfo )
+		private final DataType< ?, ?, ? > dataType;
+
+		public WriteMipmapDescriptionTask( final int setupIdPartition, final ExportMipmapInfo mipmapInfo, final DataType< ?, ?, ? > dataType )
 		{
 			this.setupIdPartition = setupIdPartition;
 			this.mipmapInfo = mipmapInfo;
-
+			this.dataType = dataType;
 		}
 
 		@Override
 		public void run( final IHDF5Access hdf5Access )
 		{
-			hdf5Access.writeMipmapDescription( setupIdPartition, mipmapInfo );
+			hdf5Access.writeMipmapDescription( setupIdPartition, mipmapInfo, dataType );
 		}
 	}
 
@@ -206,32 +237,35 @@ class Hdf5BlockWriterThread extends Thread implements IHDF5Access
 
 		private final int[] cellDimensions;
 
-		private final HDF5IntStorageFeatures features;
+		private final DataType< ?, ?, ? > dataType;
+
+		private final boolean deflate;
 
-		public CreateAndOpenDatasetTask( final String path, final long[] dimensions, final int[] cellDimensions, final HDF5IntStorageFeatures features )
+		public CreateAndOpenDatasetTask( final String path, final long[] dimensions, final int[] cellDimensions, final DataType< ?, ?, ? > dataType, final boolean deflate )
 		{
 			this.path = path;
 			this.dimensions = dimensions;
 			this.cellDimensions = cellDimensions;
-			this.features = features;
+			this.dataType = dataType;
+			this.deflate = deflate;
 		}
 
 		@Override
 		public void run( final IHDF5Access hdf5Access )
 		{
-			hdf5Access.createAndOpenDataset( path, dimensions, cellDimensions, features );
+			hdf5Access.createAndOpenDataset( path, dimensions, cellDimensions, dataType, deflate );
 		}
 	}
 
 	private static class WriteBlockWithOffsetTask implements Hdf5BlockWriterThread.Hdf5Task
 	{
-		private final short[] data;
+		private final Object data;
 
 		private final long[] blockDimensions;
 
 		private final long[] offset;
 
-		public WriteBlockWithOffsetTask( final short[] data, final long[] blockDimensions, final long[] offset )
+		public WriteBlockWithOffsetTask( final Object data, final long[] blockDimensions, final long[] offset )
 		{
 			this.data = data;
 			this.blockDimensions = blockDimensions;
@@ -241,7 +275,14 @@ class Hdf5BlockWriterThread extends Thread implements IHDF5Access
 		@Override
 		public void run( final IHDF5Access hdf5Access )
 		{
-			hdf5Access.writeBlockWithOffset( data, blockDimensions, offset );
+			if ( data instanceof byte[] )
+				hdf5Access.writeBlockWithOffset( ( byte[] ) data, blockDimensions, offset );
+			else if ( data instanceof short[] )
+				hdf5Access.writeBlockWithOffset( ( short[] ) data, blockDimensions, offset );
+			else if ( data instanceof float[] )
+				hdf5Access.writeBlockWithOffset( ( float[] ) data, blockDimensions, offset );
+			else
+				throw new IllegalArgumentException( "unsupported block data " + data.getClass() );
 		}
 	}
 
@@ -253,4 +294,23 @@ class Hdf5BlockWriterThread extends Thread implements IHDF5Access
 			hdf5Access.closeDataset();
 		}
 	}
+
+	private static class WriteEmptyCellsTask implements Hdf5BlockWriterThread.Hdf5Task
+	{
+		private final String path;
+
+		private final long[] emptyCells;
+
+		public WriteEmptyCellsTask( final String path, final long[] emptyCells )
+		{
+			this.path = path;
+			this.emptyCells = emptyCells;
+		}
+
+		@Override
+		public void run( final IHDF5Access hdf5Access )
+		{
+			hdf5Access.writeEmptyCells( path, emptyCells );
+		}
+	}
 }
@@ -29,19 +29,34 @@
  */
 package bdv.export;
 
-import ch.systemsx.cisd.hdf5.HDF5IntStorageFeatures;
+import bdv.img.hdf5.DataTypes.DataType;
 import ch.systemsx.cisd.hdf5.IHDF5Writer;
 
 interface IHDF5Access
 {
-	public void writeMipmapDescription( final int setupIdPartition, final ExportMipmapInfo mipmapInfo );
+	public void writeMipmapDescription( final int setupIdPartition, final ExportMipmapInfo mipmapInfo, final DataType< ?, ?, ? > dataType );
 
-	public void createAndOpenDataset( final String path, long[] dimensions, int[] cellDimensions, HDF5IntStorageFeatures features );
+	public void createAndOpenDataset( final String path, long[] dimensions, int[] cellDimensions, DataType< ?, ?, ? > dataType, boolean deflate );
+
+	public void writeBlockWithOffset( final byte[] data, final long[] blockDimensions, final long[] offset );
 
 	public void writeBlockWithOffset( final short[] data, final long[] blockDimensions, final long[] offset );
 
+	public void writeBlockWithOffset( final float[] data, final long[] blockDimensions, final long[] offset );
+
 	public void closeDataset();
 
+	/**
+	 * Write the bitmap of cells that were not written because they are
+	 * empty (all zero).
+	 *
+	 * @param path
+	 *            see {@link bdv.img.hdf5.Util#getEmptyCellsPath(mpicbg.spim.data.sequence.ViewId, int)}.
+	 * @param emptyCells
+	 *            bitmap as {@link java.util.BitSet#toLongArray()}.
+	 */
+	public void writeEmptyCells( final String path, final long[] emptyCells );
+
 	public void close();
 
 	// this is for sharing with Hdf5ImageLoader for loopback loader when exporting
@@ -0,0 +1,425 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.export;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import mpicbg.spim.data.generic.sequence.AbstractSequenceDescription;
+import mpicbg.spim.data.generic.sequence.BasicViewSetup;
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * Propose mipmap levels and chunk sizes, choosing for each level the chunk
+ * size that minimises the expected number of bytes read per rendered frame.
+ *
+ * <p>
+ * Subsampling factors are proposed as in {@link ProposeMipmaps}. For each
+ * level, candidate chunk shapes (power-of-two sizes in each dimension) are
+ * evaluated by replaying the cell accesses of rendering one frame: every
+ * screen pixel of a viewport is mapped into the level for each slice
+ * orientation of an {@link AccessModel}, and the distinct cells hit are
+ * counted. The cost of a cell is its size in bytes plus a per-chunk overhead
+ * that models the latency of the storage (seek, hdf5 chunk lookup, ...),
+ * expressed in bytes that could have been read in the same time.
+ *
+ * <p>
+ * Slice orientations can be the axis-aligned planes, or can be taken from
+ * recorded viewer transforms, so that the proposal matches how a dataset is
+ * actually browsed.
+ */
+public class ProposeAdaptiveMipmaps
+{
+	/**
+	 * Describes how a dataset is viewed (viewport size and weighted slice
+	 * orientations) and the cost of reading from the storage.
+	 */
+	public static class AccessModel
+	{
+		private final int viewportWidth;
+
+		private final int viewportHeight;
+
+		private final int bytesPerVoxel;
+
+		private final double chunkOverheadBytes;
+
+		private int minCellVoxels = 1024;
+
+		private int maxCellVoxels = 32768;
+
+		/**
+		 * Screen x and y axes, as unit vectors in calibrated source
+		 * coordinates, for each orientation.
+		 */
+		private final ArrayList< double[][] > orientations = new ArrayList<>();
+
+		private final ArrayList< Double > weights = new ArrayList<>();
+
+		/**
+		 * @param viewportWidth
+		 *            width of the rendered frame in pixels.
+		 * @param viewportHeight
+		 *            height of the rendered frame in pixels.
+		 * @param bytesPerVoxel
+		 *            size of a voxel in the stored dataset.
+		 * @param chunkOverheadBytes
+		 *            cost of reading a chunk in addition to its data,
+		 *            expressed in bytes (i.e., latency times throughput of the
+		 *            storage).
+		 */
+		public AccessModel( final int viewportWidth, final int viewportHeight, final int bytesPerVoxel, final double chunkOverheadBytes )
+		{
+			this.viewportWidth = viewportWidth;
+			this.viewportHeight = viewportHeight;
+			this.bytesPerVoxel = bytesPerVoxel;
+			this.chunkOverheadBytes = chunkOverheadBytes;
+		}
+
+		/**
+		 * A model for 800x600 frames of a uint16 dataset, sliced along the
+		 * three axis-aligned planes with equal weight, and a per-chunk
+		 * overhead of 64kB.
+		 */
+		public static AccessModel createDefault()
+		{
+			final AccessModel model = new AccessModel( 800, 600, 2, 65536 );
+			model.addAxisAlignedOrientations();
+			return model;
+		}
+
+		/**
+		 * Add XY, XZ, and YZ slices, each with weight 1.
+		 */
+		public void addAxisAlignedOrientations()
+		{
+			addOrientation( new double[] { 1, 0, 0 }, new double[] { 0, 1, 0 }, 1 );
+			addOrientation( new double[] { 1, 0, 0 }, new double[] { 0, 0, 1 }, 1 );
+			addOrientation( new double[] { 0, 1, 0 }, new double[] { 0, 0, 1 }, 1 );
+		}
+
+		/**
+		 * Add the slice orientation of a (recorded) viewer transform.
+		 *
+		 * @param viewerTransform
+		 *            transforms calibrated source coordinates to screen
+		 *            coordinates. Only the orientation is used.
+		 * @param weight
+		 *            relative frequency of this orientation.
+		 */
+		public void addViewerTransform( final AffineTransform3D viewerTransform, final double weight )
+		{
+			final AffineTransform3D screenToSource = viewerTransform.inverse();
+			final double[] xAxis = new double[ 3 ];
+			final double[] yAxis = new double[ 3 ];
+			for ( int d = 0; d < 3; ++d )
+			{
+				xAxis[ d ] = screenToSource.get( d, 0 );
+				yAxis[ d ] = screenToSource.get( d, 1 );
+			}
+			addOrientation( xAxis, yAxis, weight );
+		}
+
+		/**
+		 * Add a slice orientation given by screen x and y axes in calibrated
+		 * source coordinates.
+		 */
+		public void addOrientation( final double[] xAxis, final double[] yAxis, final double weight )
+		{
+			orientations.add( new double[][] { normalized( xAxis ), normalized( yAxis ) } );
+			weights.add( weight );
+		}
+
+		/**
+		 * Set the range of the number of voxels of candidate chunks.
+		 */
+		public void setCellVoxelRange( final int minCellVoxels, final int maxCellVoxels )
+		{
+			this.minCellVoxels = minCellVoxels;
+			this.maxCellVoxels = maxCellVoxels;
+		}
+
+		private static double[] normalized( final double[] v )
+		{
+			final double len = Math.sqrt( v[ 0 ] * v[ 0 ] + v[ 1 ] * v[ 1 ] + v[ 2 ] * v[ 2 ] );
+			return new double[] { v[ 0 ] / len, v[ 1 ] / len, v[ 2 ] / len };
+		}
+	}
+
+	/**
+	 * Propose number of mipmap levels as well subsampling factors and chunk
+	 * size for each level, for each setup of the given sequence.
+	 *
+	 * @param seq
+	 * @param model
+	 *            how the dataset is viewed and the cost of reading chunks.
+	 * @return map from setup id to proposed mipmap settings
+	 */
+	public static Map< Integer, ExportMipmapInfo > proposeMipmaps( final AbstractSequenceDescription< ?, ?, ? > seq, final AccessModel model )
+	{
+		final HashMap< Integer, ExportMipmapInfo > perSetupExportMipmapInfo = new HashMap<>();
+		for ( final BasicViewSetup setup : seq.getViewSetupsOrdered() )
+			perSetupExportMipmapInfo.put( setup.getId(), proposeMipmaps( setup, model ) );
+		return perSetupExportMipmapInfo;
+	}
+
+	/**
+	 * Propose number of mipmap levels as well subsampling factors and chunk
+	 * size for each level of the given setup.
+	 *
+	 * @param setup
+	 * @param model
+	 *            how the dataset is viewed and the cost of reading chunks.
+	 * @return proposed mipmap settings
+	 */
+	public static ExportMipmapInfo proposeMipmaps( final BasicViewSetup setup, final AccessModel model )
+	{
+		final ExportMipmapInfo proposal = ProposeMipmaps.proposeMipmaps( setup );
+		final int[][] resolutions = proposal.getExportResolutions();
+		final int numLevels = resolutions.length;
+		final int[][] subdivisions = new int[ numLevels ][];
+
+		final double[] voxelSize = new double[ 3 ];
+		setup.getVoxelSize().dimensions( voxelSize );
+		final long[] size = new long[ 3 ];
+		setup.getSize().dimensions( size );
+
+		final long[] levelDims = new long[ 3 ];
+		final double[] levelVoxelSize = new double[ 3 ];
+		for ( int level = 0; level < numLevels; ++level )
+		{
+			for ( int d = 0; d < 3; ++d )
+			{
+				levelDims[ d ] = Math.max( size[ d ] / resolutions[ level ][ d ], 1 );
+				levelVoxelSize[ d ] = voxelSize[ d ] * resolutions[ level ][ d ];
+			}
+
+			final ArrayList< FrameVoxels > frames = new ArrayList<>();
+			for ( final double[][] screenAxes : model.orientations )
+				frames.add( new FrameVoxels( levelDims, levelVoxelSize, screenAxes, model.viewportWidth, model.viewportHeight ) );
+
+			// start from the voxel-size based proposal, and replace it only by
+			// chunk sizes that are cheaper according to the model.
+			subdivisions[ level ] = proposal.getSubdivisions()[ level ];
+			double bestCost = expectedBytesPerFrame( frames, subdivisions[ level ], model );
+			for ( final int[] cellDims : candidateCellDimensions( levelDims, model ) )
+			{
+				final double cost = expectedBytesPerFrame( frames, cellDims, model );
+				if ( cost < bestCost )
+				{
+					bestCost = cost;
+					subdivisions[ level ] = cellDims;
+				}
+			}
+		}
+		return new ExportMipmapInfo( resolutions, subdivisions );
+	}
+
+	/**
+	 * Compute the expected number of bytes read for rendering one frame of
+	 * the given level with the given chunk size, averaged over the
+	 * orientations of the {@code model}.
+	 *
+	 * @param levelDims
+	 *            dimensions of the level.
+	 * @param levelVoxelSize
+	 *            calibrated voxel size of the level.
+	 * @param cellDims
+	 *            chunk size.
+	 * @param model
+	 *            how the dataset is viewed and the cost of reading chunks.
+	 * @return expected bytes read per frame.
+	 */
+	public static double expectedBytesPerFrame( final long[] levelDims, final double[] levelVoxelSize, final int[] cellDims, final AccessModel model )
+	{
+		final ArrayList< FrameVoxels > frames = new ArrayList<>();
+		for ( final double[][] screenAxes : model.orientations )
+			frames.add( new FrameVoxels( levelDims, levelVoxelSize, screenAxes, model.viewportWidth, model.viewportHeight ) );
+		return expectedBytesPerFrame( frames, cellDims, model );
+	}
+
+	private static double expectedBytesPerFrame( final ArrayList< FrameVoxels > frames, final int[] cellDims, final AccessModel model )
+	{
+		final double bytesPerCell = ( double ) cellDims[ 0 ] * cellDims[ 1 ] * cellDims[ 2 ] * model.bytesPerVoxel + model.chunkOverheadBytes;
+		double cost = 0;
+		double weightSum = 0;
+		for ( int i = 0; i < frames.size(); ++i )
+		{
+			final double weight = model.weights.get( i );
+			cost += weight * frames.get( i ).countCells( cellDims ) * bytesPerCell;
+			weightSum += weight;
+		}
+		return weightSum > 0 ? cost / weightSum : 0;
+	}
+
+	/**
+	 * The distinct voxels of a level that are hit by mapping every pixel of a
+	 * frame into the level (nearest-neighbor). The frame is centered on the level, and
+	 * scaled such that a screen pixel has the size of the smallest voxel
+	 * dimension of the level (which is when the viewer would choose to render
+	 * this level).
+	 */
+	static class FrameVoxels
+	{
+		/**
+		 * {@code voxels[d][i]} is the {@code d}-th coordinate of the
+		 * {@code i}-th voxel.
+		 */
+		private final int[][] voxels;
+
+		private final int numVoxels;
+
+		private final int[] min;
+
+		private final int[] max;
+
+		FrameVoxels( final long[] levelDims, final double[] levelVoxelSize, final double[][] screenAxes, final int width, final int height )
+		{
+			final double pixelSize = Math.min( levelVoxelSize[ 0 ], Math.min( levelVoxelSize[ 1 ], levelVoxelSize[ 2 ] ) );
+			final double[] dx = new double[ 3 ];
+			final double[] dy = new double[ 3 ];
+			final double[] origin = new double[ 3 ];
+			for ( int d = 0; d < 3; ++d )
+			{
+				dx[ d ] = screenAxes[ 0 ][ d ] * pixelSize / levelVoxelSize[ d ];
+				dy[ d ] = screenAxes[ 1 ][ d ] * pixelSize / levelVoxelSize[ d ];
+				origin[ d ] = 0.5 * levelDims[ d ] - 0.5 * ( width - 1 ) * dx[ d ] - 0.5 * ( height - 1 ) * dy[ d ];
+			}
+
+			// collect linear indices of voxels hit, then sort to remove
+			// duplicates (pixels are smaller than voxels in some dimensions)
+			final long[] indices = new long[ width * height ];
+			int n = 0;
+			for ( int y = 0; y < height; ++y )
+			{
+				A: for ( int x = 0; x < width; ++x )
+				{
+					long index = 0;
+					for ( int d = 2; d >= 0; --d )
+					{
+						final long p = ( long ) Math.floor( origin[ d ] + x * dx[ d ] + y * dy[ d ] );
+						if ( p < 0 || p >= levelDims[ d ] )
+							continue A;
+						index = index * levelDims[ d ] + p;
+					}
+					indices[ n++ ] = index;
+				}
+			}
+			Arrays.sort( indices, 0, n );
+
+			voxels = new int[ 3 ][ n ];
+			min = new int[] { Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE };
+			max = new int[] { Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE };
+			int i = 0;
+			for ( int j = 0; j < n; ++j )
+			{
+				if ( j > 0 && indices[ j ] == indices[ j - 1 ] )
+					continue;
+				long rest = indices[ j ];
+				for ( int d = 0; d < 3; ++d )
+				{
+					final int v = ( int ) ( rest % levelDims[ d ] );
+					rest /= levelDims[ d ];
+					voxels[ d ][ i ] = v;
+					min[ d ] = Math.min( min[ d ], v );
+					max[ d ] = Math.max( max[ d ], v );
+				}
+				++i;
+			}
+			numVoxels = i;
+		}
+
+		/**
+		 * Count the distinct cells of size {@code cellDims} containing frame
+		 * voxels.
+		 */
+		long countCells( final int[] cellDims )
+		{
+			final int n = numVoxels;
+			if ( n == 0 )
+				return 0;
+			final int[] cellMin = new int[ 3 ];
+			final int[] cellSize = new int[ 3 ];
+			for ( int d = 0; d < 3; ++d )
+			{
+				cellMin[ d ] = min[ d ] / cellDims[ d ];
+				cellSize[ d ] = max[ d ] / cellDims[ d ] - cellMin[ d ] + 1;
+			}
+			final BitSet visited = new BitSet( cellSize[ 0 ] * cellSize[ 1 ] * cellSize[ 2 ] );
+			final int[] vx = voxels[ 0 ];
+			final int[] vy = voxels[ 1 ];
+			final int[] vz = voxels[ 2 ];
+			for ( int i = 0; i < n; ++i )
+			{
+				final int cx = vx[ i ] / cellDims[ 0 ] - cellMin[ 0 ];
+				final int cy = vy[ i ] / cellDims[ 1 ] - cellMin[ 1 ];
+				final int cz = vz[ i ] / cellDims[ 2 ] - cellMin[ 2 ];
+				visited.set( cx + cellSize[ 0 ] * ( cy + cellSize[ 1 ] * cz ) );
+			}
+			return visited.cardinality();
+		}
+	}
+
+	/**
+	 * Largest extent of candidate chunks in any dimension.
+	 */
+	private static final int maxCellDimension = 256;
+
+	/**
+	 * Enumerate chunk sizes with power-of-two extent (at least 4, at most
+	 * {@link #maxCellDimension}) in each dimension, not exceeding the level
+	 * dimensions (rounded up to the next power of two), with a number of
+	 * voxels in the range allowed by the model.
+	 */
+	static ArrayList< int[] > candidateCellDimensions( final long[] levelDims, final AccessModel model )
+	{
+		final int[] maxDims = new int[ 3 ];
+		for ( int d = 0; d < 3; ++d )
+		{
+			maxDims[ d ] = 4;
+			while ( maxDims[ d ] < levelDims[ d ] && maxDims[ d ] < maxCellDimension )
+				maxDims[ d ] *= 2;
+		}
+
+		final ArrayList< int[] > candidates = new ArrayList<>();
+		for ( int z = 4; z <= maxDims[ 2 ]; z *= 2 )
+			for ( int y = 4; y <= maxDims[ 1 ]; y *= 2 )
+				for ( int x = 4; x <= maxDims[ 0 ]; x *= 2 )
+				{
+					final long numVoxels = ( long ) x * y * z;
+					if ( numVoxels <= model.maxCellVoxels && numVoxels >= Math.min( model.minCellVoxels, ( long ) maxDims[ 0 ] * maxDims[ 1 ] * maxDims[ 2 ] ) )
+						candidates.add( new int[] { x, y, z } );
+				}
+		return candidates;
+	}
+}
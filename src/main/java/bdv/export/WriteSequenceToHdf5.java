@@ -32,26 +32,29 @@ package bdv.export;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.CountDownLatch;
 
 import bdv.export.WriteSequenceToHdf5.AfterEachPlane;
 import bdv.export.WriteSequenceToHdf5.LoopbackHeuristic;
+import bdv.img.hdf5.DataTypes;
+import bdv.img.hdf5.DataTypes.DataType;
+import bdv.img.hdf5.Hdf5HandlePool;
 import bdv.img.hdf5.Hdf5ImageLoader;
 import bdv.img.hdf5.Partition;
 import bdv.img.hdf5.Util;
 import bdv.spimdata.SequenceDescriptionMinimal;
 import ch.systemsx.cisd.hdf5.HDF5Factory;
-import ch.systemsx.cisd.hdf5.HDF5IntStorageFeatures;
 import ch.systemsx.cisd.hdf5.IHDF5Reader;
 import ch.systemsx.cisd.hdf5.IHDF5Writer;
 import mpicbg.spim.data.XmlHelpers;
 import mpicbg.spim.data.generic.sequence.AbstractSequenceDescription;
 import mpicbg.spim.data.generic.sequence.BasicImgLoader;
-import mpicbg.spim.data.generic.sequence.BasicSetupImgLoader;
 import mpicbg.spim.data.generic.sequence.BasicViewSetup;
 import mpicbg.spim.data.sequence.TimePoint;
 import mpicbg.spim.data.sequence.TimePoints;
@@ -62,12 +65,12 @@ import net.imglib2.FinalInterval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.img.array.ArrayImg;
-import net.imglib2.img.array.ArrayImgs;
-import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
 import net.imglib2.img.cell.CellImg;
 import net.imglib2.iterator.LocalizingIntervalIterator;
+import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.RealType;
-import net.imglib2.type.numeric.integer.UnsignedShortType;
 import net.imglib2.view.Views;
 
 /**
@@ -272,18 +275,13 @@ public class WriteSequenceToHdf5
 	public static void writeHdf5PartitionLinkFile( final AbstractSequenceDescription< ?, ?, ? > seq, final Map< Integer, ExportMipmapInfo > perSetupMipmapInfo, final ArrayList< Partition > partitions, final File hdf5File )
 	{
 		// open HDF5 output file
+		Hdf5HandlePool.getInstance().closeUnusedReader( hdf5File );
 		if ( hdf5File.exists() )
 			hdf5File.delete();
 		final IHDF5Writer hdf5Writer = HDF5Factory.open( hdf5File );
 
 		// write Mipmap descriptions
-		for ( final BasicViewSetup setup : seq.getViewSetupsOrdered() )
-		{
-			final int setupId = setup.getId();
-			final ExportMipmapInfo mipmapInfo = perSetupMipmapInfo.get( setupId );
-			hdf5Writer.writeDoubleMatrix( Util.getResolutionsPath( setupId ), mipmapInfo.getResolutions() );
-			hdf5Writer.writeIntMatrix( Util.getSubdivisionsPath( setupId ), mipmapInfo.getSubdivisions() );
-		}
+		writeMipmapDescriptions( seq, perSetupMipmapInfo, partitions, hdf5File, hdf5Writer );
 
 		// link Cells for all views in the partition
 		final File basePath = hdf5File.getParentFile();
@@ -291,31 +289,164 @@ public class WriteSequenceToHdf5
 		{
 			final Map< Integer, Integer > timepointIdSequenceToPartition = partition.getTimepointIdSequenceToPartition();
 			final Map< Integer, Integer > setupIdSequenceToPartition = partition.getSetupIdSequenceToPartition();
-
-			for ( final Entry< Integer, Integer > tEntry : timepointIdSequenceToPartition.entrySet() )
+			final File partitionFile = new File( partition.getPath() );
+			final String relativePath = XmlHelpers.getRelativePath( partitionFile, basePath ).getPath();
+
+			// the partition only contains an empty cells bitmap if there are
+			// empty cells. Bitmaps are only linked if they exist, so the
+			// partition must be written already to link them. (Otherwise
+			// all cells are read from the partition, which is correct but
+			// slower.)
+			final IHDF5Reader partitionReader = partitionFile.exists()
+					? Hdf5HandlePool.getInstance().acquireReader( partitionFile )
+					: null;
+			try
 			{
-				final int tSequence = tEntry.getKey();
-				final int tPartition = tEntry.getValue();
-				for ( final Entry< Integer, Integer > sEntry : setupIdSequenceToPartition.entrySet() )
+				for ( final Entry< Integer, Integer > tEntry : timepointIdSequenceToPartition.entrySet() )
 				{
-					final int sSequence = sEntry.getKey();
-					final int sPartition = sEntry.getValue();
+					final int tSequence = tEntry.getKey();
+					final int tPartition = tEntry.getValue();
+					for ( final Entry< Integer, Integer > sEntry : setupIdSequenceToPartition.entrySet() )
+					{
+						final int sSequence = sEntry.getKey();
+						final int sPartition = sEntry.getValue();
 
-					final ViewId idSequence = new ViewId( tSequence, sSequence );
-					final ViewId idPartition = new ViewId( tPartition, sPartition );
+						final ViewId idSequence = new ViewId( tSequence, sSequence );
+						final ViewId idPartition = new ViewId( tPartition, sPartition );
 
-					final int numLevels = perSetupMipmapInfo.get( sSequence ).getNumLevels();
-					for ( int level = 0; level < numLevels; ++level )
-					{
-						final String relativePath = XmlHelpers.getRelativePath( new File( partition.getPath() ), basePath ).getPath();
-						hdf5Writer.object().createOrUpdateExternalLink( relativePath, Util.getCellsPath( idPartition, level ), Util.getCellsPath( idSequence, level ) );
+						final int numLevels = perSetupMipmapInfo.get( sSequence ).getNumLevels();
+						for ( int level = 0; level < numLevels; ++level )
+						{
+							hdf5Writer.object().createOrUpdateExternalLink( relativePath, Util.getCellsPath( idPartition, level ), Util.getCellsPath( idSequence, level ) );
+							final String emptyCellsPath = Util.getEmptyCellsPath( idPartition, level );
+							if ( partitionReader != null && partitionReader.exists( emptyCellsPath ) )
+								hdf5Writer.object().createOrUpdateExternalLink( relativePath, emptyCellsPath, Util.getEmptyCellsPath( idSequence, level ) );
+						}
 					}
 				}
 			}
+			finally
+			{
+				if ( partitionReader != null )
+					Hdf5HandlePool.getInstance().releaseReader( partitionReader );
+			}
+		}
+		hdf5Writer.close();
+	}
+
+	/**
+	 * Create a self-contained hdf5 master file linking to image data from all
+	 * views and all timepoints, e.g., for merging several datasets without
+	 * copying image data. Which hdf5 files contain which part of the image
+	 * data is specified in the {@code partitions} parameter.
+	 * <p>
+	 * In contrast to
+	 * {@link #writeHdf5PartitionLinkFile(AbstractSequenceDescription, Map, ArrayList, File)},
+	 * there is only one external link per view, which links the view group
+	 * with all its mipmap levels and empty-cells bitmaps. Also, the master file
+	 * does not need to be accompanied by the partition list, i.e., the
+	 * {@link Hdf5ImageLoader} for the master file can be created without
+	 * partitions. The image data is then accessed through the master file
+	 * only, and libhdf5 shares open partition files between views.
+	 *
+	 * @param seq
+	 *            description of the sequence to be stored as hdf5.
+	 * @param perSetupMipmapInfo
+	 *            this maps from setup {@link BasicViewSetup#getId() id} to
+	 *            {@link ExportMipmapInfo} for that setup.
+	 * @param partitions
+	 *            which parts of the dataset are stored in which files.
+	 * @param hdf5File
+	 *            hdf5 master file to which the image data from the partition
+	 *            files is linked.
+	 */
+	public static void writeHdf5ViewLinkFile( final AbstractSequenceDescription< ?, ?, ? > seq, final Map< Integer, ExportMipmapInfo > perSetupMipmapInfo, final List< Partition > partitions, final File hdf5File )
+	{
+		// open HDF5 output file
+		Hdf5HandlePool.getInstance().closeUnusedReader( hdf5File );
+		if ( hdf5File.exists() )
+			hdf5File.delete();
+		final IHDF5Writer hdf5Writer = HDF5Factory.open( hdf5File );
+
+		// write Mipmap descriptions
+		writeMipmapDescriptions( seq, perSetupMipmapInfo, partitions, hdf5File, hdf5Writer );
+
+		// link view groups for all views in the partition
+		final File basePath = hdf5File.getParentFile();
+		for ( final Partition partition : partitions )
+		{
+			final String relativePath = XmlHelpers.getRelativePath( new File( partition.getPath() ), basePath ).getPath();
+			for ( final Entry< Integer, Integer > tEntry : partition.getTimepointIdSequenceToPartition().entrySet() )
+			{
+				for ( final Entry< Integer, Integer > sEntry : partition.getSetupIdSequenceToPartition().entrySet() )
+				{
+					final ViewId idSequence = new ViewId( tEntry.getKey(), sEntry.getKey() );
+					final ViewId idPartition = new ViewId( tEntry.getValue(), sEntry.getValue() );
+					hdf5Writer.object().createOrUpdateExternalLink( relativePath, Util.getViewGroupPath( idPartition ), Util.getViewGroupPath( idSequence ) );
+				}
+			}
 		}
 		hdf5Writer.close();
 	}
 
+	/**
+	 * Write mipmap descriptions and data types of all setups into a link
+	 * master file. If the sequence is backed by an {@link Hdf5ImageLoader} on
+	 * the master file itself (e.g., when merging datasets), data types are read
+	 * from the partition files instead.
+	 */
+	private static void writeMipmapDescriptions(
+			final AbstractSequenceDescription< ?, ?, ? > seq,
+			final Map< Integer, ExportMipmapInfo > perSetupMipmapInfo,
+			final List< Partition > partitions,
+			final File hdf5File,
+			final IHDF5Writer hdf5Writer )
+	{
+		final BasicImgLoader imgLoader = seq.getImgLoader();
+		final boolean isLinkedLoader = imgLoader instanceof Hdf5ImageLoader
+				&& hdf5File.equals( ( ( Hdf5ImageLoader ) imgLoader ).getHdf5File() );
+		final Map< Integer, DataType< ?, ?, ? > > linkedDataTypes = isLinkedLoader
+				? readPartitionDataTypes( partitions )
+				: null;
+
+		for ( final BasicViewSetup setup : seq.getViewSetupsOrdered() )
+		{
+			final int setupId = setup.getId();
+			final ExportMipmapInfo mipmapInfo = perSetupMipmapInfo.get( setupId );
+			hdf5Writer.writeDoubleMatrix( Util.getResolutionsPath( setupId ), mipmapInfo.getResolutions() );
+			hdf5Writer.writeIntMatrix( Util.getSubdivisionsPath( setupId ), mipmapInfo.getSubdivisions() );
+			final DataType< ?, ?, ? > dataType = isLinkedLoader
+					? linkedDataTypes.get( setupId )
+					: DataTypes.forType( imgLoader.getSetupImgLoader( setupId ).getImageType() );
+			if ( dataType != null )
+				DataTypes.writeDataType( hdf5Writer, setupId, dataType );
+		}
+	}
+
+	/**
+	 * Read the {@link DataType} of every (sequence) setup from the partition
+	 * file containing it.
+	 */
+	private static Map< Integer, DataType< ?, ?, ? > > readPartitionDataTypes( final List< Partition > partitions )
+	{
+		final HashMap< Integer, DataType< ?, ?, ? > > dataTypes = new HashMap<>();
+		for ( final Partition partition : partitions )
+		{
+			final IHDF5Reader reader = Hdf5HandlePool.getInstance().acquireReader( new File( partition.getPath() ) );
+			try
+			{
+				for ( final Entry< Integer, Integer > sEntry : partition.getSetupIdSequenceToPartition().entrySet() )
+					if ( !dataTypes.containsKey( sEntry.getKey() ) )
+						dataTypes.put( sEntry.getKey(), DataTypes.readDataType( reader, sEntry.getValue() ) );
+			}
+			finally
+			{
+				Hdf5HandlePool.getInstance().releaseReader( reader );
+			}
+		}
+		return dataTypes;
+	}
+
 	/**
 	 * Create a hdf5 partition file containing image data for a subset of views
 	 * and timepoints in a chunked, mipmaped representation.
@@ -364,6 +495,84 @@ public class WriteSequenceToHdf5
 			final LoopbackHeuristic loopbackHeuristic,
 			final AfterEachPlane afterEachPlane,
 			final int numCellCreatorThreads,
+			final ProgressWriter progressWriter )
+	{
+		writeHdf5PartitionFile( seq, perSetupMipmapInfo, null, deflate, partition, loopbackHeuristic, afterEachPlane, numCellCreatorThreads, progressWriter );
+	}
+
+	/**
+	 * Provides existing resolution levels of the views of a sequence, which
+	 * are copied instead of being computed by downsampling. See
+	 * {@link WriteSequenceToHdf5#writeHdf5FileCopyLevels(AbstractSequenceDescription, Map, MipmapLevels, boolean, File, int, ProgressWriter)}.
+	 */
+	public interface MipmapLevels
+	{
+		/**
+		 * Get resolution {@code level} of the given view. Its dimensions
+		 * determine the dimensions of the level in the hdf5 file.
+		 */
+		public RandomAccessibleInterval< ? > getImage( final int timepointId, final int setupId, final int level );
+	}
+
+	/**
+	 * Create a hdf5 file containing image data from all views and all
+	 * timepoints in a chunked, mipmaped representation. In contrast to
+	 * {@link #writeHdf5File(AbstractSequenceDescription, Map, boolean, File, LoopbackHeuristic, AfterEachPlane, int, ProgressWriter)},
+	 * every resolution level is copied block by block from
+	 * {@code mipmapLevels} instead of being computed by downsampling the full
+	 * resolution image. This is used to write subsets of existing datasets,
+	 * where all levels are readily available.
+	 *
+	 * @param seq
+	 *            description of the sequence to be stored as hdf5. The
+	 *            {@link BasicImgLoader} is only used to get the pixel type of
+	 *            each setup.
+	 * @param perSetupMipmapInfo
+	 *            this maps from setup {@link BasicViewSetup#getId() id} to
+	 *            {@link ExportMipmapInfo} for that setup. The subsampling
+	 *            factors must match {@code mipmapLevels}.
+	 * @param mipmapLevels
+	 *            provides the image data for every level.
+	 * @param deflate
+	 *            whether to compress the data with the HDF5 DEFLATE filter.
+	 * @param hdf5File
+	 *            hdf5 file to which the image data is written.
+	 * @param numCellCreatorThreads
+	 *            The number of threads that will be instantiated to copy cell
+	 *            data. Must be at least 1.
+	 * @param progressWriter
+	 *            completion ratio and status output will be directed here.
+	 */
+	public static void writeHdf5FileCopyLevels(
+			final AbstractSequenceDescription< ?, ?, ? > seq,
+			final Map< Integer, ExportMipmapInfo > perSetupMipmapInfo,
+			final MipmapLevels mipmapLevels,
+			final boolean deflate,
+			final File hdf5File,
+			final int numCellCreatorThreads,
+			final ProgressWriter progressWriter )
+	{
+		final HashMap< Integer, Integer > timepointIdSequenceToPartition = new HashMap<>();
+		for ( final TimePoint timepoint : seq.getTimePoints().getTimePointsOrdered() )
+			timepointIdSequenceToPartition.put( timepoint.getId(), timepoint.getId() );
+
+		final HashMap< Integer, Integer > setupIdSequenceToPartition = new HashMap<>();
+		for ( final BasicViewSetup setup : seq.getViewSetupsOrdered() )
+			setupIdSequenceToPartition.put( setup.getId(), setup.getId() );
+
+		final Partition partition = new Partition( hdf5File.getPath(), timepointIdSequenceToPartition, setupIdSequenceToPartition );
+		writeHdf5PartitionFile( seq, perSetupMipmapInfo, mipmapLevels, deflate, partition, null, null, numCellCreatorThreads, progressWriter );
+	}
+
+	private static void writeHdf5PartitionFile(
+			final AbstractSequenceDescription< ?, ?, ? > seq,
+			final Map< Integer, ExportMipmapInfo > perSetupMipmapInfo,
+			final MipmapLevels mipmapLevels,
+			final boolean deflate,
+			final Partition partition,
+			final LoopbackHeuristic loopbackHeuristic,
+			final AfterEachPlane afterEachPlane,
+			final int numCellCreatorThreads,
 			ProgressWriter progressWriter )
 	{
 		final int blockWriterQueueLength = 100;
@@ -382,11 +591,14 @@ public class WriteSequenceToHdf5
 		// get the BasicImgLoader that supplies the images
 		final BasicImgLoader imgLoader = seq.getImgLoader();
 
+		final HashMap< Integer, DataType< ?, ?, ? > > perSetupDataType = new HashMap<>();
 		for ( final BasicViewSetup setup : seq.getViewSetupsOrdered() ) {
 			final Object type = imgLoader.getSetupImgLoader( setup.getId() ).getImageType();
-			if ( !( type instanceof UnsignedShortType ) )
-				throw new IllegalArgumentException( "Expected BasicImgLoader<UnsignedShortTyp> but your dataset has BasicImgLoader<"
-						+ type.getClass().getSimpleName() + ">.\nCurrently writing to HDF5 is only supported for UnsignedShortType." );
+			final DataType< ?, ?, ? > dataType = DataTypes.forType( type );
+			if ( dataType == null )
+				throw new IllegalArgumentException( "Your dataset has BasicImgLoader<" + type.getClass().getSimpleName()
+						+ ">.\nCurrently writing to HDF5 is only supported for UnsignedByteType, UnsignedShortType, and FloatType." );
+			perSetupDataType.put( setup.getId(), dataType );
 		}
 
 
@@ -414,7 +626,7 @@ public class WriteSequenceToHdf5
 			final int setupIdSequence = entry.getKey();
 			final int setupIdPartition = entry.getValue();
 			final ExportMipmapInfo mipmapInfo = perSetupMipmapInfo.get( setupIdSequence );
-			writerQueue.writeMipmapDescription( setupIdPartition, mipmapInfo );
+			writerQueue.writeMipmapDescription( setupIdPartition, mipmapInfo, perSetupDataType.get( setupIdSequence ) );
 		}
 		progressWriter.setProgress( ( double ) ++numCompletedTasks / numTasks );
 
@@ -440,16 +652,29 @@ public class WriteSequenceToHdf5
 				final int setupIdPartition = partition.getSetupIdSequenceToPartition().get( setupIdSequence );
 				progressWriter.out().printf( "proccessing setup %d / %d\n", ++setupIndex, numSetups );
 
-				@SuppressWarnings( "unchecked" )
-				final RandomAccessibleInterval< UnsignedShortType > img = ( ( BasicSetupImgLoader< UnsignedShortType > ) imgLoader.getSetupImgLoader( setupIdSequence ) ).getImage( timepointIdSequence );
 				final ExportMipmapInfo mipmapInfo = perSetupMipmapInfo.get( setupIdSequence );
 				final double startCompletionRatio = ( double ) numCompletedTasks++ / numTasks;
 				final double endCompletionRatio = ( double ) numCompletedTasks / numTasks;
 				final ProgressWriter subProgressWriter = new SubTaskProgressWriter( progressWriter, startCompletionRatio, endCompletionRatio );
 
-				writeViewToHdf5PartitionFile(
-						img, timepointIdPartition, setupIdPartition, mipmapInfo, false,
-						deflate, writerQueue, cellCreatorThreads, loopbackHeuristic, afterEachPlane, subProgressWriter );
+				if ( mipmapLevels != null )
+				{
+					@SuppressWarnings( "rawtypes" )
+					final ArrayList< RandomAccessibleInterval > levels = new ArrayList<>();
+					for ( int level = 0; level < mipmapInfo.getNumLevels(); ++level )
+						levels.add( mipmapLevels.getImage( timepointIdSequence, setupIdSequence, level ) );
+					writeViewLevelsToHdf5PartitionFile(
+							levels, timepointIdPartition, setupIdPartition, mipmapInfo, deflate,
+							writerQueue, cellCreatorThreads, afterEachPlane, subProgressWriter );
+				}
+				else
+				{
+					@SuppressWarnings( "rawtypes" )
+					final RandomAccessibleInterval img = imgLoader.getSetupImgLoader( setupIdSequence ).getImage( timepointIdSequence );
+					writeViewToHdf5PartitionFile(
+							img, timepointIdPartition, setupIdPartition, mipmapInfo, false,
+							deflate, writerQueue, cellCreatorThreads, loopbackHeuristic, afterEachPlane, subProgressWriter );
+				}
 			}
 		}
 
@@ -502,8 +727,8 @@ public class WriteSequenceToHdf5
 	 *            completion ratio and status output will be directed here. may
 	 *            be null.
 	 */
-	public static void writeViewToHdf5PartitionFile(
-			final RandomAccessibleInterval< UnsignedShortType > img,
+	public static < T extends RealType< T > & NativeType< T > > void writeViewToHdf5PartitionFile(
+			final RandomAccessibleInterval< T > img,
 			final Partition partition,
 			final int timepointIdPartition,
 			final int setupIdPartition,
@@ -587,8 +812,8 @@ public class WriteSequenceToHdf5
 	 *            completion ratio and status output will be directed here. may
 	 *            be null.
 	 */
-	public static void writeViewToHdf5PartitionFile(
-			final RandomAccessibleInterval< UnsignedShortType > img,
+	public static < T extends RealType< T > & NativeType< T > > void writeViewToHdf5PartitionFile(
+			final RandomAccessibleInterval< T > img,
 			final int timepointIdPartition,
 			final int setupIdPartition,
 			final ExportMipmapInfo mipmapInfo,
@@ -600,7 +825,11 @@ public class WriteSequenceToHdf5
 			final AfterEachPlane afterEachPlane,
 			ProgressWriter progressWriter )
 	{
-		final HDF5IntStorageFeatures storage = deflate ? HDF5IntStorageFeatures.INT_AUTO_SCALING_DEFLATE : HDF5IntStorageFeatures.INT_AUTO_SCALING;
+		final T type = net.imglib2.util.Util.getTypeFromInterval( img );
+		final DataType< ?, ?, ? > dataType = DataTypes.forType( type );
+		if ( dataType == null )
+			throw new IllegalArgumentException( "Currently writing to HDF5 is only supported for UnsignedByteType, UnsignedShortType, and FloatType, not "
+					+ type.getClass().getSimpleName() + "." );
 
 		if ( progressWriter == null )
 			progressWriter = new ProgressWriterConsole();
@@ -612,7 +841,7 @@ public class WriteSequenceToHdf5
 
 		// write Mipmap descriptions
 		if ( writeMipmapInfo )
-			writerQueue.writeMipmapDescription( setupIdPartition, mipmapInfo );
+			writerQueue.writeMipmapDescription( setupIdPartition, mipmapInfo, dataType );
 
 		// create loopback image-loader to read already written chunks from the
 		// h5 for generating low-resolution versions.
@@ -630,21 +859,12 @@ public class WriteSequenceToHdf5
 		{
 			progressWriter.out().println( "writing level " + level );
 
-			final RandomAccessibleInterval< UnsignedShortType > sourceImg;
-			final int[] factor;
-			final boolean useLoopBack;
-			if ( loopbackHeuristic == null )
+			// Are downsampling factors a multiple of a level that we have
+			// already written?
+			int[] factorsToPreviousLevel = null;
+			int previousLevel = -1;
+			if ( loopbackHeuristic != null )
 			{
-				sourceImg = img;
-				factor = resolutions[ level ];
-				useLoopBack = false;
-			}
-			else
-			{
-				// Are downsampling factors a multiple of a level that we have
-				// already written?
-				int[] factorsToPreviousLevel = null;
-				int previousLevel = -1;
 				A: for ( int l = level - 1; l >= 0; --l )
 				{
 					final int[] f = new int[ n ];
@@ -658,138 +878,223 @@ public class WriteSequenceToHdf5
 					previousLevel = l;
 					break;
 				}
-				// Now, if previousLevel >= 0 we can use loopback ImgLoader on
-				// previousLevel and downsample with factorsToPreviousLevel.
-				//
-				// whether it makes sense to actually do so is determined by a
-				// heuristic based on the following considerations:
-				// * if downsampling a lot over original image, the cost of
-				//   reading images back from hdf5 outweighs the cost of
-				//   accessing and averaging original pixels.
-				// * original image may already be cached (for example when
-				//   exporting an ImageJ virtual stack. To compute blocks
-				//   that downsample a lot in Z, many planes of the virtual
-				//   stack need to be accessed leading to cache thrashing if
-				//   individual planes are very large.
-
-				useLoopBack = loopbackHeuristic.decide( img, resolutions[ level ], previousLevel, factorsToPreviousLevel, subdivisions[ level ] );
-				if ( useLoopBack )
-				{
-					sourceImg = loopback.getSetupImgLoader( setupIdPartition ).getImage( timepointIdPartition, previousLevel );
-					factor = factorsToPreviousLevel;
-				}
-				else
-				{
-					sourceImg = img;
-					factor = resolutions[ level ];
-				}
 			}
 
-			sourceImg.dimensions( dimensions );
-			final boolean fullResolution = ( factor[ 0 ] == 1 && factor[ 1 ] == 1 && factor[ 2 ] == 1 );
-			long size = 1;
-			if ( !fullResolution )
-			{
-				for ( int d = 0; d < n; ++d )
-				{
-					dimensions[ d ] = Math.max( dimensions[ d ] / factor[ d ], 1 );
-					size *= factor[ d ];
-				}
-			}
-			final double scale = 1.0 / size;
-
-			final long[] minRequiredInput = new long[ n ];
-			final long[] maxRequiredInput = new long[ n ];
-			sourceImg.min( minRequiredInput );
+			// Now, if previousLevel >= 0 we can use loopback ImgLoader on
+			// previousLevel and downsample with factorsToPreviousLevel.
+			//
+			// whether it makes sense to actually do so is determined by a
+			// heuristic based on the following considerations:
+			// * if downsampling a lot over original image, the cost of
+			//   reading images back from hdf5 outweighs the cost of
+			//   accessing and averaging original pixels.
+			// * original image may already be cached (for example when
+			//   exporting an ImageJ virtual stack. To compute blocks
+			//   that downsample a lot in Z, many planes of the virtual
+			//   stack need to be accessed leading to cache thrashing if
+			//   individual planes are very large.
+			//
+			// A PerPlaneLoopbackHeuristic may revise the decision for each
+			// plane of chunks, so in that case we prepare both sources.
+			final boolean useLoopBack = ( loopbackHeuristic != null ) && loopbackHeuristic.decide( img, resolutions[ level ], previousLevel, factorsToPreviousLevel, subdivisions[ level ] );
+			final PerPlaneLoopbackHeuristic perPlaneHeuristic = ( previousLevel >= 0 && loopbackHeuristic instanceof PerPlaneLoopbackHeuristic ) ? ( PerPlaneLoopbackHeuristic ) loopbackHeuristic : null;
+
+			img.dimensions( dimensions );
 			for ( int d = 0; d < n; ++d )
-				maxRequiredInput[ d ] = minRequiredInput[ d ] + dimensions[ d ] * factor[ d ] - 1;
-			final RandomAccessibleInterval< UnsignedShortType > extendedImg = Views.interval( Views.extendBorder( sourceImg ), new FinalInterval( minRequiredInput, maxRequiredInput ) );
+				dimensions[ d ] = Math.max( dimensions[ d ] / resolutions[ level ][ d ], 1 );
+
+			final SourceBlocks< T > original = ( !useLoopBack || perPlaneHeuristic != null )
+					? new SourceBlocks<>( img, dimensions, resolutions[ level ] )
+					: null;
+			@SuppressWarnings( "unchecked" )
+			final SourceBlocks< T > loopBack = ( useLoopBack || perPlaneHeuristic != null )
+					? new SourceBlocks<>( ( RandomAccessibleInterval< T > ) loopback.getSetupImgLoader( setupIdPartition ).getImage( timepointIdPartition, previousLevel ), dimensions, factorsToPreviousLevel )
+					: null;
 
-			final int[] cellDimensions = subdivisions[ level ];
 			final ViewId viewIdPartition = new ViewId( timepointIdPartition, setupIdPartition );
-			final String path = Util.getCellsPath( viewIdPartition, level );
-			writerQueue.createAndOpenDataset( path, dimensions.clone(), cellDimensions.clone(), storage );
+			writeLevel( type, dataType, dimensions, subdivisions[ level ], viewIdPartition, level, deflate,
+					original, loopBack, useLoopBack, perPlaneHeuristic, writerQueue, cellCreatorThreads, afterEachPlane );
+			progressWriter.setProgress( ( double ) numCompletedTasks++ / numTasks );
+		}
+		if ( loopback != null )
+			loopback.close();
+	}
 
-			final long[] numCells = new long[ n ];
-			final int[] borderSize = new int[ n ];
-			final long[] minCell = new long[ n ];
-			final long[] maxCell = new long[ n ];
-			for ( int d = 0; d < n; ++d )
-			{
-				numCells[ d ] = ( dimensions[ d ] - 1 ) / cellDimensions[ d ] + 1;
-				maxCell[ d ] = numCells[ d ] - 1;
-				borderSize[ d ] = ( int ) ( dimensions[ d ] - ( numCells[ d ] - 1 ) * cellDimensions[ d ] );
-			}
+	/**
+	 * Write a single view to a hdf5 partition file by copying existing
+	 * resolution levels. The mipmap description for the setup must be written
+	 * separately.
+	 *
+	 * @param levels
+	 *            the resolution levels of the view, full resolution first.
+	 * @param mipmapInfo
+	 *            contains for each mipmap level of the setup, the subdivision
+	 *            block sizes.
+	 */
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	private static void writeViewLevelsToHdf5PartitionFile(
+			final List< RandomAccessibleInterval > levels,
+			final int timepointIdPartition,
+			final int setupIdPartition,
+			final ExportMipmapInfo mipmapInfo,
+			final boolean deflate,
+			final Hdf5BlockWriterThread writerQueue,
+			final CellCreatorThread[] cellCreatorThreads,
+			final AfterEachPlane afterEachPlane,
+			ProgressWriter progressWriter )
+	{
+		final RealType type = ( RealType ) net.imglib2.util.Util.getTypeFromInterval( levels.get( 0 ) );
+		final DataType< ?, ?, ? > dataType = DataTypes.forType( type );
+		if ( dataType == null )
+			throw new IllegalArgumentException( "Currently writing to HDF5 is only supported for UnsignedByteType, UnsignedShortType, and FloatType, not "
+					+ type.getClass().getSimpleName() + "." );
 
-			// generate one "plane" of cells after the other to avoid cache thrashing when exporting from virtual stacks
-			for ( int lastDimCell = 0; lastDimCell < numCells[ n - 1 ]; ++lastDimCell )
-			{
-				minCell[ n - 1 ] = lastDimCell;
-				maxCell[ n - 1 ] = lastDimCell;
-				final LocalizingIntervalIterator i = new LocalizingIntervalIterator( minCell, maxCell );
+		if ( progressWriter == null )
+			progressWriter = new ProgressWriterConsole();
+
+		final int numLevels = levels.size();
+		final int[] noDownsampling = new int[] { 1, 1, 1 };
+		final ViewId viewIdPartition = new ViewId( timepointIdPartition, setupIdPartition );
+		for ( int level = 0; level < numLevels; ++level )
+		{
+			progressWriter.out().println( "copying level " + level );
+			final RandomAccessibleInterval img = levels.get( level );
+			final long[] dimensions = new long[ 3 ];
+			img.dimensions( dimensions );
+			final int[] cellDimensions = mipmapInfo.getSubdivisions()[ level ];
+			writeLevel( type, dataType, dimensions, cellDimensions, viewIdPartition, level, deflate,
+					new SourceBlocks( img, dimensions, noDownsampling ), null, false, null,
+					writerQueue, cellCreatorThreads, afterEachPlane );
+			progressWriter.setProgress( ( double ) ( level + 1 ) / numLevels );
+		}
+	}
+
+	/**
+	 * Write one resolution level of a view, one "plane" of cells after the
+	 * other. Each cell is copied (or downsampled) from {@code original} or
+	 * {@code loopBack}, depending on {@code useLoopBack} and
+	 * {@code perPlaneHeuristic}.
+	 */
+	private static < T extends RealType< T > & NativeType< T > > void writeLevel(
+			final T type,
+			final DataType< ?, ?, ? > dataType,
+			final long[] dimensions,
+			final int[] cellDimensions,
+			final ViewId viewIdPartition,
+			final int level,
+			final boolean deflate,
+			final SourceBlocks< T > original,
+			final SourceBlocks< T > loopBack,
+			final boolean useLoopBack,
+			final PerPlaneLoopbackHeuristic perPlaneHeuristic,
+			final Hdf5BlockWriterThread writerQueue,
+			final CellCreatorThread[] cellCreatorThreads,
+			final AfterEachPlane afterEachPlane )
+	{
+		final int n = 3;
+		final String path = Util.getCellsPath( viewIdPartition, level );
+		writerQueue.createAndOpenDataset( path, dimensions.clone(), cellDimensions.clone(), dataType, deflate );
+
+		final long[] numCells = new long[ n ];
+		final int[] borderSize = new int[ n ];
+		final long[] minCell = new long[ n ];
+		final long[] maxCell = new long[ n ];
+		for ( int d = 0; d < n; ++d )
+		{
+			numCells[ d ] = ( dimensions[ d ] - 1 ) / cellDimensions[ d ] + 1;
+			maxCell[ d ] = numCells[ d ] - 1;
+			borderSize[ d ] = ( int ) ( dimensions[ d ] - ( numCells[ d ] - 1 ) * cellDimensions[ d ] );
+		}
 
-				final int numThreads = cellCreatorThreads.length;
-				final CountDownLatch doneSignal = new CountDownLatch( numThreads );
-				for ( int threadNum = 0; threadNum < numThreads; ++threadNum )
+		// cells that are empty (all zero) are not written, but recorded in
+		// a bitmap. (Unwritten chunks read as zero, so this is compatible
+		// with readers that ignore the bitmap.)
+		final BitSet emptyCells = new BitSet();
+		final boolean recordEmptyCells = numCells[ 0 ] * numCells[ 1 ] * numCells[ 2 ] <= Integer.MAX_VALUE;
+
+		// generate one "plane" of cells after the other to avoid cache thrashing when exporting from virtual stacks
+		final int numPlanes = ( int ) numCells[ n - 1 ];
+		for ( int lastDimCell = 0; lastDimCell < numPlanes; ++lastDimCell )
+		{
+			minCell[ n - 1 ] = lastDimCell;
+			maxCell[ n - 1 ] = lastDimCell;
+			final LocalizingIntervalIterator i = new LocalizingIntervalIterator( minCell, maxCell );
+
+			final boolean usePlaneLoopBack = ( perPlaneHeuristic != null ) ? perPlaneHeuristic.decidePlane( lastDimCell, numPlanes ) : useLoopBack;
+			final SourceBlocks< T > source = usePlaneLoopBack ? loopBack : original;
+
+			final int numThreads = cellCreatorThreads.length;
+			final CountDownLatch doneSignal = new CountDownLatch( numThreads );
+			for ( int threadNum = 0; threadNum < numThreads; ++threadNum )
+			{
+				cellCreatorThreads[ threadNum ].run( new Runnable()
 				{
-					cellCreatorThreads[ threadNum ].run( new Runnable()
+					@Override
+					public void run()
 					{
-						@Override
-						public void run()
+						final int[] factor = source.factor;
+						final boolean fullResolution = source.fullResolution;
+						final double[] accumulator = fullResolution ? null : new double[ cellDimensions[ 0 ] * cellDimensions[ 1 ] * cellDimensions[ 2 ] ];
+						final long[] currentCellMin = new long[ n ];
+						final long[] currentCellMax = new long[ n ];
+						final long[] currentCellDim = new long[ n ];
+						final long[] currentCellPos = new long[ n ];
+						final long[] blockMin = new long[ n ];
+						final RandomAccess< T > in = source.extendedImg.randomAccess();
+						while ( true )
 						{
-							final double[] accumulator = fullResolution ? null : new double[ cellDimensions[ 0 ] * cellDimensions[ 1 ] * cellDimensions[ 2 ] ];
-							final long[] currentCellMin = new long[ n ];
-							final long[] currentCellMax = new long[ n ];
-							final long[] currentCellDim = new long[ n ];
-							final long[] currentCellPos = new long[ n ];
-							final long[] blockMin = new long[ n ];
-							final RandomAccess< UnsignedShortType > in = extendedImg.randomAccess();
-							while ( true )
+							synchronized ( i )
 							{
-								synchronized ( i )
-								{
-									if ( !i.hasNext() )
-										break;
-									i.fwd();
-									i.localize( currentCellPos );
-								}
-								for ( int d = 0; d < n; ++d )
-								{
-									currentCellMin[ d ] = currentCellPos[ d ] * cellDimensions[ d ];
-									blockMin[ d ] = currentCellMin[ d ] * factor[ d ];
-									final boolean isBorderCellInThisDim = ( currentCellPos[ d ] + 1 == numCells[ d ] );
-									currentCellDim[ d ] = isBorderCellInThisDim ? borderSize[ d ] : cellDimensions[ d ];
-									currentCellMax[ d ] = currentCellMin[ d ] + currentCellDim[ d ] - 1;
-								}
+								if ( !i.hasNext() )
+									break;
+								i.fwd();
+								i.localize( currentCellPos );
+							}
+							for ( int d = 0; d < n; ++d )
+							{
+								currentCellMin[ d ] = currentCellPos[ d ] * cellDimensions[ d ];
+								blockMin[ d ] = currentCellMin[ d ] * factor[ d ];
+								final boolean isBorderCellInThisDim = ( currentCellPos[ d ] + 1 == numCells[ d ] );
+								currentCellDim[ d ] = isBorderCellInThisDim ? borderSize[ d ] : cellDimensions[ d ];
+								currentCellMax[ d ] = currentCellMin[ d ] + currentCellDim[ d ] - 1;
+							}
 
-								final ArrayImg< UnsignedShortType, ? > cell = ArrayImgs.unsignedShorts( currentCellDim );
-								if ( fullResolution )
-									copyBlock( cell.randomAccess(), currentCellDim, in, blockMin );
-								else
-									downsampleBlock( cell.cursor(), accumulator, currentCellDim, in, blockMin, factor, scale );
+							final ArrayImg< T, ? > cell = new ArrayImgFactory< T >().create( currentCellDim, type );
+							if ( fullResolution )
+								copyBlock( cell.randomAccess(), currentCellDim, in, blockMin );
+							else
+								downsampleBlock( cell.cursor(), accumulator, currentCellDim, in, blockMin, factor, source.scale );
 
-								writerQueue.writeBlockWithOffset( ( ( ShortArray ) cell.update( null ) ).getCurrentStorageArray(), currentCellDim.clone(), currentCellMin.clone() );
+							final Object data = ( ( ArrayDataAccess< ? > ) cell.update( null ) ).getCurrentStorageArray();
+							if ( recordEmptyCells && isZero( data ) )
+							{
+								final int index = ( int ) ( currentCellPos[ 0 ] + numCells[ 0 ] * ( currentCellPos[ 1 ] + numCells[ 1 ] * currentCellPos[ 2 ] ) );
+								synchronized ( emptyCells )
+								{
+									emptyCells.set( index );
+								}
 							}
-							doneSignal.countDown();
+							else
+								writerQueue.writeArrayBlockWithOffset( data, currentCellDim.clone(), currentCellMin.clone() );
 						}
-					} );
-				}
-				try
-				{
-					doneSignal.await();
-				}
-				catch ( final InterruptedException e )
-				{
-					e.printStackTrace();
-				}
-				if ( afterEachPlane != null )
-					afterEachPlane.afterEachPlane( useLoopBack );
+						doneSignal.countDown();
+					}
+				} );
 			}
-			writerQueue.closeDataset();
-			progressWriter.setProgress( ( double ) numCompletedTasks++ / numTasks );
+			try
+			{
+				doneSignal.await();
+			}
+			catch ( final InterruptedException e )
+			{
+				e.printStackTrace();
+			}
+			if ( afterEachPlane != null )
+				afterEachPlane.afterEachPlane( usePlaneLoopBack );
 		}
-		if ( loopback != null )
-			loopback.close();
+		writerQueue.closeDataset();
+		if ( !emptyCells.isEmpty() )
+			writerQueue.writeEmptyCells( Util.getEmptyCellsPath( viewIdPartition, level ), emptyCells.toLongArray() );
 	}
 
 	/**
@@ -807,6 +1112,26 @@ public class WriteSequenceToHdf5
 				final int[] chunkSize );
 	}
 
+	/**
+	 * A {@link LoopbackHeuristic} that may revise its decision for every
+	 * "plane of chunks" of a resolution level. For each level,
+	 * {@link #decide(RandomAccessibleInterval, int[], int, int[], int[])
+	 * decide()} is called first. If a previous level is available for
+	 * loopback, {@link #decidePlane(int, int)} is then called before each
+	 * plane is written, and its result overrides the decision for that plane.
+	 */
+	public interface PerPlaneLoopbackHeuristic extends LoopbackHeuristic
+	{
+		/**
+		 * @param plane
+		 *            index of the plane of chunks that is about to be written.
+		 * @param numPlanes
+		 *            number of planes of chunks in the current level.
+		 * @return whether to use the loopback image loader for this plane.
+		 */
+		public boolean decidePlane( final int plane, final int numPlanes );
+	}
+
 	public interface AfterEachPlane
 	{
 		public void afterEachPlane( final boolean usedLoopBack );
@@ -833,6 +1158,37 @@ public class WriteSequenceToHdf5
 		}
 	}
 
+	/**
+	 * The image from which the blocks of a resolution level are generated,
+	 * extended and cropped to the region required for that level, together
+	 * with the downsampling factors with respect to that image.
+	 */
+	private static class SourceBlocks< T >
+	{
+		final RandomAccessibleInterval< T > extendedImg;
+
+		final int[] factor;
+
+		final boolean fullResolution;
+
+		final double scale;
+
+		SourceBlocks( final RandomAccessibleInterval< T > sourceImg, final long[] dimensions, final int[] factor )
+		{
+			final int n = sourceImg.numDimensions();
+			this.factor = factor;
+			fullResolution = ( factor[ 0 ] == 1 && factor[ 1 ] == 1 && factor[ 2 ] == 1 );
+			scale = 1.0 / numElements( factor );
+
+			final long[] minRequiredInput = new long[ n ];
+			final long[] maxRequiredInput = new long[ n ];
+			sourceImg.min( minRequiredInput );
+			for ( int d = 0; d < n; ++d )
+				maxRequiredInput[ d ] = minRequiredInput[ d ] + dimensions[ d ] * factor[ d ] - 1;
+			extendedImg = Views.interval( Views.extendBorder( sourceImg ), new FinalInterval( minRequiredInput, maxRequiredInput ) );
+		}
+	}
+
 	public static int numElements( final int[] size )
 	{
 		int numElements = size[ 0 ];
@@ -896,6 +1252,36 @@ public class WriteSequenceToHdf5
 		}
 	}
 
+	/**
+	 * Check whether all elements of a {@code byte[]}, {@code short[]}, or
+	 * {@code float[]} array are zero.
+	 */
+	private static boolean isZero( final Object data )
+	{
+		if ( data instanceof byte[] )
+		{
+			for ( final byte v : ( byte[] ) data )
+				if ( v != 0 )
+					return false;
+			return true;
+		}
+		else if ( data instanceof short[] )
+		{
+			for ( final short v : ( short[] ) data )
+				if ( v != 0 )
+					return false;
+			return true;
+		}
+		else if ( data instanceof float[] )
+		{
+			for ( final float v : ( float[] ) data )
+				if ( v != 0 )
+					return false;
+			return true;
+		}
+		return false;
+	}
+
 	private static < T extends RealType< T > > void copyBlock( final RandomAccess< T > out, final long[] outDim, final RandomAccess< T > in, final long[] blockMin )
 	{
 		in.setPosition( blockMin );
@@ -915,7 +1301,7 @@ public class WriteSequenceToHdf5
 		}
 	}
 
-	private static < T extends RealType< T > > void downsampleBlock( final Cursor< T > out, final double[] accumulator, final long[] outDim, final RandomAccess< UnsignedShortType > randomAccess, final long[] blockMin, final int[] blockSize, final double scale )
+	private static < T extends RealType< T > > void downsampleBlock( final Cursor< T > out, final double[] accumulator, final long[] outDim, final RandomAccess< T > randomAccess, final long[] blockMin, final int[] blockSize, final double scale )
 	{
 		final int numBlockPixels = ( int ) ( outDim[ 0 ] * outDim[ 1 ] * outDim[ 2 ] );
 		Arrays.fill( accumulator, 0, numBlockPixels, 0 );
@@ -158,4 +158,31 @@ public interface CacheArrayLoader< A >
 	 * @return loaded cell data.
 	 */
 	public A loadArray( final int timepoint, final int setup, final int level, int[] dimensions, long[] min ) throws InterruptedException;
+
+	/**
+	 * Load an arbitrary block, which need not be aligned to cells, for example
+	 * a few voxels around a probed position. Implementing classes should
+	 * override this if the data back-end can read such blocks without loading
+	 * complete cells. The default implementation returns {@code null}, which
+	 * means that ranged reads are not supported.
+	 *
+	 * @param timepoint
+	 *            the timepoint of the stack.
+	 * @param setup
+	 *            the setup of the stack.
+	 * @param level
+	 *            the resolution level of the stack (0 for full resolution).
+	 * @param dimensions
+	 *            the size of the block to load (in voxels).
+	 * @param min
+	 *            the min coordinate of the block in the stack (in voxels).
+	 * @return loaded block data, or {@code null} if ranged reads are not
+	 *         supported.
+	 *
+	 * @see VolatileGlobalCellCache#readRange
+	 */
+	public default A loadRange( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	{
+		return null;
+	}
 }
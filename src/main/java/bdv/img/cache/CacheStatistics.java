@@ -0,0 +1,175 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import java.lang.reflect.Array;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+
+/**
+ * Counts cell requests and loads of a {@link VolatileGlobalCellCache}. All
+ * counts are cumulative since the cache was created.
+ */
+public class CacheStatistics
+{
+	private final LongAdder numRequests = new LongAdder();
+
+	private final LongAdder numMisses = new LongAdder();
+
+	private final LongAdder numLoads = new LongAdder();
+
+	private final LongAdder loadNanoTime = new LongAdder();
+
+	private final LongAdder loadedBytes = new LongAdder();
+
+	private final AtomicInteger numLoadsInProgress = new AtomicInteger();
+
+	private volatile IntSupplier queueSize = () -> -1;
+
+	/**
+	 * @return how many times cells were requested from the cache.
+	 */
+	public long getNumRequests()
+	{
+		return numRequests.sum();
+	}
+
+	/**
+	 * @return how many requests could not be answered with a valid (loaded)
+	 *         cell from the cache.
+	 */
+	public long getNumMisses()
+	{
+		return numMisses.sum();
+	}
+
+	/**
+	 * @return how many cells were loaded.
+	 */
+	public long getNumLoads()
+	{
+		return numLoads.sum();
+	}
+
+	/**
+	 * @return the fraction of requests that were answered with a valid cell
+	 *         from the cache, or {@code NaN} if there were no requests.
+	 */
+	public double getHitRatio()
+	{
+		final long requests = getNumRequests();
+		return requests == 0 ? Double.NaN : Math.max( 0, 1.0 - ( double ) getNumMisses() / requests );
+	}
+
+	/**
+	 * @return summed time spent loading cells (over all fetcher threads).
+	 */
+	public long getLoadNanoTime()
+	{
+		return loadNanoTime.sum();
+	}
+
+	/**
+	 * @return summed size of the loaded cell data.
+	 */
+	public long getLoadedBytes()
+	{
+		return loadedBytes.sum();
+	}
+
+	/**
+	 * @return how many cells are being loaded right now.
+	 */
+	public int getNumLoadsInProgress()
+	{
+		return numLoadsInProgress.get();
+	}
+
+	/**
+	 * @return how many loading jobs are waiting in the fetch queue, or -1 if
+	 *         the queue of the cache does not count them (see
+	 *         {@link CountingFetchQueues}).
+	 */
+	public int getQueueSize()
+	{
+		return queueSize.getAsInt();
+	}
+
+	void request()
+	{
+		numRequests.increment();
+	}
+
+	void miss()
+	{
+		numMisses.increment();
+	}
+
+	void setQueueSize( final IntSupplier queueSize )
+	{
+		this.queueSize = queueSize;
+	}
+
+	void loadStarted()
+	{
+		numLoadsInProgress.incrementAndGet();
+	}
+
+	void loadFinished( final long nanos, final Object data )
+	{
+		numLoadsInProgress.decrementAndGet();
+		numLoads.increment();
+		loadNanoTime.add( nanos );
+		loadedBytes.add( sizeInBytes( data ) );
+	}
+
+	private static long sizeInBytes( final Object data )
+	{
+		if ( !( data instanceof ArrayDataAccess ) )
+			return 0;
+		final Object array = ( ( ArrayDataAccess< ? > ) data ).getCurrentStorageArray();
+		if ( array == null || !array.getClass().isArray() )
+			return 0;
+		final Class< ? > c = array.getClass().getComponentType();
+		final int bytes;
+		if ( c == byte.class || c == boolean.class )
+			bytes = 1;
+		else if ( c == short.class || c == char.class )
+			bytes = 2;
+		else if ( c == int.class || c == float.class )
+			bytes = 4;
+		else
+			bytes = 8;
+		return ( long ) Array.getLength( array ) * bytes;
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imglib2.cache.queue.BlockingFetchQueues;
+
+/**
+ * {@link BlockingFetchQueues} that keeps track of how many elements are
+ * queued, for monitoring the fetch queue depth.
+ * <p>
+ * Elements that are discarded by {@link #clearToPrefetch()} because the
+ * prefetch queue is full are still counted until the next {@link #clear()}.
+ * (This only happens if more elements are queued than fit into the prefetch
+ * queue.)
+ *
+ * @param <E>
+ *            element type.
+ */
+public class CountingFetchQueues< E > extends BlockingFetchQueues< E >
+{
+	private final AtomicInteger size = new AtomicInteger();
+
+	public CountingFetchQueues( final int numPriorities )
+	{
+		super( numPriorities );
+	}
+
+	@Override
+	public void put( final E element, final int priority, final boolean enqueuToFront )
+	{
+		size.incrementAndGet();
+		super.put( element, priority, enqueuToFront );
+	}
+
+	@Override
+	public E take() throws InterruptedException
+	{
+		final E element = super.take();
+		size.decrementAndGet();
+		return element;
+	}
+
+	@Override
+	public void clear()
+	{
+		super.clear();
+		size.set( 0 );
+	}
+
+	/**
+	 * @return how many elements are queued (approximately, if elements are
+	 *         put or taken concurrently).
+	 */
+	public int size()
+	{
+		return Math.max( 0, size.get() );
+	}
+}
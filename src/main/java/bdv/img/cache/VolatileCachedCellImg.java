@@ -100,6 +100,23 @@ public class VolatileCachedCellImg< T extends NativeType< T >, A >
 		return cells.defaultCacheHints;
 	}
 
+	/**
+	 * Create an image that shares cells (and cache) with this image, but
+	 * handles cell requests with the specified {@link CacheHints}. Setting
+	 * hints on the returned image does not affect this image. This is useful
+	 * for looking at cached data from a background thread, e.g., with
+	 * {@link LoadingStrategy#DONTLOAD}, without interfering with the hints set
+	 * by the renderer.
+	 *
+	 * @param cacheHints
+	 *            default hints of the returned image.
+	 * @return a new image sharing the cells of this image.
+	 */
+	public VolatileCachedCellImg< T, A > withCacheHints( final CacheHints cacheHints )
+	{
+		return new VolatileCachedCellImg<>( getCellGrid(), createLinkedType(), cacheHints, cells.get );
+	}
+
 	@Override
 	public ImgFactory< T > factory()
 	{
@@ -30,8 +30,10 @@
 package bdv.img.cache;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import bdv.cache.CacheControl;
+import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.cache.Cache;
 import net.imglib2.cache.CacheLoader;
 import net.imglib2.cache.LoaderCache;
@@ -42,9 +44,17 @@ import net.imglib2.cache.ref.WeakRefVolatileCache;
 import net.imglib2.cache.util.KeyBimap;
 import net.imglib2.cache.volatiles.CacheHints;
 import net.imglib2.cache.volatiles.UncheckedVolatileCache;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
 import net.imglib2.img.cell.Cell;
 import net.imglib2.img.cell.CellGrid;
+import net.imglib2.iterator.LocalizingIntervalIterator;
 import net.imglib2.type.NativeType;
+import net.imglib2.util.Fraction;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.view.Views;
 
 public class VolatileGlobalCellCache implements CacheControl
 {
@@ -114,6 +124,8 @@ public class VolatileGlobalCellCache implements CacheControl
 
 	protected final LoaderCache< Key, Cell< ? > > backingCache;
 
+	private final CacheStatistics statistics = new CacheStatistics();
+
 	/**
 	 * Create a new global cache with a new fetch queue served by the specified
 	 * number of fetcher threads.
@@ -125,14 +137,15 @@ public class VolatileGlobalCellCache implements CacheControl
 	 */
 	public VolatileGlobalCellCache( final int maxNumLevels, final int numFetcherThreads )
 	{
-		queue = new BlockingFetchQueues<>( maxNumLevels );
+		this( new CountingFetchQueues<>( maxNumLevels ) );
 		new FetcherThreads( queue, numFetcherThreads );
-		backingCache = new SoftRefLoaderCache<>();
 	}
 
 	/**
 	 * Create a new global cache with the specified fetch queue. (It is the
 	 * callers responsibility to create fetcher threads that serve the queue.)
+	 * The queue size is reported in the {@link #getStatistics() statistics} if
+	 * {@code queue} is a {@link CountingFetchQueues}.
 	 *
 	 * @param queue
 	 *            queue to which asynchronous data loading jobs are submitted
@@ -141,6 +154,8 @@ public class VolatileGlobalCellCache implements CacheControl
 	{
 		this.queue = queue;
 		backingCache = new SoftRefLoaderCache<>();
+		if ( queue instanceof CountingFetchQueues )
+			statistics.setQueueSize( ( ( CountingFetchQueues< ? > ) queue )::size );
 	}
 
 	/**
@@ -165,6 +180,17 @@ public class VolatileGlobalCellCache implements CacheControl
 		backingCache.invalidateAll();
 	}
 
+	/**
+	 * Get counts of cell requests and loads, e.g., for performance
+	 * monitoring.
+	 *
+	 * @return statistics of this cache.
+	 */
+	public CacheStatistics getStatistics()
+	{
+		return statistics;
+	}
+
 	/**
 	 * <em>For internal use.</em>
 	 * <p>
@@ -207,14 +233,7 @@ public class VolatileGlobalCellCache implements CacheControl
 			@Override
 			public Cell< A > get( final Long key ) throws Exception
 			{
-				final int n = grid.numDimensions();
-				final long[] cellMin = new long[ n ];
-				final int[] cellDims = new int[ n ];
-				grid.getCellDimensions( key, cellMin, cellDims );
-				return new Cell<>(
-						cellDims,
-						cellMin,
-						cacheArrayLoader.loadArray( timepoint, setup, level, cellDims, cellMin ) );
+				return loadCell( grid, timepoint, setup, level, key, cacheArrayLoader );
 			}
 		};
 
@@ -237,8 +256,195 @@ public class VolatileGlobalCellCache implements CacheControl
 
 		@SuppressWarnings( "unchecked" )
 		final VolatileCachedCellImg< T, A > img = new VolatileCachedCellImg<>( grid, type, cacheHints,
-				( i, h ) -> ( Cell< A > ) vcache.get( i, h ) );
+				( i, h ) -> {
+					statistics.request();
+					final Cell< A > cell = ( Cell< A > ) vcache.get( i, h );
+					final A data = cell.getData();
+					if ( data instanceof VolatileAccess && !( ( VolatileAccess ) data ).isValid() )
+						statistics.miss();
+					return cell;
+				} );
 
 		return img;
 	}
+
+	/**
+	 * Read a block of the image with cell {@code grid} at {@code timepoint},
+	 * {@code setup}, {@code level}, for example to probe a few voxels. The
+	 * block need not be aligned to cells.
+	 * <p>
+	 * Cells that are in the cache are used directly, without enqueueing
+	 * anything. The parts of the block in other cells are read with
+	 * {@link CacheArrayLoader#loadRange(int, int, int, int[], long[])
+	 * loadRange()}, without loading complete cells. If the
+	 * {@code cacheArrayLoader} does not support ranged reads, the missing
+	 * cells are loaded into the cache instead.
+	 *
+	 * @param grid
+	 *            cell grid of the image, as used for
+	 *            {@link #createImg(CellGrid, int, int, int, CacheHints, CacheArrayLoader, NativeType)
+	 *            createImg()}.
+	 * @param min
+	 *            min coordinate of the block. The block must lie within the
+	 *            image.
+	 * @param dimensions
+	 *            size of the block.
+	 * @return a new image containing the block, with the same coordinates as
+	 *         in the full image.
+	 */
+	public < T extends NativeType< T >, A > RandomAccessibleInterval< T > readRange(
+			final CellGrid grid,
+			final int timepoint,
+			final int setup,
+			final int level,
+			final CacheArrayLoader< A > cacheArrayLoader,
+			final T type,
+			final long[] min,
+			final int[] dimensions ) throws InterruptedException
+	{
+		final Fraction entitiesPerPixel = type.getEntitiesPerPixel();
+		if ( entitiesPerPixel.getNumerator() % entitiesPerPixel.getDenominator() != 0 )
+			throw new IllegalArgumentException( "ranged reads require a whole number of entities per pixel" );
+		final int entities = ( int ) ( entitiesPerPixel.getNumerator() / entitiesPerPixel.getDenominator() );
+
+		final int n = grid.numDimensions();
+		final long[] dimsLong = new long[ n ];
+		final long[] gridMin = new long[ n ];
+		final long[] gridMax = new long[ n ];
+		for ( int d = 0; d < n; ++d )
+		{
+			dimsLong[ d ] = dimensions[ d ];
+			gridMin[ d ] = min[ d ] / grid.cellDimension( d );
+			gridMax[ d ] = ( min[ d ] + dimensions[ d ] - 1 ) / grid.cellDimension( d );
+		}
+		final ArrayImg< T, ? > img = new ArrayImgFactory< T >().create( dimsLong, type );
+		final Object target = ( ( ArrayDataAccess< ? > ) img.update( null ) ).getCurrentStorageArray();
+
+		final long[] gridDims = grid.getGridDimensions();
+		final long[] gridPos = new long[ n ];
+		final long[] cellMin = new long[ n ];
+		final int[] cellDims = new int[ n ];
+		final long[] partMin = new long[ n ];
+		final int[] partDims = new int[ n ];
+		final LocalizingIntervalIterator cells = new LocalizingIntervalIterator( gridMin, gridMax );
+		while ( cells.hasNext() )
+		{
+			cells.fwd();
+			cells.localize( gridPos );
+			final long index = IntervalIndexer.positionToIndex( gridPos, gridDims );
+			grid.getCellDimensions( index, cellMin, cellDims );
+			for ( int d = 0; d < n; ++d )
+			{
+				partMin[ d ] = Math.max( min[ d ], cellMin[ d ] );
+				partDims[ d ] = ( int ) ( Math.min( min[ d ] + dimensions[ d ], cellMin[ d ] + cellDims[ d ] ) - partMin[ d ] );
+			}
+
+			statistics.request();
+			final Key key = new Key( timepoint, setup, level, index );
+			final Cell< ? > cell = backingCache.getIfPresent( key );
+			if ( cell != null )
+			{
+				copyBlock( cell.getData(), cellMin, cellDims, target, min, dimensions, partMin, partDims, entities );
+				continue;
+			}
+
+			statistics.miss();
+			statistics.loadStarted();
+			final long t0 = System.nanoTime();
+			A data = null;
+			try
+			{
+				data = cacheArrayLoader.loadRange( timepoint, setup, level, partDims, partMin );
+			}
+			finally
+			{
+				statistics.loadFinished( System.nanoTime() - t0, data );
+			}
+			if ( data != null )
+				copyBlock( data, partMin, partDims, target, min, dimensions, partMin, partDims, entities );
+			else
+			{
+				final Cell< ? > loaded;
+				try
+				{
+					loaded = backingCache.get( key, k -> loadCell( grid, timepoint, setup, level, index, cacheArrayLoader ) );
+				}
+				catch ( final ExecutionException e )
+				{
+					if ( e.getCause() instanceof InterruptedException )
+						throw ( InterruptedException ) e.getCause();
+					throw new RuntimeException( e.getCause() );
+				}
+				copyBlock( loaded.getData(), cellMin, cellDims, target, min, dimensions, partMin, partDims, entities );
+			}
+		}
+
+		return Views.translate( img, min );
+	}
+
+	private < A > Cell< A > loadCell( final CellGrid grid, final int timepoint, final int setup, final int level, final long index, final CacheArrayLoader< A > cacheArrayLoader ) throws InterruptedException
+	{
+		final int n = grid.numDimensions();
+		final long[] cellMin = new long[ n ];
+		final int[] cellDims = new int[ n ];
+		grid.getCellDimensions( index, cellMin, cellDims );
+		statistics.loadStarted();
+		final long t0 = System.nanoTime();
+		A data = null;
+		try
+		{
+			data = cacheArrayLoader.loadArray( timepoint, setup, level, cellDims, cellMin );
+		}
+		finally
+		{
+			statistics.loadFinished( System.nanoTime() - t0, data );
+		}
+		return new Cell<>( cellDims, cellMin, data );
+	}
+
+	/**
+	 * Copy the part at {@code partMin} of size {@code partDims} from the
+	 * storage array of {@code source} (a block at {@code sourceMin} of size
+	 * {@code sourceDims}) to the {@code target} array (a block at
+	 * {@code targetMin} of size {@code targetDims}).
+	 */
+	private static void copyBlock(
+			final Object source,
+			final long[] sourceMin,
+			final int[] sourceDims,
+			final Object target,
+			final long[] targetMin,
+			final int[] targetDims,
+			final long[] partMin,
+			final int[] partDims,
+			final int entitiesPerPixel )
+	{
+		final Object sourceArray = ( ( ArrayDataAccess< ? > ) source ).getCurrentStorageArray();
+		final int n = partDims.length;
+		final int rowLength = partDims[ 0 ] * entitiesPerPixel;
+		final int[] pos = new int[ n ];
+		while ( true )
+		{
+			int sourceIndex = 0;
+			int targetIndex = 0;
+			for ( int d = n - 1; d >= 0; --d )
+			{
+				final long p = partMin[ d ] + pos[ d ];
+				sourceIndex = sourceIndex * sourceDims[ d ] + ( int ) ( p - sourceMin[ d ] );
+				targetIndex = targetIndex * targetDims[ d ] + ( int ) ( p - targetMin[ d ] );
+			}
+			System.arraycopy( sourceArray, sourceIndex * entitiesPerPixel, target, targetIndex * entitiesPerPixel, rowLength );
+
+			// next row
+			int d = 1;
+			for ( ; d < n; ++d )
+			{
+				if ( ++pos[ d ] < partDims[ d ] )
+					break;
+				pos[ d ] = 0;
+			}
+			if ( d >= n )
+				return;
+		}
+	}
 }
@@ -0,0 +1,259 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.hdf5;
+
+import bdv.img.cache.CacheArrayLoader;
+import ch.systemsx.cisd.hdf5.IHDF5Reader;
+import ch.systemsx.cisd.hdf5.IHDF5Writer;
+import net.imglib2.Volatile;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileFloatArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.type.volatiles.VolatileFloatType;
+import net.imglib2.type.volatiles.VolatileUnsignedByteType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+
+/**
+ * The pixel types that can be stored in (and loaded from) a BDV hdf5 file.
+ *
+ * <p>
+ * The type of a setup is stored as a string attribute {@code "dataType"} on the
+ * setup group (e.g. {@code "s00"}). Files without this attribute were written
+ * before other types were supported and contain {@link #UnsignedShort} data.
+ */
+public class DataTypes
+{
+	public static abstract class DataType<
+			T extends RealType< T > & NativeType< T >,
+			V extends Volatile< T > & RealType< V > & NativeType< V >,
+			A extends VolatileAccess >
+	{
+		private final String name;
+
+		private final T type;
+
+		private final V volatileType;
+
+		private DataType( final String name, final T type, final V volatileType )
+		{
+			this.name = name;
+			this.type = type;
+			this.volatileType = volatileType;
+		}
+
+		/**
+		 * @return the name of this type, as stored in the hdf5 file.
+		 */
+		public String getName()
+		{
+			return name;
+		}
+
+		public T getType()
+		{
+			return type;
+		}
+
+		public V getVolatileType()
+		{
+			return volatileType;
+		}
+
+		abstract CacheArrayLoader< A > createArrayLoader( final IHDF5Access hdf5Access );
+
+		/**
+		 * Create a valid access with {@code numEntities} zero elements.
+		 */
+		abstract A createZeroArray( final int numEntities );
+
+		/**
+		 * Read a block into {@code dataBlock}, which must be a primitive array
+		 * of the appropriate type ({@code byte[]}, {@code short[]}, or
+		 * {@code float[]}) and size.
+		 */
+		abstract void readBlock( final IHDF5Access hdf5Access, final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final Object dataBlock ) throws InterruptedException;
+
+		/**
+		 * Read a block and convert it to {@code float} values (interpreting
+		 * integers as unsigned) into {@code dataBlock}.
+		 */
+		abstract void readBlockAsFloat( final IHDF5Access hdf5Access, final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final float[] dataBlock ) throws InterruptedException;
+	}
+
+	public static final DataType< UnsignedByteType, VolatileUnsignedByteType, VolatileByteArray > UnsignedByte =
+			new DataType< UnsignedByteType, VolatileUnsignedByteType, VolatileByteArray >( "uint8", new UnsignedByteType(), new VolatileUnsignedByteType() )
+	{
+		@Override
+		CacheArrayLoader< VolatileByteArray > createArrayLoader( final IHDF5Access hdf5Access )
+		{
+			return new Hdf5VolatileByteArrayLoader( hdf5Access );
+		}
+
+		@Override
+		VolatileByteArray createZeroArray( final int numEntities )
+		{
+			return new VolatileByteArray( numEntities, true );
+		}
+
+		@Override
+		void readBlock( final IHDF5Access hdf5Access, final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final Object dataBlock ) throws InterruptedException
+		{
+			hdf5Access.readByteMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min, ( byte[] ) dataBlock );
+		}
+
+		@Override
+		void readBlockAsFloat( final IHDF5Access hdf5Access, final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final float[] dataBlock ) throws InterruptedException
+		{
+			final byte[] bytes = hdf5Access.readByteMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min );
+			for ( int i = 0; i < bytes.length; ++i )
+				dataBlock[ i ] = bytes[ i ] & 0xff;
+		}
+	};
+
+	public static final DataType< UnsignedShortType, VolatileUnsignedShortType, VolatileShortArray > UnsignedShort =
+			new DataType< UnsignedShortType, VolatileUnsignedShortType, VolatileShortArray >( "uint16", new UnsignedShortType(), new VolatileUnsignedShortType() )
+	{
+		@Override
+		CacheArrayLoader< VolatileShortArray > createArrayLoader( final IHDF5Access hdf5Access )
+		{
+			return new Hdf5VolatileShortArrayLoader( hdf5Access );
+		}
+
+		@Override
+		VolatileShortArray createZeroArray( final int numEntities )
+		{
+			return new VolatileShortArray( numEntities, true );
+		}
+
+		@Override
+		void readBlock( final IHDF5Access hdf5Access, final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final Object dataBlock ) throws InterruptedException
+		{
+			hdf5Access.readShortMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min, ( short[] ) dataBlock );
+		}
+
+		@Override
+		void readBlockAsFloat( final IHDF5Access hdf5Access, final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final float[] dataBlock ) throws InterruptedException
+		{
+			hdf5Access.readShortMDArrayBlockWithOffsetAsFloat( timepoint, setup, level, dimensions, min, dataBlock );
+		}
+	};
+
+	public static final DataType< FloatType, VolatileFloatType, VolatileFloatArray > Float =
+			new DataType< FloatType, VolatileFloatType, VolatileFloatArray >( "float32", new FloatType(), new VolatileFloatType() )
+	{
+		@Override
+		CacheArrayLoader< VolatileFloatArray > createArrayLoader( final IHDF5Access hdf5Access )
+		{
+			return new Hdf5VolatileFloatArrayLoader( hdf5Access );
+		}
+
+		@Override
+		VolatileFloatArray createZeroArray( final int numEntities )
+		{
+			return new VolatileFloatArray( numEntities, true );
+		}
+
+		@Override
+		void readBlock( final IHDF5Access hdf5Access, final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final Object dataBlock ) throws InterruptedException
+		{
+			hdf5Access.readFloatMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min, ( float[] ) dataBlock );
+		}
+
+		@Override
+		void readBlockAsFloat( final IHDF5Access hdf5Access, final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final float[] dataBlock ) throws InterruptedException
+		{
+			hdf5Access.readFloatMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min, dataBlock );
+		}
+	};
+
+	private static final DataType< ?, ?, ? >[] dataTypes = new DataType< ?, ?, ? >[] { UnsignedByte, UnsignedShort, Float };
+
+	private static final String dataTypeAttributeName = "dataType";
+
+	/**
+	 * Get the {@link DataType} with the given name.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if there is no such {@link DataType}.
+	 */
+	public static DataType< ?, ?, ? > forName( final String name )
+	{
+		for ( final DataType< ?, ?, ? > dataType : dataTypes )
+			if ( dataType.getName().equals( name ) )
+				return dataType;
+		throw new IllegalArgumentException( "unsupported hdf5 data type \"" + name + "\"" );
+	}
+
+	/**
+	 * Get the {@link DataType} for storing pixels of the given type.
+	 *
+	 * @return the matching {@link DataType}, or {@code null} if pixels of the
+	 *         given type cannot be stored.
+	 */
+	public static DataType< ?, ?, ? > forType( final Object type )
+	{
+		if ( type instanceof UnsignedByteType )
+			return UnsignedByte;
+		else if ( type instanceof UnsignedShortType )
+			return UnsignedShort;
+		else if ( type instanceof FloatType )
+			return Float;
+		else
+			return null;
+	}
+
+	/**
+	 * Read the {@link DataType} of the given setup. If the type is not
+	 * specified in the file, {@link #UnsignedShort} is assumed.
+	 */
+	public static DataType< ?, ?, ? > readDataType( final IHDF5Reader hdf5Reader, final int setupId )
+	{
+		final String path = Util.getSetupPath( setupId );
+		if ( hdf5Reader.object().hasAttribute( path, dataTypeAttributeName ) )
+			return forName( hdf5Reader.string().getAttr( path, dataTypeAttributeName ) );
+		else
+			return UnsignedShort;
+	}
+
+	/**
+	 * Write the {@link DataType} of the given setup. The setup group must
+	 * already exist (i.e., the mipmap description must have been written).
+	 */
+	public static void writeDataType( final IHDF5Writer hdf5Writer, final int setupId, final DataType< ?, ?, ? > dataType )
+	{
+		hdf5Writer.string().setAttr( Util.getSetupPath( setupId ), dataTypeAttributeName, dataType.getName() );
+	}
+}
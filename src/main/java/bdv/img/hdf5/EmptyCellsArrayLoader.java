@@ -0,0 +1,221 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.hdf5;
+
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.EmptyArrayCreator;
+
+/**
+ * Wraps the {@link CacheArrayLoader} of a setup. Cells that were recorded as
+ * empty (all zero) when the image was exported are answered with a new
+ * array of zeros, without reading from the hdf5 file. (Arrays are not shared
+ * between cells, because cached images may be written to.)
+ *
+ * <p>
+ * The empty cells of each image are stored as a bitmap (see
+ * {@link Util#getEmptyCellsPath(ViewLevelId)}), indexed by the cell position
+ * in the cell grid, flattened with x varying fastest. Images without bitmap
+ * are always read from the hdf5 file. Requested blocks made of several cells
+ * are empty if all their cells are empty.
+ *
+ * @param <A>
+ *            access type
+ */
+class EmptyCellsArrayLoader< A > implements CacheArrayLoader< A >
+{
+	private final CacheArrayLoader< A > loader;
+
+	private final IHDF5Access hdf5Access;
+
+	private final MipmapInfo mipmapInfo;
+
+	private final Function< ViewLevelId, DimsAndExistence > dimsAndExistence;
+
+	private final IntFunction< A > createZeroArray;
+
+	private final ConcurrentHashMap< ViewLevelId, EmptyCells > emptyCells = new ConcurrentHashMap<>();
+
+	/**
+	 * @param loader
+	 *            loads cells that are not empty.
+	 * @param hdf5Access
+	 *            used to read empty cell bitmaps.
+	 * @param mipmapInfo
+	 *            mipmap levels of the setup, for the cell size of each level.
+	 * @param dimsAndExistence
+	 *            provides the dimensions of each image.
+	 * @param createZeroArray
+	 *            creates valid arrays of zeros of the given size.
+	 */
+	public EmptyCellsArrayLoader(
+			final CacheArrayLoader< A > loader,
+			final IHDF5Access hdf5Access,
+			final MipmapInfo mipmapInfo,
+			final Function< ViewLevelId, DimsAndExistence > dimsAndExistence,
+			final IntFunction< A > createZeroArray )
+	{
+		this.loader = loader;
+		this.hdf5Access = hdf5Access;
+		this.mipmapInfo = mipmapInfo;
+		this.dimsAndExistence = dimsAndExistence;
+		this.createZeroArray = createZeroArray;
+	}
+
+	@Override
+	public int getBytesPerElement()
+	{
+		return loader.getBytesPerElement();
+	}
+
+	@Override
+	public EmptyArrayCreator< A > getEmptyArrayCreator()
+	{
+		return loader.getEmptyArrayCreator();
+	}
+
+	@Override
+	public A loadArray( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	{
+		final EmptyCells empty = getEmptyCells( new ViewLevelId( timepoint, setup, level ) );
+		if ( empty.isEmpty( min, dimensions ) )
+		{
+			int numEntities = 1;
+			for ( final int d : dimensions )
+				numEntities *= d;
+			return createZeroArray.apply( numEntities );
+		}
+		return loader.loadArray( timepoint, setup, level, dimensions, min );
+	}
+
+	/**
+	 * Ranged reads are passed through. (Reading unwritten empty cells from
+	 * hdf5 yields zeros.)
+	 */
+	@Override
+	public A loadRange( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	{
+		return loader.loadRange( timepoint, setup, level, dimensions, min );
+	}
+
+	/**
+	 * Get the empty cells of an image, reading the bitmap if necessary. The
+	 * bitmap is read outside of the map, so that hdf5 access does not block
+	 * other images. (Concurrent first reads of the same bitmap are harmless,
+	 * only one result is kept.)
+	 */
+	private EmptyCells getEmptyCells( final ViewLevelId id )
+	{
+		final EmptyCells empty = emptyCells.get( id );
+		if ( empty != null )
+			return empty;
+		final EmptyCells read = readEmptyCells( id );
+		final EmptyCells previous = emptyCells.putIfAbsent( id, read );
+		return previous != null ? previous : read;
+	}
+
+	private EmptyCells readEmptyCells( final ViewLevelId id )
+	{
+		final long[] bitmap = hdf5Access.readEmptyCells( id );
+		if ( bitmap == null )
+			return EmptyCells.NONE;
+		final long[] dimensions = dimsAndExistence.apply( id ).getDimensions();
+		final int[] cellDimensions = mipmapInfo.getSubdivisions()[ id.getLevel() ];
+		return new EmptyCells( BitSet.valueOf( bitmap ), dimensions, cellDimensions );
+	}
+
+	static class EmptyCells
+	{
+		static final EmptyCells NONE = new EmptyCells( new BitSet(), new long[] { 1, 1, 1 }, new int[] { 1, 1, 1 } );
+
+		private final BitSet bitmap;
+
+		private final long[] numCells;
+
+		private final int[] cellDimensions;
+
+		EmptyCells( final BitSet bitmap, final long[] dimensions, final int[] cellDimensions )
+		{
+			this.bitmap = bitmap;
+			this.cellDimensions = cellDimensions;
+			numCells = new long[ dimensions.length ];
+			for ( int d = 0; d < dimensions.length; ++d )
+				numCells[ d ] = ( dimensions[ d ] - 1 ) / cellDimensions[ d ] + 1;
+		}
+
+		/**
+		 * Whether all chunks overlapping a block are empty. (Cache cells
+		 * may consist of several chunks, see
+		 * {@link bdv.util.Prefs#hdf5CacheCellSizes()}.)
+		 *
+		 * @param min
+		 *            min coordinate of the block.
+		 * @param dimensions
+		 *            size of the block.
+		 */
+		boolean isEmpty( final long[] min, final int[] dimensions )
+		{
+			if ( bitmap.isEmpty() )
+				return false;
+			final int n = min.length;
+			final long[] chunkMin = new long[ n ];
+			final long[] chunkMax = new long[ n ];
+			for ( int d = 0; d < n; ++d )
+			{
+				chunkMin[ d ] = min[ d ] / cellDimensions[ d ];
+				chunkMax[ d ] = ( min[ d ] + dimensions[ d ] - 1 ) / cellDimensions[ d ];
+			}
+			final long[] chunk = chunkMin.clone();
+			while ( true )
+			{
+				long index = 0;
+				for ( int d = n - 1; d >= 0; --d )
+					index = index * numCells[ d ] + chunk[ d ];
+				if ( index >= Integer.MAX_VALUE || !bitmap.get( ( int ) index ) )
+					return false;
+
+				// next chunk
+				int d = 0;
+				for ( ; d < n; ++d )
+				{
+					if ( ++chunk[ d ] <= chunkMax[ d ] )
+						break;
+					chunk[ d ] = chunkMin[ d ];
+				}
+				if ( d >= n )
+					return true;
+			}
+		}
+	}
+}
@@ -30,6 +30,7 @@
 package bdv.img.hdf5;
 
 import static bdv.img.hdf5.Util.reorder;
+import ch.systemsx.cisd.base.mdarray.MDByteArray;
 import ch.systemsx.cisd.base.mdarray.MDFloatArray;
 import ch.systemsx.cisd.base.mdarray.MDShortArray;
 import ch.systemsx.cisd.hdf5.HDF5DataSetInformation;
@@ -67,6 +68,42 @@ class HDF5Access implements IHDF5Access
 			return new DimsAndExistence( new long[] { 1, 1, 1 }, false );
 	}
 
+	@Override
+	public synchronized DimsAndExistence[] getDimsAndExistence( final int timepoint, final int setup, final int numLevels )
+	{
+		final DimsAndExistence[] dims = new DimsAndExistence[ numLevels ];
+		for ( int level = 0; level < numLevels; ++level )
+			dims[ level ] = getDimsAndExistence( new ViewLevelId( timepoint, setup, level ) );
+		return dims;
+	}
+
+	@Override
+	public synchronized long[] readEmptyCells( final ViewLevelId id )
+	{
+		final String path = Util.getEmptyCellsPath( id );
+		return hdf5Reader.exists( path )
+				? hdf5Reader.int64().readArray( path )
+				: null;
+	}
+
+	@Override
+	public synchronized byte[] readByteMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	{
+		if ( Thread.interrupted() )
+			throw new InterruptedException();
+		Util.reorder( dimensions, reorderedDimensions );
+		Util.reorder( min, reorderedMin );
+		final MDByteArray array = hdf5Reader.uint8().readMDArrayBlockWithOffset( Util.getCellsPath( timepoint, setup, level ), reorderedDimensions, reorderedMin );
+		return array.getAsFlatArray();
+	}
+
+	@Override
+	public byte[] readByteMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final byte[] dataBlock ) throws InterruptedException
+	{
+		System.arraycopy( readByteMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min ), 0, dataBlock, 0, dataBlock.length );
+		return dataBlock;
+	}
+
 	@Override
 	public synchronized short[] readShortMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
 	{
@@ -86,7 +123,7 @@ class HDF5Access implements IHDF5Access
 	}
 
 	@Override
-	public float[] readShortMDArrayBlockWithOffsetAsFloat( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	public synchronized float[] readShortMDArrayBlockWithOffsetAsFloat( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
 	{
 		if ( Thread.interrupted() )
 			throw new InterruptedException();
@@ -105,6 +142,24 @@ class HDF5Access implements IHDF5Access
 		return dataBlock;
 	}
 
+	@Override
+	public synchronized float[] readFloatMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	{
+		if ( Thread.interrupted() )
+			throw new InterruptedException();
+		Util.reorder( dimensions, reorderedDimensions );
+		Util.reorder( min, reorderedMin );
+		final MDFloatArray array = hdf5Reader.float32().readMDArrayBlockWithOffset( Util.getCellsPath( timepoint, setup, level ), reorderedDimensions, reorderedMin );
+		return array.getAsFlatArray();
+	}
+
+	@Override
+	public float[] readFloatMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final float[] dataBlock ) throws InterruptedException
+	{
+		System.arraycopy( readFloatMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min ), 0, dataBlock, 0, dataBlock.length );
+		return dataBlock;
+	}
+
 	@Override
 	public void closeAllDataSets()
 	{}
@@ -113,7 +168,8 @@ class HDF5Access implements IHDF5Access
 	public void close()
 	{
 		closeAllDataSets();
-		hdf5Reader.close();
+		// the reader may be shared through the pool, see Hdf5HandlePool#acquireReader
+		Hdf5HandlePool.getInstance().releaseReader( hdf5Reader );
 	}
 
 	protected static final void unsignedShort( final float[] pixels )
@@ -30,23 +30,21 @@
 package bdv.img.hdf5;
 
 import static bdv.img.hdf5.Util.reorder;
-import static ch.systemsx.cisd.hdf5.hdf5lib.H5D.H5Dclose;
-import static ch.systemsx.cisd.hdf5.hdf5lib.H5D.H5Dget_space;
-import static ch.systemsx.cisd.hdf5.hdf5lib.H5D.H5Dopen;
 import static ch.systemsx.cisd.hdf5.hdf5lib.H5D.H5Dread;
 import static ch.systemsx.cisd.hdf5.hdf5lib.H5S.H5Sclose;
 import static ch.systemsx.cisd.hdf5.hdf5lib.H5S.H5Screate_simple;
 import static ch.systemsx.cisd.hdf5.hdf5lib.H5S.H5Sget_simple_extent_dims;
 import static ch.systemsx.cisd.hdf5.hdf5lib.H5S.H5Sselect_hyperslab;
-import static ch.systemsx.cisd.hdf5.hdf5lib.HDF5Constants.H5P_DEFAULT;
 import static ch.systemsx.cisd.hdf5.hdf5lib.HDF5Constants.H5S_MAX_RANK;
 import static ch.systemsx.cisd.hdf5.hdf5lib.HDF5Constants.H5S_SELECT_SET;
 import static ch.systemsx.cisd.hdf5.hdf5lib.HDF5Constants.H5T_NATIVE_FLOAT;
 import static ch.systemsx.cisd.hdf5.hdf5lib.HDF5Constants.H5T_NATIVE_INT16;
+import static ch.systemsx.cisd.hdf5.hdf5lib.HDF5Constants.H5T_NATIVE_UINT8;
 
 import java.lang.reflect.Field;
-import java.util.LinkedHashMap;
-import java.util.Map.Entry;
+import java.lang.reflect.Method;
+
+import bdv.img.hdf5.Hdf5HandlePool.OpenDataSet;
 
 import ch.systemsx.cisd.hdf5.IHDF5Reader;
 
@@ -58,6 +56,8 @@ import ch.systemsx.cisd.hdf5.IHDF5Reader;
  * The HDF5 fileId is extracted from a jhdf5 HDF5Reader using reflection to
  * avoid having to do everything ourselves.
  *
+ * Open datasets are kept in the process-wide {@link Hdf5HandlePool}.
+ *
  * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
  */
 class HDF5AccessHack implements IHDF5Access
@@ -72,62 +72,29 @@ class HDF5AccessHack implements IHDF5Access
 
 	private final long[] reorderedMin = new long[ 3 ];
 
-	private static final int MAX_OPEN_DATASETS = 48;
-
-	private class OpenDataSet
-	{
-		final int dataSetId;
-
-		final int fileSpaceId;
-
-		public OpenDataSet( final String cellsPath )
-		{
-			dataSetId = H5Dopen( fileId, cellsPath, H5P_DEFAULT );
-			fileSpaceId = H5Dget_space( dataSetId );
-		}
+	/**
+	 * Open datasets are shared with all other readers through the
+	 * process-wide pool.
+	 */
+	private final Hdf5HandlePool handlePool;
 
-		public void close()
-		{
-			H5Sclose( fileSpaceId );
-			H5Dclose( dataSetId );
-		}
-	}
+	/**
+	 * {@code H5Dget_offset}, if the jhdf5 version provides it, or null.
+	 */
+	private static final Method H5Dget_offset = findH5Dget_offset();
 
-	private class OpenDataSetCache extends LinkedHashMap< ViewLevelId, OpenDataSet >
+	private static Method findH5Dget_offset()
 	{
-		private static final long serialVersionUID = 1L;
-
-		public OpenDataSetCache()
-		{
-			super( MAX_OPEN_DATASETS, 0.75f, true );
-		}
-
-		@Override
-		protected boolean removeEldestEntry( final Entry< ViewLevelId, OpenDataSet > eldest )
+		try
 		{
-			if ( size() > MAX_OPEN_DATASETS )
-			{
-				eldest.getValue().close();
-				return true;
-			}
-			else
-				return false;
+			return Class.forName( "ch.systemsx.cisd.hdf5.hdf5lib.H5D" ).getMethod( "H5Dget_offset", int.class );
 		}
-
-		public OpenDataSet getDataSet( final ViewLevelId id )
+		catch ( final Exception e )
 		{
-			OpenDataSet openDataSet = super.get( id );
-			if ( openDataSet == null )
-			{
-				openDataSet = new OpenDataSet( Util.getCellsPath( id ) );
-				put( id, openDataSet );
-			}
-			return openDataSet;
+			return null;
 		}
 	}
 
-	private final OpenDataSetCache openDataSetCache;
-
 	public HDF5AccessHack( final IHDF5Reader hdf5Reader ) throws ClassNotFoundException, SecurityException, NoSuchFieldException, IllegalArgumentException, IllegalAccessException
 	{
 		this.hdf5Reader = hdf5Reader;
@@ -151,7 +118,7 @@ class HDF5AccessHack implements IHDF5Access
 		f4.setAccessible( true );
 		numericConversionXferPropertyListID = ( ( Integer ) f4.get( h5 ) ).intValue();
 
-		openDataSetCache = new OpenDataSetCache();
+		handlePool = Hdf5HandlePool.getInstance();
 	}
 
 	@Override
@@ -161,12 +128,19 @@ class HDF5AccessHack implements IHDF5Access
 		boolean exists = false;
 		try
 		{
-			final OpenDataSet dataset = openDataSetCache.getDataSet( id );
-			final long[] dimensions = new long[ H5S_MAX_RANK ];
-			final long[] maxDimensions = new long[ H5S_MAX_RANK ];
-			final int rank = H5Sget_simple_extent_dims( dataset.fileSpaceId, dimensions, maxDimensions );
-			System.arraycopy( dimensions, 0, realDimensions, 0, rank );
-			exists = true;
+			final OpenDataSet dataset = handlePool.acquireDataSet( this, fileId, id );
+			try
+			{
+				final long[] dimensions = new long[ H5S_MAX_RANK ];
+				final long[] maxDimensions = new long[ H5S_MAX_RANK ];
+				final int rank = H5Sget_simple_extent_dims( dataset.fileSpaceId, dimensions, maxDimensions );
+				System.arraycopy( dimensions, 0, realDimensions, 0, rank );
+				exists = true;
+			}
+			finally
+			{
+				handlePool.releaseDataSet( dataset );
+			}
 		}
 		catch ( final Exception e )
 		{}
@@ -176,6 +150,89 @@ class HDF5AccessHack implements IHDF5Access
 			return new DimsAndExistence( new long[] { 1, 1, 1 }, false );
 	}
 
+	@Override
+	public synchronized DimsAndExistence[] getDimsAndExistence( final int timepoint, final int setup, final int numLevels )
+	{
+		final DimsAndExistence[] dims = new DimsAndExistence[ numLevels ];
+		for ( int level = 0; level < numLevels; ++level )
+			dims[ level ] = getDimsAndExistence( new ViewLevelId( timepoint, setup, level ) );
+		return dims;
+	}
+
+	/**
+	 * Get the file offset of the raw data of a dataset with contiguous
+	 * layout.
+	 *
+	 * @return the offset in bytes, or -1 if the dataset is not contiguous, its
+	 *         storage is not allocated, or the offset cannot be determined.
+	 */
+	public synchronized long getContiguousDataOffset( final ViewLevelId id )
+	{
+		if ( H5Dget_offset == null )
+			return -1;
+		try
+		{
+			final OpenDataSet dataset = handlePool.acquireDataSet( this, fileId, id );
+			try
+			{
+				final long offset = ( ( Number ) H5Dget_offset.invoke( null, dataset.dataSetId ) ).longValue();
+				return offset < 0 ? -1 : offset;
+			}
+			finally
+			{
+				handlePool.releaseDataSet( dataset );
+			}
+		}
+		catch ( final Exception e )
+		{
+			return -1;
+		}
+	}
+
+	@Override
+	public synchronized long[] readEmptyCells( final ViewLevelId id )
+	{
+		final String path = Util.getEmptyCellsPath( id );
+		return hdf5Reader.exists( path )
+				? hdf5Reader.int64().readArray( path )
+				: null;
+	}
+
+	@Override
+	public synchronized byte[] readByteMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	{
+		final byte[] dataBlock = new byte[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
+		readByteMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min, dataBlock );
+		return dataBlock;
+	}
+
+	@Override
+	public synchronized byte[] readByteMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final byte[] dataBlock ) throws InterruptedException
+	{
+		if ( Thread.interrupted() )
+			throw new InterruptedException();
+		Util.reorder( dimensions, reorderedDimensions );
+		Util.reorder( min, reorderedMin );
+
+		final OpenDataSet dataset = handlePool.acquireDataSet( this, fileId, new ViewLevelId( timepoint, setup, level ) );
+		try
+		{
+			synchronized ( dataset )
+			{
+				final int memorySpaceId = H5Screate_simple( reorderedDimensions.length, reorderedDimensions, null );
+				H5Sselect_hyperslab( dataset.fileSpaceId, H5S_SELECT_SET, reorderedMin, null, reorderedDimensions, null );
+				H5Dread( dataset.dataSetId, H5T_NATIVE_UINT8, memorySpaceId, dataset.fileSpaceId, numericConversionXferPropertyListID, dataBlock );
+				H5Sclose( memorySpaceId );
+			}
+		}
+		finally
+		{
+			handlePool.releaseDataSet( dataset );
+		}
+
+		return dataBlock;
+	}
+
 	@Override
 	public synchronized short[] readShortMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
 	{
@@ -192,11 +249,21 @@ class HDF5AccessHack implements IHDF5Access
 		Util.reorder( dimensions, reorderedDimensions );
 		Util.reorder( min, reorderedMin );
 
-		final OpenDataSet dataset = openDataSetCache.getDataSet( new ViewLevelId( timepoint, setup, level ) );
-		final int memorySpaceId = H5Screate_simple( reorderedDimensions.length, reorderedDimensions, null );
-		H5Sselect_hyperslab( dataset.fileSpaceId, H5S_SELECT_SET, reorderedMin, null, reorderedDimensions, null );
-		H5Dread( dataset.dataSetId, H5T_NATIVE_INT16, memorySpaceId, dataset.fileSpaceId, numericConversionXferPropertyListID, dataBlock );
-		H5Sclose( memorySpaceId );
+		final OpenDataSet dataset = handlePool.acquireDataSet( this, fileId, new ViewLevelId( timepoint, setup, level ) );
+		try
+		{
+			synchronized ( dataset )
+			{
+				final int memorySpaceId = H5Screate_simple( reorderedDimensions.length, reorderedDimensions, null );
+				H5Sselect_hyperslab( dataset.fileSpaceId, H5S_SELECT_SET, reorderedMin, null, reorderedDimensions, null );
+				H5Dread( dataset.dataSetId, H5T_NATIVE_INT16, memorySpaceId, dataset.fileSpaceId, numericConversionXferPropertyListID, dataBlock );
+				H5Sclose( memorySpaceId );
+			}
+		}
+		finally
+		{
+			handlePool.releaseDataSet( dataset );
+		}
 
 		return dataBlock;
 	}
@@ -210,35 +277,79 @@ class HDF5AccessHack implements IHDF5Access
 	}
 
 	@Override
-	public float[] readShortMDArrayBlockWithOffsetAsFloat( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final float[] dataBlock ) throws InterruptedException
+	public synchronized float[] readShortMDArrayBlockWithOffsetAsFloat( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final float[] dataBlock ) throws InterruptedException
 	{
 		if ( Thread.interrupted() )
 			throw new InterruptedException();
 		Util.reorder( dimensions, reorderedDimensions );
 		Util.reorder( min, reorderedMin );
 
-		final OpenDataSet dataset = openDataSetCache.getDataSet( new ViewLevelId( timepoint, setup, level ) );
-		final int memorySpaceId = H5Screate_simple( reorderedDimensions.length, reorderedDimensions, null );
-		H5Sselect_hyperslab( dataset.fileSpaceId, H5S_SELECT_SET, reorderedMin, null, reorderedDimensions, null );
-		H5Dread( dataset.dataSetId, H5T_NATIVE_FLOAT, memorySpaceId, dataset.fileSpaceId, numericConversionXferPropertyListID, dataBlock );
-		H5Sclose( memorySpaceId );
+		final OpenDataSet dataset = handlePool.acquireDataSet( this, fileId, new ViewLevelId( timepoint, setup, level ) );
+		try
+		{
+			synchronized ( dataset )
+			{
+				final int memorySpaceId = H5Screate_simple( reorderedDimensions.length, reorderedDimensions, null );
+				H5Sselect_hyperslab( dataset.fileSpaceId, H5S_SELECT_SET, reorderedMin, null, reorderedDimensions, null );
+				H5Dread( dataset.dataSetId, H5T_NATIVE_FLOAT, memorySpaceId, dataset.fileSpaceId, numericConversionXferPropertyListID, dataBlock );
+				H5Sclose( memorySpaceId );
+			}
+		}
+		finally
+		{
+			handlePool.releaseDataSet( dataset );
+		}
 		HDF5Access.unsignedShort( dataBlock );
 		return dataBlock;
 	}
 
+	@Override
+	public synchronized float[] readFloatMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	{
+		final float[] dataBlock = new float[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
+		readFloatMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min, dataBlock );
+		return dataBlock;
+	}
+
+	@Override
+	public synchronized float[] readFloatMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final float[] dataBlock ) throws InterruptedException
+	{
+		if ( Thread.interrupted() )
+			throw new InterruptedException();
+		Util.reorder( dimensions, reorderedDimensions );
+		Util.reorder( min, reorderedMin );
+
+		final OpenDataSet dataset = handlePool.acquireDataSet( this, fileId, new ViewLevelId( timepoint, setup, level ) );
+		try
+		{
+			synchronized ( dataset )
+			{
+				final int memorySpaceId = H5Screate_simple( reorderedDimensions.length, reorderedDimensions, null );
+				H5Sselect_hyperslab( dataset.fileSpaceId, H5S_SELECT_SET, reorderedMin, null, reorderedDimensions, null );
+				H5Dread( dataset.dataSetId, H5T_NATIVE_FLOAT, memorySpaceId, dataset.fileSpaceId, numericConversionXferPropertyListID, dataBlock );
+				H5Sclose( memorySpaceId );
+			}
+		}
+		finally
+		{
+			handlePool.releaseDataSet( dataset );
+		}
+
+		return dataBlock;
+	}
+
 	@Override
 	public void closeAllDataSets()
 	{
-		for ( final OpenDataSet dataset : openDataSetCache.values() )
-			dataset.close();
-		openDataSetCache.clear();
+		handlePool.closeDataSets( this, fileId );
 	}
 
 	@Override
 	public void close()
 	{
 		closeAllDataSets();
-		hdf5Reader.close();
+		// the reader may be shared through the pool, see Hdf5HandlePool#acquireReader
+		handlePool.releaseReader( hdf5Reader );
 	}
 
 //	@Override
@@ -0,0 +1,447 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.hdf5;
+
+import static ch.systemsx.cisd.hdf5.hdf5lib.H5D.H5Dclose;
+import static ch.systemsx.cisd.hdf5.hdf5lib.H5D.H5Dget_space;
+import static ch.systemsx.cisd.hdf5.hdf5lib.H5D.H5Dopen;
+import static ch.systemsx.cisd.hdf5.hdf5lib.H5S.H5Sclose;
+import static ch.systemsx.cisd.hdf5.hdf5lib.HDF5Constants.H5P_DEFAULT;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import bdv.util.Prefs;
+import ch.systemsx.cisd.hdf5.HDF5Factory;
+import ch.systemsx.cisd.hdf5.IHDF5Reader;
+
+/**
+ * Process-wide pool of open hdf5 files and datasets, shared by all
+ * {@link Hdf5ImageLoader}s.
+ * <p>
+ * Readers are shared between everyone reading the same file (identified by
+ * canonical path) and reference-counted. Readers that are no longer used are
+ * kept open for reuse until more than {@link Prefs#hdf5MaxOpenFiles()} files
+ * are open, then the least recently used ones are closed.
+ * <p>
+ * Datasets are identified by the hdf5 file id of their (shared) reader and
+ * {@link ViewLevelId}. Every dataset remembers the owners (e.g.
+ * {@link HDF5AccessHack}s) that acquired it, so that one owner closing its
+ * datasets does not affect other owners reading the same file. At most
+ * {@link Prefs#hdf5MaxOpenDataSets()} are kept open in total, the least
+ * recently used ones (of the file that is being read, then of other files)
+ * are closed first. This also bounds the number of partition files that the
+ * hdf5 library holds open for datasets reached through external links.
+ * Datasets are pinned while they are read and are not closed before they are
+ * released.
+ * <p>
+ * The datasets of each file are guarded by a separate lock, so reads from
+ * different files do not wait for each other.
+ *
+ * @see #getStatistics()
+ */
+public class Hdf5HandlePool
+{
+	private static Hdf5HandlePool instance;
+
+	public static synchronized Hdf5HandlePool getInstance()
+	{
+		if ( instance == null )
+			instance = new Hdf5HandlePool( Prefs.hdf5MaxOpenFiles(), Prefs.hdf5MaxOpenDataSets() );
+		return instance;
+	}
+
+	private static class OpenFile
+	{
+		final String path;
+
+		final IHDF5Reader reader;
+
+		int refs;
+
+		OpenFile( final String path, final IHDF5Reader reader )
+		{
+			this.path = path;
+			this.reader = reader;
+		}
+	}
+
+	/**
+	 * The open datasets of one hdf5 file, in least recently used order. All
+	 * access (including to the {@link OpenDataSet}s) is synchronized on the
+	 * {@link FileDataSets}.
+	 */
+	private static class FileDataSets
+	{
+		final LinkedHashMap< ViewLevelId, OpenDataSet > dataSets = new LinkedHashMap<>( 16, 0.75f, true );
+	}
+
+	/**
+	 * An open hdf5 dataset and its file dataspace. The dataspace selection is
+	 * modified for reading, so readers must synchronize on the
+	 * {@link OpenDataSet} while reading.
+	 */
+	static class OpenDataSet
+	{
+		final int dataSetId;
+
+		final int fileSpaceId;
+
+		private final FileDataSets file;
+
+		private final Set< Object > owners = Collections.newSetFromMap( new IdentityHashMap<>() );
+
+		private int pins;
+
+		private boolean evicted;
+
+		OpenDataSet( final FileDataSets file, final int fileId, final ViewLevelId id )
+		{
+			this.file = file;
+			dataSetId = H5Dopen( fileId, Util.getCellsPath( id ), H5P_DEFAULT );
+			fileSpaceId = H5Dget_space( dataSetId );
+		}
+
+		void close()
+		{
+			H5Sclose( fileSpaceId );
+			H5Dclose( dataSetId );
+		}
+	}
+
+	private final int maxOpenFiles;
+
+	private final int maxOpenDataSets;
+
+	private final LinkedHashMap< String, OpenFile > files = new LinkedHashMap<>( 16, 0.75f, true );
+
+	private final IdentityHashMap< IHDF5Reader, OpenFile > readerToFile = new IdentityHashMap<>();
+
+	private final ConcurrentHashMap< Integer, FileDataSets > fileDataSets = new ConcurrentHashMap<>();
+
+	private final AtomicInteger numOpenDataSets = new AtomicInteger();
+
+	private long fileHits;
+
+	private long fileMisses;
+
+	private final AtomicLong dataSetHits = new AtomicLong();
+
+	private final AtomicLong dataSetMisses = new AtomicLong();
+
+	Hdf5HandlePool( final int maxOpenFiles, final int maxOpenDataSets )
+	{
+		this.maxOpenFiles = Math.max( maxOpenFiles, 0 );
+		this.maxOpenDataSets = Math.max( maxOpenDataSets, 1 );
+	}
+
+	/**
+	 * Get a reader for the specified file, opening it if is not already open.
+	 * Every reader obtained like this must be given back by
+	 * {@link #releaseReader(IHDF5Reader)} instead of closing it.
+	 * <p>
+	 * Files are opened without holding the pool lock, such that opening a
+	 * (slow) file does not block access to other files. If two threads open
+	 * the same file concurrently, the reader opened first is kept, and the
+	 * other one is closed.
+	 */
+	public IHDF5Reader acquireReader( final File file )
+	{
+		final String path = getPath( file );
+		synchronized ( this )
+		{
+			final OpenFile openFile = files.get( path );
+			if ( openFile != null )
+			{
+				++fileHits;
+				++openFile.refs;
+				return openFile.reader;
+			}
+			++fileMisses;
+		}
+
+		final IHDF5Reader reader = HDF5Factory.openForReading( file );
+
+		final IHDF5Reader acquired;
+		synchronized ( this )
+		{
+			OpenFile openFile = files.get( path );
+			if ( openFile == null )
+			{
+				openFile = new OpenFile( path, reader );
+				files.put( path, openFile );
+				readerToFile.put( reader, openFile );
+			}
+			++openFile.refs;
+			trimFiles();
+			acquired = openFile.reader;
+		}
+		if ( acquired != reader )
+			reader.close();
+		return acquired;
+	}
+
+	/**
+	 * Give back a reader obtained by {@link #acquireReader(File)}. The reader
+	 * is kept open for reuse until it is evicted. Readers that were not
+	 * obtained from this pool are closed.
+	 */
+	public synchronized void releaseReader( final IHDF5Reader reader )
+	{
+		final OpenFile openFile = readerToFile.get( reader );
+		if ( openFile == null )
+		{
+			reader.close();
+			return;
+		}
+		if ( openFile.refs > 0 )
+			--openFile.refs;
+		trimFiles();
+	}
+
+	/**
+	 * Close the reader for the specified file, if it is open but unused. This
+	 * should be called before writing to the file.
+	 */
+	public synchronized void closeUnusedReader( final File file )
+	{
+		final OpenFile openFile = files.get( getPath( file ) );
+		if ( openFile != null && openFile.refs == 0 )
+			closeFile( openFile );
+	}
+
+	/**
+	 * Get the dataset for the specified (timepoint, setup, level) in the file
+	 * with the given hdf5 file id, opening it if is not already open. The
+	 * dataset is pinned until it is given back by
+	 * {@link #releaseDataSet(OpenDataSet)}, and stays open at least until
+	 * {@code owner} calls {@link #closeDataSets(Object, int)} (or it is
+	 * evicted).
+	 *
+	 * @throws RuntimeException
+	 *             if the dataset cannot be opened.
+	 */
+	OpenDataSet acquireDataSet( final Object owner, final int fileId, final ViewLevelId id )
+	{
+		final FileDataSets file = fileDataSets.computeIfAbsent( fileId, k -> new FileDataSets() );
+		final OpenDataSet dataset;
+		synchronized ( file )
+		{
+			OpenDataSet d = file.dataSets.get( id );
+			if ( d == null )
+			{
+				dataSetMisses.incrementAndGet();
+				d = new OpenDataSet( file, fileId, id );
+				file.dataSets.put( id, d );
+				numOpenDataSets.incrementAndGet();
+			}
+			else
+				dataSetHits.incrementAndGet();
+			++d.pins;
+			d.owners.add( owner );
+			trimDataSets( file );
+			dataset = d;
+		}
+		if ( numOpenDataSets.get() > maxOpenDataSets )
+			trimOtherFiles( file );
+		return dataset;
+	}
+
+	void releaseDataSet( final OpenDataSet dataset )
+	{
+		synchronized ( dataset.file )
+		{
+			if ( --dataset.pins == 0 && dataset.evicted )
+				dataset.close();
+			else
+				trimDataSets( dataset.file );
+		}
+	}
+
+	/**
+	 * Give up all datasets that {@code owner} acquired in the file with the
+	 * given hdf5 file id. Datasets that no other owner acquired are closed.
+	 * Datasets that are currently pinned are closed when they are released.
+	 */
+	void closeDataSets( final Object owner, final int fileId )
+	{
+		final FileDataSets file = fileDataSets.get( fileId );
+		if ( file == null )
+			return;
+		synchronized ( file )
+		{
+			final Iterator< OpenDataSet > it = file.dataSets.values().iterator();
+			while ( it.hasNext() )
+			{
+				final OpenDataSet dataset = it.next();
+				if ( dataset.owners.remove( owner ) && dataset.owners.isEmpty() )
+				{
+					it.remove();
+					evict( dataset );
+				}
+			}
+		}
+	}
+
+	public synchronized int getNumOpenFiles()
+	{
+		return files.size();
+	}
+
+	public int getNumOpenDataSets()
+	{
+		return numOpenDataSets.get();
+	}
+
+	public synchronized long getFileHits()
+	{
+		return fileHits;
+	}
+
+	public synchronized long getFileMisses()
+	{
+		return fileMisses;
+	}
+
+	public long getDataSetHits()
+	{
+		return dataSetHits.get();
+	}
+
+	public long getDataSetMisses()
+	{
+		return dataSetMisses.get();
+	}
+
+	public synchronized void resetStatistics()
+	{
+		fileHits = 0;
+		fileMisses = 0;
+		dataSetHits.set( 0 );
+		dataSetMisses.set( 0 );
+	}
+
+	/**
+	 * @return a one-line summary of open handles and hit/miss counts.
+	 */
+	public synchronized String getStatistics()
+	{
+		return String.format( "hdf5 files: %d open, %d hits, %d misses; datasets: %d open, %d hits, %d misses",
+				files.size(), fileHits, fileMisses,
+				numOpenDataSets.get(), dataSetHits.get(), dataSetMisses.get() );
+	}
+
+	private void trimFiles()
+	{
+		final Iterator< OpenFile > it = files.values().iterator();
+		while ( files.size() > maxOpenFiles && it.hasNext() )
+		{
+			final OpenFile openFile = it.next();
+			if ( openFile.refs == 0 )
+			{
+				it.remove();
+				readerToFile.remove( openFile.reader );
+				openFile.reader.close();
+			}
+		}
+	}
+
+	private void closeFile( final OpenFile openFile )
+	{
+		files.remove( openFile.path );
+		readerToFile.remove( openFile.reader );
+		openFile.reader.close();
+	}
+
+	/**
+	 * Close least recently used unpinned datasets of {@code file} while too
+	 * many datasets are open. Must be called while holding the lock of
+	 * {@code file}.
+	 */
+	private void trimDataSets( final FileDataSets file )
+	{
+		final Iterator< OpenDataSet > it = file.dataSets.values().iterator();
+		while ( numOpenDataSets.get() > maxOpenDataSets && it.hasNext() )
+		{
+			final OpenDataSet dataset = it.next();
+			if ( dataset.pins == 0 )
+			{
+				it.remove();
+				evict( dataset );
+			}
+		}
+	}
+
+	/**
+	 * Close unpinned datasets of files other than {@code current} while too
+	 * many datasets are open. Only one file lock is held at a time.
+	 */
+	private void trimOtherFiles( final FileDataSets current )
+	{
+		for ( final FileDataSets file : fileDataSets.values() )
+		{
+			if ( numOpenDataSets.get() <= maxOpenDataSets )
+				return;
+			if ( file != current )
+				synchronized ( file )
+				{
+					trimDataSets( file );
+				}
+		}
+	}
+
+	private void evict( final OpenDataSet dataset )
+	{
+		numOpenDataSets.decrementAndGet();
+		dataset.evicted = true;
+		if ( dataset.pins == 0 )
+			dataset.close();
+	}
+
+	private static String getPath( final File file )
+	{
+		try
+		{
+			return file.getCanonicalPath();
+		}
+		catch ( final IOException e )
+		{
+			return file.getAbsolutePath();
+		}
+	}
+}
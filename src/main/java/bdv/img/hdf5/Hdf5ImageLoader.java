@@ -33,20 +33,30 @@ import static bdv.img.hdf5.Util.getResolutionsPath;
 import static bdv.img.hdf5.Util.getSubdivisionsPath;
 
 import java.io.File;
+import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import bdv.AbstractViewerSetupImgLoader;
 import bdv.ViewerImgLoader;
+import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.CountingFetchQueues;
 import bdv.img.cache.VolatileGlobalCellCache;
+import bdv.img.hdf5.DataTypes.DataType;
 import bdv.util.ConstantRandomAccessible;
 import bdv.util.MipmapTransforms;
-import ch.systemsx.cisd.hdf5.HDF5Factory;
+import bdv.util.Prefs;
 import ch.systemsx.cisd.hdf5.IHDF5Reader;
 import mpicbg.spim.data.generic.sequence.AbstractSequenceDescription;
 import mpicbg.spim.data.generic.sequence.BasicViewSetup;
@@ -63,9 +73,11 @@ import net.imglib2.Cursor;
 import net.imglib2.Dimensions;
 import net.imglib2.FinalDimensions;
 import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
 import net.imglib2.IterableInterval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.Volatile;
 import net.imglib2.cache.queue.BlockingFetchQueues;
 import net.imglib2.cache.queue.FetcherThreads;
 import net.imglib2.cache.volatiles.CacheHints;
@@ -73,15 +85,17 @@ import net.imglib2.cache.volatiles.LoadingStrategy;
 import net.imglib2.img.Img;
 import net.imglib2.img.ImgFactory;
 import net.imglib2.img.NativeImg;
+import net.imglib2.img.array.ArrayImg;
 import net.imglib2.img.array.ArrayImgFactory;
-import net.imglib2.img.array.ArrayImgs;
-import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
 import net.imglib2.img.cell.Cell;
 import net.imglib2.img.cell.CellGrid;
 import net.imglib2.img.cell.CellImg;
 import net.imglib2.img.cell.CellImgFactory;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.integer.UnsignedShortType;
 import net.imglib2.type.numeric.real.FloatType;
 import net.imglib2.type.volatiles.VolatileUnsignedShortType;
@@ -104,6 +118,24 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 
 	protected IHDF5Access hdf5Access;
 
+	/**
+	 * The reader used for reading per-setup metadata. In lazy mode (see
+	 * {@link Prefs#hdf5LazyOpen()}), this is done on first use of a setup.
+	 */
+	protected IHDF5Reader hdf5Reader;
+
+	/**
+	 * Whether per-setup metadata is read on first use (see
+	 * {@link Prefs#hdf5LazyOpen()}).
+	 */
+	protected boolean lazy;
+
+	/**
+	 * Per-setup metadata and image dimensions read from the
+	 * {@link MetadataIndex} sidecar file in lazy mode, or {@code null}.
+	 */
+	private MetadataIndex metadataIndex;
+
 	protected VolatileGlobalCellCache cache;
 
 	protected FetcherThreads fetchers;
@@ -113,7 +145,7 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 	/**
 	 * Maps setup id to {@link SetupImgLoader}.
 	 */
-	protected final HashMap< Integer, SetupImgLoader > setupImgLoaders;
+	protected final ConcurrentHashMap< Integer, SetupImgLoader< ?, ?, ? > > setupImgLoaders;
 
 	/**
 	 * List of partitions if the dataset is split across several files
@@ -122,13 +154,30 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 
 	protected int maxNumLevels;
 
+	/**
+	 * Target number of voxels of cache cells per mipmap level, see
+	 * {@link Prefs#hdf5CacheCellSizes()}.
+	 */
+	private int[] cacheCellSizes;
+
 	/**
 	 * Maps {@link ViewLevelId} (timepoint, setup, level) to
 	 * {@link DimsAndExistence}. Every entry is either null or the existence and
 	 * dimensions of one image. This is filled in when an image is loaded for
-	 * the first time.
+	 * the first time. All levels of a (timepoint, setup) are filled in
+	 * together.
 	 */
-	protected final HashMap< ViewLevelId, DimsAndExistence > cachedDimsAndExistence;
+	protected final ConcurrentHashMap< ViewLevelId, DimsAndExistence > cachedDimsAndExistence;
+
+	/**
+	 * Locks for filling in {@link #cachedDimsAndExistence}, striped by
+	 * (timepoint, setup). This makes sure that concurrent misses for the same
+	 * (timepoint, setup) are resolved only once, while misses for different
+	 * (timepoint, setup) do not wait for each other more than necessary.
+	 */
+	private final Object[] dimsAndExistenceLocks;
+
+	private static final int NUM_DIMS_AND_EXISTENCE_LOCKS = 64;
 
 	protected final AbstractSequenceDescription< ?, ?, ? > sequenceDescription;
 
@@ -156,8 +205,11 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 	{
 		this.existingHdf5Reader = existingHdf5Reader;
 		this.hdf5File = hdf5File;
-		setupImgLoaders = new HashMap<>();
-		cachedDimsAndExistence = new HashMap<>();
+		setupImgLoaders = new ConcurrentHashMap<>();
+		cachedDimsAndExistence = new ConcurrentHashMap<>();
+		dimsAndExistenceLocks = new Object[ NUM_DIMS_AND_EXISTENCE_LOCKS ];
+		for ( int i = 0; i < NUM_DIMS_AND_EXISTENCE_LOCKS; ++i )
+			dimsAndExistenceLocks[ i ] = new Object();
 		this.sequenceDescription = sequenceDescription;
 		partitions = new ArrayList<>();
 		if ( hdf5Partitions != null )
@@ -166,7 +218,13 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 			open();
 	}
 
-	private boolean isOpen = false;
+	private volatile boolean isOpen = false;
+
+	/**
+	 * Thread writing the {@link MetadataIndex} in lazy mode, or {@code null}.
+	 * It runs only while the loader is open, see {@link #close()}.
+	 */
+	private Thread metadataIndexThread;
 
 	private void open()
 	{
@@ -178,27 +236,7 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 					return;
 				isOpen = true;
 
-				final IHDF5Reader hdf5Reader = ( existingHdf5Reader != null ) ? existingHdf5Reader : HDF5Factory.openForReading( hdf5File );
-
-				maxNumLevels = 0;
-				final List< ? extends BasicViewSetup > setups = sequenceDescription.getViewSetupsOrdered();
-				for ( final BasicViewSetup setup : setups )
-				{
-					final int setupId = setup.getId();
-
-					final double[][] resolutions = hdf5Reader.readDoubleMatrix( getResolutionsPath( setupId ) );
-					final AffineTransform3D[] transforms = new AffineTransform3D[ resolutions.length ];
-					for ( int level = 0; level < resolutions.length; level++ )
-						transforms[ level ] = MipmapTransforms.getMipmapTransformDefault( resolutions[ level ] );
-					final int[][] subdivisions = hdf5Reader.readIntMatrix( getSubdivisionsPath( setupId ) );
-
-					if ( resolutions.length > maxNumLevels )
-						maxNumLevels = resolutions.length;
-
-					setupImgLoaders.put( setupId, new SetupImgLoader( setupId, new MipmapInfo( resolutions, transforms, subdivisions ) ) );
-				}
-
-				cachedDimsAndExistence.clear();
+				hdf5Reader = ( existingHdf5Reader != null ) ? existingHdf5Reader : Hdf5HandlePool.getInstance().acquireReader( hdf5File );
 
 				try
 				{
@@ -209,21 +247,176 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 					e.printStackTrace();
 					hdf5Access = new HDF5Access( hdf5Reader );
 				}
+
+				// reads from memory-mapped datasets do not lock, so they can
+				// be done by several fetcher threads concurrently.
+				int numFetcherThreads = 1;
+				if ( Prefs.hdf5MemoryMapped() && hdf5File != null && hdf5Access instanceof HDF5AccessHack )
+				{
+					hdf5Access = new MemoryMappedHDF5Access( ( HDF5AccessHack ) hdf5Access, hdf5Reader, hdf5File );
+					numFetcherThreads = Runtime.getRuntime().availableProcessors();
+				}
 				shortLoader = new Hdf5VolatileShortArrayLoader( hdf5Access );
 
+				setupImgLoaders.clear();
+				cachedDimsAndExistence.clear();
+
+				cacheCellSizes = Prefs.hdf5CacheCellSizes();
 
-				final BlockingFetchQueues< Callable< ? > > queue = new BlockingFetchQueues<>( maxNumLevels );
-				fetchers = new FetcherThreads( queue, 1 );
+				lazy = Prefs.hdf5LazyOpen() && hdf5File != null;
+				if ( lazy )
+				{
+					// Setups are created on first use, see getSetupImgLoader().
+					// If there is an up-to-date index, everything is taken from
+					// there. Otherwise, nothing is read here.
+					metadataIndex = MetadataIndex.read( getIndexedFiles() );
+					if ( metadataIndex != null )
+					{
+						maxNumLevels = metadataIndex.getMaxNumLevels();
+						cachedDimsAndExistence.putAll( metadataIndex.dimsAndExistence );
+					}
+					else
+						maxNumLevels = MAX_NUM_LEVELS_UNKNOWN;
+				}
+				else
+				{
+					metadataIndex = null;
+					maxNumLevels = 0;
+					final List< ? extends BasicViewSetup > setups = sequenceDescription.getViewSetupsOrdered();
+					for ( final BasicViewSetup setup : setups )
+					{
+						final int setupId = setup.getId();
+						final SetupImgLoader< ?, ?, ? > setupImgLoader = readSetupImgLoader( setupId );
+						maxNumLevels = Math.max( maxNumLevels, setupImgLoader.numMipmapLevels() );
+						setupImgLoaders.put( setupId, setupImgLoader );
+					}
+				}
+
+				final BlockingFetchQueues< Callable< ? > > queue = new CountingFetchQueues<>( maxNumLevels );
+				fetchers = new FetcherThreads( queue, numFetcherThreads );
 				cache = new VolatileGlobalCellCache( queue );
+
+				if ( lazy && metadataIndex == null )
+					startMetadataIndexThread();
+			}
+		}
+	}
+
+	/**
+	 * Number of fetch queue priorities in lazy mode, if there is no
+	 * {@link MetadataIndex} to take the number of mipmap levels from. (The
+	 * XML does not contain mipmap info.) Queue priorities are clamped to the
+	 * number of priorities (see {@link SetupImgLoader#prepareCachedImage}), so
+	 * using more priorities than there are levels has no effect on the order of
+	 * loading.
+	 */
+	private static final int MAX_NUM_LEVELS_UNKNOWN = 16;
+
+	/**
+	 * Create a {@link SetupImgLoader}, with metadata taken from the
+	 * {@link #metadataIndex} if available, or read from the hdf5 file
+	 * otherwise.
+	 */
+	private SetupImgLoader< ?, ?, ? > readSetupImgLoader( final int setupId )
+	{
+		final double[][] resolutions;
+		final int[][] subdivisions;
+		final DataType< ?, ?, ? > dataType;
+		final MetadataIndex.SetupMetadata indexed = ( metadataIndex != null ) ? metadataIndex.setups.get( setupId ) : null;
+		if ( indexed != null )
+		{
+			resolutions = indexed.resolutions;
+			subdivisions = indexed.subdivisions;
+			dataType = DataTypes.forName( indexed.dataTypeName );
+		}
+		else
+		{
+			resolutions = hdf5Reader.readDoubleMatrix( getResolutionsPath( setupId ) );
+			subdivisions = hdf5Reader.readIntMatrix( getSubdivisionsPath( setupId ) );
+			dataType = DataTypes.readDataType( hdf5Reader, setupId );
+		}
+
+		final AffineTransform3D[] transforms = new AffineTransform3D[ resolutions.length ];
+		for ( int level = 0; level < resolutions.length; level++ )
+			transforms[ level ] = MipmapTransforms.getMipmapTransformDefault( resolutions[ level ] );
+
+		return createSetupImgLoader( setupId, new MipmapInfo( resolutions, transforms, subdivisions ), dataType );
+	}
+
+	/**
+	 * @return the hdf5 file followed by all partition files. These are
+	 *         checked to determine whether the {@link MetadataIndex} is up to
+	 *         date.
+	 */
+	private List< File > getIndexedFiles()
+	{
+		final ArrayList< File > files = new ArrayList<>();
+		files.add( hdf5File );
+		for ( final Partition partition : partitions )
+			files.add( new File( partition.getPath() ) );
+		return files;
+	}
+
+	/**
+	 * In the background, resolve dimensions of all images and write a
+	 * {@link MetadataIndex}, such that the next opening is fast.
+	 */
+	private void startMetadataIndexThread()
+	{
+		metadataIndexThread = new Thread( () -> {
+			final Map< ViewLevelId, DimsAndExistence > dims = resolveAllDimsAndExistence();
+			if ( dims == null )
+				return;
+			final HashMap< Integer, MetadataIndex.SetupMetadata > setups = new HashMap<>();
+			for ( final BasicViewSetup setup : sequenceDescription.getViewSetupsOrdered() )
+			{
+				if ( !isOpen )
+					return;
+				final SetupImgLoader< ?, ?, ? > setupImgLoader = getOrReadSetupImgLoader( setup.getId() );
+				final MipmapInfo mipmapInfo = setupImgLoader.getMipmapInfo();
+				setups.put( setup.getId(), new MetadataIndex.SetupMetadata(
+						mipmapInfo.getResolutions(),
+						mipmapInfo.getSubdivisions(),
+						setupImgLoader.getDataType().getName() ) );
+			}
+			new MetadataIndex( setups, dims ).write( getIndexedFiles() );
+		}, "bdv-hdf5-metadata-index" );
+		metadataIndexThread.setDaemon( true );
+		metadataIndexThread.setPriority( Thread.MIN_PRIORITY );
+		metadataIndexThread.start();
+	}
+
+	/**
+	 * Wait for the {@link #metadataIndexThread} to finish. It checks
+	 * {@link #isOpen} between images and stops early if the loader was
+	 * closed.
+	 */
+	private void joinMetadataIndexThread()
+	{
+		if ( metadataIndexThread == null )
+			return;
+		boolean interrupted = false;
+		while ( metadataIndexThread.isAlive() )
+		{
+			try
+			{
+				metadataIndexThread.join();
+			}
+			catch ( final InterruptedException e )
+			{
+				interrupted = true;
 			}
 		}
+		metadataIndexThread = null;
+		if ( interrupted )
+			Thread.currentThread().interrupt();
 	}
 
 	/**
-	 * Clear the cache and close the hdf5 file. Images that were obtained from
-	 * this loader before {@link #close()} will stop working. Requesting images
-	 * after {@link #close()} will cause the hdf5 file to be reopened (with a
-	 * new cache).
+	 * Clear the cache and release the hdf5 file to the {@link Hdf5HandlePool}.
+	 * Images that were obtained from this loader before {@link #close()} will
+	 * stop working. Requesting images after {@link #close()} will cause the
+	 * hdf5 file to be reopened (with a new cache).
 	 */
 	public void close()
 	{
@@ -235,45 +428,85 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 					return;
 				isOpen = false;
 
+				// the index thread uses hdf5Access, so it must be finished
+				// before the datasets are closed
+				joinMetadataIndexThread();
+
 				cache.clearCache();
 				hdf5Access.closeAllDataSets();
 
-				// only close reader if we constructed it ourselves
+				// only release reader if we acquired it ourselves
 				if ( existingHdf5Reader == null )
-					hdf5Access.close();
+					Hdf5HandlePool.getInstance().releaseReader( hdf5Reader );
 			}
 		}
 	}
 
+	/**
+	 * Resolve dimensions and existence of all (timepoint, setup, level)
+	 * images.
+	 *
+	 * @param background
+	 *            ignored. Fetcher threads are never paused for resolving
+	 *            dimensions.
+	 */
 	public void initCachedDimensionsFromHdf5( final boolean background )
 	{
 		open();
 		final long t0 = System.currentTimeMillis();
+		resolveAllDimsAndExistence();
+		final long t1 = System.currentTimeMillis() - t0;
+		System.out.println( "initCachedDimensionsFromHdf5 : " + t1 + " ms" );
+	}
+
+	/**
+	 * Resolve dimensions and existence of all (timepoint, setup, level)
+	 * images.
+	 *
+	 * This does not (re-)open the loader. It must be called while the loader is
+	 * open, and stops early if the loader is closed in the meantime. The
+	 * (timepoint, setup) pairs are resolved in parallel on the
+	 * {@link #getLoadingExecutor() loading executor}.
+	 *
+	 * @return map of all resolved {@link DimsAndExistence}, or {@code null} if
+	 *         the loader was closed (or the calling thread interrupted) in the
+	 *         meantime.
+	 */
+	private Map< ViewLevelId, DimsAndExistence > resolveAllDimsAndExistence()
+	{
+		final ConcurrentHashMap< ViewLevelId, DimsAndExistence > resolved = new ConcurrentHashMap<>();
 		final List< TimePoint > timepoints = sequenceDescription.getTimePoints().getTimePointsOrdered();
 		final List< ? extends BasicViewSetup > setups = sequenceDescription.getViewSetupsOrdered();
+		final List< Callable< Void > > tasks = new ArrayList<>();
 		for ( final TimePoint timepoint : timepoints )
 		{
 			final int t = timepoint.getId();
 			for ( final BasicViewSetup setup : setups )
 			{
 				final int s = setup.getId();
-				final int numLevels = getSetupImgLoader( s ).numMipmapLevels();
-				for ( int l = 0; l < numLevels; ++l )
-					getDimsAndExistence( new ViewLevelId( t, s, l ) );
-			}
-			if ( background )
-				synchronized ( this )
-				{
-					try
+				tasks.add( () -> {
+					if ( !isOpen )
+						return null;
+					final int numLevels = getOrReadSetupImgLoader( s ).numMipmapLevels();
+					for ( int l = 0; l < numLevels; ++l )
 					{
-						wait( 100 );
+						final ViewLevelId id = new ViewLevelId( t, s, l );
+						resolved.put( id, resolveDimsAndExistence( id ) );
 					}
-					catch ( final InterruptedException e )
-					{}
-				}
+					return null;
+				} );
+			}
 		}
-		final long t1 = System.currentTimeMillis() - t0;
-		System.out.println( "initCachedDimensionsFromHdf5 : " + t1 + " ms" );
+		try
+		{
+			runLoadingTasks( tasks );
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		return isOpen ? resolved : null;
 	}
 
 	public File getHdf5File()
@@ -310,19 +543,40 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 		return getDimsAndExistence( id ).exists();
 	}
 
+	/**
+	 * Get the dimensions and existence of the given image. On a cache miss,
+	 * all levels of the (timepoint, setup) are resolved together.
+	 */
 	public DimsAndExistence getDimsAndExistence( final ViewLevelId id )
 	{
 		open();
+		return resolveDimsAndExistence( id );
+	}
+
+	/**
+	 * Implementation of {@link #getDimsAndExistence(ViewLevelId)}, without
+	 * (re-)opening the loader.
+	 */
+	private DimsAndExistence resolveDimsAndExistence( final ViewLevelId id )
+	{
 		DimsAndExistence dims = cachedDimsAndExistence.get( id );
 		if ( dims == null )
 		{
-			// pause Fetcher threads for 5 ms. There will be more calls to
-			// getImageDimension() because this happens when a timepoint is
-			// loaded, and all setups for the timepoint are loaded then. We
-			// don't want to interleave this with block loading operations.
-			fetchers.pauseFor( 5 );
-			dims = hdf5Access.getDimsAndExistence( id );
-			cachedDimsAndExistence.put( id, dims );
+			final int timepointId = id.getTimePointId();
+			final int setupId = id.getViewSetupId();
+			synchronized ( dimsAndExistenceLocks[ ( 31 * timepointId + setupId ) & ( NUM_DIMS_AND_EXISTENCE_LOCKS - 1 ) ] )
+			{
+				dims = cachedDimsAndExistence.get( id );
+				if ( dims == null )
+				{
+					final SetupImgLoader< ?, ?, ? > setupImgLoader = getOrReadSetupImgLoader( setupId );
+					final int numLevels = Math.max( id.getLevel() + 1, setupImgLoader == null ? 0 : setupImgLoader.numMipmapLevels() );
+					final DimsAndExistence[] levels = hdf5Access.getDimsAndExistence( timepointId, setupId, numLevels );
+					for ( int level = 0; level < numLevels; ++level )
+						cachedDimsAndExistence.putIfAbsent( new ViewLevelId( timepointId, setupId, level ), levels[ level ] );
+					dims = cachedDimsAndExistence.get( id );
+				}
+			}
 		}
 		return dims;
 	}
@@ -382,17 +636,150 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 			t.set( ( t.get() - currentMin ) * scale );
 	}
 
+	/**
+	 * Compute the size of cache cells made of whole chunks, with at most
+	 * {@code targetSize} voxels (but at least one chunk). Starting from one
+	 * chunk, the cell is repeatedly doubled along its shortest extent, as
+	 * long as it is smaller than the image in that dimension.
+	 *
+	 * @param dimensions
+	 *            image size.
+	 * @param chunkSize
+	 *            hdf5 chunk size.
+	 * @param targetSize
+	 *            maximum number of voxels per cell.
+	 */
+	static int[] aggregateChunks( final long[] dimensions, final int[] chunkSize, final int targetSize )
+	{
+		final int n = chunkSize.length;
+		final int[] cellDimensions = chunkSize.clone();
+		long size = 1;
+		for ( int d = 0; d < n; ++d )
+			size *= cellDimensions[ d ];
+		while ( true )
+		{
+			int grow = -1;
+			for ( int d = 0; d < n; ++d )
+				if ( cellDimensions[ d ] < dimensions[ d ] && ( grow < 0 || cellDimensions[ d ] < cellDimensions[ grow ] ) )
+					grow = d;
+			if ( grow < 0 )
+				break;
+
+			// double, but do not grow beyond the image (rounded up to chunks)
+			final long imageInChunks = ( dimensions[ grow ] + chunkSize[ grow ] - 1 ) / chunkSize[ grow ] * chunkSize[ grow ];
+			final int extent = ( int ) Math.min( 2L * cellDimensions[ grow ], imageInChunks );
+			final long newSize = size / cellDimensions[ grow ] * extent;
+			if ( newSize > targetSize )
+				break;
+			cellDimensions[ grow ] = extent;
+			size = newSize;
+		}
+		return cellDimensions;
+	}
+
+	private static ExecutorService loadingExecutor;
+
+	/**
+	 * Get the executor for loading images completely and converting images to
+	 * float (see
+	 * {@link SetupImgLoader#getFloatImage(int, int, boolean, ImgLoaderHint...)}).
+	 * It is shared by all {@link Hdf5ImageLoader}s and has one daemon thread
+	 * per processor.
+	 */
+	static synchronized ExecutorService getLoadingExecutor()
+	{
+		if ( loadingExecutor == null )
+			loadingExecutor = Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors(), new LoadingThreadFactory() );
+		return loadingExecutor;
+	}
+
+	/**
+	 * Run {@code tasks} on the {@link #getLoadingExecutor() loading executor}
+	 * and wait until all of them are complete.
+	 *
+	 * @throws RuntimeException
+	 *             if a task failed. {@link RuntimeException}s and
+	 *             {@link Error}s thrown by tasks are rethrown, other failures
+	 *             are wrapped.
+	 * @throws InterruptedException
+	 *             if the current thread was interrupted while waiting. Tasks
+	 *             that are not complete are cancelled.
+	 */
+	static void runLoadingTasks( final List< ? extends Callable< Void > > tasks ) throws InterruptedException
+	{
+		// invokeAll() returns when all tasks are complete
+		final List< Future< Void > > futures = getLoadingExecutor().invokeAll( tasks );
+		for ( final Future< Void > future : futures )
+		{
+			try
+			{
+				future.get();
+			}
+			catch ( final ExecutionException e )
+			{
+				final Throwable cause = e.getCause();
+				if ( cause instanceof RuntimeException )
+					throw ( RuntimeException ) cause;
+				if ( cause instanceof Error )
+					throw ( Error ) cause;
+				throw new RuntimeException( cause );
+			}
+		}
+	}
+
+	private static class LoadingThreadFactory implements ThreadFactory
+	{
+		private final AtomicInteger threadNumber = new AtomicInteger( 1 );
+
+		@Override
+		public Thread newThread( final Runnable r )
+		{
+			final Thread t = new Thread( r, String.format( "bdv-hdf5-loading-thread-%d", threadNumber.getAndIncrement() ) );
+			t.setDaemon( true );
+			return t;
+		}
+	}
+
 	@Override
-	public SetupImgLoader getSetupImgLoader( final int setupId )
+	public SetupImgLoader< ?, ?, ? > getSetupImgLoader( final int setupId )
 	{
 		open();
-		return setupImgLoaders.get( setupId );
+		return getOrReadSetupImgLoader( setupId );
+	}
+
+	/**
+	 * Implementation of {@link #getSetupImgLoader(int)}, without (re-)opening
+	 * the loader. In lazy mode, the {@link SetupImgLoader} is created on first
+	 * use.
+	 */
+	private SetupImgLoader< ?, ?, ? > getOrReadSetupImgLoader( final int setupId )
+	{
+		final SetupImgLoader< ?, ?, ? > setupImgLoader = setupImgLoaders.get( setupId );
+		if ( setupImgLoader == null && lazy && sequenceDescription.getViewSetups().containsKey( setupId ) )
+			return setupImgLoaders.computeIfAbsent( setupId, this::readSetupImgLoader );
+		return setupImgLoader;
+	}
+
+	private < T extends RealType< T > & NativeType< T >, V extends Volatile< T > & RealType< V > & NativeType< V >, A extends VolatileAccess >
+			SetupImgLoader< T, V, A > createSetupImgLoader( final int setupId, final MipmapInfo mipmapInfo, final DataType< T, V, A > dataType )
+	{
+		return new SetupImgLoader<>( setupId, mipmapInfo, dataType );
 	}
 
-	public class SetupImgLoader extends AbstractViewerSetupImgLoader< UnsignedShortType, VolatileUnsignedShortType > implements MultiResolutionSetupImgLoader< UnsignedShortType >
+	/**
+	 * Loads images of one setup. The pixel type is determined by the
+	 * {@link DataType} stored for the setup in the hdf5 file, see
+	 * {@link DataTypes}.
+	 */
+	public class SetupImgLoader< T extends RealType< T > & NativeType< T >, V extends Volatile< T > & RealType< V > & NativeType< V >, A extends VolatileAccess >
+			extends AbstractViewerSetupImgLoader< T, V > implements MultiResolutionSetupImgLoader< T >
 	{
 		private final int setupId;
 
+		private final DataType< T, V, A > dataType;
+
+		private final CacheArrayLoader< A > loader;
+
 		/**
 		 * Description of available mipmap levels for the setup. Contains for
 		 * each mipmap level, the subsampling factors and subdivision block
@@ -400,14 +787,21 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 		 */
 		private final MipmapInfo mipmapInfo;
 
-		protected SetupImgLoader( final int setupId, final MipmapInfo mipmapInfo  )
+		protected SetupImgLoader( final int setupId, final MipmapInfo mipmapInfo, final DataType< T, V, A > dataType )
 		{
-			super( new UnsignedShortType(), new VolatileUnsignedShortType() );
+			super( dataType.getType(), dataType.getVolatileType() );
 			this.setupId = setupId;
 			this.mipmapInfo = mipmapInfo;
+			this.dataType = dataType;
+			this.loader = new EmptyCellsArrayLoader<>( dataType.createArrayLoader( hdf5Access ), hdf5Access, mipmapInfo, Hdf5ImageLoader.this::getDimsAndExistence, dataType::createZeroArray );
+		}
+
+		public DataType< T, V, A > getDataType()
+		{
+			return dataType;
 		}
 
-		private RandomAccessibleInterval< UnsignedShortType > loadImageCompletely( final int timepointId, final int level )
+		private RandomAccessibleInterval< T > loadImageCompletely( final int timepointId, final int level )
 		{
 			open();
 
@@ -420,51 +814,129 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 				return getMissingDataImage( id, type );
 			}
 
-			Img< UnsignedShortType > img = null;
-			final DimsAndExistence dimsAndExistence = getDimsAndExistence( new ViewLevelId( timepointId, setupId, level ) );
-			final long[] dimsLong = dimsAndExistence.exists() ? dimsAndExistence.getDimensions() : null;
-			final int n = dimsLong.length;
-			final int[] dimsInt = new int[ n ];
-			final long[] min = new long[ n ];
+			final Img< T > img = createCompleteImg( getDimsAndExistence( id ).getDimensions(), level, type );
+			readCompletely( img, timepointId, level, false );
+			return img;
+		}
+
+		/**
+		 * Create an {@link ArrayImg} of the given size, or a {@link CellImg}
+		 * with cells aligned to the hdf5 chunks if the image is too large for
+		 * an {@link ArrayImg}.
+		 */
+		private < S extends NativeType< S > > Img< S > createCompleteImg( final long[] dimsLong, final int level, final S type )
+		{
+			final ImgFactory< S > factory;
 			if ( Intervals.numElements( new FinalDimensions( dimsLong ) ) <= Integer.MAX_VALUE )
+				factory = new ArrayImgFactory<>();
+			else
+				factory = new CellImgFactory<>( computeCellDimensions( dimsLong, mipmapInfo.getSubdivisions()[ level ] ) );
+			return factory.create( dimsLong, type );
+		}
+
+		/**
+		 * Read all pixels of an image created by {@link #createCompleteImg}.
+		 * The cells of a {@link CellImg} are each filled by a single hyperslab
+		 * read, directly into the cell array. An {@link ArrayImg} is read in
+		 * slabs of whole hdf5 chunks along Z. Cells or slabs are read
+		 * concurrently on the {@link #getLoadingExecutor() loading executor}.
+		 * (Reads through the hdf5 library are serialized, but reads from
+		 * memory-mapped datasets, see {@link MemoryMappedHDF5Access}, and
+		 * copying slabs into place are not.)
+		 *
+		 * @param asFloat
+		 *            whether {@code img} is a {@link FloatType} image, and
+		 *            pixels should be converted to float while reading.
+		 * @throws RuntimeException
+		 *             if reading is interrupted. The interrupted status of the
+		 *             current thread is restored.
+		 */
+		private void readCompletely( final Img< ? > img, final int timepointId, final int level, final boolean asFloat )
+		{
+			final List< Callable< Void > > tasks = new ArrayList<>();
+			if ( img instanceof CellImg )
+				addCellTasks( ( CellImg< ?, ? > ) img, timepointId, level, asFloat, tasks );
+			else
+				addSlabTasks( ( ArrayImg< ?, ? > ) img, timepointId, level, asFloat, tasks );
+			try
 			{
-				// use ArrayImg
-				for ( int d = 0; d < dimsInt.length; ++d )
-					dimsInt[ d ] = ( int ) dimsLong[ d ];
-				short[] data = null;
-				try
-				{
-					data = hdf5Access.readShortMDArrayBlockWithOffset( timepointId, setupId, level, dimsInt, min );
-				}
-				catch ( final InterruptedException e )
-				{}
-				img = ArrayImgs.unsignedShorts( data, dimsLong );
+				runLoadingTasks( tasks );
 			}
-			else
+			catch ( final InterruptedException e )
 			{
-				final int[] cellDimensions = computeCellDimensions(
-						dimsLong,
-						mipmapInfo.getSubdivisions()[ level ] );
-				final CellImgFactory< UnsignedShortType > factory = new CellImgFactory<>( cellDimensions );
-				@SuppressWarnings( "unchecked" )
-				final CellImg< UnsignedShortType, ShortArray > cellImg = ( CellImg< UnsignedShortType, ShortArray > ) factory.create( dimsLong, type );
-				final Cursor< Cell< ShortArray > > cursor = cellImg.getCells().cursor();
-				while ( cursor.hasNext() )
-				{
-					final Cell< ShortArray > cell = cursor.next();
-					final short[] dataBlock = cell.getData().getCurrentStorageArray();
-					cell.dimensions( dimsInt );
-					cell.min( min );
-					try
-					{
-						hdf5Access.readShortMDArrayBlockWithOffset( timepointId, setupId, level, dimsInt, min, dataBlock );
-					}
-					catch ( final InterruptedException e )
-					{}
-				}
-				img = cellImg;
+				Thread.currentThread().interrupt();
+				throw new RuntimeException( String.format(
+						"interrupted while loading timepoint %d setup %d level %d",
+						timepointId, setupId, level ), e );
 			}
-			return img;
+		}
+
+		/**
+		 * Add a task reading each cell of {@code cellImg} to {@code tasks}.
+		 */
+		private < B > void addCellTasks( final CellImg< ?, B > cellImg, final int timepointId, final int level, final boolean asFloat, final List< Callable< Void > > tasks )
+		{
+			final Cursor< Cell< B > > cursor = cellImg.getCells().cursor();
+			while ( cursor.hasNext() )
+			{
+				final Cell< B > cell = cursor.next();
+				final Object data = ( ( ArrayDataAccess< ? > ) cell.getData() ).getCurrentStorageArray();
+				final int[] dims = new int[ 3 ];
+				final long[] min = new long[ 3 ];
+				cell.dimensions( dims );
+				cell.min( min );
+				tasks.add( () -> {
+					readBlock( data, dims, min, timepointId, level, asFloat );
+					return null;
+				} );
+			}
+		}
+
+		/**
+		 * Add tasks reading {@code img} in slabs along Z, as deep as the hdf5
+		 * chunks, to {@code tasks}. Each slab is read into a temporary array
+		 * and copied into place.
+		 */
+		private void addSlabTasks( final ArrayImg< ?, ? > img, final int timepointId, final int level, final boolean asFloat, final List< Callable< Void > > tasks )
+		{
+			final Object data = ( ( ArrayDataAccess< ? > ) img.update( null ) ).getCurrentStorageArray();
+			final int[] dims = Intervals.dimensionsAsIntArray( img );
+			final int slabDepth = mipmapInfo.getSubdivisions()[ level ][ 2 ];
+			if ( dims[ 2 ] <= slabDepth )
+			{
+				tasks.add( () -> {
+					readBlock( data, dims, new long[ 3 ], timepointId, level, asFloat );
+					return null;
+				} );
+				return;
+			}
+
+			final int planeSize = dims[ 0 ] * dims[ 1 ];
+			for ( int z = 0; z < dims[ 2 ]; z += slabDepth )
+			{
+				final int[] slabDims = new int[] { dims[ 0 ], dims[ 1 ], Math.min( slabDepth, dims[ 2 ] - z ) };
+				final long[] slabMin = new long[] { 0, 0, z };
+				final int offset = z * planeSize;
+				tasks.add( () -> {
+					final int size = planeSize * slabDims[ 2 ];
+					final Object slab = Array.newInstance( data.getClass().getComponentType(), size );
+					readBlock( slab, slabDims, slabMin, timepointId, level, asFloat );
+					System.arraycopy( slab, 0, data, offset, size );
+					return null;
+				} );
+			}
+		}
+
+		/**
+		 * Read the block at {@code min} of size {@code dims} into the
+		 * primitive array {@code data}.
+		 */
+		private void readBlock( final Object data, final int[] dims, final long[] min, final int timepointId, final int level, final boolean asFloat ) throws InterruptedException
+		{
+			if ( asFloat )
+				dataType.readBlockAsFloat( hdf5Access, timepointId, setupId, level, dims, min, ( float[] ) data );
+			else
+				dataType.readBlock( hdf5Access, timepointId, setupId, level, dims, min, data );
 		}
 
 		private int[] computeCellDimensions( final long[] dimsLong, final int[] chunkSize )
@@ -499,7 +971,7 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 		}
 
 		@Override
-		public RandomAccessibleInterval< UnsignedShortType > getImage( final int timepointId, final int level, final ImgLoaderHint... hints )
+		public RandomAccessibleInterval< T > getImage( final int timepointId, final int level, final ImgLoaderHint... hints )
 		{
 			if ( Arrays.asList( hints ).contains( ImgLoaderHints.LOAD_COMPLETELY ) )
 				return loadImageCompletely( timepointId, level );
@@ -508,7 +980,7 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 		}
 
 		@Override
-		public RandomAccessibleInterval< VolatileUnsignedShortType > getVolatileImage( final int timepointId, final int level, final ImgLoaderHint... hints )
+		public RandomAccessibleInterval< V > getVolatileImage( final int timepointId, final int level, final ImgLoaderHint... hints )
 		{
 			return prepareCachedImage( timepointId, level, LoadingStrategy.BUDGETED, volatileType );
 		}
@@ -516,9 +988,10 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 		/**
 		 * (Almost) create a {@link CellImg} backed by the cache.
 		 * The created image needs a {@link NativeImg#setLinkedType(net.imglib2.type.Type) linked type} before it can be used.
-		 * The type should be either {@link UnsignedShortType} and {@link VolatileUnsignedShortType}.
+		 * The type should be either {@code T} or {@code V} (for example
+		 * {@link UnsignedShortType} and {@link VolatileUnsignedShortType}).
 		 */
-		protected < T extends NativeType< T > > RandomAccessibleInterval< T > prepareCachedImage( final int timepointId, final int level, final LoadingStrategy loadingStrategy, final T type )
+		protected < S extends NativeType< S > > RandomAccessibleInterval< S > prepareCachedImage( final int timepointId, final int level, final LoadingStrategy loadingStrategy, final S type )
 		{
 			open();
 
@@ -531,14 +1004,64 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 				return getMissingDataImage( id, type );
 			}
 
-			final long[] dimensions = getDimsAndExistence( id ).getDimensions();
-			final int[] cellDimensions = mipmapInfo.getSubdivisions()[ level ];
-			final CellGrid grid = new CellGrid( dimensions, cellDimensions );
+			final CellGrid grid = getCellGrid( id );
 
-			final int priority = mipmapInfo.getMaxLevel() - level;
+			final int priority = Math.min( mipmapInfo.getMaxLevel() - level, maxNumLevels - 1 );
 			final CacheHints cacheHints = new CacheHints( loadingStrategy, priority, false );
 
-			return cache.createImg( grid, timepointId, setupId, level, cacheHints, shortLoader, type );
+			return cache.createImg( grid, timepointId, setupId, level, cacheHints, loader, type );
+		}
+
+		/**
+		 * Get the cell grid of cached images of the given (existing) image.
+		 * Cells are hdf5 chunks, or blocks of several chunks if a cache cell
+		 * size is set for the level (see {@link Prefs#hdf5CacheCellSizes()}).
+		 */
+		private CellGrid getCellGrid( final ViewLevelId id )
+		{
+			final long[] dimensions = getDimsAndExistence( id ).getDimensions();
+			final int[] chunkSize = mipmapInfo.getSubdivisions()[ id.getLevel() ];
+			final int targetSize = cacheCellSizes[ Math.min( id.getLevel(), cacheCellSizes.length - 1 ) ];
+			final int[] cellDimensions = targetSize > 0
+					? aggregateChunks( dimensions, chunkSize, targetSize )
+					: chunkSize;
+			return new CellGrid( dimensions, cellDimensions );
+		}
+
+		/**
+		 * Read the voxels in a (small) interval, for example to probe values
+		 * at a few positions. Cells that are in the cache are used, other
+		 * voxels are read directly from the hdf5 file, without loading
+		 * complete cells. See {@link VolatileGlobalCellCache#readRange}.
+		 *
+		 * @param interval
+		 *            the interval to read, clipped to the image.
+		 * @return the voxels in {@code interval}, or {@code null} if the
+		 *         image does not exist or does not intersect the interval.
+		 */
+		@Override
+		public RandomAccessibleInterval< T > readRange( final int timepointId, final int level, final Interval interval ) throws InterruptedException
+		{
+			open();
+
+			final ViewLevelId id = new ViewLevelId( timepointId, setupId, level );
+			if ( ! existsImageData( id ) )
+				return null;
+
+			final CellGrid grid = getCellGrid( id );
+			final Interval clipped = Intervals.intersect( interval, new FinalInterval( grid.getImgDimensions() ) );
+			if ( Intervals.isEmpty( clipped ) )
+				return null;
+
+			final int n = clipped.numDimensions();
+			final long[] min = new long[ n ];
+			final int[] dimensions = new int[ n ];
+			for ( int d = 0; d < n; ++d )
+			{
+				min[ d ] = clipped.min( d );
+				dimensions[ d ] = ( int ) clipped.dimension( d );
+			}
+			return cache.readRange( grid, timepointId, setupId, level, loader, type, min, dimensions );
 		}
 
 		/**
@@ -547,7 +1070,7 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 		 * {@link #getDimsAndExistence(ViewLevelId)}) then use that. Otherwise
 		 * create a 1x1x1 image.
 		 */
-		protected < T > RandomAccessibleInterval< T > getMissingDataImage( final ViewLevelId id, final T constant )
+		protected < S > RandomAccessibleInterval< S > getMissingDataImage( final ViewLevelId id, final S constant )
 		{
 			final long[] d = getDimsAndExistence( id ).getDimensions();
 			return Views.interval( new ConstantRandomAccessible<>( constant, 3 ), new FinalInterval( d ) );
@@ -562,31 +1085,32 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 		@Override
 		public RandomAccessibleInterval< FloatType > getFloatImage( final int timepointId, final int level, final boolean normalize, final ImgLoaderHint... hints )
 		{
-			final RandomAccessibleInterval< UnsignedShortType > ushortImg = getImage( timepointId, level, hints );
+			if ( Arrays.asList( hints ).contains( ImgLoaderHints.LOAD_COMPLETELY ) )
+			{
+				open();
+
+				// read directly into float img, converting while reading
+				final ViewLevelId id = new ViewLevelId( timepointId, setupId, level );
+				if ( existsImageData( id ) )
+				{
+					final Img< FloatType > floatImg = createCompleteImg( getDimsAndExistence( id ).getDimensions(), level, new FloatType() );
+					readCompletely( floatImg, timepointId, level, true );
+					if ( normalize )
+						// normalize the image to 0...1
+						normalize( floatImg );
+					return floatImg;
+				}
+			}
+
+			final RandomAccessibleInterval< T > img = getImage( timepointId, level, hints );
 
-			// copy unsigned short img to float img
+			// copy img to float img
 
 			// create float img
-			final FloatType f = new FloatType();
-			final ImgFactory< FloatType > imgFactory;
-			if ( Intervals.numElements( ushortImg ) <= Integer.MAX_VALUE )
-			{
-				imgFactory = new ArrayImgFactory<>();
-			}
-			else
-			{
-				final long[] dimsLong = new long[ ushortImg.numDimensions() ];
-				ushortImg.dimensions( dimsLong );
-				final int[] cellDimensions = computeCellDimensions(
-						dimsLong,
-						mipmapInfo.getSubdivisions()[ level ] );
-				imgFactory = new CellImgFactory<>( cellDimensions );
-			}
-			final Img< FloatType > floatImg = imgFactory.create( ushortImg, f );
+			final Img< FloatType > floatImg = createCompleteImg( Intervals.dimensionsAsLongArray( img ), level, new FloatType() );
 
-			// set up executor service
+			// set up tasks on the shared executor service
 			final int numProcessors = Runtime.getRuntime().availableProcessors();
-			final ExecutorService taskExecutor = Executors.newFixedThreadPool( numProcessors );
 			final ArrayList< Callable< Void > > tasks = new ArrayList<>();
 
 			// set up all tasks
@@ -602,14 +1126,14 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 				// the last thread may has to run longer if the number of pixels cannot be divided by the number of threads
 				final long loopSize = ( portionID == numPortions - 1 ) ? threadChunkSize + threadChunkMod : threadChunkSize;
 
-				if ( Views.iterable( ushortImg ).iterationOrder().equals( floatImg.iterationOrder() ) )
+				if ( Views.iterable( img ).iterationOrder().equals( floatImg.iterationOrder() ) )
 				{
 					tasks.add( new Callable< Void >()
 					{
 						@Override
 						public Void call() throws Exception
 						{
-							final Cursor< UnsignedShortType > in = Views.iterable( ushortImg ).cursor();
+							final Cursor< T > in = Views.iterable( img ).cursor();
 							final Cursor< FloatType > out = floatImg.cursor();
 
 							in.jumpFwd( startPosition );
@@ -629,14 +1153,14 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 						@Override
 						public Void call() throws Exception
 						{
-							final Cursor< UnsignedShortType > in = Views.iterable( ushortImg ).localizingCursor();
+							final Cursor< T > in = Views.iterable( img ).localizingCursor();
 							final RandomAccess< FloatType > out = floatImg.randomAccess();
 
 							in.jumpFwd( startPosition );
 
 							for ( long j = 0; j < loopSize; ++j )
 							{
-								final UnsignedShortType vin = in.next();
+								final T vin = in.next();
 								out.setPosition( in );
 								out.get().set( vin.getRealFloat() );
 							}
@@ -649,13 +1173,14 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 
 			try
 			{
-				// invokeAll() returns when all tasks are complete
-				taskExecutor.invokeAll( tasks );
-				taskExecutor.shutdown();
+				runLoadingTasks( tasks );
 			}
 			catch ( final InterruptedException e )
 			{
-				return null;
+				Thread.currentThread().interrupt();
+				throw new RuntimeException( String.format(
+						"interrupted while converting timepoint %d setup %d level %d to float",
+						timepointId, setupId, level ), e );
 			}
 
 			if ( normalize )
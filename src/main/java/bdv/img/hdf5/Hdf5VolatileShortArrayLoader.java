@@ -48,6 +48,15 @@ public class Hdf5VolatileShortArrayLoader implements CacheArrayLoader< VolatileS
 		return new VolatileShortArray( array, true );
 	}
 
+	/**
+	 * Blocks of any size and offset can be read from hdf5.
+	 */
+	@Override
+	public VolatileShortArray loadRange( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	{
+		return loadArray( timepoint, setup, level, dimensions, min );
+	}
+
 	@Override
 	public int getBytesPerElement()
 	{
@@ -29,10 +29,35 @@
  */
 package bdv.img.hdf5;
 
+/**
+ * Read access to the image data and metadata of a bdv hdf5 file. The
+ * {@code read...MDArrayBlockWithOffset} methods read blocks of any size and
+ * offset, which need not be aligned to chunks.
+ */
 interface IHDF5Access
 {
 	public DimsAndExistence getDimsAndExistence( final ViewLevelId id );
 
+	/**
+	 * Get {@link DimsAndExistence} of levels {@code 0 ... numLevels-1} of the
+	 * given (timepoint, setup), all in one go (i.e., acquiring locks only
+	 * once).
+	 */
+	public DimsAndExistence[] getDimsAndExistence( final int timepoint, final int setup, final int numLevels );
+
+	/**
+	 * Read the bitmap of cells that were found to be empty (all zero) on
+	 * export, see {@link EmptyCellsArrayLoader}.
+	 *
+	 * @return bitmap as {@link java.util.BitSet#toLongArray()}, or
+	 *         {@code null} if no bitmap is stored for the given image.
+	 */
+	public long[] readEmptyCells( final ViewLevelId id );
+
+	public byte[] readByteMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException;
+
+	public byte[] readByteMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final byte[] dataBlock ) throws InterruptedException;
+
 	public short[] readShortMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException;
 
 	public short[] readShortMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final short[] dataBlock ) throws InterruptedException;
@@ -41,6 +66,10 @@ interface IHDF5Access
 
 	public float[] readShortMDArrayBlockWithOffsetAsFloat( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final float[] dataBlock ) throws InterruptedException;
 
+	public float[] readFloatMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException;
+
+	public float[] readFloatMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final float[] dataBlock ) throws InterruptedException;
+
 	public void closeAllDataSets();
 
 	public void close();
@@ -0,0 +1,341 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.hdf5;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ch.systemsx.cisd.hdf5.HDF5DataSetInformation;
+import ch.systemsx.cisd.hdf5.HDF5LinkInformation;
+import ch.systemsx.cisd.hdf5.HDF5ObjectType;
+import ch.systemsx.cisd.hdf5.HDF5StorageLayout;
+import ch.systemsx.cisd.hdf5.IHDF5Reader;
+
+/**
+ * Reads datasets with contiguous layout (which are never compressed) by
+ * copying directly from memory-mapped regions of the hdf5 file, without
+ * going through the hdf5 library. Reads from mapped datasets do not lock, so
+ * any number of threads can read concurrently.
+ *
+ * <p>
+ * The file offset of each dataset is resolved once, when it is first
+ * accessed. Datasets that are chunked, not allocated, or whose offset cannot
+ * be determined are read through the wrapped {@link HDF5AccessHack}. Data is
+ * assumed to be stored little-endian, as written by jhdf5 on all common
+ * platforms.
+ *
+ * <p>
+ * BDV writes contiguous datasets if {@link bdv.util.Prefs#hdf5ContiguousExport()}
+ * is set when exporting without compression.
+ */
+class MemoryMappedHDF5Access implements IHDF5Access
+{
+	private final HDF5AccessHack hdf5Access;
+
+	private final IHDF5Reader hdf5Reader;
+
+	private final File hdf5File;
+
+	private final ConcurrentHashMap< ViewLevelId, MappedDataSet > mappedDataSets = new ConcurrentHashMap<>();
+
+	/**
+	 * Marks datasets that are read through {@link #hdf5Access}.
+	 */
+	private static final MappedDataSet NOT_MAPPED = new MappedDataSet();
+
+	/**
+	 * @param hdf5Access
+	 *            used to resolve dataset offsets and to read datasets that
+	 *            cannot be mapped.
+	 * @param hdf5Reader
+	 *            the reader {@code hdf5Access} was created with.
+	 * @param hdf5File
+	 *            the file {@code hdf5Reader} was opened on. (Used to resolve
+	 *            external links to partition files.)
+	 */
+	public MemoryMappedHDF5Access( final HDF5AccessHack hdf5Access, final IHDF5Reader hdf5Reader, final File hdf5File )
+	{
+		this.hdf5Access = hdf5Access;
+		this.hdf5Reader = hdf5Reader;
+		this.hdf5File = hdf5File;
+	}
+
+	@Override
+	public DimsAndExistence getDimsAndExistence( final ViewLevelId id )
+	{
+		return hdf5Access.getDimsAndExistence( id );
+	}
+
+	@Override
+	public DimsAndExistence[] getDimsAndExistence( final int timepoint, final int setup, final int numLevels )
+	{
+		return hdf5Access.getDimsAndExistence( timepoint, setup, numLevels );
+	}
+
+	@Override
+	public long[] readEmptyCells( final ViewLevelId id )
+	{
+		return hdf5Access.readEmptyCells( id );
+	}
+
+	@Override
+	public byte[] readByteMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	{
+		final byte[] dataBlock = new byte[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
+		readByteMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min, dataBlock );
+		return dataBlock;
+	}
+
+	@Override
+	public byte[] readByteMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final byte[] dataBlock ) throws InterruptedException
+	{
+		final MappedDataSet dataset = getMappedDataSet( timepoint, setup, level );
+		if ( dataset.elementSize != 1 )
+			return hdf5Access.readByteMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min, dataBlock );
+
+		if ( Thread.interrupted() )
+			throw new InterruptedException();
+		for ( int z = 0, i = 0; z < dimensions[ 2 ]; ++z )
+			for ( int y = 0; y < dimensions[ 1 ]; ++y, i += dimensions[ 0 ] )
+				dataset.row( min, y, z ).get( dataBlock, i, dimensions[ 0 ] );
+		return dataBlock;
+	}
+
+	@Override
+	public short[] readShortMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	{
+		final short[] dataBlock = new short[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
+		readShortMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min, dataBlock );
+		return dataBlock;
+	}
+
+	@Override
+	public short[] readShortMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final short[] dataBlock ) throws InterruptedException
+	{
+		final MappedDataSet dataset = getMappedDataSet( timepoint, setup, level );
+		if ( dataset.elementSize != 2 )
+			return hdf5Access.readShortMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min, dataBlock );
+
+		if ( Thread.interrupted() )
+			throw new InterruptedException();
+		for ( int z = 0, i = 0; z < dimensions[ 2 ]; ++z )
+			for ( int y = 0; y < dimensions[ 1 ]; ++y, i += dimensions[ 0 ] )
+				dataset.row( min, y, z ).asShortBuffer().get( dataBlock, i, dimensions[ 0 ] );
+		return dataBlock;
+	}
+
+	@Override
+	public float[] readShortMDArrayBlockWithOffsetAsFloat( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	{
+		final float[] dataBlock = new float[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
+		readShortMDArrayBlockWithOffsetAsFloat( timepoint, setup, level, dimensions, min, dataBlock );
+		return dataBlock;
+	}
+
+	@Override
+	public float[] readShortMDArrayBlockWithOffsetAsFloat( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final float[] dataBlock ) throws InterruptedException
+	{
+		final MappedDataSet dataset = getMappedDataSet( timepoint, setup, level );
+		if ( dataset.elementSize != 2 )
+			return hdf5Access.readShortMDArrayBlockWithOffsetAsFloat( timepoint, setup, level, dimensions, min, dataBlock );
+
+		final short[] shorts = readShortMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min );
+		for ( int i = 0; i < shorts.length; ++i )
+			dataBlock[ i ] = shorts[ i ] & 0xffff;
+		return dataBlock;
+	}
+
+	@Override
+	public float[] readFloatMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	{
+		final float[] dataBlock = new float[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
+		readFloatMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min, dataBlock );
+		return dataBlock;
+	}
+
+	@Override
+	public float[] readFloatMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final float[] dataBlock ) throws InterruptedException
+	{
+		final MappedDataSet dataset = getMappedDataSet( timepoint, setup, level );
+		if ( dataset.elementSize != 4 )
+			return hdf5Access.readFloatMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min, dataBlock );
+
+		if ( Thread.interrupted() )
+			throw new InterruptedException();
+		for ( int z = 0, i = 0; z < dimensions[ 2 ]; ++z )
+			for ( int y = 0; y < dimensions[ 1 ]; ++y, i += dimensions[ 0 ] )
+				dataset.row( min, y, z ).asFloatBuffer().get( dataBlock, i, dimensions[ 0 ] );
+		return dataBlock;
+	}
+
+	@Override
+	public void closeAllDataSets()
+	{
+		// mapped regions are released when they are garbage-collected
+		mappedDataSets.clear();
+		hdf5Access.closeAllDataSets();
+	}
+
+	@Override
+	public void close()
+	{
+		mappedDataSets.clear();
+		hdf5Access.close();
+	}
+
+	private MappedDataSet getMappedDataSet( final int timepoint, final int setup, final int level )
+	{
+		return mappedDataSets.computeIfAbsent( new ViewLevelId( timepoint, setup, level ), this::tryMap );
+	}
+
+	private MappedDataSet tryMap( final ViewLevelId id )
+	{
+		// hdf5Reader is not thread-safe, use it under the same lock as hdf5Access
+		synchronized ( hdf5Access )
+		{
+			return tryMapLocked( id );
+		}
+	}
+
+	private MappedDataSet tryMapLocked( final ViewLevelId id )
+	{
+		try
+		{
+			final String path = Util.getCellsPath( id );
+			final HDF5DataSetInformation info = hdf5Reader.object().getDataSetInformation( path );
+			if ( info.getStorageLayout() != HDF5StorageLayout.CONTIGUOUS )
+				return NOT_MAPPED;
+			final long offset = hdf5Access.getContiguousDataOffset( id );
+			if ( offset < 0 )
+				return NOT_MAPPED;
+			final File file = getDataFile( path );
+			if ( file == null )
+				return NOT_MAPPED;
+			return new MappedDataSet( file, offset, Util.reorder( info.getDimensions() ), info.getTypeInformation().getElementSize() );
+		}
+		catch ( final Exception e )
+		{
+			return NOT_MAPPED;
+		}
+	}
+
+	/**
+	 * Get the file that contains the data of the dataset at {@code path}. This
+	 * is {@link #hdf5File}, unless {@code path} is an external link into a
+	 * partition file.
+	 */
+	private File getDataFile( final String path )
+	{
+		if ( hdf5File == null )
+			return null;
+		final HDF5LinkInformation link = hdf5Reader.object().getLinkInformation( path );
+		if ( link.getType() != HDF5ObjectType.EXTERNAL_LINK )
+			return hdf5File;
+		final String fileName = link.tryGetExternalFileName();
+		if ( fileName == null )
+			return null;
+		final File file = new File( fileName );
+		return file.isAbsolute() ? file : new File( hdf5File.getParentFile(), fileName );
+	}
+
+	/**
+	 * A dataset with contiguous layout, mapped into memory in segments of
+	 * {@code 2^SEGMENT_BITS} bytes. Each segment overlaps the next one by a
+	 * row (along X) of the dataset, such that every row is contained in the
+	 * segment where it starts.
+	 */
+	private static class MappedDataSet
+	{
+		private static final int SEGMENT_BITS = 30;
+
+		private static final long SEGMENT_MASK = ( 1L << SEGMENT_BITS ) - 1;
+
+		final int elementSize;
+
+		private final long[] dimensions;
+
+		private final long offset;
+
+		private final MappedByteBuffer[] segments;
+
+		/**
+		 * Create the {@link MemoryMappedHDF5Access#NOT_MAPPED} marker.
+		 */
+		MappedDataSet()
+		{
+			elementSize = 0;
+			dimensions = null;
+			offset = 0;
+			segments = null;
+		}
+
+		MappedDataSet( final File file, final long offset, final long[] dimensions, final int elementSize ) throws IOException
+		{
+			this.offset = offset;
+			this.dimensions = dimensions;
+			this.elementSize = elementSize;
+
+			final long size = dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] * elementSize;
+			final long rowSize = dimensions[ 0 ] * elementSize;
+			final int numSegments = ( int ) ( ( size + SEGMENT_MASK ) >> SEGMENT_BITS );
+			segments = new MappedByteBuffer[ numSegments ];
+			try ( final RandomAccessFile raf = new RandomAccessFile( file, "r" ) )
+			{
+				final FileChannel channel = raf.getChannel();
+				for ( int i = 0; i < numSegments; ++i )
+				{
+					final long start = ( long ) i << SEGMENT_BITS;
+					final long length = Math.min( size - start, ( 1L << SEGMENT_BITS ) + rowSize );
+					segments[ i ] = channel.map( MapMode.READ_ONLY, offset + start, length );
+				}
+			}
+		}
+
+		/**
+		 * Get a buffer positioned at the start of the row (along X) at the
+		 * given offset from {@code min}.
+		 */
+		ByteBuffer row( final long[] min, final int y, final int z )
+		{
+			final long index = ( ( min[ 2 ] + z ) * dimensions[ 1 ] + min[ 1 ] + y ) * dimensions[ 0 ] + min[ 0 ];
+			final long position = index * elementSize;
+			final ByteBuffer buffer = segments[ ( int ) ( position >> SEGMENT_BITS ) ].duplicate();
+			buffer.position( ( int ) ( position & SEGMENT_MASK ) );
+			return buffer.slice().order( ByteOrder.LITTLE_ENDIAN );
+		}
+	}
+}
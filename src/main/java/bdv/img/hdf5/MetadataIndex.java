@@ -0,0 +1,231 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.hdf5;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Sidecar file next to a bdv hdf5 file that stores the metadata which
+ * {@link Hdf5ImageLoader} otherwise reads from the hdf5 file on opening: the
+ * mipmap description and {@link DataTypes.DataType} of every setup, and the
+ * {@link DimsAndExistence} of every (timepoint, setup, level).
+ * <p>
+ * The index records length and modification time of the hdf5 file and its
+ * partition files. It is ignored if any of them changed.
+ */
+class MetadataIndex
+{
+	private static final int MAGIC = 0x42445649; // "BDVI"
+
+	private static final int VERSION = 1;
+
+	static class SetupMetadata
+	{
+		final double[][] resolutions;
+
+		final int[][] subdivisions;
+
+		final String dataTypeName;
+
+		SetupMetadata( final double[][] resolutions, final int[][] subdivisions, final String dataTypeName )
+		{
+			this.resolutions = resolutions;
+			this.subdivisions = subdivisions;
+			this.dataTypeName = dataTypeName;
+		}
+	}
+
+	final Map< Integer, SetupMetadata > setups;
+
+	final Map< ViewLevelId, DimsAndExistence > dimsAndExistence;
+
+	MetadataIndex( final Map< Integer, SetupMetadata > setups, final Map< ViewLevelId, DimsAndExistence > dimsAndExistence )
+	{
+		this.setups = setups;
+		this.dimsAndExistence = dimsAndExistence;
+	}
+
+	/**
+	 * @return the maximum number of mipmap levels of any setup.
+	 */
+	int getMaxNumLevels()
+	{
+		int maxNumLevels = 0;
+		for ( final SetupMetadata setup : setups.values() )
+			maxNumLevels = Math.max( maxNumLevels, setup.resolutions.length );
+		return maxNumLevels;
+	}
+
+	static File getIndexFile( final File hdf5File )
+	{
+		return new File( hdf5File.getPath() + ".index" );
+	}
+
+	/**
+	 * Read the index for {@code files.get(0)}.
+	 *
+	 * @param files
+	 *            the hdf5 file, followed by its partition files.
+	 * @return the index, or {@code null} if it does not exist, cannot be
+	 *         read, or is out of date.
+	 */
+	static MetadataIndex read( final List< File > files )
+	{
+		final File indexFile = getIndexFile( files.get( 0 ) );
+		if ( !indexFile.isFile() )
+			return null;
+
+		try ( final DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( indexFile ) ) ) )
+		{
+			if ( in.readInt() != MAGIC || in.readInt() != VERSION )
+				return null;
+
+			final int numFiles = in.readInt();
+			if ( numFiles != files.size() )
+				return null;
+			for ( final File file : files )
+				if ( in.readLong() != file.length() || in.readLong() != file.lastModified() )
+					return null;
+
+			final int numSetups = in.readInt();
+			final HashMap< Integer, SetupMetadata > setups = new HashMap<>();
+			for ( int i = 0; i < numSetups; ++i )
+			{
+				final int setupId = in.readInt();
+				final String dataTypeName = in.readUTF();
+				final int numLevels = in.readInt();
+				final double[][] resolutions = new double[ numLevels ][ 3 ];
+				final int[][] subdivisions = new int[ numLevels ][ 3 ];
+				for ( int l = 0; l < numLevels; ++l )
+					for ( int d = 0; d < 3; ++d )
+						resolutions[ l ][ d ] = in.readDouble();
+				for ( int l = 0; l < numLevels; ++l )
+					for ( int d = 0; d < 3; ++d )
+						subdivisions[ l ][ d ] = in.readInt();
+				setups.put( setupId, new SetupMetadata( resolutions, subdivisions, dataTypeName ) );
+			}
+
+			final int numViewLevels = in.readInt();
+			final HashMap< ViewLevelId, DimsAndExistence > dimsAndExistence = new HashMap<>();
+			for ( int i = 0; i < numViewLevels; ++i )
+			{
+				final ViewLevelId id = new ViewLevelId( in.readInt(), in.readInt(), in.readInt() );
+				final boolean exists = in.readBoolean();
+				final long[] dimensions = new long[] { in.readLong(), in.readLong(), in.readLong() };
+				dimsAndExistence.put( id, new DimsAndExistence( dimensions, exists ) );
+			}
+
+			return new MetadataIndex( setups, dimsAndExistence );
+		}
+		catch ( final IOException e )
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Write the index for {@code files.get(0)}. The index is written to a
+	 * temporary file first, which is then renamed, such that readers never
+	 * see a partially written index. Failures (e.g., because the directory is
+	 * not writable) are ignored.
+	 *
+	 * @param files
+	 *            the hdf5 file, followed by its partition files.
+	 */
+	void write( final List< File > files )
+	{
+		final File indexFile = getIndexFile( files.get( 0 ) );
+		final File tmpFile = new File( indexFile.getPath() + ".tmp" );
+		try
+		{
+			try ( final DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tmpFile ) ) ) )
+			{
+				out.writeInt( MAGIC );
+				out.writeInt( VERSION );
+
+				out.writeInt( files.size() );
+				for ( final File file : files )
+				{
+					out.writeLong( file.length() );
+					out.writeLong( file.lastModified() );
+				}
+
+				out.writeInt( setups.size() );
+				for ( final Entry< Integer, SetupMetadata > entry : setups.entrySet() )
+				{
+					final SetupMetadata setup = entry.getValue();
+					out.writeInt( entry.getKey() );
+					out.writeUTF( setup.dataTypeName );
+					out.writeInt( setup.resolutions.length );
+					for ( final double[] r : setup.resolutions )
+						for ( int d = 0; d < 3; ++d )
+							out.writeDouble( r[ d ] );
+					for ( final int[] s : setup.subdivisions )
+						for ( int d = 0; d < 3; ++d )
+							out.writeInt( s[ d ] );
+				}
+
+				out.writeInt( dimsAndExistence.size() );
+				for ( final Entry< ViewLevelId, DimsAndExistence > entry : dimsAndExistence.entrySet() )
+				{
+					final ViewLevelId id = entry.getKey();
+					final DimsAndExistence dims = entry.getValue();
+					out.writeInt( id.getTimePointId() );
+					out.writeInt( id.getViewSetupId() );
+					out.writeInt( id.getLevel() );
+					out.writeBoolean( dims.exists() );
+					for ( int d = 0; d < 3; ++d )
+						out.writeLong( dims.getDimensions()[ d ] );
+				}
+			}
+			if ( !tmpFile.renameTo( indexFile ) )
+			{
+				indexFile.delete();
+				if ( !tmpFile.renameTo( indexFile ) )
+					tmpFile.delete();
+			}
+		}
+		catch ( final IOException e )
+		{
+			tmpFile.delete();
+		}
+	}
+}
@@ -35,12 +35,26 @@ public class Util
 {
 	final static private String groupFormatString = "t%05d/s%02d/%d";
 
+	final static private String viewGroupFormatString = "t%05d/s%02d";
+
 	final static private String cellsFormatString = "%s/cells";
 
+	final static private String emptyCellsFormatString = "%s/empty";
+
+	final static private String setupFormatString = "s%02d";
+
 	final static private String resolutionsFormatString = "s%02d/resolutions";
 
 	final static private String subdivisionsFormatString = "s%02d/subdivisions";
 
+	/**
+	 * Get the path of the group containing all mipmap levels of a view.
+	 */
+	public static String getViewGroupPath( final ViewId viewId )
+	{
+		return String.format( viewGroupFormatString, viewId.getTimePointId(), viewId.getViewSetupId() );
+	}
+
 	public static String getGroupPath( final int timepointId, final int setupId, final int level )
 	{
 		return String.format( groupFormatString, timepointId, setupId, level );
@@ -71,6 +85,21 @@ public class Util
 		return String.format( cellsFormatString, getGroupPath( viewLevelId ) );
 	}
 
+	public static String getEmptyCellsPath( final ViewId viewId, final int level )
+	{
+		return String.format( emptyCellsFormatString, getGroupPath( viewId, level ) );
+	}
+
+	public static String getEmptyCellsPath( final ViewLevelId viewLevelId )
+	{
+		return String.format( emptyCellsFormatString, getGroupPath( viewLevelId ) );
+	}
+
+	public static String getSetupPath( final int setupId )
+	{
+		return String.format( setupFormatString, setupId );
+	}
+
 	public static String getResolutionsPath( final int setupId )
 	{
 		return String.format( resolutionsFormatString, setupId );
@@ -72,6 +72,33 @@ public class MergeExample
 			final List< ViewTransform > transforms,
 			final String outputXmlFilename )
 					throws SpimDataException
+	{
+		mergeHdf5Views( inputFilenames, transforms, outputXmlFilename, false );
+	}
+
+	/**
+	 * Merge multiple HDF5 datasets, where each dataset contains the same
+	 * timepoints but different views. No image data is copied.
+	 *
+	 * @param inputFilenames
+	 * 	xml file names for input datasets
+	 * @param transforms
+	 *  transforms to apply to each input dataset
+	 * @param outputXmlFilename
+	 * 	xml filename into which to store the merged dataset. An HDF5 link master file with the same basename and extension ".h5" will be created that links into the source hdf5s.
+	 * @param linkViews
+	 *  if true, the master file links every view group with one external link
+	 *  (see {@link WriteSequenceToHdf5#writeHdf5ViewLinkFile(mpicbg.spim.data.generic.sequence.AbstractSequenceDescription, Map, List, File)}),
+	 *  and the partitions are not listed in the xml. The merged dataset is then
+	 *  opened through the master file only.
+	 * @throws SpimDataException
+	 */
+	public static void mergeHdf5Views(
+			final List< String > inputFilenames,
+			final List< ViewTransform > transforms,
+			final String outputXmlFilename,
+			final boolean linkViews )
+					throws SpimDataException
 	{
 		final XmlIoSpimDataMinimal io = new XmlIoSpimDataMinimal();
 
@@ -133,7 +160,13 @@ public class MergeExample
 		final Hdf5ImageLoader imgLoader = new Hdf5ImageLoader( h5File, newPartitions, seq, false );
 		seq.setImgLoader( imgLoader );
 
-		WriteSequenceToHdf5.writeHdf5PartitionLinkFile( seq, newMipmapInfos );
+		if ( linkViews )
+		{
+			WriteSequenceToHdf5.writeHdf5ViewLinkFile( seq, newMipmapInfos, newPartitions, h5File );
+			seq.setImgLoader( new Hdf5ImageLoader( h5File, null, seq, false ) );
+		}
+		else
+			WriteSequenceToHdf5.writeHdf5PartitionLinkFile( seq, newMipmapInfos );
 		io.save( spimData, xmlFilename );
 	}
 }
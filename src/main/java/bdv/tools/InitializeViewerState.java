@@ -31,6 +31,7 @@ package bdv.tools;
 
 import java.awt.Dimension;
 
+import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.histogram.DiscreteFrequencyDistribution;
@@ -38,11 +39,13 @@ import net.imglib2.histogram.Histogram1d;
 import net.imglib2.histogram.Real1dBinMapper;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.util.Intervals;
 import net.imglib2.util.LinAlgHelpers;
 import net.imglib2.view.Views;
 import bdv.tools.brightness.MinMaxGroup;
 import bdv.tools.brightness.SetupAssignments;
 import bdv.util.Affine3DHelpers;
+import bdv.viewer.RangeReadableSource;
 import bdv.viewer.Source;
 import bdv.viewer.ViewerPanel;
 import bdv.viewer.state.ViewerState;
@@ -178,12 +181,35 @@ public class InitializeViewerState
 			return;
 		if ( !UnsignedShortType.class.isInstance( source.getType() ) )
 			return;
+		final int level = source.getNumMipmapLevels() - 1;
 		@SuppressWarnings( "unchecked" )
-		final RandomAccessibleInterval< UnsignedShortType > img = ( RandomAccessibleInterval< UnsignedShortType > ) source.getSource( timepoint, source.getNumMipmapLevels() - 1 );
+		final RandomAccessibleInterval< UnsignedShortType > img = ( RandomAccessibleInterval< UnsignedShortType > ) source.getSource( timepoint, level );
 		final long z = ( img.min( 2 ) + img.max( 2 ) + 1 ) / 2;
 
+		// read just the slice if possible, instead of the cells containing it
+		RandomAccessibleInterval< UnsignedShortType > slice = null;
+		if ( source instanceof RangeReadableSource )
+		{
+			final long[] min = Intervals.minAsLongArray( img );
+			final long[] max = Intervals.maxAsLongArray( img );
+			min[ 2 ] = max[ 2 ] = z;
+			try
+			{
+				@SuppressWarnings( "unchecked" )
+				final RandomAccessibleInterval< UnsignedShortType > range = ( ( RangeReadableSource< UnsignedShortType > ) source ).readRange( timepoint, level, new FinalInterval( min, max ) );
+				slice = range;
+			}
+			catch ( final InterruptedException e )
+			{
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		if ( slice == null )
+			slice = img;
+
 		final int numBins = 6535;
-		final Histogram1d< UnsignedShortType > histogram = new Histogram1d<>( Views.iterable( Views.hyperSlice( img, 2, z ) ), new Real1dBinMapper< UnsignedShortType >( 0, 65535, numBins, false ) );
+		final Histogram1d< UnsignedShortType > histogram = new Histogram1d<>( Views.iterable( Views.hyperSlice( slice, 2, z ) ), new Real1dBinMapper< UnsignedShortType >( 0, 65535, numBins, false ) );
 		final DiscreteFrequencyDistribution dfd = histogram.dfd();
 		final long[] bin = new long[] { 0 };
 		double cumulative = 0;
@@ -0,0 +1,368 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.tools;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import bdv.cache.CacheControl;
+import bdv.export.ProgressWriter;
+import bdv.viewer.render.AccumulateProjectorFactory;
+import bdv.viewer.render.OffscreenRenderer;
+import bdv.viewer.state.ViewerState;
+import net.imglib2.type.numeric.ARGBType;
+
+/**
+ * Renders a sequence of {@link ViewerState ViewerStates} (movie frames) and
+ * hands the images to a {@link FrameWriter}.
+ *
+ * <p>
+ * Several frames are rendered at once, each by its own
+ * {@link OffscreenRenderer}, sharing a pool of rendering threads. If volatile
+ * sources are used, the data of upcoming frames is requested before the
+ * current frame is rendered, so that loading overlaps with rendering. Frames
+ * that are still incomplete after a timeout are finished by a second pass that
+ * loads the missing data blocking, so every written frame is complete. The
+ * renderers share the {@link CacheControl}, and the fetch queues are only
+ * reset when all renderers have started a new pass (see
+ * {@link FrameBookkeeping}). Rendered frames are written on a separate pool of
+ * I/O threads. The number of frames
+ * waiting to be written is bounded, so that fast rendering does not pile up
+ * images in memory.
+ */
+public class MovieRenderer
+{
+	/**
+	 * Writes a rendered frame. Called concurrently from the I/O threads.
+	 */
+	public interface FrameWriter
+	{
+		public void write( int frameIndex, BufferedImage image ) throws IOException;
+	}
+
+	/**
+	 * Paints on top of a rendered frame (e.g., a scale bar). Called
+	 * concurrently from the frame rendering threads.
+	 */
+	public interface FrameOverlay
+	{
+		public void paint( ViewerState state, Graphics2D g );
+	}
+
+	private final int width;
+
+	private final int height;
+
+	private final int numParallelFrames;
+
+	private final int numRenderingThreads;
+
+	private final int numIoThreads;
+
+	private final boolean useVolatileIfAvailable;
+
+	private final long frameTimeoutMillis;
+
+	private final AccumulateProjectorFactory< ARGBType > accumulateProjectorFactory;
+
+	private final CacheControl cacheControl;
+
+	/**
+	 * @param width
+	 *            width of rendered frames.
+	 * @param height
+	 *            height of rendered frames.
+	 * @param numParallelFrames
+	 *            how many frames to render at once.
+	 * @param numRenderingThreads
+	 *            how many threads to use for rendering (shared by all frames).
+	 * @param numIoThreads
+	 *            how many threads to use for writing frames.
+	 * @param useVolatileIfAvailable
+	 *            whether volatile versions of sources should be used if
+	 *            available. This should be {@code true} if the sources are
+	 *            backed by a cache that is controlled by {@code cacheControl}.
+	 * @param frameTimeoutMillis
+	 *            how long to wait for missing data of a frame to be loaded in
+	 *            the background. If the time runs out, the frame is rendered
+	 *            again, loading the missing data blocking, and a note is
+	 *            printed to the {@link ProgressWriter}.
+	 * @param accumulateProjectorFactory
+	 *            can be used to customize how sources are combined.
+	 * @param cacheControl
+	 *            the cache controls IO budgeting and fetcher queue.
+	 */
+	public MovieRenderer(
+			final int width,
+			final int height,
+			final int numParallelFrames,
+			final int numRenderingThreads,
+			final int numIoThreads,
+			final boolean useVolatileIfAvailable,
+			final long frameTimeoutMillis,
+			final AccumulateProjectorFactory< ARGBType > accumulateProjectorFactory,
+			final CacheControl cacheControl )
+	{
+		this.width = width;
+		this.height = height;
+		this.numParallelFrames = Math.max( 1, numParallelFrames );
+		this.numRenderingThreads = Math.max( 1, numRenderingThreads );
+		this.numIoThreads = Math.max( 1, numIoThreads );
+		this.useVolatileIfAvailable = useVolatileIfAvailable;
+		this.frameTimeoutMillis = frameTimeoutMillis;
+		this.accumulateProjectorFactory = accumulateProjectorFactory;
+		this.cacheControl = cacheControl;
+	}
+
+	/**
+	 * Render the given frames and write them. Blocks until all frames are
+	 * written.
+	 *
+	 * @param frames
+	 *            the states to render, one per frame. Each frame should be a
+	 *            separate {@link ViewerState#copy() copy}, and must not be
+	 *            modified while rendering.
+	 * @param overlay
+	 *            painted on top of each frame, may be {@code null}.
+	 * @param writer
+	 *            writes rendered frames.
+	 * @param progressWriter
+	 *            receives progress updates, may be {@code null}.
+	 * @throws IOException
+	 *             if writing a frame failed, or a frame could not be
+	 *             completed (because sources only provide volatile data).
+	 * @throws InterruptedException
+	 */
+	public void render(
+			final List< ViewerState > frames,
+			final FrameOverlay overlay,
+			final FrameWriter writer,
+			final ProgressWriter progressWriter ) throws IOException, InterruptedException
+	{
+		final int numFrames = frames.size();
+		final ExecutorService renderingExecutorService = Executors.newFixedThreadPool( numRenderingThreads );
+		final ExecutorService frameExecutorService = Executors.newFixedThreadPool( numParallelFrames );
+		final ExecutorService ioExecutorService = Executors.newFixedThreadPool( numIoThreads );
+		final Semaphore pendingWrites = new Semaphore( 2 * numIoThreads );
+		final AtomicInteger nextFrame = new AtomicInteger();
+		final AtomicInteger numWritten = new AtomicInteger();
+		final AtomicInteger numBlocking = new AtomicInteger();
+		final AtomicReference< Exception > failure = new AtomicReference<>();
+		final int numRenderingThreadsPerFrame = Math.max( 1, numRenderingThreads / numParallelFrames );
+		final FrameBookkeeping bookkeeping = new FrameBookkeeping( cacheControl, numParallelFrames );
+
+		if ( progressWriter != null )
+			progressWriter.setProgress( 0 );
+		try
+		{
+			for ( int i = 0; i < numParallelFrames; ++i )
+			{
+				final CacheControl frameCacheControl = bookkeeping.getCacheControl( i );
+				final OffscreenRenderer renderer = new OffscreenRenderer(
+						width, height, numRenderingThreadsPerFrame, renderingExecutorService,
+						useVolatileIfAvailable, accumulateProjectorFactory, frameCacheControl );
+				final int rendererIndex = i;
+				frameExecutorService.submit( () -> {
+					// renders timed-out frames, loading data blocking
+					OffscreenRenderer blockingRenderer = null;
+					try
+					{
+						for ( int f = nextFrame.getAndIncrement(); f < numFrames && failure.get() == null; f = nextFrame.getAndIncrement() )
+						{
+							if ( useVolatileIfAvailable && f + numParallelFrames < numFrames )
+								renderer.prefetch( frames.get( f + numParallelFrames ) );
+
+							final ViewerState state = frames.get( f );
+							BufferedImage bi = renderer.render( state, frameTimeoutMillis );
+							if ( !renderer.isComplete() )
+							{
+								if ( Thread.currentThread().isInterrupted() )
+									throw new InterruptedException();
+								if ( !useVolatileIfAvailable )
+									throw new IOException( String.format( "frame %d could not be completed", f ) );
+								if ( blockingRenderer == null )
+									blockingRenderer = new OffscreenRenderer(
+											width, height, numRenderingThreadsPerFrame, renderingExecutorService,
+											false, accumulateProjectorFactory, frameCacheControl );
+								bi = blockingRenderer.render( state, 0 );
+								if ( !blockingRenderer.isComplete() )
+									throw new IOException( String.format( "frame %d could not be completed", f ) );
+								numBlocking.incrementAndGet();
+							}
+							if ( overlay != null )
+							{
+								final Graphics2D g2 = bi.createGraphics();
+								g2.setClip( 0, 0, width, height );
+								overlay.paint( state, g2 );
+								g2.dispose();
+							}
+							final BufferedImage image = new BufferedImage( bi.getColorModel(), bi.copyData( null ), bi.isAlphaPremultiplied(), null );
+
+							pendingWrites.acquire();
+							final int frameIndex = f;
+							ioExecutorService.submit( () -> {
+								try
+								{
+									if ( failure.get() == null )
+										writer.write( frameIndex, image );
+									if ( progressWriter != null )
+										progressWriter.setProgress( ( double ) numWritten.incrementAndGet() / numFrames );
+								}
+								catch ( final Exception e )
+								{
+									failure.compareAndSet( null, e );
+								}
+								finally
+								{
+									pendingWrites.release();
+								}
+							} );
+						}
+					}
+					catch ( final Exception e )
+					{
+						failure.compareAndSet( null, e );
+					}
+					finally
+					{
+						bookkeeping.finished( rendererIndex );
+					}
+				} );
+			}
+			frameExecutorService.shutdown();
+			frameExecutorService.awaitTermination( Long.MAX_VALUE, TimeUnit.DAYS );
+			ioExecutorService.shutdown();
+			ioExecutorService.awaitTermination( Long.MAX_VALUE, TimeUnit.DAYS );
+		}
+		finally
+		{
+			frameExecutorService.shutdownNow();
+			ioExecutorService.shutdownNow();
+			renderingExecutorService.shutdown();
+		}
+
+		if ( progressWriter != null && numBlocking.get() > 0 )
+			progressWriter.out().printf( "%d of %d frames were incomplete after waiting %d ms for data, and were finished loading data blocking\n",
+					numBlocking.get(), numFrames, frameTimeoutMillis );
+
+		final Exception e = failure.get();
+		if ( e instanceof IOException )
+			throw ( IOException ) e;
+		else if ( e instanceof InterruptedException )
+			throw ( InterruptedException ) e;
+		else if ( e != null )
+			throw new RuntimeException( e );
+	}
+
+	/**
+	 * Frame bookkeeping for the renderers of one export. Every renderer
+	 * prepares the cache for the next frame before each pass it paints. If
+	 * this were forwarded to the shared {@link CacheControl} every time, each
+	 * renderer would move the pending requests of all others (and of the
+	 * viewer) to the prefetch queue. Instead, the shared cache is prepared for
+	 * the next frame only when every renderer that is still working has started
+	 * a new pass since the last time, i.e., once per round of passes.
+	 */
+	private static class FrameBookkeeping
+	{
+		private final CacheControl cacheControl;
+
+		private final boolean[] active;
+
+		private final boolean[] started;
+
+		private int numActive;
+
+		private int numStarted;
+
+		FrameBookkeeping( final CacheControl cacheControl, final int numRenderers )
+		{
+			this.cacheControl = cacheControl;
+			active = new boolean[ numRenderers ];
+			started = new boolean[ numRenderers ];
+			Arrays.fill( active, true );
+			numActive = numRenderers;
+			numStarted = 0;
+		}
+
+		/**
+		 * Get the {@link CacheControl} to be used by renderer {@code i}.
+		 */
+		CacheControl getCacheControl( final int i )
+		{
+			return () -> startPass( i );
+		}
+
+		/**
+		 * Renderer {@code i} has rendered all its frames.
+		 */
+		synchronized void finished( final int i )
+		{
+			if ( !active[ i ] )
+				return;
+			active[ i ] = false;
+			--numActive;
+			if ( started[ i ] )
+			{
+				started[ i ] = false;
+				--numStarted;
+			}
+			if ( numActive > 0 && numStarted >= numActive )
+				nextRound();
+		}
+
+		private synchronized void startPass( final int i )
+		{
+			if ( !started[ i ] )
+			{
+				started[ i ] = true;
+				++numStarted;
+			}
+			if ( numStarted >= numActive )
+				nextRound();
+		}
+
+		private void nextRound()
+		{
+			cacheControl.prepareNextFrame();
+			Arrays.fill( started, false );
+			numStarted = 0;
+		}
+	}
+}
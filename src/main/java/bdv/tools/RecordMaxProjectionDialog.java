@@ -37,7 +37,6 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.IOException;
 
@@ -48,6 +47,7 @@ import javax.swing.ActionMap;
 import javax.swing.BoxLayout;
 import javax.swing.InputMap;
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JComponent;
 import javax.swing.JDialog;
 import javax.swing.JFileChooser;
@@ -61,22 +61,15 @@ import javax.swing.WindowConstants;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
-import net.imglib2.Cursor;
-import net.imglib2.display.screenimage.awt.ARGBScreenImage;
-import net.imglib2.img.Img;
-import net.imglib2.img.array.ArrayImgs;
 import net.imglib2.realtransform.AffineTransform3D;
-import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.ui.OverlayRenderer;
-import net.imglib2.ui.PainterThread;
-import net.imglib2.ui.RenderTarget;
 import net.imglib2.util.LinAlgHelpers;
-import bdv.cache.CacheControl;
 import bdv.export.ProgressWriter;
 import bdv.util.Prefs;
 import bdv.viewer.ViewerPanel;
 import bdv.viewer.overlay.ScaleBarOverlayRenderer;
-import bdv.viewer.render.MultiResolutionRenderer;
+import bdv.viewer.render.OffscreenRenderer;
+import bdv.viewer.render.ProjectionRenderer;
 import bdv.viewer.state.ViewerState;
 
 public class RecordMaxProjectionDialog extends JDialog implements OverlayRenderer
@@ -103,6 +96,8 @@ public class RecordMaxProjectionDialog extends JDialog implements OverlayRendere
 
 	private final JSpinner spinnerNumSteps;
 
+	private final JComboBox< ProjectionRenderer.Mode > comboMode;
+
 	public RecordMaxProjectionDialog( final Frame owner, final ViewerPanel viewer, final ProgressWriter progressWriter )
 	{
 		super( owner, "record max projection movie", false );
@@ -170,6 +165,12 @@ public class RecordMaxProjectionDialog extends JDialog implements OverlayRendere
 		spinnerNumSteps.setModel( new SpinnerNumberModel( 10, 1, 10000, 1 ) );
 		numStepsPanel.add( spinnerNumSteps );
 
+		final JPanel modePanel = new JPanel();
+		boxes.add( modePanel );
+		modePanel.add( new JLabel( "projection" ) );
+		comboMode = new JComboBox<>( ProjectionRenderer.Mode.values() );
+		modePanel.add( comboMode );
+
 		final JPanel buttonsPanel = new JPanel();
 		boxes.add( buttonsPanel );
 		buttonsPanel.setLayout(new BorderLayout(0, 0));
@@ -240,6 +241,7 @@ public class RecordMaxProjectionDialog extends JDialog implements OverlayRendere
 				final int height = ( Integer ) spinnerHeight.getValue();
 				final double stepSize = ( Double ) spinnerStepSize.getValue();
 				final int numSteps = ( Integer ) spinnerNumSteps.getValue();
+				final ProjectionRenderer.Mode mode = ( ProjectionRenderer.Mode ) comboMode.getSelectedItem();
 				new Thread()
 				{
 					@Override
@@ -248,7 +250,7 @@ public class RecordMaxProjectionDialog extends JDialog implements OverlayRendere
 						try
 						{
 							recordButton.setEnabled( false );
-							recordMovie( width, height, minTimepointIndex, maxTimepointIndex, stepSize, numSteps, dir );
+							recordMovie( width, height, minTimepointIndex, maxTimepointIndex, stepSize, numSteps, mode, dir );
 							recordButton.setEnabled( true );
 						}
 						catch ( final Exception ex )
@@ -284,6 +286,11 @@ public class RecordMaxProjectionDialog extends JDialog implements OverlayRendere
 	 * @param stepSize in multiples of width of a source voxel.
 	 */
 	public void recordMovie( final int width, final int height, final int minTimepointIndex, final int maxTimepointIndex, final double stepSize, final int numSteps, final File dir ) throws IOException
+	{
+		recordMovie( width, height, minTimepointIndex, maxTimepointIndex, stepSize, numSteps, ProjectionRenderer.Mode.MAX, dir );
+	}
+
+	public void recordMovie( final int width, final int height, final int minTimepointIndex, final int maxTimepointIndex, final double stepSize, final int numSteps, final ProjectionRenderer.Mode mode, final File dir ) throws IOException
 	{
 		final ViewerState renderState = viewer.getState();
 		final int canvasW = viewer.getDisplay().getWidth();
@@ -291,13 +298,8 @@ public class RecordMaxProjectionDialog extends JDialog implements OverlayRendere
 
 		final AffineTransform3D tGV = new AffineTransform3D();
 		renderState.getViewerTransform( tGV );
-		tGV.set( tGV.get( 0, 3 ) - canvasW / 2, 0, 3 );
-		tGV.set( tGV.get( 1, 3 ) - canvasH / 2, 1, 3 );
-		tGV.scale( ( double ) width / canvasW );
-		tGV.set( tGV.get( 0, 3 ) + width / 2, 0, 3 );
-		tGV.set( tGV.get( 1, 3 ) + height / 2, 1, 3 );
-
-		final AffineTransform3D affine = new AffineTransform3D();
+		OffscreenRenderer.fitViewerTransform( tGV, canvasW, canvasH, width, height );
+		renderState.setViewerTransform( tGV );
 
 		// get voxel width transformed to current viewer coordinates
 		final AffineTransform3D tSV = new AffineTransform3D();
@@ -314,85 +316,34 @@ public class RecordMaxProjectionDialog extends JDialog implements OverlayRendere
 
 		final ScaleBarOverlayRenderer scalebar = Prefs.showScaleBarInMovie() ? new ScaleBarOverlayRenderer() : null;
 
-		class MyTarget implements RenderTarget
+		final ProjectionRenderer renderer = new ProjectionRenderer( width, height, Runtime.getRuntime().availableProcessors() );
+		try
 		{
-			final ARGBScreenImage accumulated;
-
-			public MyTarget()
+			progressWriter.setProgress( 0 );
+			for ( int timepoint = minTimepointIndex; timepoint <= maxTimepointIndex; ++timepoint )
 			{
-				accumulated = new ARGBScreenImage( width, height );
-			}
+				renderState.setCurrentTimepoint( timepoint );
+				final BufferedImage bi = renderer.render( renderState, dd * stepSize, numSteps, mode );
 
-			public void clear()
-			{
-				for ( final ARGBType acc : accumulated )
-					acc.setZero();
-			}
-
-			@Override
-			public BufferedImage setBufferedImage( final BufferedImage bufferedImage )
-			{
-				final Img< ARGBType > argbs = ArrayImgs.argbs( ( ( DataBufferInt ) bufferedImage.getData().getDataBuffer() ).getData(), width, height );
-				final Cursor< ARGBType > c = argbs.cursor();
-				for ( final ARGBType acc : accumulated )
+				if ( Prefs.showScaleBarInMovie() )
 				{
-					final int current = acc.get();
-					final int in = c.next().get();
-					acc.set( ARGBType.rgba(
-							Math.max( ARGBType.red( in ), ARGBType.red( current ) ),
-							Math.max( ARGBType.green( in ), ARGBType.green( current ) ),
-							Math.max( ARGBType.blue( in ), ARGBType.blue( current ) ),
-							Math.max( ARGBType.alpha( in ), ARGBType.alpha( current ) )	) );
+					final Graphics2D g2 = bi.createGraphics();
+					g2.setClip( 0, 0, width, height );
+					scalebar.setViewerState( renderState );
+					scalebar.paint( g2 );
 				}
-				return null;
-			}
-
-			@Override
-			public final int getWidth()
-			{
-				return width;
-			}
 
-			@Override
-			public int getHeight()
-			{
-				return height;
+				ImageIO.write( bi, "png", new File( String.format( "%s/img-%03d.png", dir, timepoint ) ) );
+				progressWriter.setProgress( ( double ) (timepoint - minTimepointIndex + 1) / (maxTimepointIndex - minTimepointIndex + 1) );
 			}
 		}
-		final MyTarget target = new MyTarget();
-		final MultiResolutionRenderer renderer = new MultiResolutionRenderer(
-				target, new PainterThread( null ), new double[] { 1 }, 0, false, 1, null, false,
-				viewer.getOptionValues().getAccumulateProjectorFactory(), new CacheControl.Dummy() );
-		progressWriter.setProgress( 0 );
-		for ( int timepoint = minTimepointIndex; timepoint <= maxTimepointIndex; ++timepoint )
+		catch ( final InterruptedException e )
 		{
-			target.clear();
-			renderState.setCurrentTimepoint( timepoint );
-
-			for ( int step = 0; step < numSteps; ++step )
-			{
-				affine.set(
-						1, 0, 0, 0,
-						0, 1, 0, 0,
-						0, 0, 1, -dd * stepSize * step );
-				affine.concatenate( tGV );
-				renderState.setViewerTransform( affine );
-				renderer.requestRepaint();
-				renderer.paint( renderState );
-			}
-
-			final BufferedImage bi = target.accumulated.image();
-
-			if ( Prefs.showScaleBarInMovie() )
-			{
-				final Graphics2D g2 = bi.createGraphics();
-				g2.setClip( 0, 0, width, height );
-				scalebar.setViewerState( renderState );
-				scalebar.paint( g2 );
-			}
-
-			ImageIO.write( bi, "png", new File( String.format( "%s/img-%03d.png", dir, timepoint ) ) );
-			progressWriter.setProgress( ( double ) (timepoint - minTimepointIndex + 1) / (maxTimepointIndex - minTimepointIndex + 1) );
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			renderer.shutdown();
 		}
 	}
 
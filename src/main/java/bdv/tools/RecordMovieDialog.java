@@ -32,13 +32,13 @@ package bdv.tools;
 import java.awt.BorderLayout;
 import java.awt.Frame;
 import java.awt.Graphics;
-import java.awt.Graphics2D;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.imageio.ImageIO;
 import javax.swing.AbstractAction;
@@ -60,22 +60,25 @@ import javax.swing.WindowConstants;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
-import bdv.cache.CacheControl;
 import bdv.export.ProgressWriter;
 import bdv.util.Prefs;
 import bdv.viewer.ViewerPanel;
 import bdv.viewer.overlay.ScaleBarOverlayRenderer;
-import bdv.viewer.render.MultiResolutionRenderer;
+import bdv.viewer.render.OffscreenRenderer;
 import bdv.viewer.state.ViewerState;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.ui.OverlayRenderer;
-import net.imglib2.ui.PainterThread;
-import net.imglib2.ui.RenderTarget;
 
 public class RecordMovieDialog extends JDialog implements OverlayRenderer
 {
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * How long to wait for the data of a movie frame to load in the
+	 * background, before loading the missing data blocking.
+	 */
+	private static final long FRAME_TIMEOUT_MILLIS = 60000;
+
 	private final ViewerPanel viewer;
 
 	private final int maxTimepoint;
@@ -261,59 +264,42 @@ public class RecordMovieDialog extends JDialog implements OverlayRenderer
 
 		final AffineTransform3D affine = new AffineTransform3D();
 		renderState.getViewerTransform( affine );
-		affine.set( affine.get( 0, 3 ) - canvasW / 2, 0, 3 );
-		affine.set( affine.get( 1, 3 ) - canvasH / 2, 1, 3 );
-		affine.scale( ( double ) width / canvasW );
-		affine.set( affine.get( 0, 3 ) + width / 2, 0, 3 );
-		affine.set( affine.get( 1, 3 ) + height / 2, 1, 3 );
+		OffscreenRenderer.fitViewerTransform( affine, canvasW, canvasH, width, height );
 		renderState.setViewerTransform( affine );
 
 		final ScaleBarOverlayRenderer scalebar = Prefs.showScaleBarInMovie() ? new ScaleBarOverlayRenderer() : null;
 
-		class MyTarget implements RenderTarget
+		final List< ViewerState > frames = new ArrayList<>();
+		for ( int timepoint = minTimepointIndex; timepoint <= maxTimepointIndex; ++timepoint )
 		{
-			BufferedImage bi;
-
-			@Override
-			public BufferedImage setBufferedImage( final BufferedImage bufferedImage )
-			{
-				bi = bufferedImage;
-				return null;
-			}
-
-			@Override
-			public int getWidth()
-			{
-				return width;
-			}
+			final ViewerState frame = renderState.copy();
+			frame.setCurrentTimepoint( timepoint );
+			frames.add( frame );
+		}
 
-			@Override
-			public int getHeight()
+		final int numProcessors = Runtime.getRuntime().availableProcessors();
+		final MovieRenderer renderer = new MovieRenderer(
+				width, height, Math.min( 4, numProcessors ), numProcessors, 2,
+				viewer.getOptionValues().isUseVolatileIfAvailable(), FRAME_TIMEOUT_MILLIS,
+				viewer.getOptionValues().getAccumulateProjectorFactory(),
+				viewer.getCacheControl() );
+		final MovieRenderer.FrameOverlay overlay = scalebar == null ? null : ( state, g ) -> {
+			synchronized ( scalebar )
 			{
-				return height;
+				scalebar.setViewerState( state );
+				scalebar.paint( g );
 			}
+		};
+		try
+		{
+			renderer.render( frames, overlay, ( frame, image ) -> {
+				final int timepoint = minTimepointIndex + frame;
+				ImageIO.write( image, "png", new File( String.format( "%s/img-%03d.png", dir, timepoint ) ) );
+			}, progressWriter );
 		}
-		final MyTarget target = new MyTarget();
-		final MultiResolutionRenderer renderer = new MultiResolutionRenderer(
-				target, new PainterThread( null ), new double[] { 1 }, 0, false, 1, null, false,
-				viewer.getOptionValues().getAccumulateProjectorFactory(), new CacheControl.Dummy() );
-		progressWriter.setProgress( 0 );
-		for ( int timepoint = minTimepointIndex; timepoint <= maxTimepointIndex; ++timepoint )
+		catch ( final InterruptedException e )
 		{
-			renderState.setCurrentTimepoint( timepoint );
-			renderer.requestRepaint();
-			renderer.paint( renderState );
-
-			if ( Prefs.showScaleBarInMovie() )
-			{
-				final Graphics2D g2 = target.bi.createGraphics();
-				g2.setClip( 0, 0, width, height );
-				scalebar.setViewerState( renderState );
-				scalebar.paint( g2 );
-			}
-
-			ImageIO.write( target.bi, "png", new File( String.format( "%s/img-%03d.png", dir, timepoint ) ) );
-			progressWriter.setProgress( ( double ) (timepoint - minTimepointIndex + 1) / (maxTimepointIndex - minTimepointIndex + 1) );
+			Thread.currentThread().interrupt();
 		}
 	}
 
@@ -0,0 +1,532 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.tools.brightness;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingUtilities;
+
+import bdv.AbstractSpimSource;
+import bdv.img.cache.VolatileCachedCellImg;
+import bdv.tools.transformation.TransformedSource;
+import bdv.viewer.Source;
+import bdv.viewer.SourceAndConverter;
+import bdv.viewer.state.SourceState;
+import bdv.viewer.state.ViewerState;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.Volatile;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Computes intensity distributions of sources, for setting initial
+ * brightness and contrast.
+ * <p>
+ * Distributions are computed from the coarsest resolution level of each
+ * source. For cached sources, only cells that are already in the cache are
+ * used, i.e., computing a distribution never waits for data to be loaded.
+ * Distributions of all sources are computed in parallel, and are cached per
+ * (setup, timepoint). While not all cells of the coarsest level are in the
+ * cache, the distribution is incomplete, and is re-computed (refined) when
+ * requested again. The missing cells are enqueued for loading in the
+ * background, with the lowest priority of the source, such that
+ * distributions of sources that are not (yet) visible are completed as
+ * well.
+ * <p>
+ * {@link #initBrightness(double, double, ViewerState, SetupAssignments)}
+ * sets the range of every {@link MinMaxGroup} from the combined distribution
+ * of its sources, and periodically refines the ranges while more data
+ * arrives, until all distributions are complete or the user modifies the
+ * range.
+ */
+public class HistogramService
+{
+	/**
+	 * Empirical distribution of (a sample of) the values of a source.
+	 */
+	public static class Distribution
+	{
+		private final float[] sortedValues;
+
+		private final boolean complete;
+
+		Distribution( final float[] values, final boolean complete )
+		{
+			Arrays.sort( values );
+			this.sortedValues = values;
+			this.complete = complete;
+		}
+
+		/**
+		 * @return whether all values of the coarsest resolution level were
+		 *         available when computing this distribution.
+		 */
+		public boolean isComplete()
+		{
+			return complete;
+		}
+
+		/**
+		 * @return number of samples.
+		 */
+		public int size()
+		{
+			return sortedValues.length;
+		}
+
+		/**
+		 * Get the smallest sample value such that (at least) fraction
+		 * {@code p} of samples is smaller or equal.
+		 *
+		 * @param p
+		 *            cumulative fraction in [0, 1].
+		 * @return quantile value, or {@code NaN} if the distribution is empty.
+		 */
+		public double getQuantile( final double p )
+		{
+			final int n = sortedValues.length;
+			if ( n == 0 )
+				return Double.NaN;
+			final int i = ( int ) Math.ceil( Math.max( 0, Math.min( 1, p ) ) * n ) - 1;
+			return sortedValues[ Math.max( 0, Math.min( n - 1, i ) ) ];
+		}
+
+		/**
+		 * Combine several distributions into one.
+		 */
+		public static Distribution merge( final List< Distribution > distributions )
+		{
+			int n = 0;
+			boolean complete = true;
+			for ( final Distribution d : distributions )
+			{
+				n += d.sortedValues.length;
+				complete &= d.complete;
+			}
+			final float[] values = new float[ n ];
+			int o = 0;
+			for ( final Distribution d : distributions )
+			{
+				System.arraycopy( d.sortedValues, 0, values, o, d.sortedValues.length );
+				o += d.sortedValues.length;
+			}
+			return new Distribution( values, complete );
+		}
+	}
+
+	/**
+	 * Maximum number of samples taken per source. Larger coarsest levels are
+	 * sampled with a stride.
+	 */
+	private static final int MAX_SAMPLES = 1 << 20;
+
+	/**
+	 * How long to wait before refining incomplete distributions.
+	 */
+	private static final long REFINE_DELAY_MILLIS = 500;
+
+	/**
+	 * How often to refine incomplete distributions, at most.
+	 */
+	private static final int MAX_REFINEMENTS = 20;
+
+	private static final CacheHints DONTLOAD = new CacheHints( LoadingStrategy.DONTLOAD, 0, false );
+
+	private final ScheduledExecutorService executorService;
+
+	private final ConcurrentHashMap< Key, Distribution > cache;
+
+	/**
+	 * @param numThreads
+	 *            how many threads to use for computing distributions.
+	 */
+	public HistogramService( final int numThreads )
+	{
+		executorService = Executors.newScheduledThreadPool( numThreads, new HistogramThreadFactory() );
+		cache = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Get the distribution of values of the given source at the given
+	 * timepoint. If a complete distribution is cached, it is returned.
+	 * Otherwise the distribution is (re-)computed on the calling thread.
+	 *
+	 * @param source
+	 *            the source. If this is a volatile source, only valid (loaded)
+	 *            values are taken into account.
+	 * @param setupId
+	 *            setup id of the source, used as cache key.
+	 * @param timepoint
+	 *            timepoint index.
+	 * @return distribution of values, or {@code null} if the source is not
+	 *         present at the timepoint or does not have {@link RealType}
+	 *         values.
+	 */
+	public Distribution getDistribution( final Source< ? > source, final int setupId, final int timepoint )
+	{
+		final Key key = new Key( setupId, timepoint );
+		final Distribution cached = cache.get( key );
+		if ( cached != null && cached.isComplete() )
+			return cached;
+
+		final Distribution distribution = computeDistribution( source, timepoint );
+		if ( distribution != null )
+			cache.put( key, distribution );
+		return distribution;
+	}
+
+	/**
+	 * Forget all cached distributions, e.g., because the data changed.
+	 */
+	public void clearCache()
+	{
+		cache.clear();
+	}
+
+	/**
+	 * Set the range of each {@link MinMaxGroup} such that the given fractions
+	 * of values of its sources at the current timepoint are below min/max.
+	 * <p>
+	 * This returns immediately. Distributions of all sources are computed in
+	 * parallel, and ranges are updated on the event dispatch thread. While
+	 * distributions are incomplete, they are periodically refined and ranges
+	 * updated, until the user modifies a range.
+	 *
+	 * @param cumulativeMinCutoff
+	 *            fraction of values that should be below min.
+	 * @param cumulativeMaxCutoff
+	 *            fraction of values that should be below max.
+	 * @param state
+	 *            viewer state providing sources and current timepoint.
+	 * @param setupAssignments
+	 *            provides {@link MinMaxGroup}s and {@link ConverterSetup}s.
+	 */
+	public void initBrightness( final double cumulativeMinCutoff, final double cumulativeMaxCutoff, final ViewerState state, final SetupAssignments setupAssignments )
+	{
+		final ViewerState snapshot = state.snapshot();
+		final int timepoint = snapshot.getCurrentTimepoint();
+
+		// setup id to (preferably volatile) source
+		final Map< Integer, Source< ? > > setupIdToSource = new HashMap<>();
+		for ( final SourceState< ? > s : snapshot.getSources() )
+		{
+			final int setupId = getSetupId( s.getSpimSource() );
+			if ( setupId >= 0 )
+			{
+				final SourceAndConverter< ? > v = s.asVolatile();
+				setupIdToSource.put( setupId, v != null ? v.getSpimSource() : s.getSpimSource() );
+			}
+		}
+
+		final BrightnessInitializer initializer = new BrightnessInitializer( cumulativeMinCutoff, cumulativeMaxCutoff, timepoint, setupIdToSource, setupAssignments );
+		executorService.execute( initializer );
+	}
+
+	/**
+	 * Stop computing distributions. The service cannot be used afterwards.
+	 */
+	public void shutdown()
+	{
+		executorService.shutdownNow();
+	}
+
+	private class BrightnessInitializer implements Runnable
+	{
+		private final double cumulativeMinCutoff;
+
+		private final double cumulativeMaxCutoff;
+
+		private final int timepoint;
+
+		private final Map< Integer, Source< ? > > setupIdToSource;
+
+		private final SetupAssignments setupAssignments;
+
+		/**
+		 * Range most recently set for each group. If a group range differs
+		 * from this, it was modified by the user and is left alone.
+		 */
+		private final Map< MinMaxGroup, double[] > appliedRanges;
+
+		private int numRefinements;
+
+		public BrightnessInitializer(
+				final double cumulativeMinCutoff,
+				final double cumulativeMaxCutoff,
+				final int timepoint,
+				final Map< Integer, Source< ? > > setupIdToSource,
+				final SetupAssignments setupAssignments )
+		{
+			this.cumulativeMinCutoff = cumulativeMinCutoff;
+			this.cumulativeMaxCutoff = cumulativeMaxCutoff;
+			this.timepoint = timepoint;
+			this.setupIdToSource = setupIdToSource;
+			this.setupAssignments = setupAssignments;
+			appliedRanges = new HashMap<>();
+			numRefinements = 0;
+		}
+
+		@Override
+		public void run()
+		{
+			// compute distributions of all sources in parallel
+			final Map< Integer, CompletableFuture< Distribution > > futures = new HashMap<>();
+			for ( final Entry< Integer, Source< ? > > entry : setupIdToSource.entrySet() )
+				futures.put( entry.getKey(), CompletableFuture.supplyAsync(
+						() -> getDistribution( entry.getValue(), entry.getKey(), timepoint ),
+						executorService ) );
+
+			CompletableFuture.allOf( futures.values().toArray( new CompletableFuture[ 0 ] ) ).whenComplete( ( v, e ) -> {
+				if ( e != null )
+				{
+					e.printStackTrace();
+					return;
+				}
+				final Map< Integer, Distribution > distributions = new HashMap<>();
+				boolean complete = true;
+				for ( final Entry< Integer, CompletableFuture< Distribution > > entry : futures.entrySet() )
+				{
+					final Distribution d = entry.getValue().join();
+					if ( d != null )
+					{
+						distributions.put( entry.getKey(), d );
+						complete &= d.isComplete();
+					}
+				}
+				final boolean refine = !complete && ++numRefinements <= MAX_REFINEMENTS;
+
+				SwingUtilities.invokeLater( () -> {
+					if ( apply( distributions ) && refine && !executorService.isShutdown() )
+						executorService.schedule( this, REFINE_DELAY_MILLIS, TimeUnit.MILLISECONDS );
+				} );
+			} );
+		}
+
+		/**
+		 * Set group ranges from {@code distributions}.
+		 *
+		 * @return whether any group range was set, i.e., whether it is
+		 *         worthwhile to refine.
+		 */
+		private boolean apply( final Map< Integer, Distribution > distributions )
+		{
+			boolean applied = false;
+			for ( final MinMaxGroup group : setupAssignments.getMinMaxGroups() )
+			{
+				final double[] previous = appliedRanges.get( group );
+				final double currentMin = group.getMinBoundedValue().getCurrentValue();
+				final double currentMax = group.getMaxBoundedValue().getCurrentValue();
+				if ( previous != null && ( previous[ 0 ] != currentMin || previous[ 1 ] != currentMax ) )
+					continue;
+
+				final List< Distribution > groupDistributions = new ArrayList<>();
+				for ( final ConverterSetup setup : group.setups )
+				{
+					final Distribution d = distributions.get( setup.getSetupId() );
+					if ( d != null )
+						groupDistributions.add( d );
+				}
+				final Distribution d = Distribution.merge( groupDistributions );
+				if ( d.size() == 0 )
+				{
+					applied = true;
+					continue;
+				}
+
+				final double min = d.getQuantile( cumulativeMinCutoff );
+				final double max = Math.max( d.getQuantile( cumulativeMaxCutoff ), min + 1 );
+				group.getMinBoundedValue().setCurrentValue( min );
+				group.getMaxBoundedValue().setCurrentValue( max );
+				appliedRanges.put( group, new double[] {
+						group.getMinBoundedValue().getCurrentValue(),
+						group.getMaxBoundedValue().getCurrentValue() } );
+				applied = true;
+			}
+			return applied;
+		}
+	}
+
+	/**
+	 * Sample values from the coarsest level of {@code source}. If the level is
+	 * a {@link VolatileCachedCellImg}, it is accessed with
+	 * {@link LoadingStrategy#DONTLOAD} such that only cached cells contribute.
+	 * If not all cells are cached, the level is {@link #requestLoading
+	 * enqueued for loading}.
+	 */
+	private static Distribution computeDistribution( final Source< ? > source, final int timepoint )
+	{
+		if ( !source.isPresent( timepoint ) )
+			return null;
+
+		final Object type = source.getType();
+		final boolean isVolatile = type instanceof Volatile;
+		final Object valueType = isVolatile ? ( ( Volatile< ? > ) type ).get() : type;
+		if ( !( valueType instanceof RealType ) )
+			return null;
+
+		final RandomAccessibleInterval< ? > coarsest = source.getSource( timepoint, source.getNumMipmapLevels() - 1 );
+		final RandomAccessibleInterval< ? > img = coarsest instanceof VolatileCachedCellImg
+				? ( ( VolatileCachedCellImg< ?, ? > ) coarsest ).withCacheHints( DONTLOAD )
+				: coarsest;
+
+		final long numElements = Intervals.numElements( img );
+		final long stride = Math.max( 1, ( numElements + MAX_SAMPLES - 1 ) / MAX_SAMPLES );
+		final float[] values = new float[ ( int ) Math.min( numElements, MAX_SAMPLES ) ];
+		int n = 0;
+		boolean complete = true;
+		final Cursor< ? > c = Views.flatIterable( img ).cursor();
+		for ( long i = 0; i < numElements; i += stride )
+		{
+			if ( i > 0 )
+				c.jumpFwd( stride );
+			else
+				c.fwd();
+			final Object t = c.get();
+			final RealType< ? > v;
+			if ( isVolatile )
+			{
+				final Volatile< ? > vt = ( Volatile< ? > ) t;
+				if ( !vt.isValid() )
+				{
+					complete = false;
+					continue;
+				}
+				v = ( RealType< ? > ) vt.get();
+			}
+			else
+				v = ( RealType< ? > ) t;
+			if ( n < values.length )
+				values[ n++ ] = v.getRealFloat();
+		}
+
+		if ( !complete && coarsest instanceof VolatileCachedCellImg )
+			requestLoading( source, timepoint, ( VolatileCachedCellImg< ?, ? > ) coarsest );
+
+		return new Distribution( Arrays.copyOf( values, n ), complete );
+	}
+
+	/**
+	 * Enqueue all cells of the coarsest level {@code img} of {@code source}
+	 * that are not cached yet for loading, with
+	 * {@link LoadingStrategy#VOLATILE} hints and the priority of the finest
+	 * level of {@code source}, i.e., after everything the viewer needs.
+	 */
+	private static void requestLoading( final Source< ? > source, final int timepoint, final VolatileCachedCellImg< ?, ? > img )
+	{
+		final RandomAccessibleInterval< ? > finest = source.getSource( timepoint, 0 );
+		final CacheHints finestHints = finest instanceof VolatileCachedCellImg
+				? ( ( VolatileCachedCellImg< ?, ? > ) finest ).getDefaultCacheHints()
+				: img.getDefaultCacheHints();
+		final CacheHints hints = new CacheHints( LoadingStrategy.VOLATILE, finestHints.getQueuePriority(), false );
+
+		// accessing a cell enqueues it if it is not cached
+		final Cursor< ? > cells = img.withCacheHints( hints ).getCells().cursor();
+		while ( cells.hasNext() )
+			cells.next();
+	}
+
+	/**
+	 * Get the setup id of {@code source}, or -1 if it is not an
+	 * {@link AbstractSpimSource} (possibly wrapped in a
+	 * {@link TransformedSource}).
+	 */
+	private static int getSetupId( Source< ? > source )
+	{
+		while ( source instanceof TransformedSource )
+			source = ( ( TransformedSource< ? > ) source ).getWrappedSource();
+		if ( source instanceof AbstractSpimSource )
+			return ( ( AbstractSpimSource< ? > ) source ).getSetupId();
+		return -1;
+	}
+
+	private static final class Key
+	{
+		private final int setupId;
+
+		private final int timepoint;
+
+		Key( final int setupId, final int timepoint )
+		{
+			this.setupId = setupId;
+			this.timepoint = timepoint;
+		}
+
+		@Override
+		public boolean equals( final Object obj )
+		{
+			if ( !( obj instanceof Key ) )
+				return false;
+			final Key other = ( Key ) obj;
+			return setupId == other.setupId && timepoint == other.timepoint;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return 31 * setupId + timepoint;
+		}
+	}
+
+	private static final AtomicInteger serviceNumber = new AtomicInteger( 1 );
+
+	private static class HistogramThreadFactory implements ThreadFactory
+	{
+		private final String threadNameFormat = String.format(
+				"bdv-histogram-%d-thread-%%d",
+				serviceNumber.getAndIncrement() );
+
+		private final AtomicInteger threadNumber = new AtomicInteger( 1 );
+
+		@Override
+		public Thread newThread( final Runnable r )
+		{
+			final Thread t = new Thread( r, String.format( threadNameFormat, threadNumber.getAndIncrement() ) );
+			t.setDaemon( true );
+			t.setPriority( Thread.MIN_PRIORITY );
+			return t;
+		}
+	}
+}
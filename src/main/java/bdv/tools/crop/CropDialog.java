@@ -38,6 +38,7 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map.Entry;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -45,6 +46,7 @@ import javax.swing.ActionMap;
 import javax.swing.BoxLayout;
 import javax.swing.InputMap;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JComponent;
 import javax.swing.JDialog;
 import javax.swing.JFileChooser;
@@ -61,6 +63,8 @@ import javax.swing.filechooser.FileFilter;
 
 import bdv.AbstractSpimSource;
 import bdv.export.ExportMipmapInfo;
+import bdv.export.ProgressWriter;
+import bdv.export.ProgressWriterConsole;
 import bdv.export.WriteSequenceToHdf5;
 import bdv.img.hdf5.Hdf5ImageLoader;
 import bdv.img.hdf5.MipmapInfo;
@@ -96,6 +100,8 @@ public class CropDialog extends JDialog
 
 	private final JSpinner spinnerMaxTimepoint;
 
+	private final JCheckBox copyLevelsCheckBox;
+
 	@Override
 	public void setVisible( final boolean b )
 	{
@@ -147,6 +153,12 @@ public class CropDialog extends JDialog
 		spinnerMaxTimepoint.setModel( new SpinnerNumberModel( 0, 0, maxTimePointIndex, 1 ) );
 		timepointsPanel.add( spinnerMaxTimepoint );
 
+		final JPanel copyLevelsPanel = new JPanel();
+		boxes.add( copyLevelsPanel );
+
+		copyLevelsCheckBox = new JCheckBox( "copy existing mipmap levels (axis-aligned crops only, enlarges the crop to align with the coarsest level)", false );
+		copyLevelsPanel.add( copyLevelsCheckBox );
+
 		final JPanel buttonsPanel = new JPanel();
 		boxes.add( buttonsPanel );
 		buttonsPanel.setLayout(new BorderLayout(0, 0));
@@ -284,6 +296,12 @@ public class CropDialog extends JDialog
 	}
 
 	/**
+	 * If the crop region is aligned with the axes of all sources and the
+	 * "copy existing mipmap levels" option is selected, the resolution levels
+	 * of the original sequence are copied instead of re-computing the mipmap
+	 * pyramid. For this, the crop region is slightly enlarged such that its
+	 * min corner is aligned with the voxels of the coarsest level.
+	 *
 	 * @param minTimepointIndex
 	 * @param maxTimepointIndex
 	 * @param hdf5File
@@ -368,24 +386,44 @@ public class CropDialog extends JDialog
 
 		// Gather ExportMipmapInfo for all setups of the cropped sequence.
 		// Re-use mipmapInfos for setups of the original sequence. Use default
-		// for newly created setups.
+		// for newly created setups. Also remember the resolutions, in case the
+		// existing levels can be copied (null if any setup is newly created).
 		final HashMap< Integer, ExportMipmapInfo > perSetupMipmapInfo = new HashMap<>();
+		HashMap< Integer, int[][] > copyableResolutions = new HashMap<>();
 		final Hdf5ImageLoader loader = ( Hdf5ImageLoader ) sequenceDescription.getImgLoader();
 		for ( final int setupId : cropSetups.keySet() )
 		{
 			final MipmapInfo info = loader.getSetupImgLoader( setupId ).getMipmapInfo();;
 			if ( info == null )
+			{
 				perSetupMipmapInfo.put( setupId, new ExportMipmapInfo(
 						new int[][] { { 1, 1, 1 } },
 						new int[][] { { 64, 64, 64 } } ) );
+				copyableResolutions = null;
+			}
 			else
+			{
+				final int[][] resolutions = Util.castToInts( info.getResolutions() );
 				perSetupMipmapInfo.put( setupId, new ExportMipmapInfo(
-						Util.castToInts( info.getResolutions() ),
+						resolutions,
 						info.getSubdivisions() ) );
+				if ( copyableResolutions != null )
+					copyableResolutions.put( setupId, resolutions );
+			}
 		}
 
 		final int numThreads = Math.max( 1, Runtime.getRuntime().availableProcessors() - 2 );
-		WriteSequenceToHdf5.writeHdf5File( seq, perSetupMipmapInfo, true, hdf5File, null, null, numThreads, null );
+		final ProgressWriter progressWriter = new ProgressWriterConsole();
+		final CropMipmapLevels levels = copyLevelsCheckBox.isSelected()
+				? createCropMipmapLevels( sources, globalToCropTransform, cropInterval, timepointIdToTimepointIndex, setupIdToSourceIndex, copyableResolutions )
+				: null;
+		if ( levels != null )
+		{
+			printEnlargedCrops( levels, sources, globalToCropTransform, cropInterval, timepointsToCrop.get( 0 ), timepointIdToTimepointIndex, setupIdToSourceIndex, progressWriter );
+			WriteSequenceToHdf5.writeHdf5FileCopyLevels( seq, perSetupMipmapInfo, levels, true, hdf5File, numThreads, null );
+		}
+		else
+			WriteSequenceToHdf5.writeHdf5File( seq, perSetupMipmapInfo, true, hdf5File, null, null, numThreads, null );
 
 		// Build ViewRegistrations with adjusted transforms.
 		final ArrayList< ViewRegistration > registrations = new ArrayList<>();
@@ -395,7 +433,10 @@ public class CropDialog extends JDialog
 			for ( final BasicViewSetup setup : cropSetups.values() )
 			{
 				final int setupId = setup.getId();
-				final AffineTransform3D model = cropper.getCroppedTransform( new ViewId( timepointId, setupId ) );
+				final ViewId viewId = new ViewId( timepointId, setupId );
+				final AffineTransform3D model = levels != null
+						? levels.getCroppedTransform( viewId )
+						: cropper.getCroppedTransform( viewId );
 				registrations.add( new ViewRegistration( timepointId, setupId, model ) );
 			}
 		}
@@ -408,5 +449,64 @@ public class CropDialog extends JDialog
 		new XmlIoSpimDataMinimal().save( spimData, xmlFile.getAbsolutePath() );
 	}
 
+	/**
+	 * Report setups for which copying mipmap levels enlarges the crop region
+	 * (at the first cropped timepoint).
+	 */
+	private static void printEnlargedCrops(
+			final CropMipmapLevels levels,
+			final ArrayList< Source< ? > > sources,
+			final AffineTransform3D globalToCropTransform,
+			final RealInterval cropInterval,
+			final TimePoint timepoint,
+			final HashMap< Integer, Integer > timepointIdToTimepointIndex,
+			final HashMap< Integer, Integer > setupIdToSourceIndex,
+			final ProgressWriter progressWriter )
+	{
+		final int tpIndex = timepointIdToTimepointIndex.get( timepoint.getId() );
+		for ( final Entry< Integer, Integer > entry : setupIdToSourceIndex.entrySet() )
+		{
+			final int setupId = entry.getKey();
+			final Interval requested = CropImgLoader.getCropSourceInterval( globalToCropTransform, cropInterval, sources.get( entry.getValue() ), tpIndex );
+			final Interval cropped = levels.getCroppedInterval( new ViewId( timepoint.getId(), setupId ) );
+			if ( !Intervals.equals( requested, cropped ) )
+				progressWriter.out().printf( "setup %d: crop enlarged from %s to %s (source voxels) to copy mipmap levels\n",
+						setupId, net.imglib2.util.Util.printInterval( requested ), net.imglib2.util.Util.printInterval( cropped ) );
+		}
+	}
+
+	/**
+	 * Create {@link CropMipmapLevels} if the existing resolution levels of
+	 * all sources can be copied, i.e., the resolutions of all setups are
+	 * known, match the number of levels of the corresponding source, and the
+	 * crop region is aligned with the source axes at all timepoints.
+	 *
+	 * @return {@link CropMipmapLevels} or {@code null} if existing levels
+	 *         cannot be copied.
+	 */
+	private static CropMipmapLevels createCropMipmapLevels(
+			final ArrayList< Source< ? > > sources,
+			final AffineTransform3D globalToCropTransform,
+			final RealInterval cropInterval,
+			final HashMap< Integer, Integer > timepointIdToTimepointIndex,
+			final HashMap< Integer, Integer > setupIdToSourceIndex,
+			final HashMap< Integer, int[][] > perSetupResolutions )
+	{
+		if ( perSetupResolutions == null )
+			return null;
+
+		for ( final Entry< Integer, Integer > entry : setupIdToSourceIndex.entrySet() )
+		{
+			final Source< ? > source = sources.get( entry.getValue() );
+			if ( source.getNumMipmapLevels() != perSetupResolutions.get( entry.getKey() ).length )
+				return null;
+			for ( final int tp : timepointIdToTimepointIndex.values() )
+				if ( !CropMipmapLevels.isAxisAligned( globalToCropTransform, source, tp ) )
+					return null;
+		}
+
+		return new CropMipmapLevels( sources, globalToCropTransform, cropInterval, timepointIdToTimepointIndex, setupIdToSourceIndex, perSetupResolutions );
+	}
+
 	private static final long serialVersionUID = 924395364255873920L;
 }
@@ -97,7 +97,10 @@ public class CropImgLoader implements BasicImgLoader
 	}
 
 	/**
-	 * Crop a region from a {@link Source}.
+	 * Get the interval of full-resolution source voxels that is covered by a
+	 * cropped region. This is the bounding box of the region in source
+	 * coordinates, intersected with the source image. If the intersection is
+	 * empty, a single voxel at the center of the bounding box is returned.
 	 *
 	 * @param globalToCropTransform
 	 *            transform from global into crop-local coordinates.
@@ -107,13 +110,12 @@ public class CropImgLoader implements BasicImgLoader
 	 *            which source to crop from.
 	 * @param timepoint
 	 *            which timepoint to crop from.
-	 * @return a zero-min view of the cropped region and a transform from that
-	 *         view into global coordinates.
+	 * @return interval of source voxels to crop.
 	 */
-	public static < T > Pair< RandomAccessibleInterval< T >, AffineTransform3D > crop(
+	public static Interval getCropSourceInterval(
 			final AffineTransform3D globalToCropTransform,
 			final RealInterval interval,
-			final Source< T > source,
+			final Source< ? > source,
 			final int timepoint )
 	{
 		final int n = interval.numDimensions();
@@ -132,12 +134,9 @@ public class CropImgLoader implements BasicImgLoader
 			cropToSource.apply( corner, sourceCorner );
 			sourceCorners.add( sourceCorner );
 		}
-		final RandomAccessibleInterval< T > sourceImg = source.getSource( timepoint, 0 );
+		final Interval sourceImg = source.getSource( timepoint, 0 );
 		final Interval cropBoundingBox = Intervals.smallestContainingInterval( IntervalBoundingBox.getBoundingBox( sourceCorners ) );
-		Interval sourceInterval = Intervals.intersect( cropBoundingBox, sourceImg );
-
-		final RandomAccessibleInterval< T > croppedSourceImg;
-		final AffineTransform3D croppedSourceTransform = new AffineTransform3D();
+		final Interval sourceInterval = Intervals.intersect( cropBoundingBox, sourceImg );
 
 		if ( Intervals.isEmpty( sourceInterval ) )
 		{
@@ -145,8 +144,38 @@ public class CropImgLoader implements BasicImgLoader
 			for ( int d = 0; d < n; ++d )
 				minsize[ d ] = cropBoundingBox.min( d ) + cropBoundingBox.dimension( d ) / 2;
 			Arrays.fill( minsize, n, n * 2, 1 );
-			sourceInterval = Intervals.createMinSize( minsize );
+			return Intervals.createMinSize( minsize );
 		}
+		return sourceInterval;
+	}
+
+	/**
+	 * Crop a region from a {@link Source}.
+	 *
+	 * @param globalToCropTransform
+	 *            transform from global into crop-local coordinates.
+	 * @param interval
+	 *            the interval (in crop-local space) to crop.
+	 * @param source
+	 *            which source to crop from.
+	 * @param timepoint
+	 *            which timepoint to crop from.
+	 * @return a zero-min view of the cropped region and a transform from that
+	 *         view into global coordinates.
+	 */
+	public static < T > Pair< RandomAccessibleInterval< T >, AffineTransform3D > crop(
+			final AffineTransform3D globalToCropTransform,
+			final RealInterval interval,
+			final Source< T > source,
+			final int timepoint )
+	{
+		final RandomAccessibleInterval< T > sourceImg = source.getSource( timepoint, 0 );
+		final Interval sourceInterval = getCropSourceInterval( globalToCropTransform, interval, source, timepoint );
+		final AffineTransform3D sourceToGlobal = new AffineTransform3D();
+		source.getSourceTransform( timepoint, 0, sourceToGlobal );
+
+		final RandomAccessibleInterval< T > croppedSourceImg;
+		final AffineTransform3D croppedSourceTransform = new AffineTransform3D();
 
 		croppedSourceImg = Views.zeroMin( Views.interval( Views.extendBorder( sourceImg ), sourceInterval ) );
 		croppedSourceTransform.set(
@@ -0,0 +1,240 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.tools.crop;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+import bdv.export.WriteSequenceToHdf5;
+import bdv.viewer.Source;
+import mpicbg.spim.data.sequence.ViewId;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealInterval;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Provides all existing resolution levels of a cropped region of a data-set
+ * (provided by list of {@link Source Sources}), such that they can be copied
+ * directly with
+ * {@link WriteSequenceToHdf5#writeHdf5FileCopyLevels(mpicbg.spim.data.generic.sequence.AbstractSequenceDescription, Map, WriteSequenceToHdf5.MipmapLevels, boolean, java.io.File, int, bdv.export.ProgressWriter)}
+ * instead of re-computing the mipmap pyramid.
+ * <p>
+ * This only works if the crop region is aligned with the source axes (see
+ * {@link #isAxisAligned(AffineTransform3D, Source, int)}). The min corner of
+ * the cropped full-resolution interval is snapped to a multiple of the mipmap
+ * factors, such that every level is an exact subsampling of the cropped
+ * full-resolution image.
+ */
+public class CropMipmapLevels implements WriteSequenceToHdf5.MipmapLevels
+{
+	private final ArrayList< Source< ? > > sources;
+
+	private final AffineTransform3D globalToCropTransform;
+
+	private final RealInterval cropInterval;
+
+	private final Map< Integer, Integer > timepointIdToTimepointIndex;
+
+	private final Map< Integer, Integer > setupIdToSourceIndex;
+
+	private final Map< Integer, int[][] > perSetupResolutions;
+
+	/**
+	 * @param sources
+	 *            list of sources to crop from.
+	 * @param globalToCropTransform
+	 *            transform from global into crop-local coordinates.
+	 * @param cropInterval
+	 *            the interval (in crop-local space) to crop.
+	 * @param timepointIdToTimepointIndex
+	 *            map from timepoint id to timepoint index in the sources.
+	 * @param setupIdToSourceIndex
+	 *            map from setup id to index in the list of sources.
+	 * @param perSetupResolutions
+	 *            map from setup id to the mipmap factors of each resolution
+	 *            level of the corresponding source.
+	 */
+	public CropMipmapLevels(
+			final ArrayList< Source< ? > > sources,
+			final AffineTransform3D globalToCropTransform,
+			final RealInterval cropInterval,
+			final Map< Integer, Integer > timepointIdToTimepointIndex,
+			final Map< Integer, Integer > setupIdToSourceIndex,
+			final Map< Integer, int[][] > perSetupResolutions )
+	{
+		this.sources = sources;
+		this.globalToCropTransform = globalToCropTransform;
+		this.cropInterval = cropInterval;
+		this.timepointIdToTimepointIndex = timepointIdToTimepointIndex;
+		this.setupIdToSourceIndex = setupIdToSourceIndex;
+		this.perSetupResolutions = perSetupResolutions;
+	}
+
+	/**
+	 * Check whether the crop-local axes are aligned with the full-resolution
+	 * source axes, i.e., the linear part of the crop-to-source transform is a
+	 * scaled permutation.
+	 */
+	public static boolean isAxisAligned(
+			final AffineTransform3D globalToCropTransform,
+			final Source< ? > source,
+			final int timepoint )
+	{
+		final AffineTransform3D sourceToGlobal = new AffineTransform3D();
+		source.getSourceTransform( timepoint, 0, sourceToGlobal );
+		final AffineTransform3D cropToSource = sourceToGlobal.inverse();
+		cropToSource.concatenate( globalToCropTransform.inverse() );
+
+		final double eps = 1e-10;
+		for ( int r = 0; r < 3; ++r )
+		{
+			int nonZeroInRow = 0;
+			int nonZeroInColumn = 0;
+			for ( int c = 0; c < 3; ++c )
+			{
+				if ( Math.abs( cropToSource.get( r, c ) ) > eps )
+					++nonZeroInRow;
+				if ( Math.abs( cropToSource.get( c, r ) ) > eps )
+					++nonZeroInColumn;
+			}
+			if ( nonZeroInRow != 1 || nonZeroInColumn != 1 )
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public RandomAccessibleInterval< ? > getImage( final int timepointId, final int setupId, final int level )
+	{
+		final int tpIndex = timepointIdToTimepointIndex.get( timepointId );
+		final Source< ? > source = sources.get( setupIdToSourceIndex.get( setupId ) );
+		final int[] resolution = perSetupResolutions.get( setupId )[ level ];
+		final Interval fullResInterval = getFullResolutionInterval( timepointId, setupId );
+		return crop( source.getSource( tpIndex, level ), fullResInterval, resolution );
+	}
+
+	/**
+	 * Get the cropped interval of full-resolution source voxels of a view.
+	 * Its min is moved down to a multiple of the mipmap factors of all levels,
+	 * so the cropped region may be larger than requested.
+	 */
+	public Interval getCroppedInterval( final ViewId viewId )
+	{
+		return getFullResolutionInterval( viewId.getTimePointId(), viewId.getViewSetupId() );
+	}
+
+	/**
+	 * Get the transform from the full-resolution level of the cropped view
+	 * into global coordinates.
+	 */
+	public AffineTransform3D getCroppedTransform( final ViewId viewId )
+	{
+		final int tpIndex = timepointIdToTimepointIndex.get( viewId.getTimePointId() );
+		final Source< ? > source = sources.get( setupIdToSourceIndex.get( viewId.getViewSetupId() ) );
+		final Interval fullResInterval = getFullResolutionInterval( viewId.getTimePointId(), viewId.getViewSetupId() );
+
+		final AffineTransform3D sourceToGlobal = new AffineTransform3D();
+		source.getSourceTransform( tpIndex, 0, sourceToGlobal );
+		final AffineTransform3D transform = new AffineTransform3D();
+		transform.set(
+			1, 0, 0, fullResInterval.min( 0 ),
+			0, 1, 0, fullResInterval.min( 1 ),
+			0, 0, 1, fullResInterval.min( 2 ) );
+		transform.preConcatenate( sourceToGlobal );
+		return transform;
+	}
+
+	/**
+	 * Get the cropped full-resolution interval, with min snapped to a multiple
+	 * of the mipmap factors of all levels.
+	 */
+	private Interval getFullResolutionInterval( final int timepointId, final int setupId )
+	{
+		final int tpIndex = timepointIdToTimepointIndex.get( timepointId );
+		final Source< ? > source = sources.get( setupIdToSourceIndex.get( setupId ) );
+		final int[][] resolutions = perSetupResolutions.get( setupId );
+		final Interval interval = CropImgLoader.getCropSourceInterval( globalToCropTransform, cropInterval, source, tpIndex );
+
+		final int n = interval.numDimensions();
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		interval.min( min );
+		interval.max( max );
+		for ( int d = 0; d < n; ++d )
+		{
+			long f = 1;
+			for ( final int[] resolution : resolutions )
+				f = lcm( f, resolution[ d ] );
+			min[ d ] = Math.floorDiv( min[ d ], f ) * f;
+		}
+		return Intervals.createMinMax( concat( min, max ) );
+	}
+
+	private static < T > RandomAccessibleInterval< T > crop(
+			final RandomAccessibleInterval< T > levelImg,
+			final Interval fullResInterval,
+			final int[] resolution )
+	{
+		final int n = fullResInterval.numDimensions();
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		for ( int d = 0; d < n; ++d )
+		{
+			min[ d ] = Math.floorDiv( fullResInterval.min( d ), resolution[ d ] );
+			max[ d ] = Math.max( min[ d ], Math.min( levelImg.max( d ), Math.floorDiv( fullResInterval.max( d ), resolution[ d ] ) ) );
+		}
+		return Views.zeroMin( Views.interval( Views.extendBorder( levelImg ), min, max ) );
+	}
+
+	private static long[] concat( final long[] min, final long[] max )
+	{
+		final int n = min.length;
+		final long[] minmax = new long[ 2 * n ];
+		System.arraycopy( min, 0, minmax, 0, n );
+		System.arraycopy( max, 0, minmax, n, n );
+		return minmax;
+	}
+
+	private static long lcm( final long a, final long b )
+	{
+		long x = a;
+		long y = b;
+		while ( y != 0 )
+		{
+			final long t = x % y;
+			x = y;
+			y = t;
+		}
+		return a / x * b;
+	}
+}
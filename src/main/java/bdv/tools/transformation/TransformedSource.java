@@ -30,10 +30,13 @@
 package bdv.tools.transformation;
 
 import bdv.viewer.Interpolation;
+import bdv.viewer.RangeReadableSource;
 import bdv.viewer.Source;
+import bdv.viewer.render.DefaultInterpolatedSource;
 import bdv.viewer.render.DefaultMipmapOrdering;
 import bdv.viewer.render.MipmapOrdering;
 import mpicbg.spim.data.sequence.VoxelDimensions;
+import net.imglib2.Interval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.RealRandomAccessible;
 import net.imglib2.realtransform.AffineTransform3D;
@@ -50,7 +53,7 @@ import net.imglib2.realtransform.AffineTransform3D;
  * @param <T>
  *            the type of the original source.
  */
-public class TransformedSource< T > implements Source< T >, MipmapOrdering
+public class TransformedSource< T > implements Source< T >, MipmapOrdering, DefaultInterpolatedSource, RangeReadableSource< T >
 {
 	protected final Source< T > source;
 
@@ -225,6 +228,21 @@ public class TransformedSource< T > implements Source< T >, MipmapOrdering
 		return source.getInterpolatedSource( t, level, method );
 	}
 
+	@Override
+	public boolean isDefaultInterpolated()
+	{
+		return source instanceof DefaultInterpolatedSource && ( ( DefaultInterpolatedSource ) source ).isDefaultInterpolated();
+	}
+
+	@SuppressWarnings( "unchecked" )
+	@Override
+	public RandomAccessibleInterval< T > readRange( final int t, final int level, final Interval interval ) throws InterruptedException
+	{
+		return source instanceof RangeReadableSource
+				? ( ( RangeReadableSource< T > ) source ).readRange( t, level, interval )
+				: null;
+	}
+
 	@Override
 	public T getType()
 	{
@@ -33,7 +33,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Properties;
+import java.util.stream.Collectors;
 
 public class Prefs
 {
@@ -57,6 +59,82 @@ public class Prefs
 		return getInstance().scaleBarBgColor;
 	}
 
+	/**
+	 * Whether {@link bdv.img.hdf5.Hdf5ImageLoader} should read uncompressed
+	 * contiguous datasets through memory-mapped files.
+	 */
+	public static boolean hdf5MemoryMapped()
+	{
+		return getInstance().hdf5MemoryMapped;
+	}
+
+	/**
+	 * Whether hdf5 export should write uncompressed datasets with contiguous
+	 * instead of chunked layout, such that they can be memory-mapped when
+	 * reading (see {@link #hdf5MemoryMapped()}).
+	 */
+	public static boolean hdf5ContiguousExport()
+	{
+		return getInstance().hdf5ContiguousExport;
+	}
+
+	/**
+	 * Whether {@link bdv.img.hdf5.Hdf5ImageLoader} should read per-setup
+	 * metadata on first use, resolve image dimensions in the background, and
+	 * keep a metadata index file next to the hdf5 file.
+	 */
+	public static boolean hdf5LazyOpen()
+	{
+		return getInstance().hdf5LazyOpen;
+	}
+
+	/**
+	 * How many hdf5 files the {@link bdv.img.hdf5.Hdf5HandlePool} keeps open
+	 * for reuse.
+	 */
+	public static int hdf5MaxOpenFiles()
+	{
+		return getInstance().hdf5MaxOpenFiles;
+	}
+
+	/**
+	 * How many hdf5 datasets the {@link bdv.img.hdf5.Hdf5HandlePool} keeps
+	 * open, over all files.
+	 */
+	public static int hdf5MaxOpenDataSets()
+	{
+		return getInstance().hdf5MaxOpenDataSets;
+	}
+
+	/**
+	 * Target number of voxels of the cache cells of
+	 * {@link bdv.img.hdf5.Hdf5ImageLoader} images, for mipmap levels 0, 1,
+	 * ... The last entry applies to all further levels. Cache cells are made
+	 * of as many whole hdf5 chunks as fit the target size. A target size of 0
+	 * means that cache cells are hdf5 chunks.
+	 */
+	public static int[] hdf5CacheCellSizes()
+	{
+		return getInstance().hdf5CacheCellSizes.clone();
+	}
+
+	/**
+	 * Whether viewers should show render timing and cache statistics.
+	 */
+	public static boolean showRenderMetrics()
+	{
+		return getInstance().showRenderMetrics;
+	}
+
+	/**
+	 * Whether viewers should publish render timing and cache statistics via
+	 * JMX.
+	 */
+	public static boolean renderMetricsJmx()
+	{
+		return getInstance().renderMetricsJmx;
+	}
+
 	private static Prefs instance;
 
 	public static Prefs getInstance()
@@ -72,11 +150,27 @@ public class Prefs
 	private static final String SHOW_SCALE_BAR_IN_MOVIE = "show-scale-bar-in-movie";
 	private static final String SCALE_BAR_COLOR = "scale-bar-color";
 	private static final String SCALE_BAR_BG_COLOR = "scale-bar-bg-color";
+	private static final String HDF5_MEMORY_MAPPED = "hdf5-memory-mapped";
+	private static final String HDF5_CONTIGUOUS_EXPORT = "hdf5-contiguous-export";
+	private static final String HDF5_LAZY_OPEN = "hdf5-lazy-open";
+	private static final String HDF5_MAX_OPEN_FILES = "hdf5-max-open-files";
+	private static final String HDF5_MAX_OPEN_DATASETS = "hdf5-max-open-datasets";
+	private static final String HDF5_CACHE_CELL_SIZES = "hdf5-cache-cell-sizes";
+	private static final String SHOW_RENDER_METRICS = "show-render-metrics";
+	private static final String RENDER_METRICS_JMX = "render-metrics-jmx";
 
 	private final boolean showScaleBar;
 	private final boolean showScaleBarInMovie;
 	private final int scaleBarColor;
 	private final int scaleBarBgColor;
+	private final boolean hdf5MemoryMapped;
+	private final boolean hdf5ContiguousExport;
+	private final boolean hdf5LazyOpen;
+	private final int hdf5MaxOpenFiles;
+	private final int hdf5MaxOpenDataSets;
+	private final int[] hdf5CacheCellSizes;
+	private final boolean showRenderMetrics;
+	private final boolean renderMetricsJmx;
 
 	private Prefs( final Properties p )
 	{
@@ -84,6 +178,14 @@ public class Prefs
 		showScaleBarInMovie = getBoolean( p, SHOW_SCALE_BAR_IN_MOVIE, false );
 		scaleBarColor = getInt( p, SCALE_BAR_COLOR, 0xffffffff );
 		scaleBarBgColor = getInt( p, SCALE_BAR_BG_COLOR, 0x88000000 );
+		hdf5MemoryMapped = getBoolean( p, HDF5_MEMORY_MAPPED, false );
+		hdf5ContiguousExport = getBoolean( p, HDF5_CONTIGUOUS_EXPORT, false );
+		hdf5LazyOpen = getBoolean( p, HDF5_LAZY_OPEN, false );
+		hdf5MaxOpenFiles = getInt( p, HDF5_MAX_OPEN_FILES, 64 );
+		hdf5MaxOpenDataSets = getInt( p, HDF5_MAX_OPEN_DATASETS, 256 );
+		hdf5CacheCellSizes = getIntArray( p, HDF5_CACHE_CELL_SIZES, new int[] { 0 } );
+		showRenderMetrics = getBoolean( p, SHOW_RENDER_METRICS, false );
+		renderMetricsJmx = getBoolean( p, RENDER_METRICS_JMX, false );
 	}
 
 	private boolean getBoolean( final Properties p, final String key, final boolean defaultValue )
@@ -106,6 +208,26 @@ public class Prefs
 		}
 	}
 
+	static int[] getIntArray( final Properties p, final String key, final int[] defaultValue )
+	{
+		try
+		{
+			final String property = ( p != null ) ? p.getProperty( key ) : null;
+			if ( property == null || property.trim().isEmpty() )
+				return defaultValue;
+			final String[] parts = property.split( "," );
+			final int[] values = new int[ parts.length ];
+			for ( int i = 0; i < parts.length; ++i )
+				values[ i ] = Integer.parseInt( parts[ i ].trim() );
+			return values;
+		}
+		catch ( final NumberFormatException e )
+		{
+			e.printStackTrace();
+			return defaultValue;
+		}
+	}
+
 	private double getDouble( final Properties p, final String key, final double defaultValue )
 	{
 		try
@@ -161,6 +283,14 @@ public class Prefs
 		properties.put( SHOW_SCALE_BAR_IN_MOVIE, "" + prefs.showScaleBarInMovie );
 		properties.put( SCALE_BAR_COLOR, "" + prefs.scaleBarColor );
 		properties.put( SCALE_BAR_BG_COLOR, "" + prefs.scaleBarBgColor );
+		properties.put( SHOW_RENDER_METRICS, "" + prefs.showRenderMetrics );
+		properties.put( RENDER_METRICS_JMX, "" + prefs.renderMetricsJmx );
+		properties.put( HDF5_MEMORY_MAPPED, "" + prefs.hdf5MemoryMapped );
+		properties.put( HDF5_CONTIGUOUS_EXPORT, "" + prefs.hdf5ContiguousExport );
+		properties.put( HDF5_LAZY_OPEN, "" + prefs.hdf5LazyOpen );
+		properties.put( HDF5_MAX_OPEN_FILES, "" + prefs.hdf5MaxOpenFiles );
+		properties.put( HDF5_MAX_OPEN_DATASETS, "" + prefs.hdf5MaxOpenDataSets );
+		properties.put( HDF5_CACHE_CELL_SIZES, Arrays.stream( prefs.hdf5CacheCellSizes ).mapToObj( Integer::toString ).collect( Collectors.joining( "," ) ) );
 		return properties;
 	}
 
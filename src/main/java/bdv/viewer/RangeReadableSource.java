@@ -0,0 +1,57 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer;
+
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+
+/**
+ * Implemented by {@link Source Sources} that can read small blocks of their
+ * {@link Source#getSource(int, int) images} directly from the back-end,
+ * without loading complete cache cells, for example to look up the values at
+ * a few positions.
+ *
+ * @param <T>
+ *            pixel type
+ */
+public interface RangeReadableSource< T >
+{
+	/**
+	 * Read the voxels of the image at timepoint {@code t} and mipmap
+	 * {@code level} in {@code interval} into memory.
+	 *
+	 * @param interval
+	 *            the interval to read, clipped to the image.
+	 * @return the voxels in {@code interval}, with the same coordinates as in
+	 *         the image, or {@code null} if the image does not intersect the
+	 *         interval or ranged reads are not supported.
+	 */
+	public RandomAccessibleInterval< T > readRange( int t, int level, Interval interval ) throws InterruptedException;
+}
@@ -56,6 +56,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.management.JMException;
 import javax.swing.DefaultBoundedRangeModel;
 import javax.swing.JPanel;
 import javax.swing.JSlider;
@@ -66,12 +67,14 @@ import javax.swing.event.ChangeListener;
 import org.jdom2.Element;
 
 import bdv.cache.CacheControl;
+import bdv.img.cache.VolatileGlobalCellCache;
 import bdv.util.Affine3DHelpers;
 import bdv.util.InvokeOnEDT;
 import bdv.util.Prefs;
 import bdv.viewer.animate.AbstractTransformAnimator;
 import bdv.viewer.animate.MessageOverlayAnimator;
 import bdv.viewer.animate.OverlayAnimator;
+import bdv.viewer.animate.RenderMetricsOverlayAnimator;
 import bdv.viewer.animate.RotationAnimator;
 import bdv.viewer.animate.TextOverlayAnimator;
 import bdv.viewer.animate.TextOverlayAnimator.TextPosition;
@@ -79,6 +82,7 @@ import bdv.viewer.overlay.MultiBoxOverlayRenderer;
 import bdv.viewer.overlay.ScaleBarOverlayRenderer;
 import bdv.viewer.overlay.SourceInfoOverlayRenderer;
 import bdv.viewer.render.MultiResolutionRenderer;
+import bdv.viewer.render.RenderMetrics;
 import bdv.viewer.render.TransformAwareBufferedImageOverlayRenderer;
 import bdv.viewer.state.SourceGroup;
 import bdv.viewer.state.SourceState;
@@ -231,6 +235,12 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 
 	protected final ViewerOptions.Values options;
 
+	/**
+	 * Controls IO budgeting and fetcher queue of the cache backing the
+	 * sources.
+	 */
+	protected final CacheControl cacheControl;
+
 	public ViewerPanel( final List< SourceAndConverter< ? > > sources, final int numTimePoints, final CacheControl cacheControl )
 	{
 		this( sources, numTimePoints, cacheControl, ViewerOptions.options() );
@@ -251,6 +261,7 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 		super( new BorderLayout(), false );
 
 		options = optional.values;
+		this.cacheControl = cacheControl;
 
 		final int numGroups = 10;
 		final ArrayList< SourceGroup > groups = new ArrayList<>( numGroups );
@@ -280,6 +291,7 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 		renderingExecutorService = Executors.newFixedThreadPool(
 				options.getNumRenderingThreads(),
 				new RenderThreadFactory() );
+		renderTarget.setUpscaleExecutorService( renderingExecutorService, options.getNumRenderingThreads() );
 		imageRenderer = new MultiResolutionRenderer(
 				renderTarget, painterThread,
 				options.getScreenScales(),
@@ -322,6 +334,24 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 		overlayAnimators.add( msgOverlay );
 		overlayAnimators.add( new TextOverlayAnimator( "Press <F1> for help.", 3000, TextPosition.CENTER ) );
 
+		final RenderMetrics renderMetrics = imageRenderer.getRenderMetrics();
+		renderTarget.setRenderMetrics( renderMetrics );
+		if ( cacheControl instanceof VolatileGlobalCellCache )
+			renderMetrics.setCacheStatistics( ( ( VolatileGlobalCellCache ) cacheControl ).getStatistics() );
+		if ( Prefs.showRenderMetrics() )
+			overlayAnimators.add( new RenderMetricsOverlayAnimator( renderMetrics ) );
+		if ( Prefs.renderMetricsJmx() )
+		{
+			try
+			{
+				renderMetrics.registerMBean( "viewer-" + Integer.toHexString( hashCode() ) );
+			}
+			catch ( final JMException e )
+			{
+				e.printStackTrace();
+			}
+		}
+
 		display.addComponentListener( new ComponentAdapter()
 		{
 			@Override
@@ -1014,6 +1044,29 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 		return options;
 	}
 
+	/**
+	 * Get timing information about rendered frames, e.g., to add a
+	 * {@link RenderMetrics.FrameListener}.
+	 *
+	 * @return the render metrics of this viewer.
+	 */
+	public RenderMetrics getRenderMetrics()
+	{
+		return imageRenderer.getRenderMetrics();
+	}
+
+	/**
+	 * Get the {@link CacheControl} of the cache backing the sources. This can
+	 * be used to render the sources elsewhere, sharing the cache with this
+	 * viewer.
+	 *
+	 * @return the {@link CacheControl} passed to the constructor.
+	 */
+	public CacheControl getCacheControl()
+	{
+		return cacheControl;
+	}
+
 	public SourceInfoOverlayRenderer getSourceInfoOverlayRenderer()
 	{
 		return sourceInfoOverlayRenderer;
@@ -1034,6 +1087,7 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 			e.printStackTrace();
 		}
 		renderingExecutorService.shutdown();
+		imageRenderer.getRenderMetrics().unregisterMBean();
 		state.kill();
 		imageRenderer.kill();
 	}
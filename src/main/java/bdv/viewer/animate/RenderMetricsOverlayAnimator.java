@@ -0,0 +1,129 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.animate;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import bdv.img.cache.CacheStatistics;
+import bdv.viewer.render.RenderMetrics;
+import bdv.viewer.render.RenderMetrics.FrameMetrics;
+
+/**
+ * Draw render timing and cache statistics from {@link RenderMetrics} in the
+ * upper left corner of the display.
+ */
+public class RenderMetricsOverlayAnimator implements OverlayAnimator
+{
+	private final RenderMetrics metrics;
+
+	private final Font font;
+
+	private long previousLoadedBytes;
+
+	private long previousTime;
+
+	private double loadedBytesPerSecond;
+
+	public RenderMetricsOverlayAnimator( final RenderMetrics metrics )
+	{
+		this( metrics, new Font( "Monospaced", Font.PLAIN, 12 ) );
+	}
+
+	public RenderMetricsOverlayAnimator( final RenderMetrics metrics, final Font font )
+	{
+		this.metrics = metrics;
+		this.font = font;
+	}
+
+	@Override
+	public void paint( final Graphics2D g, final long time )
+	{
+		final List< String > lines = new ArrayList<>();
+
+		final FrameMetrics frame = metrics.getLastFrame();
+		if ( frame != null )
+		{
+			lines.add( String.format( "frame     %6.1f ms  (scale %d = %.2f%s)",
+					frame.renderNanos / 1e6, frame.screenScaleIndex, frame.screenScale, frame.valid ? "" : ", incomplete" ) );
+			lines.add( String.format( "full res  %6.1f ms  avg %6.1f ms",
+					metrics.getLastFullResolutionRenderMillis(), metrics.getAverageFrameRenderMillis() ) );
+			for ( int i = 0; i < frame.sourceIndices.length; ++i )
+				lines.add( String.format( "source %-2d %6.1f ms", frame.sourceIndices[ i ], frame.sourceRenderNanos[ i ] / 1e6 ) );
+			lines.add( String.format( "io        %6.1f ms", frame.ioNanos / 1e6 ) );
+		}
+		lines.add( String.format( "blit      %6.1f ms", metrics.getLastBlitMillis() ) );
+
+		final CacheStatistics cache = metrics.getCacheStatistics();
+		if ( cache != null )
+		{
+			final long bytes = cache.getLoadedBytes();
+			if ( previousTime != 0 && time > previousTime )
+				loadedBytesPerSecond = 0.8 * loadedBytesPerSecond + 0.2 * ( bytes - previousLoadedBytes ) * 1000.0 / ( time - previousTime );
+			previousLoadedBytes = bytes;
+			previousTime = time;
+			final int queued = cache.getQueueSize();
+			lines.add( String.format( "cache hit %5.1f %%  loading %d", 100 * cache.getHitRatio(), cache.getNumLoadsInProgress() )
+					+ ( queued >= 0 ? String.format( "  queued %d", queued ) : "" ) );
+			lines.add( String.format( "loaded    %6.1f MB  (%.1f MB/s)", bytes / 1e6, loadedBytesPerSecond / 1e6 ) );
+		}
+
+		g.setFont( font );
+		final int lineHeight = g.getFontMetrics().getHeight();
+		int width = 0;
+		for ( final String line : lines )
+			width = Math.max( width, g.getFontMetrics().stringWidth( line ) );
+		g.setColor( new Color( 0, 0, 0, 0.5f ) );
+		g.fillRect( 5, 5, width + 10, lines.size() * lineHeight + 10 );
+		g.setColor( Color.WHITE );
+		int y = 10 + g.getFontMetrics().getAscent();
+		for ( final String line : lines )
+		{
+			g.drawString( line, 10, y );
+			y += lineHeight;
+		}
+	}
+
+	@Override
+	public boolean isComplete()
+	{
+		// this animator should not be removed, ever.
+		return false;
+	}
+
+	@Override
+	public boolean requiresRepaint()
+	{
+		return false;
+	}
+}
@@ -119,42 +119,40 @@ public class MultiBoxOverlayRenderer
 	/**
 	 * Update data to show in the box overlay.
 	 */
-	public synchronized void setViewerState( final ViewerState viewerState )
+	public synchronized void setViewerState( final ViewerState state )
 	{
-		synchronized ( viewerState )
+		final ViewerState viewerState = state.snapshot();
+		final List< SourceState< ? > > sources = viewerState.getSources();
+		final List< Integer > visible = viewerState.getVisibleSourceIndices();
+		final int timepoint = viewerState.getCurrentTimepoint();
+
+		final int numSources = sources.size();
+		int numPresentSources = 0;
+		for ( final SourceState< ? > source : sources )
+			if ( source.getSpimSource().isPresent( timepoint ) )
+				numPresentSources++;
+		if ( boxSources.size() != numPresentSources )
 		{
-			final List< SourceState< ? > > sources = viewerState.getSources();
-			final List< Integer > visible = viewerState.getVisibleSourceIndices();
-			final int timepoint = viewerState.getCurrentTimepoint();
-
-			final int numSources = sources.size();
-			int numPresentSources = 0;
-			for ( final SourceState< ? > source : sources )
-				if ( source.getSpimSource().isPresent( timepoint ) )
-					numPresentSources++;
-			if ( boxSources.size() != numPresentSources )
-			{
-				while ( boxSources.size() < numPresentSources )
-					boxSources.add( new IntervalAndTransform() );
-				while ( boxSources.size() > numPresentSources )
-					boxSources.remove( boxSources.size() - 1 );
-			}
+			while ( boxSources.size() < numPresentSources )
+				boxSources.add( new IntervalAndTransform() );
+			while ( boxSources.size() > numPresentSources )
+				boxSources.remove( boxSources.size() - 1 );
+		}
 
-			final AffineTransform3D sourceToViewer = new AffineTransform3D();
-			final AffineTransform3D sourceTransform = new AffineTransform3D();
-			for ( int i = 0, j = 0; i < numSources; ++i )
+		final AffineTransform3D sourceToViewer = new AffineTransform3D();
+		final AffineTransform3D sourceTransform = new AffineTransform3D();
+		for ( int i = 0, j = 0; i < numSources; ++i )
+		{
+			final SourceState< ? > source = sources.get( i );
+			if ( source.getSpimSource().isPresent( timepoint ) )
 			{
-				final SourceState< ? > source = sources.get( i );
-				if ( source.getSpimSource().isPresent( timepoint ) )
-				{
-					final IntervalAndTransform boxsource = boxSources.get( j++ );
-					viewerState.getViewerTransform( sourceToViewer );
-					source.getSpimSource().getSourceTransform( timepoint, 0, sourceTransform );
-					sourceToViewer.concatenate( sourceTransform );
-					boxsource.setSourceToViewer( sourceToViewer );
-					boxsource.setSourceInterval( source.getSpimSource().getSource( timepoint, 0 ) );
-					boxsource.setVisible( visible.contains( i ) );
-				}
+				final IntervalAndTransform boxsource = boxSources.get( j++ );
+				viewerState.getViewerTransform( sourceToViewer );
+				source.getSpimSource().getSourceTransform( timepoint, 0, sourceTransform );
+				sourceToViewer.concatenate( sourceTransform );
+				boxsource.setSourceToViewer( sourceToViewer );
+				boxsource.setSourceInterval( source.getSpimSource().getSource( timepoint, 0 ) );
+				boxsource.setVisible( visible.contains( i ) );
 			}
 		}
 	}
@@ -74,28 +74,26 @@ public class SourceInfoOverlayRenderer
 	/**
 	 * Update data to show in the overlay.
 	 */
-	public synchronized void setViewerState( final ViewerState state )
+	public synchronized void setViewerState( final ViewerState viewerState )
 	{
-		synchronized ( state )
-		{
-			final List< SourceState< ? > > sources = state.getSources();
-			if ( ! sources.isEmpty() )
-				sourceName = sources.get( state.getCurrentSource() ).getSpimSource().getName();
-			else
-				sourceName = "";
+		final ViewerState state = viewerState.snapshot();
+		final List< SourceState< ? > > sources = state.getSources();
+		if ( ! sources.isEmpty() )
+			sourceName = sources.get( state.getCurrentSource() ).getSpimSource().getName();
+		else
+			sourceName = "";
 
-			final List< SourceGroup > groups = state.getSourceGroups();
-			final DisplayMode mode = state.getDisplayMode();
-			if ( ( mode == GROUP || mode == FUSEDGROUP ) && ! groups.isEmpty() )
-				groupName = groups.get( state.getCurrentGroup() ).getName();
-			else
-				groupName = "";
+		final List< SourceGroup > groups = state.getSourceGroups();
+		final DisplayMode mode = state.getDisplayMode();
+		if ( ( mode == GROUP || mode == FUSEDGROUP ) && ! groups.isEmpty() )
+			groupName = groups.get( state.getCurrentGroup() ).getName();
+		else
+			groupName = "";
 
-			final int t = state.getCurrentTimepoint();
-			if ( timePointsOrdered != null && t >= 0 && t < timePointsOrdered.size() )
-				timepointString = String.format( "t = %s", timePointsOrdered.get( t ).getName() );
-			else
-				timepointString = String.format( "t = %d", t );
-		}
+		final int t = state.getCurrentTimepoint();
+		if ( timePointsOrdered != null && t >= 0 && t < timePointsOrdered.size() )
+			timepointString = String.format( "t = %s", timePointsOrdered.get( t ).getName() );
+		else
+			timepointString = String.format( "t = %d", t );
 	}
 }
@@ -0,0 +1,340 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import bdv.viewer.Interpolation;
+import net.imglib2.AbstractLocalizable;
+import net.imglib2.Interval;
+import net.imglib2.Localizable;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.Volatile;
+import net.imglib2.position.transform.Round;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.NumericType;
+import net.imglib2.view.Views;
+
+/**
+ * Screen-space view of a 3D source image for viewer transforms that are
+ * aligned with the source axes. Screen X and Y must map to (different) source
+ * axes with integer (possibly negative) steps, so that a step along a screen
+ * row is an integer move of a {@link RandomAccess} on the source image. This
+ * replaces per-pixel affine transformation and interpolation by a plain walk
+ * through the image (and its cells), visiting exactly the voxels that
+ * interpolation would sample. This only holds for sources that interpolate
+ * their zero-extended images with the default interpolators, see
+ * {@link DefaultInterpolatedSource}.
+ * <p>
+ * Screen Z may map to the remaining source axis with arbitrary scale.
+ * Positions along screen Z are rounded to the nearest voxel. (The renderer
+ * only samples the screen plane Z=0.)
+ *
+ * @param <T>
+ *            pixel type
+ */
+public class AxisAlignedRandomAccessible< T > implements RandomAccessible< T >
+{
+	private static final double EPSILON = 1e-6;
+
+	private final RandomAccessible< T > source;
+
+	/**
+	 * Source axis for each screen axis.
+	 */
+	private final int[] axis;
+
+	/**
+	 * Source step for each screen axis.
+	 */
+	private final double[] scale;
+
+	/**
+	 * Integer source step for each screen axis, if {@link #integral}.
+	 */
+	private final long[] step;
+
+	private final boolean[] integral;
+
+	/**
+	 * Source position (indexed by source axis) corresponding to screen
+	 * position 0.
+	 */
+	private final double[] offset;
+
+	private AxisAlignedRandomAccessible(
+			final RandomAccessible< T > source,
+			final int[] axis,
+			final double[] scale,
+			final double[] offset )
+	{
+		this.source = source;
+		this.axis = axis;
+		this.scale = scale;
+		this.offset = offset;
+		step = new long[ 3 ];
+		integral = new boolean[ 3 ];
+		for ( int d = 0; d < 3; ++d )
+		{
+			step[ d ] = Math.round( scale[ d ] );
+			integral[ d ] = Math.abs( scale[ d ] - step[ d ] ) < EPSILON;
+		}
+	}
+
+	/**
+	 * Create an axis-aligned screen-space view of {@code img}, if
+	 * {@code sourceToScreen} allows it.
+	 *
+	 * @param img
+	 *            3D source image.
+	 * @param type
+	 *            an instance of the pixel type, used to create the
+	 *            out-of-bounds value.
+	 * @param sourceToScreen
+	 *            transforms source voxel coordinates to screen coordinates.
+	 * @param interpolation
+	 *            for {@link Interpolation#NLINEAR}, screen pixels must hit
+	 *            voxel centers exactly. For
+	 *            {@link Interpolation#NEARESTNEIGHBOR}, positions are rounded
+	 *            like the nearest-neighbor interpolator does.
+	 * @return screen-space view, or {@code null} if {@code sourceToScreen} is
+	 *         not axis-aligned with integer steps, or the pixel type is not a
+	 *         {@link NumericType}.
+	 */
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	public static < T > RandomAccessible< T > create(
+			final RandomAccessibleInterval< T > img,
+			final T type,
+			final AffineTransform3D sourceToScreen,
+			final Interpolation interpolation )
+	{
+		if ( img.numDimensions() != 3 || !( type instanceof NumericType ) )
+			return null;
+
+		final AffineTransform3D screenToSource = sourceToScreen.inverse();
+		final int[] axis = new int[ 3 ];
+		final double[] scale = new double[ 3 ];
+		final boolean[] usedAxis = new boolean[ 3 ];
+		for ( int c = 0; c < 3; ++c )
+		{
+			axis[ c ] = -1;
+			for ( int r = 0; r < 3; ++r )
+			{
+				final double v = screenToSource.get( r, c );
+				if ( Math.abs( v ) > EPSILON )
+				{
+					if ( axis[ c ] >= 0 || usedAxis[ r ] )
+						return null;
+					axis[ c ] = r;
+					scale[ c ] = v;
+					usedAxis[ r ] = true;
+				}
+			}
+			if ( axis[ c ] < 0 )
+				return null;
+		}
+		for ( int c = 0; c < 2; ++c )
+			if ( Math.abs( scale[ c ] - Math.round( scale[ c ] ) ) > EPSILON )
+				return null;
+
+		final double[] offset = new double[ 3 ];
+		for ( int r = 0; r < 3; ++r )
+		{
+			final double t = screenToSource.get( r, 3 );
+			if ( interpolation == Interpolation.NLINEAR )
+			{
+				if ( Math.abs( t - Math.round( t ) ) > EPSILON )
+					return null;
+				offset[ r ] = Math.round( t );
+			}
+			else
+				offset[ r ] = t;
+		}
+
+		final NumericType zero = ( NumericType ) ( ( NumericType ) type ).createVariable();
+		zero.setZero();
+		if ( zero instanceof Volatile )
+			( ( Volatile ) zero ).setValid( true );
+		final RandomAccessible< T > extended = ( RandomAccessible< T > ) Views.extendValue( ( RandomAccessibleInterval ) img, zero );
+		return new AxisAlignedRandomAccessible<>( extended, axis, scale, offset );
+	}
+
+	@Override
+	public int numDimensions()
+	{
+		return 3;
+	}
+
+	@Override
+	public RandomAccess< T > randomAccess()
+	{
+		return new AxisAlignedRandomAccess();
+	}
+
+	@Override
+	public RandomAccess< T > randomAccess( final Interval interval )
+	{
+		return randomAccess();
+	}
+
+	private class AxisAlignedRandomAccess extends AbstractLocalizable implements RandomAccess< T >
+	{
+		private final RandomAccess< T > sourceAccess;
+
+		AxisAlignedRandomAccess()
+		{
+			super( 3 );
+			sourceAccess = source.randomAccess();
+			for ( int d = 0; d < 3; ++d )
+				updateSource( d );
+		}
+
+		AxisAlignedRandomAccess( final AxisAlignedRandomAccess a )
+		{
+			super( a.position.clone() );
+			sourceAccess = a.sourceAccess.copyRandomAccess();
+		}
+
+		private void updateSource( final int d )
+		{
+			final int s = axis[ d ];
+			sourceAccess.setPosition( Round.round( scale[ d ] * position[ d ] + offset[ s ] ), s );
+		}
+
+		@Override
+		public void fwd( final int d )
+		{
+			++position[ d ];
+			if ( integral[ d ] )
+				sourceAccess.move( step[ d ], axis[ d ] );
+			else
+				updateSource( d );
+		}
+
+		@Override
+		public void bck( final int d )
+		{
+			--position[ d ];
+			if ( integral[ d ] )
+				sourceAccess.move( -step[ d ], axis[ d ] );
+			else
+				updateSource( d );
+		}
+
+		@Override
+		public void move( final long distance, final int d )
+		{
+			position[ d ] += distance;
+			if ( integral[ d ] )
+				sourceAccess.move( distance * step[ d ], axis[ d ] );
+			else
+				updateSource( d );
+		}
+
+		@Override
+		public void move( final int distance, final int d )
+		{
+			move( ( long ) distance, d );
+		}
+
+		@Override
+		public void move( final Localizable localizable )
+		{
+			for ( int d = 0; d < 3; ++d )
+				move( localizable.getLongPosition( d ), d );
+		}
+
+		@Override
+		public void move( final int[] distance )
+		{
+			for ( int d = 0; d < 3; ++d )
+				move( ( long ) distance[ d ], d );
+		}
+
+		@Override
+		public void move( final long[] distance )
+		{
+			for ( int d = 0; d < 3; ++d )
+				move( distance[ d ], d );
+		}
+
+		@Override
+		public void setPosition( final long pos, final int d )
+		{
+			position[ d ] = pos;
+			updateSource( d );
+		}
+
+		@Override
+		public void setPosition( final int pos, final int d )
+		{
+			setPosition( ( long ) pos, d );
+		}
+
+		@Override
+		public void setPosition( final Localizable localizable )
+		{
+			for ( int d = 0; d < 3; ++d )
+				setPosition( localizable.getLongPosition( d ), d );
+		}
+
+		@Override
+		public void setPosition( final int[] pos )
+		{
+			for ( int d = 0; d < 3; ++d )
+				setPosition( ( long ) pos[ d ], d );
+		}
+
+		@Override
+		public void setPosition( final long[] pos )
+		{
+			for ( int d = 0; d < 3; ++d )
+				setPosition( pos[ d ], d );
+		}
+
+		@Override
+		public T get()
+		{
+			return sourceAccess.get();
+		}
+
+		@Override
+		public AxisAlignedRandomAccess copy()
+		{
+			return new AxisAlignedRandomAccess( this );
+		}
+
+		@Override
+		public AxisAlignedRandomAccess copyRandomAccess()
+		{
+			return copy();
+		}
+	}
+}
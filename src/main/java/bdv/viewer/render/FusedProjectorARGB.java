@@ -0,0 +1,398 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import bdv.viewer.Source;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.Volatile;
+import net.imglib2.cache.iotiming.CacheIoTiming;
+import net.imglib2.cache.iotiming.IoStatistics;
+import net.imglib2.converter.Converter;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.ui.util.StopWatch;
+
+/**
+ * {@link VolatileProjector} that renders several sources into one ARGB target,
+ * adding up their converted values like {@link AccumulateProjectorARGB}. In
+ * contrast to using a {@link VolatileHierarchyProjector} per source followed
+ * by an {@link AccumulateProjectorARGB}, no intermediate full-screen image or
+ * mask is allocated per source. Each rendering task accumulates the sources of
+ * one row at a time into scratch buffers of the row width, and writes the row
+ * to the target.
+ * <p>
+ * For {@link Volatile} sources, the levels of the mipmap hierarchy are tried
+ * in order for every pixel of a row until a valid value is found. The
+ * projector is {@link #isValid() valid} if every pixel of every source was
+ * valid at the first (best) level. As there is no per-source image to keep
+ * partial results in, every {@link #map()} renders all pixels.
+ */
+public class FusedProjectorARGB implements VolatileProjector
+{
+	/**
+	 * Opts into fused rendering: if this factory is set as the
+	 * {@link bdv.viewer.ViewerOptions#accumulateProjectorFactory(AccumulateProjectorFactory)
+	 * accumulateProjectorFactory}, the {@link MultiResolutionRenderer} renders
+	 * multiple sources with a {@link FusedProjectorARGB} instead of per-source
+	 * projectors. This saves the per-source images and masks, but every pass
+	 * redraws all pixels (walking the mipmap levels for pixels that are not
+	 * valid yet), and per-source render metrics are not recorded. Where
+	 * per-source images are still used, this factory creates
+	 * {@link AccumulateProjectorARGB}s, with the same result.
+	 */
+	public static AccumulateProjectorFactory< ARGBType > factory = new AccumulateProjectorFactory< ARGBType >()
+	{
+		@Override
+		public VolatileProjector createAccumulateProjector(
+				final ArrayList< VolatileProjector > sourceProjectors,
+				final ArrayList< Source< ? > > sources,
+				final ArrayList< ? extends RandomAccessible< ? extends ARGBType > > sourceScreenImages,
+				final RandomAccessibleInterval< ARGBType > targetScreenImages,
+				final int numThreads,
+				final ExecutorService executorService )
+		{
+			return AccumulateProjectorARGB.factory.createAccumulateProjector( sourceProjectors, sources, sourceScreenImages, targetScreenImages, numThreads, executorService );
+		}
+	};
+
+	/**
+	 * A source to render, given as a list of screen-space
+	 * {@link RandomAccessible}s, best level first.
+	 *
+	 * @param <A>
+	 *            pixel type
+	 */
+	public static class FusedSource< A >
+	{
+		final List< RandomAccessible< A > > levels;
+
+		final Converter< ? super A, ARGBType > converter;
+
+		final boolean isVolatile;
+
+		/**
+		 * @param levels
+		 *            hierarchy of screen-space sources, best level first. If
+		 *            {@code isVolatile} is {@code false}, only the first level
+		 *            is used.
+		 * @param converter
+		 *            converts source values to ARGB.
+		 * @param isVolatile
+		 *            whether {@code A} is {@link Volatile}, that is, whether
+		 *            invalid values fall back to the next level. (This is
+		 *            given by the caller, typically from
+		 *            {@link Source#getType()}, because getting a value from
+		 *            the first level to check might trigger loading.)
+		 */
+		public FusedSource( final List< ? extends RandomAccessible< A > > levels, final Converter< ? super A, ARGBType > converter, final boolean isVolatile )
+		{
+			this.levels = new ArrayList<>( levels );
+			this.converter = converter;
+			this.isVolatile = isVolatile;
+		}
+	}
+
+	private final List< FusedSource< ? > > sources;
+
+	private final RandomAccessibleInterval< ARGBType > target;
+
+	private final int width;
+
+	private final int height;
+
+	/**
+	 * Number of dimensions of the sources.
+	 */
+	private final int n;
+
+	private final FinalInterval sourceInterval;
+
+	private final int numThreads;
+
+	private final ExecutorService executorService;
+
+	private volatile boolean valid = false;
+
+	private long lastFrameRenderNanoTime;
+
+	private long lastFrameIoNanoTime;
+
+	private final AtomicInteger numInvalidPixels = new AtomicInteger();
+
+	private final AtomicBoolean interrupted = new AtomicBoolean();
+
+	public FusedProjectorARGB(
+			final List< FusedSource< ? > > sources,
+			final RandomAccessibleInterval< ARGBType > target,
+			final int numThreads,
+			final ExecutorService executorService )
+	{
+		this.sources = new ArrayList<>( sources );
+		this.target = target;
+		width = ( int ) target.dimension( 0 );
+		height = ( int ) target.dimension( 1 );
+		n = Math.max( 2, sources.get( 0 ).levels.get( 0 ).numDimensions() );
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		min[ 0 ] = target.min( 0 );
+		min[ 1 ] = target.min( 1 );
+		max[ 0 ] = target.max( 0 );
+		max[ 1 ] = target.max( 1 );
+		sourceInterval = new FinalInterval( min, max );
+		this.numThreads = numThreads;
+		this.executorService = executorService;
+		lastFrameRenderNanoTime = -1;
+	}
+
+	@Override
+	public void cancel()
+	{
+		interrupted.set( true );
+	}
+
+	@Override
+	public long getLastFrameRenderNanoTime()
+	{
+		return lastFrameRenderNanoTime;
+	}
+
+	public long getLastFrameIoNanoTime()
+	{
+		return lastFrameIoNanoTime;
+	}
+
+	@Override
+	public boolean isValid()
+	{
+		return valid;
+	}
+
+	@Override
+	public boolean map()
+	{
+		return map( true );
+	}
+
+	/**
+	 * Render all pixels of the target. {@code clearUntouchedTargetPixels} is
+	 * ignored, because every pixel is written.
+	 */
+	@Override
+	public boolean map( final boolean clearUntouchedTargetPixels )
+	{
+		interrupted.set( false );
+
+		final StopWatch stopWatch = new StopWatch();
+		stopWatch.start();
+		final IoStatistics iostat = CacheIoTiming.getIoStatistics();
+		final long startTimeIo = iostat.getIoNanoTime();
+		final long startTimeIoCumulative = iostat.getCumulativeIoNanoTime();
+
+		final int numTasks = ( numThreads > 1 ) ? Math.min( numThreads * 10, height ) : 1;
+		final double taskHeight = ( double ) height / numTasks;
+
+		numInvalidPixels.set( 0 );
+		final ArrayList< Callable< Void > > tasks = new ArrayList<>( numTasks );
+		for ( int taskNum = 0; taskNum < numTasks; ++taskNum )
+		{
+			final int myMinY = ( int ) ( taskNum * taskHeight );
+			final int myMaxY = ( taskNum == numTasks - 1 ) ? height : ( int ) ( ( taskNum + 1 ) * taskHeight );
+			tasks.add( () -> {
+				renderRows( myMinY, myMaxY );
+				return null;
+			} );
+		}
+
+		final boolean createExecutor = ( executorService == null );
+		final ExecutorService ex = createExecutor ? Executors.newFixedThreadPool( numThreads ) : executorService;
+		try
+		{
+			ex.invokeAll( tasks );
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+		if ( createExecutor )
+			ex.shutdown();
+
+		final long lastFrameTime = stopWatch.nanoTime();
+		lastFrameIoNanoTime = iostat.getIoNanoTime() - startTimeIo;
+		lastFrameRenderNanoTime = lastFrameTime - ( iostat.getCumulativeIoNanoTime() - startTimeIoCumulative ) / numThreads;
+
+		if ( interrupted.get() )
+			return false;
+
+		valid = numInvalidPixels.get() == 0;
+		return true;
+	}
+
+	/**
+	 * Render target rows {@code minY} (inclusive) to {@code maxY} (exclusive).
+	 */
+	private void renderRows( final int minY, final int maxY )
+	{
+		final int[] aSum = new int[ width ];
+		final int[] rSum = new int[ width ];
+		final int[] gSum = new int[ width ];
+		final int[] bSum = new int[ width ];
+		final byte[] rowLevel = new byte[ width ];
+		final ARGBType argb = new ARGBType();
+		final long[] position = new long[ n ];
+		position[ 0 ] = sourceInterval.min( 0 );
+
+		final List< RandomAccess< ? >[] > accesses = new ArrayList<>( sources.size() );
+		for ( final FusedSource< ? > source : sources )
+			accesses.add( createAccesses( source ) );
+
+		final RandomAccess< ARGBType > targetRandomAccess = target.randomAccess( target );
+		int myNumInvalidPixels = 0;
+		for ( int y = minY; y < maxY; ++y )
+		{
+			if ( interrupted.get() )
+				return;
+
+			Arrays.fill( aSum, 0 );
+			Arrays.fill( rSum, 0 );
+			Arrays.fill( gSum, 0 );
+			Arrays.fill( bSum, 0 );
+			position[ 1 ] = sourceInterval.min( 1 ) + y;
+			for ( int s = 0; s < sources.size(); ++s )
+				myNumInvalidPixels += accumulateRow( sources.get( s ), accesses.get( s ), position, rowLevel, argb, aSum, rSum, gSum, bSum );
+
+			targetRandomAccess.setPosition( target.min( 0 ), 0 );
+			targetRandomAccess.setPosition( target.min( 1 ) + y, 1 );
+			for ( int x = 0; x < width; ++x )
+			{
+				targetRandomAccess.get().set( ARGBType.rgba(
+						Math.min( 255, rSum[ x ] ),
+						Math.min( 255, gSum[ x ] ),
+						Math.min( 255, bSum[ x ] ),
+						Math.min( 255, aSum[ x ] ) ) );
+				targetRandomAccess.fwd( 0 );
+			}
+		}
+		numInvalidPixels.addAndGet( myNumInvalidPixels );
+	}
+
+	private RandomAccess< ? >[] createAccesses( final FusedSource< ? > source )
+	{
+		final int numLevels = source.isVolatile ? source.levels.size() : 1;
+		final RandomAccess< ? >[] accesses = new RandomAccess< ? >[ numLevels ];
+		for ( int l = 0; l < numLevels; ++l )
+			accesses[ l ] = source.levels.get( l ).randomAccess( sourceInterval );
+		return accesses;
+	}
+
+	/**
+	 * Add the converted values of one row of {@code source} to the sums.
+	 *
+	 * @return the number of pixels in the row that were not valid at the best
+	 *         level.
+	 */
+	@SuppressWarnings( "unchecked" )
+	private static < A > int accumulateRow(
+			final FusedSource< A > source,
+			final RandomAccess< ? >[] accesses,
+			final long[] position,
+			final byte[] rowLevel,
+			final ARGBType argb,
+			final int[] aSum,
+			final int[] rSum,
+			final int[] gSum,
+			final int[] bSum )
+	{
+		final int width = rowLevel.length;
+		final Converter< ? super A, ARGBType > converter = source.converter;
+
+		if ( !source.isVolatile )
+		{
+			final RandomAccess< A > access = ( RandomAccess< A > ) accesses[ 0 ];
+			access.setPosition( position );
+			for ( int x = 0; x < width; ++x )
+			{
+				converter.convert( access.get(), argb );
+				add( argb.get(), x, aSum, rSum, gSum, bSum );
+				access.fwd( 0 );
+			}
+			return 0;
+		}
+
+		// rowLevel[ x ] is the level at which pixel x was found valid, or
+		// Byte.MAX_VALUE if it was not found yet.
+		Arrays.fill( rowLevel, Byte.MAX_VALUE );
+		int numRemaining = width;
+		for ( int l = 0; l < accesses.length && numRemaining > 0; ++l )
+		{
+			final RandomAccess< A > access = ( RandomAccess< A > ) accesses[ l ];
+			access.setPosition( position );
+			for ( int x = 0; x < width; ++x )
+			{
+				if ( rowLevel[ x ] == Byte.MAX_VALUE )
+				{
+					final A a = access.get();
+					if ( ( ( Volatile< ? > ) a ).isValid() )
+					{
+						converter.convert( a, argb );
+						add( argb.get(), x, aSum, rSum, gSum, bSum );
+						rowLevel[ x ] = ( byte ) l;
+						--numRemaining;
+					}
+				}
+				access.fwd( 0 );
+			}
+		}
+
+		int numInvalid = 0;
+		for ( int x = 0; x < width; ++x )
+			if ( rowLevel[ x ] != 0 )
+				++numInvalid;
+		return numInvalid;
+	}
+
+	private static void add( final int value, final int x, final int[] aSum, final int[] rSum, final int[] gSum, final int[] bSum )
+	{
+		aSum[ x ] += ARGBType.alpha( value );
+		rSum[ x ] += ARGBType.red( value );
+		gSum[ x ] += ARGBType.green( value );
+		bSum[ x ] += ARGBType.blue( value );
+	}
+}
@@ -119,7 +119,10 @@ import net.imglib2.ui.util.GuiUtil;
  * and all coarser levels is rendered to a {@link #renderImages temporary image}
  * for each visible source. Then the temporary images are combined to the final
  * image for display. The number of passes required until all data is valid
- * might differ between visible sources.
+ * might differ between visible sources. With the opt-in
+ * {@link FusedProjectorARGB#factory}, multiple sources are instead rendered by
+ * a {@link FusedProjectorARGB}, which accumulates them row by row without
+ * temporary images.
  * <p>
  * Rendering timing is tied to a {@link CacheControl} control for IO budgeting, etc.
  *
@@ -255,6 +258,14 @@ public class MultiResolutionRenderer
 	 */
 	protected final AccumulateProjectorFactory< ARGBType > accumulateProjectorFactory;
 
+	/**
+	 * Whether to render multiple sources with a {@link FusedProjectorARGB}.
+	 * This is the case if {@link FusedProjectorARGB#factory} is used. Other
+	 * {@link AccumulateProjectorFactory factories} (including the default
+	 * {@link AccumulateProjectorARGB#factory}) get per-source images.
+	 */
+	protected final boolean useFusedProjector;
+
 	/**
 	 * Controls IO budgeting and fetcher queue.
 	 */
@@ -283,6 +294,22 @@ public class MultiResolutionRenderer
 	// TODO: should be settable
 	protected boolean prefetchCells = true;
 
+	/**
+	 * Timing information about rendered frames.
+	 */
+	protected final RenderMetrics metrics = new RenderMetrics();
+
+	/**
+	 * Indices of the sources rendered by the current {@link #projector}.
+	 */
+	protected int[] currentSourceIndices = new int[ 0 ];
+
+	/**
+	 * Per-source projectors of the current {@link #projector}, corresponding
+	 * to {@link #currentSourceIndices}.
+	 */
+	protected final ArrayList< VolatileProjector > currentSourceProjectors = new ArrayList<>();
+
 	/**
 	 * @param display
 	 *            The canvas that will display the images we render.
@@ -350,6 +377,7 @@ public class MultiResolutionRenderer
 		this.renderingExecutorService = renderingExecutorService;
 		this.useVolatileIfAvailable = useVolatileIfAvailable;
 		this.accumulateProjectorFactory = accumulateProjectorFactory;
+		useFusedProjector = ( accumulateProjectorFactory == FusedProjectorARGB.factory );
 		this.cacheControl = cacheControl;
 		newFrameRequest = false;
 		previousTimepoint = -1;
@@ -488,13 +516,15 @@ public class MultiResolutionRenderer
 				currentScreenScaleIndex = requestedScreenScaleIndex;
 				bufferedImage = bufferedImages[ currentScreenScaleIndex ][ renderId ];
 				final ARGBScreenImage screenImage = screenImages[ currentScreenScaleIndex ][ renderId ];
-				synchronized ( state )
-				{
-					final int numVisibleSources = state.getVisibleSourceIndices().size();
-					checkRenewRenderImages( numVisibleSources );
-					checkRenewMaskArrays( numVisibleSources );
-					p = createProjector( state, currentScreenScaleIndex, screenImage );
-				}
+				// work on an immutable snapshot, so that the state can be
+				// modified concurrently without locking
+				final ViewerState snapshot = state.snapshot();
+				final int numVisibleSources = snapshot.getVisibleSourceIndices().size();
+				// the fused projector needs no per-source images and masks
+				final boolean fused = useFusedProjector && numVisibleSources > 1;
+				checkRenewRenderImages( fused ? 0 : numVisibleSources );
+				checkRenewMaskArrays( fused ? 0 : numVisibleSources );
+				p = createProjector( snapshot, currentScreenScaleIndex, screenImage );
 				projector = p;
 			}
 			else
@@ -509,6 +539,21 @@ public class MultiResolutionRenderer
 		// try rendering
 		final boolean success = p.map( createProjector );
 		final long rendertime = p.getLastFrameRenderNanoTime();
+		final RenderMetrics.FrameMetrics frameMetrics = success ? createFrameMetrics( p, createProjector, rendertime ) : null;
+
+		// Hand the image to the display outside the lock: the display may
+		// upscale it (blocking), and requestRepaint() must not wait for that.
+		// (paint() is only called from one thread, so nothing else modifies
+		// the image or the render id queue in the meantime.)
+		final BufferedImage bi;
+		if ( success && createProjector )
+			bi = display.setBufferedImageAndTransform( bufferedImage, currentProjectorTransform );
+		else
+		{
+			bi = null;
+			if ( success )
+				display.bufferedImageUpdated();
+		}
 
 		synchronized ( this )
 		{
@@ -517,7 +562,6 @@ public class MultiResolutionRenderer
 			{
 				if ( createProjector )
 				{
-					final BufferedImage bi = display.setBufferedImageAndTransform( bufferedImage, currentProjectorTransform );
 					if ( doubleBuffered )
 					{
 						renderIdQueue.pop();
@@ -561,9 +605,45 @@ public class MultiResolutionRenderer
 			}
 		}
 
+		if ( frameMetrics != null )
+			metrics.frameRendered( frameMetrics );
+
 		return success;
 	}
 
+	private synchronized RenderMetrics.FrameMetrics createFrameMetrics( final VolatileProjector p, final boolean createdProjector, final long rendertime )
+	{
+		final int n = currentSourceProjectors.size();
+		final long[] sourceRenderNanos = new long[ n ];
+		long ioNanos = ( p instanceof FusedProjectorARGB ) ? ( ( FusedProjectorARGB ) p ).getLastFrameIoNanoTime() : 0;
+		for ( int j = 0; j < n; ++j )
+		{
+			final VolatileProjector sp = currentSourceProjectors.get( j );
+			sourceRenderNanos[ j ] = sp.getLastFrameRenderNanoTime();
+			if ( sp instanceof VolatileHierarchyProjector )
+				ioNanos += ( ( VolatileHierarchyProjector< ?, ? > ) sp ).getLastFrameIoNanoTime();
+		}
+		return new RenderMetrics.FrameMetrics(
+				currentScreenScaleIndex,
+				screenScales[ currentScreenScaleIndex ],
+				createdProjector,
+				p.isValid(),
+				rendertime,
+				currentSourceIndices.length == n ? currentSourceIndices.clone() : new int[ n ],
+				sourceRenderNanos,
+				ioNanos );
+	}
+
+	/**
+	 * Get timing information about rendered frames.
+	 *
+	 * @return the metrics of this renderer.
+	 */
+	public RenderMetrics getRenderMetrics()
+	{
+		return metrics;
+	}
+
 	/**
 	 * Request a repaint of the display from the painter thread, with maximum
 	 * screen scale index and mipmap level.
@@ -626,6 +706,10 @@ public class MultiResolutionRenderer
 //		CacheIoTiming.getIoTimeBudget().clear(); // clear time budget such that prefetching doesn't wait for loading blocks.
 		final List< SourceState< ? > > sourceStates = viewerState.getSources();
 		final List< Integer > visibleSourceIndices = viewerState.getVisibleSourceIndices();
+		currentSourceIndices = new int[ visibleSourceIndices.size() ];
+		for ( int j = 0; j < currentSourceIndices.length; ++j )
+			currentSourceIndices[ j ] = visibleSourceIndices.get( j );
+		currentSourceProjectors.clear();
 		VolatileProjector projector;
 		if ( visibleSourceIndices.isEmpty() )
 			projector = new EmptyProjector<>( screenImage );
@@ -633,6 +717,14 @@ public class MultiResolutionRenderer
 		{
 			final int i = visibleSourceIndices.get( 0 );
 			projector = createSingleSourceProjector( viewerState, sourceStates.get( i ), i, currentScreenScaleIndex, screenImage, renderMaskArrays[ 0 ] );
+			currentSourceProjectors.add( projector );
+		}
+		else if ( useFusedProjector )
+		{
+			final ArrayList< FusedProjectorARGB.FusedSource< ? > > fusedSources = new ArrayList<>();
+			for ( final int i : visibleSourceIndices )
+				fusedSources.add( createFusedSource( viewerState, sourceStates.get( i ), i, screenImage ) );
+			projector = new FusedProjectorARGB( fusedSources, screenImage, numRenderingThreads, renderingExecutorService );
 		}
 		else
 		{
@@ -649,6 +741,7 @@ public class MultiResolutionRenderer
 						viewerState, sourceStates.get( i ), i, currentScreenScaleIndex,
 						renderImage, maskArray );
 				sourceProjectors.add( p );
+				currentSourceProjectors.add( p );
 				sources.add( sourceStates.get( i ).getSpimSource() );
 				sourceImages.add( renderImage );
 			}
@@ -723,6 +816,20 @@ public class MultiResolutionRenderer
 			final int screenScaleIndex,
 			final ARGBScreenImage screenImage,
 			final byte[] maskArray )
+	{
+		final List< RandomAccessible< T > > renderList = createVolatileRenderList( viewerState, source, screenImage );
+		return new VolatileHierarchyProjector<>( renderList, source.getConverter(), screenImage, maskArray, numRenderingThreads, renderingExecutorService );
+	}
+
+	/**
+	 * Create the screen-space sources to render for the given volatile
+	 * {@code source}, best mipmap level first, and prefetch cells if
+	 * {@link #prefetchCells} is set.
+	 */
+	private < T extends Volatile< ? > > List< RandomAccessible< T > > createVolatileRenderList(
+			final ViewerState viewerState,
+			final SourceState< T > source,
+			final Dimensions screenImage )
 	{
 		final AffineTransform3D screenScaleTransform = screenScaleTransforms[ currentScreenScaleIndex ];
 		final ArrayList< RandomAccessible< T > > renderList = new ArrayList<>();
@@ -756,7 +863,44 @@ public class MultiResolutionRenderer
 		if ( hints.renewHintsAfterPaintingOnce() )
 			newFrameRequest = true;
 
-		return new VolatileHierarchyProjector<>( renderList, source.getConverter(), screenImage, maskArray, numRenderingThreads, renderingExecutorService );
+		return renderList;
+	}
+
+	/**
+	 * Create the {@link FusedProjectorARGB.FusedSource} to render
+	 * {@code source}. Like
+	 * {@link #createSingleSourceProjector(ViewerState, SourceState, int, int, ARGBScreenImage, byte[])},
+	 * this uses the volatile version of the source if available.
+	 */
+	@SuppressWarnings( "unchecked" )
+	private < T > FusedProjectorARGB.FusedSource< ? > createFusedSource(
+			final ViewerState viewerState,
+			final SourceState< T > source,
+			final int sourceIndex,
+			final ARGBScreenImage screenImage )
+	{
+		if ( useVolatileIfAvailable )
+		{
+			if ( source.asVolatile() != null )
+				return createFusedVolatileSource( viewerState, source.asVolatile(), screenImage );
+			else if ( source.getSpimSource().getType() instanceof Volatile )
+				return createFusedVolatileSource( viewerState, ( SourceState< ? extends Volatile< ? > > ) source, screenImage );
+		}
+
+		final AffineTransform3D screenScaleTransform = screenScaleTransforms[ currentScreenScaleIndex ];
+		final int bestLevel = viewerState.getBestMipMapLevel( screenScaleTransform, sourceIndex );
+		return new FusedProjectorARGB.FusedSource<>(
+				Collections.singletonList( getTransformedSource( viewerState, source.getSpimSource(), screenScaleTransform, bestLevel, null ) ),
+				source.getConverter(),
+				source.getSpimSource().getType() instanceof Volatile );
+	}
+
+	private < T extends Volatile< ? > > FusedProjectorARGB.FusedSource< T > createFusedVolatileSource(
+			final ViewerState viewerState,
+			final SourceState< T > source,
+			final ARGBScreenImage screenImage )
+	{
+		return new FusedProjectorARGB.FusedSource<>( createVolatileRenderList( viewerState, source, screenImage ), source.getConverter(), true );
 	}
 
 	private static < T > RandomAccessible< T > getTransformedSource(
@@ -773,7 +917,6 @@ public class MultiResolutionRenderer
 			( ( VolatileCachedCellImg< ?, ? > ) img ).setCacheHints( cacheHints );
 
 		final Interpolation interpolation = viewerState.getInterpolation();
-		final RealRandomAccessible< T > ipimg = source.getInterpolatedSource( timepoint, mipmapIndex, interpolation );
 
 		final AffineTransform3D sourceToScreen = new AffineTransform3D();
 		viewerState.getViewerTransform( sourceToScreen );
@@ -782,10 +925,20 @@ public class MultiResolutionRenderer
 		sourceToScreen.concatenate( sourceTransform );
 		sourceToScreen.preConcatenate( screenScaleTransform );
 
+		// axis-aligned views with integer steps: walk the image directly, if
+		// that samples the same values as the interpolated source.
+		if ( DefaultInterpolatedSource.class.isInstance( source ) && ( ( DefaultInterpolatedSource ) source ).isDefaultInterpolated() )
+		{
+			final RandomAccessible< T > aligned = AxisAlignedRandomAccessible.create( img, source.getType(), sourceToScreen, interpolation );
+			if ( aligned != null )
+				return aligned;
+		}
+
+		final RealRandomAccessible< T > ipimg = source.getInterpolatedSource( timepoint, mipmapIndex, interpolation );
 		return RealViews.affine( ipimg, sourceToScreen );
 	}
 
-	private static < T > void prefetch(
+	static < T > void prefetch(
 			final ViewerState viewerState,
 			final Source< T > source,
 			final AffineTransform3D screenScaleTransform,
@@ -0,0 +1,367 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import bdv.cache.CacheControl;
+import bdv.img.cache.VolatileCachedCellImg;
+import bdv.viewer.Source;
+import bdv.viewer.render.MipmapOrdering.Level;
+import bdv.viewer.state.SourceState;
+import bdv.viewer.state.ViewerState;
+import net.imglib2.Dimensions;
+import net.imglib2.FinalDimensions;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.Volatile;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.ui.PainterThread;
+import net.imglib2.ui.RenderTarget;
+
+/**
+ * Renders {@link ViewerState ViewerStates} to ARGB images, without a
+ * {@link bdv.viewer.ViewerPanel}, display, or painter thread.
+ *
+ * <p>
+ * Each frame is rendered at full resolution by a {@link MultiResolutionRenderer}
+ * with a single screen scale, using multiple rendering threads. If volatile
+ * sources are used, {@link #render(ViewerState, long)} repaints until all data
+ * is loaded or a caller-chosen timeout expires, see {@link #isComplete()}.
+ *
+ * <p>
+ * This can be used from servers and batch jobs to produce snapshots or
+ * movies. {@link OffscreenRenderer} is not thread-safe, but several instances
+ * can render in parallel.
+ */
+public class OffscreenRenderer
+{
+	private final int width;
+
+	private final int height;
+
+	private final Target target;
+
+	private final RepaintRequests repaintRequests;
+
+	private final MultiResolutionRenderer renderer;
+
+	private final ExecutorService renderingExecutorService;
+
+	private final boolean ownsExecutorService;
+
+	private final boolean useVolatileIfAvailable;
+
+	private boolean complete;
+
+	/**
+	 * Create a renderer for {@code width x height} frames, with its own pool
+	 * of {@code numRenderingThreads} rendering threads.
+	 *
+	 * @param width
+	 *            width of rendered frames.
+	 * @param height
+	 *            height of rendered frames.
+	 * @param numRenderingThreads
+	 *            how many threads to use for rendering.
+	 * @param useVolatileIfAvailable
+	 *            whether volatile versions of sources should be used if
+	 *            available. If {@code false}, data is loaded blocking.
+	 * @param accumulateProjectorFactory
+	 *            can be used to customize how sources are combined.
+	 * @param cacheControl
+	 *            the cache controls IO budgeting and fetcher queue.
+	 */
+	public OffscreenRenderer(
+			final int width,
+			final int height,
+			final int numRenderingThreads,
+			final boolean useVolatileIfAvailable,
+			final AccumulateProjectorFactory< ARGBType > accumulateProjectorFactory,
+			final CacheControl cacheControl )
+	{
+		this( width, height, numRenderingThreads,
+				numRenderingThreads > 1 ? Executors.newFixedThreadPool( numRenderingThreads ) : null, true,
+				useVolatileIfAvailable, accumulateProjectorFactory, cacheControl );
+	}
+
+	/**
+	 * Create a renderer for {@code width x height} frames, using the given
+	 * {@link ExecutorService} for rendering.
+	 *
+	 * @param width
+	 *            width of rendered frames.
+	 * @param height
+	 *            height of rendered frames.
+	 * @param numRenderingThreads
+	 *            how many threads to use for rendering.
+	 * @param renderingExecutorService
+	 *            if non-null, this is used for rendering. Note, that it is
+	 *            still important to supply the numRenderingThreads parameter,
+	 *            because that is used to determine into how many sub-tasks
+	 *            rendering is split.
+	 * @param useVolatileIfAvailable
+	 *            whether volatile versions of sources should be used if
+	 *            available. If {@code false}, data is loaded blocking.
+	 * @param accumulateProjectorFactory
+	 *            can be used to customize how sources are combined.
+	 * @param cacheControl
+	 *            the cache controls IO budgeting and fetcher queue.
+	 */
+	public OffscreenRenderer(
+			final int width,
+			final int height,
+			final int numRenderingThreads,
+			final ExecutorService renderingExecutorService,
+			final boolean useVolatileIfAvailable,
+			final AccumulateProjectorFactory< ARGBType > accumulateProjectorFactory,
+			final CacheControl cacheControl )
+	{
+		this( width, height, numRenderingThreads, renderingExecutorService, false,
+				useVolatileIfAvailable, accumulateProjectorFactory, cacheControl );
+	}
+
+	private OffscreenRenderer(
+			final int width,
+			final int height,
+			final int numRenderingThreads,
+			final ExecutorService renderingExecutorService,
+			final boolean ownsExecutorService,
+			final boolean useVolatileIfAvailable,
+			final AccumulateProjectorFactory< ARGBType > accumulateProjectorFactory,
+			final CacheControl cacheControl )
+	{
+		this.width = width;
+		this.height = height;
+		this.renderingExecutorService = renderingExecutorService;
+		this.ownsExecutorService = ownsExecutorService;
+		this.useVolatileIfAvailable = useVolatileIfAvailable;
+		target = new Target();
+		repaintRequests = new RepaintRequests();
+		renderer = new MultiResolutionRenderer(
+				target, repaintRequests, new double[] { 1 }, 0, false,
+				numRenderingThreads, renderingExecutorService, useVolatileIfAvailable,
+				accumulateProjectorFactory, cacheControl );
+	}
+
+	public int getWidth()
+	{
+		return width;
+	}
+
+	public int getHeight()
+	{
+		return height;
+	}
+
+	/**
+	 * Render a frame of the given state. This blocks until the frame is
+	 * complete, i.e., until all (volatile) data required for the frame is
+	 * loaded, or until {@code timeoutMillis} have passed, or the calling
+	 * thread is interrupted.
+	 *
+	 * <p>
+	 * If the frame is not complete when the time runs out, the last painted
+	 * (incomplete) frame is returned. It shows lower resolution data, or
+	 * nothing, where data was still missing. Use {@link #isComplete()} to find
+	 * out whether this happened. At least one pass is always painted.
+	 *
+	 * <p>
+	 * <em>Note that the returned image is re-used for the next frame. Copy it
+	 * if it needs to be kept.</em>
+	 *
+	 * @param state
+	 *            the state to render. The viewer transform of the state should
+	 *            map to a {@link #getWidth()} x {@link #getHeight()} screen
+	 *            (see {@link #fitViewerTransform(AffineTransform3D, int, int, int, int)}).
+	 *            {@code state} should not be modified while rendering, use a
+	 *            {@link ViewerState#copy() snapshot} if necessary.
+	 * @param timeoutMillis
+	 *            how long to repaint at most while waiting for missing data.
+	 * @return the rendered ARGB image.
+	 */
+	public BufferedImage render( final ViewerState state, final long timeoutMillis )
+	{
+		final long deadline = System.currentTimeMillis() + timeoutMillis;
+		renderer.requestRepaint();
+		do
+		{
+			repaintRequests.clear();
+			renderer.paint( state );
+		}
+		while ( repaintRequests.isRequested()
+				&& System.currentTimeMillis() < deadline
+				&& !Thread.currentThread().isInterrupted() );
+		complete = !repaintRequests.isRequested();
+		return target.bufferedImage;
+	}
+
+	/**
+	 * Whether the frame returned by the last
+	 * {@link #render(ViewerState, long)} was complete, i.e., did not time out
+	 * (or was interrupted) while waiting for missing data.
+	 */
+	public boolean isComplete()
+	{
+		return complete;
+	}
+
+	/**
+	 * Enqueue the cells required for a frame of the given state for loading,
+	 * such that a later {@link #render(ViewerState, long)} of the same state
+	 * finds them in the cache. Nothing is painted, and the fetcher queues are
+	 * not reset (as they are when a frame is painted).
+	 *
+	 * <p>
+	 * Cells are enqueued with the lowest priority used by each source (the
+	 * priority of its finest mipmap level), to the back of the queue, so that
+	 * they are loaded after the cells of frames that are currently rendered.
+	 * This has no effect if volatile sources are not used.
+	 *
+	 * @param state
+	 *            the state to prefetch.
+	 */
+	public void prefetch( final ViewerState state )
+	{
+		if ( !useVolatileIfAvailable )
+			return;
+		final Dimensions screenInterval = new FinalDimensions( width, height );
+		for ( final int i : state.getVisibleSourceIndices() )
+		{
+			final SourceState< ? > source = state.getSources().get( i );
+			if ( source.asVolatile() != null )
+				prefetch( state, source.asVolatile().getSpimSource(), screenInterval );
+			else if ( source.getSpimSource().getType() instanceof Volatile )
+				prefetch( state, source.getSpimSource(), screenInterval );
+		}
+	}
+
+	private static < T > void prefetch( final ViewerState state, final Source< T > source, final Dimensions screenInterval )
+	{
+		final int t = state.getCurrentTimepoint();
+		final RandomAccessibleInterval< T > finest = source.getSource( t, 0 );
+		if ( !VolatileCachedCellImg.class.isInstance( finest ) )
+			return;
+		final int priority = ( ( VolatileCachedCellImg< ?, ? > ) finest ).getDefaultCacheHints().getQueuePriority();
+		final CacheHints hints = new CacheHints( LoadingStrategy.VOLATILE, priority, false );
+
+		final MipmapOrdering ordering = MipmapOrdering.class.isInstance( source ) ?
+				( MipmapOrdering ) source : new DefaultMipmapOrdering( source );
+		final AffineTransform3D screenTransform = new AffineTransform3D();
+		state.getViewerTransform( screenTransform );
+		final AffineTransform3D screenScaleTransform = new AffineTransform3D();
+		for ( final Level l : ordering.getMipmapHints( screenTransform, t, -1 ).getLevels() )
+			MultiResolutionRenderer.prefetch( state, source, screenScaleTransform, l.getMipmapLevel(), hints, screenInterval );
+	}
+
+	/**
+	 * Shut down the rendering threads, if they were created by this
+	 * {@link OffscreenRenderer}.
+	 */
+	public void shutdown()
+	{
+		if ( ownsExecutorService && renderingExecutorService != null )
+			renderingExecutorService.shutdown();
+	}
+
+	/**
+	 * Adjust a viewer transform for a {@code canvasW x canvasH} canvas such
+	 * that it shows the same region on a {@code width x height} screen (scaled
+	 * by {@code width / canvasW}, and centered).
+	 */
+	public static void fitViewerTransform( final AffineTransform3D viewerTransform, final int canvasW, final int canvasH, final int width, final int height )
+	{
+		viewerTransform.set( viewerTransform.get( 0, 3 ) - canvasW / 2, 0, 3 );
+		viewerTransform.set( viewerTransform.get( 1, 3 ) - canvasH / 2, 1, 3 );
+		viewerTransform.scale( ( double ) width / canvasW );
+		viewerTransform.set( viewerTransform.get( 0, 3 ) + width / 2, 0, 3 );
+		viewerTransform.set( viewerTransform.get( 1, 3 ) + height / 2, 1, 3 );
+	}
+
+	private class Target implements RenderTarget
+	{
+		BufferedImage bufferedImage;
+
+		@Override
+		public BufferedImage setBufferedImage( final BufferedImage bufferedImage )
+		{
+			this.bufferedImage = bufferedImage;
+			return null;
+		}
+
+		@Override
+		public int getWidth()
+		{
+			return width;
+		}
+
+		@Override
+		public int getHeight()
+		{
+			return height;
+		}
+	}
+
+	/**
+	 * Stands in for the {@link PainterThread} of the
+	 * {@link MultiResolutionRenderer}. It is never started, but records
+	 * whether the renderer requested another paint (because the frame is not
+	 * complete yet).
+	 */
+	private static class RepaintRequests extends PainterThread
+	{
+		private boolean requested;
+
+		RepaintRequests()
+		{
+			super( null );
+		}
+
+		@Override
+		public synchronized void requestRepaint()
+		{
+			requested = true;
+		}
+
+		synchronized void clear()
+		{
+			requested = false;
+		}
+
+		synchronized boolean isRequested()
+		{
+			return requested;
+		}
+	}
+}
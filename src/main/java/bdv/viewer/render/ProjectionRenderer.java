@@ -0,0 +1,416 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import bdv.viewer.Source;
+import bdv.viewer.state.SourceState;
+import bdv.viewer.state.ViewerState;
+import net.imglib2.FinalRealInterval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealLocalizable;
+import net.imglib2.RealRandomAccess;
+import net.imglib2.RealRandomAccessible;
+import net.imglib2.converter.Converter;
+import net.imglib2.display.ColorConverter;
+import net.imglib2.display.LinearRange;
+import net.imglib2.display.RealARGBColorConverter;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.DoubleType;
+
+/**
+ * Renders projections of a {@link ViewerState} along the viewer z axis.
+ *
+ * <p>
+ * For every screen pixel, the visible sources are sampled at
+ * {@code numSteps} equidistant points along the viewer z axis, starting at the
+ * screen plane. For {@link RealType} sources, the raw source values are
+ * accumulated (maximum, sum, or mean) in double precision and the result is
+ * converted to ARGB once. Maximum and mean are converted using the source
+ * converter. Sums are converted with the display range of the source
+ * converter scaled by the number of samples. Other sources are converted
+ * first, and accumulated per ARGB channel. Like {@link AccumulateProjectorARGB}, the
+ * projections of the sources are summed.
+ *
+ * <p>
+ * Rows of the screen image are projected in parallel. Sources are sampled
+ * only where the slab intersects their bounds, and data is loaded blocking
+ * (non-volatile), so the projection is always complete.
+ */
+public class ProjectionRenderer
+{
+	public static enum Mode
+	{
+		MAX,
+		SUM,
+		MEAN
+	}
+
+	private final int width;
+
+	private final int height;
+
+	private final int numThreads;
+
+	private final ExecutorService executorService;
+
+	private final boolean ownsExecutorService;
+
+	/**
+	 * Create a renderer for {@code width x height} images, with its own pool
+	 * of {@code numThreads} threads.
+	 */
+	public ProjectionRenderer( final int width, final int height, final int numThreads )
+	{
+		this( width, height, numThreads, Executors.newFixedThreadPool( numThreads ), true );
+	}
+
+	/**
+	 * Create a renderer for {@code width x height} images, using the given
+	 * {@link ExecutorService}. {@code numThreads} determines into how many
+	 * tasks projection is split.
+	 */
+	public ProjectionRenderer( final int width, final int height, final int numThreads, final ExecutorService executorService )
+	{
+		this( width, height, numThreads, executorService, false );
+	}
+
+	private ProjectionRenderer( final int width, final int height, final int numThreads, final ExecutorService executorService, final boolean ownsExecutorService )
+	{
+		this.width = width;
+		this.height = height;
+		this.numThreads = Math.max( 1, numThreads );
+		this.executorService = executorService;
+		this.ownsExecutorService = ownsExecutorService;
+	}
+
+	/**
+	 * Render a projection of the given state.
+	 *
+	 * @param state
+	 *            the state to render. The viewer transform of the state should
+	 *            map to a {@link #getWidth()} x {@link #getHeight()} screen.
+	 * @param stepSize
+	 *            distance between samples along the viewer z axis (in viewer
+	 *            coordinates).
+	 * @param numSteps
+	 *            number of samples along the viewer z axis.
+	 * @param mode
+	 *            how samples are accumulated.
+	 * @return a new ARGB image.
+	 * @throws InterruptedException
+	 */
+	public BufferedImage render( final ViewerState state, final double stepSize, final int numSteps, final Mode mode ) throws InterruptedException
+	{
+		final BufferedImage image = new BufferedImage( width, height, BufferedImage.TYPE_INT_ARGB );
+		final int[] data = ( ( DataBufferInt ) image.getRaster().getDataBuffer() ).getData();
+		final List< SourceState< ? > > sources = state.getSources();
+		for ( final int i : state.getVisibleSourceIndices() )
+			project( state, sources.get( i ), i, stepSize, Math.max( 1, numSteps ), mode, data );
+		return image;
+	}
+
+	public int getWidth()
+	{
+		return width;
+	}
+
+	public int getHeight()
+	{
+		return height;
+	}
+
+	/**
+	 * Shut down the threads, if they were created by this
+	 * {@link ProjectionRenderer}.
+	 */
+	public void shutdown()
+	{
+		if ( ownsExecutorService )
+			executorService.shutdown();
+	}
+
+	private < T > void project(
+			final ViewerState state,
+			final SourceState< T > sourceState,
+			final int sourceIndex,
+			final double stepSize,
+			final int numSteps,
+			final Mode mode,
+			final int[] data ) throws InterruptedException
+	{
+		final int t = state.getCurrentTimepoint();
+		final Source< T > source = sourceState.getSpimSource();
+		if ( !source.isPresent( t ) )
+			return;
+
+		final int level = state.getBestMipMapLevel( new AffineTransform3D(), sourceIndex );
+		final AffineTransform3D sourceToViewer = new AffineTransform3D();
+		state.getViewerTransform( sourceToViewer );
+		final AffineTransform3D sourceTransform = new AffineTransform3D();
+		source.getSourceTransform( t, level, sourceTransform );
+		sourceToViewer.concatenate( sourceTransform );
+		final AffineTransform3D viewerToSource = sourceToViewer.inverse();
+
+		/*
+		 * Restrict sampling to the screen rectangle covered by the source, and
+		 * skip the source completely if it doesn't intersect the slab.
+		 */
+		final RandomAccessibleInterval< T > img = source.getSource( t, level );
+		final double[] vmin = new double[] { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY };
+		final double[] vmax = new double[] { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+		final double[] corner = new double[ 3 ];
+		final double[] vcorner = new double[ 3 ];
+		for ( int c = 0; c < 8; ++c )
+		{
+			for ( int d = 0; d < 3; ++d )
+				corner[ d ] = ( ( c >> d ) & 1 ) == 0 ? img.min( d ) - 1 : img.max( d ) + 1;
+			sourceToViewer.apply( corner, vcorner );
+			for ( int d = 0; d < 3; ++d )
+			{
+				vmin[ d ] = Math.min( vmin[ d ], vcorner[ d ] );
+				vmax[ d ] = Math.max( vmax[ d ], vcorner[ d ] );
+			}
+		}
+		final FinalRealInterval bounds = new FinalRealInterval( vmin, vmax );
+		final double zmax = stepSize * ( numSteps - 1 );
+		if ( bounds.realMax( 2 ) < Math.min( 0, zmax ) || bounds.realMin( 2 ) > Math.max( 0, zmax ) )
+			return;
+		final int minX = Math.max( 0, ( int ) Math.floor( bounds.realMin( 0 ) ) );
+		final int maxX = Math.min( width - 1, ( int ) Math.ceil( bounds.realMax( 0 ) ) );
+		final int minY = Math.max( 0, ( int ) Math.floor( bounds.realMin( 1 ) ) );
+		final int maxY = Math.min( height - 1, ( int ) Math.ceil( bounds.realMax( 1 ) ) );
+		if ( minX > maxX || minY > maxY )
+			return;
+
+		final RealRandomAccessible< T > ipimg = source.getInterpolatedSource( t, level, state.getInterpolation() );
+		final Converter< T, ARGBType > converter = sourceState.getConverter();
+		final T type = source.getType();
+		final Converter< DoubleType, ARGBType > sumConverter = mode == Mode.SUM && type instanceof RealType
+				? createSumConverter( converter, ( RealType< ? > ) type, numSteps )
+				: null;
+
+		final double[] dx = new double[ 3 ];
+		final double[] dz = new double[ 3 ];
+		final RealLocalizable dx0 = viewerToSource.d( 0 );
+		final RealLocalizable dz0 = viewerToSource.d( 2 );
+		for ( int d = 0; d < 3; ++d )
+		{
+			dx[ d ] = dx0.getDoublePosition( d );
+			dz[ d ] = dz0.getDoublePosition( d ) * stepSize;
+		}
+
+		final int rows = maxY - minY + 1;
+		final int numTasks = numThreads > 1 ? Math.min( numThreads * 10, rows ) : 1;
+		final ArrayList< Callable< Void > > tasks = new ArrayList<>( numTasks );
+		for ( int taskNum = 0; taskNum < numTasks; ++taskNum )
+		{
+			final int myMinY = minY + ( int ) ( ( long ) taskNum * rows / numTasks );
+			final int myMaxY = minY + ( int ) ( ( long ) ( taskNum + 1 ) * rows / numTasks ) - 1;
+			tasks.add( () -> {
+				final RealRandomAccess< T > access = ipimg.realRandomAccess();
+				final T value = type.createVariable();
+				final DoubleType sum = new DoubleType();
+				final ARGBType argb = new ARGBType();
+				final double[] rowPos = new double[ 3 ];
+				final double[] pos = new double[ 3 ];
+				for ( int y = myMinY; y <= myMaxY; ++y )
+				{
+					viewerToSource.apply( new double[] { minX, y, 0 }, rowPos );
+					for ( int x = minX; x <= maxX; ++x )
+					{
+						System.arraycopy( rowPos, 0, pos, 0, 3 );
+						if ( type instanceof RealType )
+						{
+							final double v = projectReal( access, pos, dz, numSteps, mode );
+							if ( sumConverter != null )
+							{
+								sum.set( v );
+								sumConverter.convert( sum, argb );
+							}
+							else
+							{
+								final RealType< ? > r = ( RealType< ? > ) value;
+								r.setReal( Math.max( r.getMinValue(), Math.min( r.getMaxValue(), v ) ) );
+								converter.convert( value, argb );
+							}
+						}
+						else
+							projectARGB( access, pos, dz, numSteps, mode, converter, argb );
+						final int o = y * width + x;
+						data[ o ] = add( data[ o ], argb.get() );
+						for ( int d = 0; d < 3; ++d )
+							rowPos[ d ] += dx[ d ];
+					}
+				}
+				return null;
+			} );
+		}
+		for ( final Future< Void > future : executorService.invokeAll( tasks ) )
+		{
+			try
+			{
+				future.get();
+			}
+			catch ( final ExecutionException e )
+			{
+				final Throwable cause = e.getCause();
+				if ( cause instanceof RuntimeException )
+					throw ( RuntimeException ) cause;
+				if ( cause instanceof Error )
+					throw ( Error ) cause;
+				throw new RuntimeException( cause );
+			}
+		}
+	}
+
+	/**
+	 * Create the converter for sums of {@code numSteps} samples of a
+	 * {@link RealType} source. Sums exceed the value range of the source type,
+	 * so they are not converted with the source converter. Instead, the
+	 * display range is {@code numSteps} times the display range of the source
+	 * converter if it is a {@link LinearRange}, or else {@code numSteps} times
+	 * the range of the source type. The color of a {@link ColorConverter} is
+	 * kept.
+	 */
+	static Converter< DoubleType, ARGBType > createSumConverter( final Converter< ?, ARGBType > converter, final RealType< ? > type, final int numSteps )
+	{
+		final double min, max;
+		if ( converter instanceof LinearRange )
+		{
+			min = ( ( LinearRange ) converter ).getMin();
+			max = ( ( LinearRange ) converter ).getMax();
+		}
+		else
+		{
+			min = type.getMinValue();
+			max = type.getMaxValue();
+		}
+		final RealARGBColorConverter< DoubleType > sumConverter = new RealARGBColorConverter.Imp0<>( min * numSteps, max * numSteps );
+		if ( converter instanceof ColorConverter && ( ( ColorConverter ) converter ).supportsColor() )
+			sumConverter.setColor( ( ( ColorConverter ) converter ).getColor() );
+		return sumConverter;
+	}
+
+	/**
+	 * Accumulate raw values along the ray starting at {@code pos}.
+	 *
+	 * @return the maximum, sum, or mean of the values.
+	 */
+	static < T > double projectReal(
+			final RealRandomAccess< T > access,
+			final double[] pos,
+			final double[] dz,
+			final int numSteps,
+			final Mode mode )
+	{
+		double acc = mode == Mode.MAX ? Double.NEGATIVE_INFINITY : 0;
+		for ( int step = 0; step < numSteps; ++step )
+		{
+			access.setPosition( pos );
+			final double v = ( ( RealType< ? > ) access.get() ).getRealDouble();
+			if ( mode == Mode.MAX )
+				acc = Math.max( acc, v );
+			else
+				acc += v;
+			for ( int d = 0; d < 3; ++d )
+				pos[ d ] += dz[ d ];
+		}
+		if ( mode == Mode.MEAN )
+			acc /= numSteps;
+		return acc;
+	}
+
+	/**
+	 * Convert values along the ray starting at {@code pos}, accumulate them
+	 * per ARGB channel, and store the result in {@code argb}.
+	 */
+	private static < T > void projectARGB(
+			final RealRandomAccess< T > access,
+			final double[] pos,
+			final double[] dz,
+			final int numSteps,
+			final Mode mode,
+			final Converter< T, ARGBType > converter,
+			final ARGBType argb )
+	{
+		int a = 0, r = 0, g = 0, b = 0;
+		for ( int step = 0; step < numSteps; ++step )
+		{
+			access.setPosition( pos );
+			converter.convert( access.get(), argb );
+			final int v = argb.get();
+			if ( mode == Mode.MAX )
+			{
+				a = Math.max( a, ARGBType.alpha( v ) );
+				r = Math.max( r, ARGBType.red( v ) );
+				g = Math.max( g, ARGBType.green( v ) );
+				b = Math.max( b, ARGBType.blue( v ) );
+			}
+			else
+			{
+				a += ARGBType.alpha( v );
+				r += ARGBType.red( v );
+				g += ARGBType.green( v );
+				b += ARGBType.blue( v );
+			}
+			for ( int d = 0; d < 3; ++d )
+				pos[ d ] += dz[ d ];
+		}
+		if ( mode == Mode.MEAN )
+		{
+			a /= numSteps;
+			r /= numSteps;
+			g /= numSteps;
+			b /= numSteps;
+		}
+		argb.set( ARGBType.rgba( Math.min( r, 255 ), Math.min( g, 255 ), Math.min( b, 255 ), Math.min( a, 255 ) ) );
+	}
+
+	private static int add( final int v1, final int v2 )
+	{
+		final int a = Math.min( ARGBType.alpha( v1 ) + ARGBType.alpha( v2 ), 255 );
+		final int r = Math.min( ARGBType.red( v1 ) + ARGBType.red( v2 ), 255 );
+		final int g = Math.min( ARGBType.green( v1 ) + ARGBType.green( v2 ), 255 );
+		final int b = Math.min( ARGBType.blue( v1 ) + ARGBType.blue( v2 ), 255 );
+		return ARGBType.rgba( r, g, b, a );
+	}
+}
@@ -0,0 +1,313 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import bdv.img.cache.CacheStatistics;
+
+/**
+ * Collects timing information about rendered frames from a
+ * {@link MultiResolutionRenderer} (and the time for drawing frames to the
+ * screen from {@link TransformAwareBufferedImageOverlayRenderer}).
+ *
+ * <p>
+ * {@link FrameListener FrameListeners} are notified with the
+ * {@link FrameMetrics} of every rendered frame. Aggregated metrics can be
+ * published via JMX ({@link #registerMBean(String)}).
+ */
+public class RenderMetrics implements RenderMetricsMBean
+{
+	/**
+	 * Metrics of one rendered frame.
+	 */
+	public static class FrameMetrics
+	{
+		/**
+		 * Screen scale index at which the frame was rendered.
+		 */
+		public final int screenScaleIndex;
+
+		/**
+		 * Screen scale factor at which the frame was rendered.
+		 */
+		public final double screenScale;
+
+		/**
+		 * Whether a new projector was created for this frame (or the previous
+		 * frame was refined with newly loaded data).
+		 */
+		public final boolean newProjector;
+
+		/**
+		 * Whether all pixels of the frame were rendered from valid data.
+		 */
+		public final boolean valid;
+
+		/**
+		 * Time spent rendering, excluding IO.
+		 */
+		public final long renderNanos;
+
+		/**
+		 * Indices of the rendered sources.
+		 */
+		public final int[] sourceIndices;
+
+		/**
+		 * Time spent rendering each source in {@link #sourceIndices},
+		 * excluding IO.
+		 */
+		public final long[] sourceRenderNanos;
+
+		/**
+		 * Time spent in blocking IO while rendering.
+		 */
+		public final long ioNanos;
+
+		public FrameMetrics(
+				final int screenScaleIndex,
+				final double screenScale,
+				final boolean newProjector,
+				final boolean valid,
+				final long renderNanos,
+				final int[] sourceIndices,
+				final long[] sourceRenderNanos,
+				final long ioNanos )
+		{
+			this.screenScaleIndex = screenScaleIndex;
+			this.screenScale = screenScale;
+			this.newProjector = newProjector;
+			this.valid = valid;
+			this.renderNanos = renderNanos;
+			this.sourceIndices = sourceIndices;
+			this.sourceRenderNanos = sourceRenderNanos;
+			this.ioNanos = ioNanos;
+		}
+	}
+
+	public interface FrameListener
+	{
+		/**
+		 * Called on the painter thread after a frame was rendered.
+		 */
+		public void frameRendered( FrameMetrics frame );
+	}
+
+	private final CopyOnWriteArrayList< FrameListener > listeners = new CopyOnWriteArrayList<>();
+
+	private volatile CacheStatistics cacheStatistics;
+
+	private volatile FrameMetrics lastFrame;
+
+	private volatile long lastFullResolutionRenderNanos;
+
+	private volatile double averageFrameRenderNanos;
+
+	private volatile long numFramesRendered;
+
+	private volatile long rendererIoNanos;
+
+	private volatile long lastBlitNanos;
+
+	private ObjectName objectName;
+
+	public void addFrameListener( final FrameListener listener )
+	{
+		listeners.add( listener );
+	}
+
+	public void removeFrameListener( final FrameListener listener )
+	{
+		listeners.remove( listener );
+	}
+
+	/**
+	 * Set the statistics of the cache backing the rendered sources. May be
+	 * {@code null} if unknown.
+	 */
+	public void setCacheStatistics( final CacheStatistics cacheStatistics )
+	{
+		this.cacheStatistics = cacheStatistics;
+	}
+
+	public CacheStatistics getCacheStatistics()
+	{
+		return cacheStatistics;
+	}
+
+	public FrameMetrics getLastFrame()
+	{
+		return lastFrame;
+	}
+
+	/**
+	 * Called by the renderer after a frame was rendered.
+	 */
+	public void frameRendered( final FrameMetrics frame )
+	{
+		lastFrame = frame;
+		if ( frame.screenScaleIndex == 0 )
+			lastFullResolutionRenderNanos = frame.renderNanos;
+		final long n = numFramesRendered;
+		averageFrameRenderNanos = n == 0 ? frame.renderNanos : 0.9 * averageFrameRenderNanos + 0.1 * frame.renderNanos;
+		numFramesRendered = n + 1;
+		rendererIoNanos += frame.ioNanos;
+		for ( final FrameListener listener : listeners )
+			listener.frameRendered( frame );
+	}
+
+	/**
+	 * Called by the render target after a frame was drawn to the screen.
+	 */
+	public void frameDrawn( final long blitNanos )
+	{
+		lastBlitNanos = blitNanos;
+	}
+
+	/**
+	 * Publish these metrics via JMX, as
+	 * {@code bdv:type=RenderMetrics,name=<name>}.
+	 *
+	 * @param name
+	 *            distinguishes multiple viewers.
+	 */
+	public synchronized void registerMBean( final String name ) throws JMException
+	{
+		unregisterMBean();
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		objectName = new ObjectName( "bdv:type=RenderMetrics,name=" + ObjectName.quote( name ) );
+		server.registerMBean( this, objectName );
+	}
+
+	public synchronized void unregisterMBean()
+	{
+		if ( objectName == null )
+			return;
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean( objectName );
+		}
+		catch ( final JMException e )
+		{}
+		objectName = null;
+	}
+
+	@Override
+	public long getNumFramesRendered()
+	{
+		return numFramesRendered;
+	}
+
+	@Override
+	public int getLastScreenScaleIndex()
+	{
+		final FrameMetrics frame = lastFrame;
+		return frame == null ? -1 : frame.screenScaleIndex;
+	}
+
+	@Override
+	public double getLastFrameRenderMillis()
+	{
+		final FrameMetrics frame = lastFrame;
+		return frame == null ? 0 : frame.renderNanos / 1e6;
+	}
+
+	@Override
+	public double getAverageFrameRenderMillis()
+	{
+		return averageFrameRenderNanos / 1e6;
+	}
+
+	@Override
+	public double getLastFullResolutionRenderMillis()
+	{
+		return lastFullResolutionRenderNanos / 1e6;
+	}
+
+	@Override
+	public double getLastBlitMillis()
+	{
+		return lastBlitNanos / 1e6;
+	}
+
+	@Override
+	public double getCacheHitRatio()
+	{
+		final CacheStatistics s = cacheStatistics;
+		return s == null ? Double.NaN : s.getHitRatio();
+	}
+
+	@Override
+	public long getCacheLoads()
+	{
+		final CacheStatistics s = cacheStatistics;
+		return s == null ? 0 : s.getNumLoads();
+	}
+
+	@Override
+	public int getCacheLoadsInProgress()
+	{
+		final CacheStatistics s = cacheStatistics;
+		return s == null ? 0 : s.getNumLoadsInProgress();
+	}
+
+	@Override
+	public int getCacheQueueSize()
+	{
+		final CacheStatistics s = cacheStatistics;
+		return s == null ? -1 : s.getQueueSize();
+	}
+
+	@Override
+	public double getCacheLoadMillis()
+	{
+		final CacheStatistics s = cacheStatistics;
+		return s == null ? 0 : s.getLoadNanoTime() / 1e6;
+	}
+
+	@Override
+	public long getLoadedBytes()
+	{
+		final CacheStatistics s = cacheStatistics;
+		return s == null ? 0 : s.getLoadedBytes();
+	}
+
+	@Override
+	public double getRendererIoMillis()
+	{
+		return rendererIoNanos / 1e6;
+	}
+}
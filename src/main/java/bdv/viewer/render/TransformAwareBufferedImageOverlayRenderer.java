@@ -33,7 +33,14 @@ import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.ui.OverlayRenderer;
@@ -54,52 +61,357 @@ public class TransformAwareBufferedImageOverlayRenderer extends BufferedImageOve
 	 */
 	protected final CopyOnWriteArrayList< TransformListener< AffineTransform3D > > paintedTransformListeners;
 
+	/**
+	 * If non-null, images that are smaller than the canvas are upscaled to
+	 * canvas size on this {@link ExecutorService} (i.e., on the painter
+	 * thread), such that {@link #drawOverlays(Graphics)} only needs to do a
+	 * 1:1 copy on the event dispatch thread.
+	 */
+	protected ExecutorService upscaleExecutorService;
+
+	protected int numUpscaleThreads;
+
+	/**
+	 * Canvas-sized images that rendered images are upscaled into. These are
+	 * handed to {@link BufferedImageOverlayRenderer} in place of the rendered
+	 * images.
+	 */
+	protected final ArrayList< BufferedImage > canvasImages;
+
+	/**
+	 * Canvas-sized images that are currently being upscaled into (outside the
+	 * lock). These are not handed out by {@link #getFreeCanvasImage(BufferedImage)}.
+	 */
+	protected final ArrayList< BufferedImage > upscalingCanvasImages;
+
+	/**
+	 * The image that {@link #drawOverlays(Graphics)} is currently drawing
+	 * (outside the lock), or {@code null}. This is not handed out by
+	 * {@link #getFreeCanvasImage(BufferedImage)}.
+	 */
+	protected BufferedImage drawingImage;
+
+	/**
+	 * Maps canvas-sized images to the rendered image that was upscaled into
+	 * them.
+	 */
+	protected final IdentityHashMap< BufferedImage, BufferedImage > canvasImageToRenderedImage;
+
+	/**
+	 * The image last passed to {@link #setBufferedImage(BufferedImage)}
+	 * (rendered and canvas-sized), for re-upscaling on
+	 * {@link #bufferedImageUpdated()}. {@link #lastCanvasImage} is either the
+	 * pending or the displayed image.
+	 */
+	protected BufferedImage lastRenderedImage;
+
+	protected BufferedImage lastCanvasImage;
+
+	/**
+	 * If non-null, receives the time taken to draw images to the screen.
+	 */
+	protected RenderMetrics metrics;
+
 	public TransformAwareBufferedImageOverlayRenderer()
 	{
 		super();
 		pendingTransform = new AffineTransform3D();
 		paintedTransform = new AffineTransform3D();
 		paintedTransformListeners = new CopyOnWriteArrayList<>();
+		canvasImages = new ArrayList<>();
+		upscalingCanvasImages = new ArrayList<>();
+		canvasImageToRenderedImage = new IdentityHashMap<>();
+	}
+
+	/**
+	 * Upscale rendered images to canvas size in parallel on the given
+	 * {@link ExecutorService}, instead of scaling them while drawing on the
+	 * event dispatch thread.
+	 *
+	 * @param executorService
+	 *            used for upscaling. If {@code null}, images are scaled while
+	 *            drawing.
+	 * @param numThreads
+	 *            into how many tasks upscaling is split.
+	 */
+	public synchronized void setUpscaleExecutorService( final ExecutorService executorService, final int numThreads )
+	{
+		upscaleExecutorService = executorService;
+		numUpscaleThreads = Math.max( 1, numThreads );
+	}
+
+	/**
+	 * Report the time taken to draw images to the screen to the given
+	 * {@link RenderMetrics}.
+	 */
+	public void setRenderMetrics( final RenderMetrics metrics )
+	{
+		this.metrics = metrics;
+	}
+
+	@Override
+	public BufferedImage setBufferedImageAndTransform( final BufferedImage img, final AffineTransform3D transform )
+	{
+		final BufferedImage canvasImage = upscaleToCanvas( img );
+		synchronized ( this )
+		{
+			pendingTransform.set( transform );
+			return swapBufferedImage( img, canvasImage );
+		}
 	}
 
 	@Override
-	public synchronized BufferedImage setBufferedImageAndTransform( final BufferedImage img, final AffineTransform3D transform )
+	public BufferedImage setBufferedImage( final BufferedImage img )
+	{
+		final BufferedImage canvasImage = upscaleToCanvas( img );
+		synchronized ( this )
+		{
+			return swapBufferedImage( img, canvasImage );
+		}
+	}
+
+	/**
+	 * The last image passed to {@link #setBufferedImage(BufferedImage)} was
+	 * re-rendered. If it is displayed upscaled, it is upscaled again into a
+	 * free canvas image, which then replaces the previous canvas image (pending
+	 * or displayed). The previous canvas image is not modified, because
+	 * {@link #drawOverlays(Graphics)} may be drawing it.
+	 */
+	@Override
+	public void bufferedImageUpdated()
+	{
+		final BufferedImage src;
+		synchronized ( this )
+		{
+			if ( lastCanvasImage == null )
+				return;
+			src = lastRenderedImage;
+		}
+		final BufferedImage canvasImage = upscaleToCanvas( src );
+		if ( canvasImage == null )
+			return;
+		synchronized ( this )
+		{
+			final BufferedImage previous = lastCanvasImage;
+			if ( src != lastRenderedImage || previous == null )
+				// a new image was set in the meantime
+				return;
+			if ( pendingImage == previous )
+				pendingImage = canvasImage;
+			else if ( bufferedImage == previous )
+				bufferedImage = canvasImage;
+			else
+				return;
+			final BufferedImage rendered = canvasImageToRenderedImage.remove( previous );
+			if ( rendered != null )
+				canvasImageToRenderedImage.put( canvasImage, rendered );
+			lastCanvasImage = canvasImage;
+		}
+	}
+
+	/**
+	 * If {@code img} is smaller than the canvas and an
+	 * {@link #upscaleExecutorService} is set, upscale it into a free
+	 * canvas-sized image. Only getting the canvas image is done under the
+	 * lock, the (blocking) upscaling is not, so that
+	 * {@link #drawOverlays(Graphics)} is not held up.
+	 *
+	 * @return the canvas image, or {@code null} if {@code img} should be
+	 *         displayed directly.
+	 */
+	private BufferedImage upscaleToCanvas( final BufferedImage img )
 	{
-		pendingTransform.set( transform );
-		return super.setBufferedImage( img );
+		final BufferedImage canvasImage;
+		final ExecutorService executorService;
+		final int numThreads;
+		synchronized ( this )
+		{
+			executorService = upscaleExecutorService;
+			numThreads = numUpscaleThreads;
+			if ( img == null || executorService == null || ( img.getWidth() == getWidth() && img.getHeight() == getHeight() ) )
+				return null;
+			canvasImage = getFreeCanvasImage( img );
+			if ( canvasImage == null )
+				return null;
+			upscalingCanvasImages.add( canvasImage );
+		}
+		try
+		{
+			upscale( img, canvasImage, executorService, numThreads );
+		}
+		finally
+		{
+			synchronized ( this )
+			{
+				upscalingCanvasImages.remove( canvasImage );
+			}
+		}
+		return canvasImage;
+	}
+
+	/**
+	 * Hand {@code canvasImage} (upscaled from {@code img}), or {@code img}
+	 * itself if {@code canvasImage == null}, to
+	 * {@link BufferedImageOverlayRenderer#setBufferedImage(BufferedImage)}.
+	 * Must be called while holding the lock.
+	 */
+	private BufferedImage swapBufferedImage( final BufferedImage img, final BufferedImage canvasImage )
+	{
+		lastRenderedImage = img;
+		lastCanvasImage = canvasImage;
+		if ( canvasImage == null )
+			return toRenderedImage( super.setBufferedImage( img ) );
+		canvasImageToRenderedImage.put( canvasImage, img );
+		return toRenderedImage( super.setBufferedImage( canvasImage ) );
+	}
+
+	/**
+	 * Translate an image returned by
+	 * {@link BufferedImageOverlayRenderer#setBufferedImage(BufferedImage)} to
+	 * the rendered image it holds.
+	 */
+	private BufferedImage toRenderedImage( final BufferedImage img )
+	{
+		final BufferedImage rendered = canvasImageToRenderedImage.remove( img );
+		return rendered == null ? img : rendered;
+	}
+
+	/**
+	 * Get a canvas-sized image that is neither displayed nor pending, with the
+	 * same int ARGB layout as {@code img}. Returns {@code null} if {@code img}
+	 * is not backed by an int array.
+	 */
+	private BufferedImage getFreeCanvasImage( final BufferedImage img )
+	{
+		if ( !( img.getRaster().getDataBuffer() instanceof DataBufferInt ) )
+			return null;
+
+		final int w = getWidth();
+		final int h = getHeight();
+		if ( !canvasImages.isEmpty() )
+		{
+			final BufferedImage first = canvasImages.get( 0 );
+			if ( first.getWidth() != w || first.getHeight() != h || !first.getColorModel().equals( img.getColorModel() ) )
+				canvasImages.clear();
+		}
+		for ( final BufferedImage canvasImage : canvasImages )
+			if ( canvasImage != bufferedImage && canvasImage != pendingImage && canvasImage != drawingImage && !upscalingCanvasImages.contains( canvasImage ) )
+				return canvasImage;
+		if ( canvasImages.size() >= 4 )
+			return null;
+		final BufferedImage canvasImage = new BufferedImage(
+				img.getColorModel(),
+				img.getColorModel().createCompatibleWritableRaster( w, h ),
+				img.isAlphaPremultiplied(),
+				null );
+		canvasImages.add( canvasImage );
+		return canvasImage;
+	}
+
+	/**
+	 * Nearest-neighbor upscaling of {@code src} into {@code dst}, in parallel
+	 * on {@code executorService}.
+	 */
+	private static void upscale( final BufferedImage src, final BufferedImage dst, final ExecutorService executorService, final int numThreads )
+	{
+		final int[] srcData = ( ( DataBufferInt ) src.getRaster().getDataBuffer() ).getData();
+		final int[] dstData = ( ( DataBufferInt ) dst.getRaster().getDataBuffer() ).getData();
+		final int sw = src.getWidth();
+		final int sh = src.getHeight();
+		final int dw = dst.getWidth();
+		final int dh = dst.getHeight();
+
+		final int[] srcX = new int[ dw ];
+		for ( int x = 0; x < dw; ++x )
+			srcX[ x ] = Math.min( sw - 1, ( int ) ( ( x + 0.5 ) * sw / dw ) );
+
+		final int numTasks = numThreads > 1 ? Math.min( numThreads * 4, dh ) : 1;
+		final ArrayList< Callable< Void > > tasks = new ArrayList<>( numTasks );
+		for ( int taskNum = 0; taskNum < numTasks; ++taskNum )
+		{
+			final int myMinY = ( int ) ( ( long ) taskNum * dh / numTasks );
+			final int myMaxY = ( int ) ( ( long ) ( taskNum + 1 ) * dh / numTasks );
+			tasks.add( () -> {
+				int previousSrcY = -1;
+				for ( int y = myMinY; y < myMaxY; ++y )
+				{
+					final int srcY = Math.min( sh - 1, ( int ) ( ( y + 0.5 ) * sh / dh ) );
+					final int o = y * dw;
+					if ( srcY == previousSrcY )
+						System.arraycopy( dstData, o - dw, dstData, o, dw );
+					else
+					{
+						final int so = srcY * sw;
+						for ( int x = 0; x < dw; ++x )
+							dstData[ o + x ] = srcData[ so + srcX[ x ] ];
+					}
+					previousSrcY = srcY;
+				}
+				return null;
+			} );
+		}
+		try
+		{
+			for ( final Future< Void > future : executorService.invokeAll( tasks ) )
+				future.get();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch ( final ExecutionException e )
+		{
+			final Throwable cause = e.getCause();
+			if ( cause instanceof RuntimeException )
+				throw ( RuntimeException ) cause;
+			if ( cause instanceof Error )
+				throw ( Error ) cause;
+			throw new RuntimeException( cause );
+		}
 	}
 
 	@Override
 	public void drawOverlays( final Graphics g )
 	{
 		boolean notifyTransformListeners = false;
+		final BufferedImage bufferedImage;
 		synchronized ( this )
 		{
 			if ( pending )
 			{
-				final BufferedImage tmp = bufferedImage;
-				bufferedImage = pendingImage;
+				final BufferedImage tmp = this.bufferedImage;
+				this.bufferedImage = pendingImage;
 				paintedTransform.set( pendingTransform );
 				pendingImage = tmp;
 				pending = false;
 				notifyTransformListeners = true;
 			}
+			bufferedImage = this.bufferedImage;
+			drawingImage = bufferedImage;
 		}
 		if ( bufferedImage != null )
 		{
-//			final StopWatch watch = new StopWatch();
-//			watch.start();
+			final long t0 = System.nanoTime();
 //			( ( Graphics2D ) g ).setRenderingHint( RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR );
 			( ( Graphics2D ) g ).setRenderingHint( RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR );
 			( ( Graphics2D ) g ).setRenderingHint( RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_SPEED );
 			( ( Graphics2D ) g ).setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF );
 			( ( Graphics2D ) g ).setRenderingHint( RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_SPEED );
 			( ( Graphics2D ) g ).setRenderingHint( RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED );
-			g.drawImage( bufferedImage, 0, 0, getWidth(), getHeight(), null );
+			if ( bufferedImage.getWidth() == getWidth() && bufferedImage.getHeight() == getHeight() )
+				g.drawImage( bufferedImage, 0, 0, null );
+			else
+				g.drawImage( bufferedImage, 0, 0, getWidth(), getHeight(), null );
+			synchronized ( this )
+			{
+				drawingImage = null;
+			}
+			final RenderMetrics m = metrics;
+			if ( m != null )
+				m.frameDrawn( System.nanoTime() - t0 );
 			if ( notifyTransformListeners )
 				for ( final TransformListener< AffineTransform3D > listener : paintedTransformListeners )
 					listener.transformChanged( paintedTransform );
-//			System.out.println( String.format( "g.drawImage() :%4d ms", watch.nanoTime() / 1000000 ) );
 		}
 	}
 
@@ -167,5 +479,10 @@ public class TransformAwareBufferedImageOverlayRenderer extends BufferedImageOve
 	{
 		bufferedImage = null;
 		pendingImage = null;
+		lastRenderedImage = null;
+		lastCanvasImage = null;
+		canvasImages.clear();
+		upscalingCanvasImages.clear();
+		canvasImageToRenderedImage.clear();
 	}
 }
@@ -46,6 +46,13 @@ public interface TransformAwareRenderTarget extends RenderTarget
 	 */
 	public BufferedImage setBufferedImageAndTransform( final BufferedImage img, final AffineTransform3D transform );
 
+	/**
+	 * Notify that the {@link BufferedImage} that was last set has been
+	 * modified in place (e.g., because missing volatile data was filled in).
+	 */
+	public default void bufferedImageUpdated()
+	{}
+
 	public void addTransformListener( final TransformListener< AffineTransform3D > listener );
 
 	public void addTransformListener( final TransformListener< AffineTransform3D > listener, final int index );
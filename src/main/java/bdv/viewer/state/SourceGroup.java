@@ -29,6 +29,7 @@
  */
 package bdv.viewer.state;
 
+import java.util.Collections;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
@@ -85,6 +86,7 @@ public class SourceGroup
 	{
 		synchronized ( owner )
 		{
+			owner.modified();
 			sourceIds.add( sourceId );
 		}
 	}
@@ -93,13 +95,18 @@ public class SourceGroup
 	{
 		synchronized ( owner )
 		{
+			owner.modified();
 			sourceIds.remove( sourceId );
 		}
 	}
 
+	/**
+	 * Get the ids of the sources in this group. For groups of a
+	 * {@link ViewerState#snapshot() snapshot}, the set is unmodifiable.
+	 */
 	public SortedSet< Integer > getSourceIds()
 	{
-		return sourceIds;
+		return owner.isImmutable() ? Collections.unmodifiableSortedSet( sourceIds ) : sourceIds;
 	}
 
 	public String getName()
@@ -109,7 +116,11 @@ public class SourceGroup
 
 	public void setName( final String name )
 	{
-		this.name = name;
+		synchronized ( owner )
+		{
+			owner.modified();
+			this.name = name;
+		}
 	}
 
 	/**
@@ -129,6 +140,7 @@ public class SourceGroup
 	{
 		synchronized ( owner )
 		{
+			owner.modified();
 			this.isActive = isActive;
 		}
 	}
@@ -150,6 +162,7 @@ public class SourceGroup
 	{
 		synchronized ( owner )
 		{
+			owner.modified();
 			this.isCurrent = isCurrent;
 		}
 	}
@@ -113,6 +113,17 @@ public class ViewerState
 	 */
 	private int currentTimepoint;
 
+	/**
+	 * Whether this is an immutable {@link #snapshot()}.
+	 */
+	private final boolean immutable;
+
+	/**
+	 * Immutable copy of the current state, or {@code null} if the state was
+	 * modified since the last {@link #snapshot()}.
+	 */
+	private volatile ViewerState snapshot;
+
 	/**
 	 *
 	 * @param sources
@@ -138,6 +149,7 @@ public class ViewerState
 		currentSource = sources.isEmpty() ? -1 : 0;
 		currentGroup = 0;
 		currentTimepoint = 0;
+		immutable = false;
 	}
 
 	/**
@@ -146,6 +158,12 @@ public class ViewerState
 	 */
 	protected ViewerState( final ViewerState s )
 	{
+		this( s, false );
+	}
+
+	private ViewerState( final ViewerState s, final boolean immutable )
+	{
+		this.immutable = immutable;
 		sources = new ArrayList<>( s.sources.size() );
 		for ( final SourceState< ? > source : s.sources )
 			this.sources.add( source.copy( this ) );
@@ -168,6 +186,63 @@ public class ViewerState
 		return new ViewerState( this );
 	}
 
+	/**
+	 * Get an immutable copy of the current state. The snapshot is created
+	 * once per modification of this state and published through a volatile
+	 * reference. Unless the state was modified since the last call, this
+	 * returns the same instance without locking. Readers such as renderers
+	 * and overlays should work on a snapshot, instead of locking the
+	 * (frequently modified) state.
+	 * <p>
+	 * Methods that would modify the snapshot throw
+	 * {@link UnsupportedOperationException}. Use {@link #copy()} to get a
+	 * mutable copy.
+	 *
+	 * @return immutable copy of this state.
+	 */
+	public ViewerState snapshot()
+	{
+		if ( immutable )
+			return this;
+		ViewerState s = snapshot;
+		if ( s == null )
+		{
+			synchronized ( this )
+			{
+				s = snapshot;
+				if ( s == null )
+				{
+					s = new ViewerState( this, true );
+					snapshot = s;
+				}
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * Whether this is an immutable {@link #snapshot()}.
+	 */
+	public boolean isImmutable()
+	{
+		return immutable;
+	}
+
+	/**
+	 * Called (with the lock held) before every modification of this state, or
+	 * of its {@link SourceState}s and {@link SourceGroup}s. Discards the
+	 * current {@link #snapshot()}.
+	 *
+	 * @throws UnsupportedOperationException
+	 *             if this is a snapshot.
+	 */
+	void modified()
+	{
+		if ( immutable )
+			throw new UnsupportedOperationException( "ViewerState snapshot cannot be modified" );
+		snapshot = null;
+	}
+
 
 	/*
 	 * Renderer state.
@@ -191,6 +266,7 @@ public class ViewerState
 	 */
 	public synchronized void setViewerTransform( final AffineTransform3D t )
 	{
+		modified();
 		viewerTransform.set( t );
 	}
 
@@ -207,6 +283,7 @@ public class ViewerState
 	 */
 	public synchronized void setCurrentSource( final int index )
 	{
+		modified();
 		final int minIndex = sources.isEmpty() ? -1 : 0;
 		if ( index >= minIndex && index < sources.size() )
 		{
@@ -239,6 +316,7 @@ public class ViewerState
 	 */
 	public synchronized void setCurrentGroup( final int index )
 	{
+		modified();
 		if ( index >= 0 && index < groups.size() )
 		{
 			groups.get( currentGroup ).setCurrent( false );
@@ -264,6 +342,7 @@ public class ViewerState
 	 */
 	public synchronized void setInterpolation( final Interpolation method )
 	{
+		modified();
 		interpolation = method;
 	}
 
@@ -304,6 +383,7 @@ public class ViewerState
 	 */
 	public synchronized void setDisplayMode( final DisplayMode mode )
 	{
+		modified();
 		displayMode = mode;
 	}
 
@@ -330,6 +410,7 @@ public class ViewerState
 	 */
 	public synchronized void setCurrentTimepoint( final int timepoint )
 	{
+		modified();
 		currentTimepoint = timepoint;
 	}
 
@@ -375,6 +456,7 @@ public class ViewerState
 
 	public synchronized void addSource( final SourceAndConverter< ? > source )
 	{
+		modified();
 		sources.add( SourceState.create( source, this ) );
 		if ( currentSource < 0 )
 			currentSource = 0;
@@ -382,6 +464,7 @@ public class ViewerState
 
 	public synchronized void removeSource( final Source< ? > source )
 	{
+		modified();
 		for ( int i = 0; i < sources.size(); )
 		{
 			final SourceState< ? > s = sources.get( i );
@@ -394,6 +477,7 @@ public class ViewerState
 
 	protected void removeSource( final int index )
 	{
+		modified();
 		sources.remove( index );
 		if ( sources.isEmpty() )
 			currentSource = -1;
@@ -517,6 +601,7 @@ public class ViewerState
 	 */
 	public synchronized void setNumTimepoints( final int numTimepoints )
 	{
+		modified();
 		this.numTimepoints = numTimepoints;
 	}
 
@@ -530,6 +615,7 @@ public class ViewerState
 	 */
 	public void kill()
 	{
+		modified();
 		sources.clear();
 		groups.clear();
 	}
@@ -0,0 +1,194 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.display;
+
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.volatiles.VolatileUnsignedByteType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+
+/**
+ * {@link RealARGBColorConverter} for integer types with a small value range
+ * (e.g., {@link UnsignedShortType}, {@link UnsignedByteType}). The mapping of
+ * every possible input value is precomputed into a lookup table, which is
+ * rebuilt when min, max, color, gamma, or colormap change. Conversion is a
+ * single array load per pixel.
+ * <p>
+ * Without gamma and colormap the table reproduces
+ * {@link RealARGBColorConverter.Imp0} exactly. With a gamma {@code g}, the
+ * normalized intensity {@code t} in {@code [0,1]} is mapped to {@code t^g}
+ * before coloring. With a colormap, the (gamma-corrected) intensity selects an
+ * entry of the colormap instead of scaling the color.
+ *
+ * @param <R>
+ *            input type. Values must be integers in
+ *            {@code [0, numValues)}.
+ */
+public class LookupTableRealARGBColorConverter< R extends RealType< ? > > extends RealARGBColorConverter< R >
+{
+	private final int numValues;
+
+	private double gamma = 1;
+
+	private int[] colormap = null;
+
+	/**
+	 * Current lookup table. Replaced (not modified) on updates, so that
+	 * concurrent {@link #convert(RealType, ARGBType)} calls always see a
+	 * consistent table.
+	 */
+	private volatile int[] lut;
+
+	/**
+	 * @param min
+	 *            input value mapped to black.
+	 * @param max
+	 *            input value mapped to full color.
+	 * @param numValues
+	 *            size of the input value range. Must be a power of two.
+	 *            Inputs are taken modulo {@code numValues}.
+	 */
+	public LookupTableRealARGBColorConverter( final double min, final double max, final int numValues )
+	{
+		super( min, max );
+		if ( Integer.bitCount( numValues ) != 1 )
+			throw new IllegalArgumentException( "numValues must be a power of two" );
+		this.numValues = numValues;
+		update();
+	}
+
+	/**
+	 * Get the size of the lookup table required for {@code type}, or 0 if
+	 * {@code type} is not supported by
+	 * {@link LookupTableRealARGBColorConverter}.
+	 */
+	public static int lookupTableSize( final Object type )
+	{
+		if ( type instanceof UnsignedShortType || type instanceof VolatileUnsignedShortType )
+			return 65536;
+		else if ( type instanceof UnsignedByteType || type instanceof VolatileUnsignedByteType )
+			return 256;
+		else
+			return 0;
+	}
+
+	public double getGamma()
+	{
+		return gamma;
+	}
+
+	public void setGamma( final double gamma )
+	{
+		this.gamma = gamma;
+		update();
+	}
+
+	public int[] getColormap()
+	{
+		return colormap == null ? null : colormap.clone();
+	}
+
+	/**
+	 * Set a colormap of ARGB values. The normalized intensity range
+	 * {@code [0,1]} is mapped linearly onto the colormap entries. The alpha of
+	 * the output is taken from {@link #getColor() color}.
+	 *
+	 * @param colormap
+	 *            ARGB colormap, or {@code null} to scale {@link #getColor()
+	 *            color} by intensity.
+	 */
+	public void setColormap( final int[] colormap )
+	{
+		this.colormap = ( colormap == null || colormap.length == 0 ) ? null : colormap.clone();
+		update();
+	}
+
+	@Override
+	protected void update()
+	{
+		super.update();
+
+		// called from super constructor, before fields are initialized
+		if ( numValues == 0 )
+			return;
+
+		final int[] table = new int[ numValues ];
+		if ( gamma == 1 && colormap == null )
+		{
+			for ( int i = 0; i < numValues; ++i )
+			{
+				final double v = i - min;
+				if ( v < 0 )
+					table[ i ] = black;
+				else
+				{
+					final int r = Math.min( 255, ( int ) ( scaleR * v + 0.5 ) );
+					final int g = Math.min( 255, ( int ) ( scaleG * v + 0.5 ) );
+					final int b = Math.min( 255, ( int ) ( scaleB * v + 0.5 ) );
+					table[ i ] = ARGBType.rgba( r, g, b, A );
+				}
+			}
+		}
+		else
+		{
+			final int value = color.get();
+			final int cr = ARGBType.red( value );
+			final int cg = ARGBType.green( value );
+			final int cb = ARGBType.blue( value );
+			final double scale = 1.0 / ( max - min );
+			for ( int i = 0; i < numValues; ++i )
+			{
+				final double t = Math.pow( Math.max( 0, Math.min( 1, ( i - min ) * scale ) ), gamma );
+				if ( colormap != null )
+				{
+					final int c = colormap[ ( int ) ( t * ( colormap.length - 1 ) + 0.5 ) ];
+					table[ i ] = ARGBType.rgba( ARGBType.red( c ), ARGBType.green( c ), ARGBType.blue( c ), A );
+				}
+				else
+				{
+					final int r = Math.min( 255, ( int ) ( cr * t + 0.5 ) );
+					final int g = Math.min( 255, ( int ) ( cg * t + 0.5 ) );
+					final int b = Math.min( 255, ( int ) ( cb * t + 0.5 ) );
+					table[ i ] = ARGBType.rgba( r, g, b, A );
+				}
+			}
+		}
+		lut = table;
+	}
+
+	@Override
+	public void convert( final R input, final ARGBType output )
+	{
+		final int[] table = lut;
+		output.set( table[ ( int ) input.getRealDouble() & ( table.length - 1 ) ] );
+	}
+}
@@ -103,7 +103,7 @@ public abstract class RealARGBColorConverter< R extends RealType< ? > > implemen
 		update();
 	}
 
-	private void update()
+	protected void update()
 	{
 		final double scale = 1.0 / ( max - min );
 		final int value = color.get();
@@ -29,18 +29,23 @@
  */
 package net.imglib2.interpolation.randomaccess;
 
+import bdv.img.cache.VolatileCachedCellImg;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RealInterval;
 import net.imglib2.RealRandomAccess;
 import net.imglib2.Volatile;
 import net.imglib2.interpolation.InterpolatorFactory;
+import net.imglib2.interpolation.randomaccess.ClampingTrilinearCellInterpolatorVolatileRealType.ArrayReader;
 import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.numeric.NumericType;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.volatiles.VolatileARGBType;
+import net.imglib2.view.ExtendedRandomAccessibleInterval;
 
 /**
  * Provides clamping n-linear interpolators for volatile and non-volatile types.
+ * Extended 3D {@link VolatileCachedCellImg}s of common volatile types get a
+ * specialized {@link ClampingTrilinearCellInterpolatorVolatileRealType}.
  *
  * @param <T>
  *
@@ -56,7 +61,13 @@ public class ClampingNLinearInterpolatorFactory< T extends NumericType< T > > im
 		if ( type instanceof RealType )
 		{
 			if ( type instanceof Volatile )
+			{
+				final VolatileCachedCellImg< ?, ? > img = getCachedCellImg3D( randomAccessible );
+				final ArrayReader reader = ArrayReader.forType( type );
+				if ( img != null && reader != null )
+					return new ClampingTrilinearCellInterpolatorVolatileRealType( randomAccessible, img, reader );
 				return new ClampingNLinearInterpolatorVolatileRealType( randomAccessible );
+			}
 			else
 				return new ClampingNLinearInterpolatorRealType( randomAccessible );
 		}
@@ -73,6 +84,21 @@ public class ClampingNLinearInterpolatorFactory< T extends NumericType< T > > im
 			return new NLinearInterpolator<>( randomAccessible );
 	}
 
+	/**
+	 * If {@code randomAccessible} is an extended 3D
+	 * {@link VolatileCachedCellImg}, return the image, otherwise {@code null}.
+	 */
+	private static VolatileCachedCellImg< ?, ? > getCachedCellImg3D( final RandomAccessible< ? > randomAccessible )
+	{
+		if ( randomAccessible instanceof ExtendedRandomAccessibleInterval )
+		{
+			final Object source = ( ( ExtendedRandomAccessibleInterval< ?, ? > ) randomAccessible ).getSource();
+			if ( source instanceof VolatileCachedCellImg && ( ( VolatileCachedCellImg< ?, ? > ) source ).numDimensions() == 3 )
+				return ( VolatileCachedCellImg< ?, ? > ) source;
+		}
+		return null;
+	}
+
 	/**
 	 * For now, ignore the {@link RealInterval} and return
 	 * {@link #create(RandomAccessible)}.
@@ -0,0 +1,320 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.interpolation.randomaccess;
+
+import bdv.img.cache.VolatileCachedCellImg;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.volatiles.AbstractVolatileRealType;
+import net.imglib2.type.volatiles.VolatileFloatType;
+import net.imglib2.type.volatiles.VolatileShortType;
+import net.imglib2.type.volatiles.VolatileUnsignedByteType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+
+/**
+ * Trilinear interpolator for 3D {@link VolatileCachedCellImg}s of
+ * {@link RealType} values with overflow check.
+ * <p>
+ * If all 8 neighbors of the current position lie in the same cell, values are
+ * read directly from the primitive array backing the cell. The most recently
+ * used cell is kept, so consecutive samples along a scanline usually do not
+ * touch the cache. Weights along Y and Z are reused while their fractional
+ * position is unchanged (e.g., for scanlines along the X axis). Otherwise the
+ * generic {@link ClampingNLinearInterpolatorVolatileRealType} code path is
+ * used on the wrapped (extended) {@link RandomAccessible}.
+ *
+ * @param <R>
+ * @param <T>
+ *            volatile pixel type.
+ */
+public class ClampingTrilinearCellInterpolatorVolatileRealType< R extends RealType< R >, T extends AbstractVolatileRealType< R, T > > extends ClampingNLinearInterpolatorVolatileRealType< R, T >
+{
+	/**
+	 * Reads the 8 neighbors of a voxel from a primitive array.
+	 */
+	enum ArrayReader
+	{
+		UNSIGNED_BYTE( byte[].class )
+		{
+			@Override
+			void read( final Object array, final int i, final int sy, final int sz, final double[] v )
+			{
+				final byte[] a = ( byte[] ) array;
+				v[ 0 ] = a[ i ] & 0xff;
+				v[ 1 ] = a[ i + 1 ] & 0xff;
+				v[ 2 ] = a[ i + sy ] & 0xff;
+				v[ 3 ] = a[ i + sy + 1 ] & 0xff;
+				v[ 4 ] = a[ i + sz ] & 0xff;
+				v[ 5 ] = a[ i + sz + 1 ] & 0xff;
+				v[ 6 ] = a[ i + sz + sy ] & 0xff;
+				v[ 7 ] = a[ i + sz + sy + 1 ] & 0xff;
+			}
+		},
+		SHORT( short[].class )
+		{
+			@Override
+			void read( final Object array, final int i, final int sy, final int sz, final double[] v )
+			{
+				final short[] a = ( short[] ) array;
+				v[ 0 ] = a[ i ];
+				v[ 1 ] = a[ i + 1 ];
+				v[ 2 ] = a[ i + sy ];
+				v[ 3 ] = a[ i + sy + 1 ];
+				v[ 4 ] = a[ i + sz ];
+				v[ 5 ] = a[ i + sz + 1 ];
+				v[ 6 ] = a[ i + sz + sy ];
+				v[ 7 ] = a[ i + sz + sy + 1 ];
+			}
+		},
+		UNSIGNED_SHORT( short[].class )
+		{
+			@Override
+			void read( final Object array, final int i, final int sy, final int sz, final double[] v )
+			{
+				final short[] a = ( short[] ) array;
+				v[ 0 ] = a[ i ] & 0xffff;
+				v[ 1 ] = a[ i + 1 ] & 0xffff;
+				v[ 2 ] = a[ i + sy ] & 0xffff;
+				v[ 3 ] = a[ i + sy + 1 ] & 0xffff;
+				v[ 4 ] = a[ i + sz ] & 0xffff;
+				v[ 5 ] = a[ i + sz + 1 ] & 0xffff;
+				v[ 6 ] = a[ i + sz + sy ] & 0xffff;
+				v[ 7 ] = a[ i + sz + sy + 1 ] & 0xffff;
+			}
+		},
+		FLOAT( float[].class )
+		{
+			@Override
+			void read( final Object array, final int i, final int sy, final int sz, final double[] v )
+			{
+				final float[] a = ( float[] ) array;
+				v[ 0 ] = a[ i ];
+				v[ 1 ] = a[ i + 1 ];
+				v[ 2 ] = a[ i + sy ];
+				v[ 3 ] = a[ i + sy + 1 ];
+				v[ 4 ] = a[ i + sz ];
+				v[ 5 ] = a[ i + sz + 1 ];
+				v[ 6 ] = a[ i + sz + sy ];
+				v[ 7 ] = a[ i + sz + sy + 1 ];
+			}
+		};
+
+		final Class< ? > arrayClass;
+
+		ArrayReader( final Class< ? > arrayClass )
+		{
+			this.arrayClass = arrayClass;
+		}
+
+		abstract void read( Object array, int i, int sy, int sz, double[] v );
+
+		/**
+		 * Get the reader for the given volatile type, or {@code null} if the
+		 * type is not supported.
+		 */
+		static ArrayReader forType( final Object type )
+		{
+			if ( type instanceof VolatileUnsignedShortType )
+				return UNSIGNED_SHORT;
+			else if ( type instanceof VolatileShortType )
+				return SHORT;
+			else if ( type instanceof VolatileUnsignedByteType )
+				return UNSIGNED_BYTE;
+			else if ( type instanceof VolatileFloatType )
+				return FLOAT;
+			else
+				return null;
+		}
+	}
+
+	private final VolatileCachedCellImg< ?, ? > img;
+
+	private final ArrayReader reader;
+
+	private final RandomAccess< ? extends Cell< ? > > cellsAccess;
+
+	private final long[] imgMax = new long[ 3 ];
+
+	private final int[] cellDims = new int[ 3 ];
+
+	private final long[] cellGridPosition = new long[ 3 ];
+
+	private final double[] values = new double[ 8 ];
+
+	/**
+	 * Min and max of the current cell. All neighbors of {@code x} are inside
+	 * the cell iff {@code cminX <= x < cmaxX} (same for Y, Z).
+	 */
+	private long cminX, cminY, cminZ, cmaxX = -1, cmaxY = -1, cmaxZ = -1;
+
+	private int cstepY, cstepZ;
+
+	/**
+	 * Primitive array of the current cell, or {@code null} if it is not
+	 * readable by {@link #reader}.
+	 */
+	private Object carray;
+
+	private boolean cvalid;
+
+	private double lastFy = Double.NaN, lastFz = Double.NaN;
+
+	private double w00, w10, w01, w11;
+
+	protected ClampingTrilinearCellInterpolatorVolatileRealType( final ClampingTrilinearCellInterpolatorVolatileRealType< R, T > interpolator )
+	{
+		super( interpolator );
+		img = interpolator.img;
+		reader = interpolator.reader;
+		cellsAccess = img.getCells().randomAccess();
+		init();
+	}
+
+	/**
+	 * @param randomAccessible
+	 *            {@code img} extended to infinity. This is used for positions
+	 *            where not all neighbors are inside the same cell.
+	 * @param img
+	 *            the 3D cell image.
+	 * @param reader
+	 *            reader matching the primitive arrays of {@code img}.
+	 */
+	ClampingTrilinearCellInterpolatorVolatileRealType( final RandomAccessible< T > randomAccessible, final VolatileCachedCellImg< ?, ? > img, final ArrayReader reader )
+	{
+		super( randomAccessible );
+		this.img = img;
+		this.reader = reader;
+		cellsAccess = img.getCells().randomAccess();
+		init();
+	}
+
+	private void init()
+	{
+		img.getCellGrid().cellDimensions( cellDims );
+		img.max( imgMax );
+	}
+
+	@Override
+	public T get()
+	{
+		final long x = discrete[ 0 ];
+		final long y = discrete[ 1 ];
+		final long z = discrete[ 2 ];
+		if ( x < cminX || x >= cmaxX || y < cminY || y >= cmaxY || z < cminZ || z >= cmaxZ )
+		{
+			if ( !updateCell( x, y, z ) )
+				return super.get();
+		}
+		if ( carray == null )
+			return super.get();
+
+		final double fx = position[ 0 ] - x;
+		final double fy = position[ 1 ] - y;
+		final double fz = position[ 2 ] - z;
+		if ( fy != lastFy || fz != lastFz )
+		{
+			final double gy = 1 - fy;
+			final double gz = 1 - fz;
+			w00 = gy * gz;
+			w10 = fy * gz;
+			w01 = gy * fz;
+			w11 = fy * fz;
+			lastFy = fy;
+			lastFz = fz;
+		}
+
+		final int i = ( int ) ( x - cminX ) + cstepY * ( int ) ( y - cminY ) + cstepZ * ( int ) ( z - cminZ );
+		final double[] v = values;
+		reader.read( carray, i, cstepY, cstepZ, v );
+		final double gx = 1 - fx;
+		final double acc =
+				w00 * ( gx * v[ 0 ] + fx * v[ 1 ] ) +
+				w10 * ( gx * v[ 2 ] + fx * v[ 3 ] ) +
+				w01 * ( gx * v[ 4 ] + fx * v[ 5 ] ) +
+				w11 * ( gx * v[ 6 ] + fx * v[ 7 ] );
+		accumulator.setReal( Math.max( clampMin, Math.min( clampMax, acc ) ) );
+		accumulator.setValid( cvalid );
+		return accumulator;
+	}
+
+	/**
+	 * Make the cell containing {@code (x,y,z)} the current cell.
+	 *
+	 * @return {@code false} if {@code (x,y,z)} and its neighbors are not all
+	 *         contained in one cell of the image.
+	 */
+	private boolean updateCell( final long x, final long y, final long z )
+	{
+		if ( x < 0 || y < 0 || z < 0 || x >= imgMax[ 0 ] || y >= imgMax[ 1 ] || z >= imgMax[ 2 ] )
+			return false;
+
+		cellGridPosition[ 0 ] = x / cellDims[ 0 ];
+		cellGridPosition[ 1 ] = y / cellDims[ 1 ];
+		cellGridPosition[ 2 ] = z / cellDims[ 2 ];
+		cellsAccess.setPosition( cellGridPosition );
+		final Cell< ? > cell = cellsAccess.get();
+		final Object data = cell.getData();
+
+		cminX = cell.min( 0 );
+		cminY = cell.min( 1 );
+		cminZ = cell.min( 2 );
+		cmaxX = cminX + cell.dimension( 0 ) - 1;
+		cmaxY = cminY + cell.dimension( 1 ) - 1;
+		cmaxZ = cminZ + cell.dimension( 2 ) - 1;
+		cstepY = cell.dimension( 0 );
+		cstepZ = cstepY * cell.dimension( 1 );
+		cvalid = ( data instanceof VolatileAccess ) && ( ( VolatileAccess ) data ).isValid();
+		carray = null;
+		if ( data instanceof ArrayDataAccess )
+		{
+			final Object array = ( ( ArrayDataAccess< ? > ) data ).getCurrentStorageArray();
+			if ( reader.arrayClass.isInstance( array ) )
+				carray = array;
+		}
+
+		return x < cmaxX && y < cmaxY && z < cmaxZ;
+	}
+
+	@Override
+	public ClampingTrilinearCellInterpolatorVolatileRealType< R, T > copy()
+	{
+		return new ClampingTrilinearCellInterpolatorVolatileRealType<>( this );
+	}
+
+	@Override
+	public ClampingTrilinearCellInterpolatorVolatileRealType< R, T > copyRealRandomAccess()
+	{
+		return copy();
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.hdf5;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+
+import bdv.img.hdf5.EmptyCellsArrayLoader.EmptyCells;
+
+public class EmptyCellsArrayLoaderTest
+{
+	/**
+	 * 10x10x10 image with 4x4x4 cells, that is, 3x3x3 cells.
+	 */
+	private static final long[] dimensions = new long[] { 10, 10, 10 };
+
+	private static final int[] cellDimensions = new int[] { 4, 4, 4 };
+
+	private static EmptyCells emptyCells( final int... cellIndices )
+	{
+		final BitSet bitmap = new BitSet();
+		for ( final int i : cellIndices )
+			bitmap.set( i );
+		return new EmptyCells( bitmap, dimensions, cellDimensions );
+	}
+
+	@Test
+	public void testSingleCell()
+	{
+		// cells (0,0,0) and (0,1,0)
+		final EmptyCells empty = emptyCells( 0, 3 );
+		assertTrue( empty.isEmpty( new long[] { 0, 0, 0 }, new int[] { 4, 4, 4 } ) );
+		assertTrue( empty.isEmpty( new long[] { 0, 4, 0 }, new int[] { 4, 4, 4 } ) );
+		assertFalse( empty.isEmpty( new long[] { 4, 0, 0 }, new int[] { 4, 4, 4 } ) );
+		assertFalse( empty.isEmpty( new long[] { 0, 0, 4 }, new int[] { 4, 4, 4 } ) );
+	}
+
+	@Test
+	public void testBorderCell()
+	{
+		// cell (2,2,2) is only 2x2x2 voxels
+		final EmptyCells empty = emptyCells( 2 + 3 * 2 + 9 * 2 );
+		assertTrue( empty.isEmpty( new long[] { 8, 8, 8 }, new int[] { 2, 2, 2 } ) );
+		assertFalse( empty.isEmpty( new long[] { 4, 8, 8 }, new int[] { 4, 2, 2 } ) );
+	}
+
+	@Test
+	public void testBlockOfSeveralCells()
+	{
+		// cells (0,0,0), (1,0,0), (0,1,0), (1,1,0)
+		final EmptyCells empty = emptyCells( 0, 1, 3, 4 );
+		assertTrue( empty.isEmpty( new long[] { 0, 0, 0 }, new int[] { 8, 8, 4 } ) );
+		assertTrue( empty.isEmpty( new long[] { 2, 2, 1 }, new int[] { 4, 4, 2 } ) );
+
+		// extends into non-empty cells (2,0,0), (0,0,1)
+		assertFalse( empty.isEmpty( new long[] { 0, 0, 0 }, new int[] { 9, 8, 4 } ) );
+		assertFalse( empty.isEmpty( new long[] { 0, 0, 0 }, new int[] { 8, 8, 5 } ) );
+	}
+
+	@Test
+	public void testNoBitmap()
+	{
+		assertFalse( EmptyCells.NONE.isEmpty( new long[] { 0, 0, 0 }, new int[] { 1, 1, 1 } ) );
+		assertFalse( emptyCells().isEmpty( new long[] { 0, 0, 0 }, new int[] { 4, 4, 4 } ) );
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.hdf5;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+public class Hdf5ImageLoaderTest
+{
+	@Test
+	public void testAggregateChunksToTargetSize()
+	{
+		// shortest extent is doubled first: 32x32x4 -> 32x32x8 -> 32x32x16 -> 32x32x32
+		final int[] cell = Hdf5ImageLoader.aggregateChunks( new long[] { 1000, 1000, 100 }, new int[] { 32, 32, 4 }, 32 * 32 * 32 );
+		assertArrayEquals( new int[] { 32, 32, 32 }, cell );
+	}
+
+	@Test
+	public void testAggregateChunksAtLeastOneChunk()
+	{
+		final int[] cell = Hdf5ImageLoader.aggregateChunks( new long[] { 1000, 1000, 100 }, new int[] { 32, 32, 4 }, 100 );
+		assertArrayEquals( new int[] { 32, 32, 4 }, cell );
+	}
+
+	@Test
+	public void testAggregateChunksLimitedByImage()
+	{
+		// x stops growing at 48 (40 rounded up to chunks), the other
+		// dimensions keep growing until the next doubling exceeds the target
+		final int[] cell = Hdf5ImageLoader.aggregateChunks( new long[] { 40, 1000, 1000 }, new int[] { 16, 16, 16 }, 1 << 20 );
+		assertArrayEquals( new int[] { 48, 128, 128 }, cell );
+	}
+
+	@Test
+	public void testAggregateChunksWholeImage()
+	{
+		final int[] cell = Hdf5ImageLoader.aggregateChunks( new long[] { 10, 10, 10 }, new int[] { 4, 4, 4 }, 1 << 20 );
+		assertArrayEquals( new int[] { 12, 12, 12 }, cell );
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+public class PrefsTest
+{
+	private static final String KEY = "hdf5-cache-cell-sizes";
+
+	private static final int[] DEFAULT = new int[] { 0 };
+
+	private static int[] parse( final String value )
+	{
+		final Properties p = new Properties();
+		if ( value != null )
+			p.setProperty( KEY, value );
+		return Prefs.getIntArray( p, KEY, DEFAULT );
+	}
+
+	@Test
+	public void testCacheCellSizes()
+	{
+		assertArrayEquals( new int[] { 262144 }, parse( "262144" ) );
+		assertArrayEquals( new int[] { 262144, 65536, 0 }, parse( "262144,65536,0" ) );
+		assertArrayEquals( new int[] { 262144, 65536 }, parse( " 262144 , 65536 " ) );
+	}
+
+	@Test
+	public void testCacheCellSizesDefault()
+	{
+		assertArrayEquals( DEFAULT, parse( null ) );
+		assertArrayEquals( DEFAULT, parse( "" ) );
+		assertArrayEquals( DEFAULT, parse( "  " ) );
+		assertArrayEquals( DEFAULT, Prefs.getIntArray( null, KEY, DEFAULT ) );
+	}
+
+	@Test
+	public void testCacheCellSizesInvalid()
+	{
+		assertArrayEquals( DEFAULT, parse( "262144,big" ) );
+		assertArrayEquals( DEFAULT, parse( "262144,,0" ) );
+	}
+
+	/**
+	 * The default properties list the cache cell sizes in a form that is
+	 * parsed back to the default.
+	 */
+	@Test
+	public void testCacheCellSizesDefaultProperties()
+	{
+		assertArrayEquals( DEFAULT, Prefs.getIntArray( Prefs.getDefaultProperties(), KEY, null ) );
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import bdv.viewer.Interpolation;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealRandomAccess;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.interpolation.InterpolatorFactory;
+import net.imglib2.interpolation.randomaccess.ClampingNLinearInterpolatorFactory;
+import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Checks that {@link AxisAlignedRandomAccessible} visits the same voxels as
+ * transforming screen coordinates to the source and interpolating the
+ * zero-extended source image, which is what {@link MultiResolutionRenderer}
+ * does for sources that are not axis-aligned.
+ */
+public class AxisAlignedRandomAccessibleTest
+{
+	/**
+	 * Screen pixels to compare. This covers the (transformed) image and a
+	 * margin of zero-extended pixels around it.
+	 */
+	private static final Interval screenInterval = Intervals.createMinMax( -6, -6, -2, 14, 14, 2 );
+
+	private static RandomAccessibleInterval< UnsignedShortType > createImage()
+	{
+		final ArrayImg< UnsignedShortType, ? > img = ArrayImgs.unsignedShorts( 5, 6, 7 );
+		int i = 0;
+		for ( final UnsignedShortType t : img )
+			t.set( 1 + ( 37 * i++ ) % 1000 );
+		return img;
+	}
+
+	private static AffineTransform3D transform( final double... values )
+	{
+		final AffineTransform3D t = new AffineTransform3D();
+		t.set( values );
+		return t;
+	}
+
+	private static void assertSameAsInterpolated( final AffineTransform3D sourceToScreen, final Interpolation interpolation )
+	{
+		final RandomAccessibleInterval< UnsignedShortType > img = createImage();
+		final RandomAccessible< UnsignedShortType > aligned = AxisAlignedRandomAccessible.create( img, new UnsignedShortType(), sourceToScreen, interpolation );
+		assertNotNull( aligned );
+
+		final InterpolatorFactory< UnsignedShortType, RandomAccessible< UnsignedShortType > > factory = ( interpolation == Interpolation.NLINEAR )
+				? new ClampingNLinearInterpolatorFactory<>()
+				: new NearestNeighborInterpolatorFactory<>();
+		final RealRandomAccess< UnsignedShortType > interpolated = Views.interpolate( Views.extendZero( img ), factory ).realRandomAccess();
+		final AffineTransform3D screenToSource = sourceToScreen.inverse();
+
+		final RandomAccess< UnsignedShortType > access = aligned.randomAccess();
+		final double[] screenPos = new double[ 3 ];
+		final double[] sourcePos = new double[ 3 ];
+		for ( long z = screenInterval.min( 2 ); z <= screenInterval.max( 2 ); ++z )
+		{
+			for ( long y = screenInterval.min( 1 ); y <= screenInterval.max( 1 ); ++y )
+			{
+				// position at the start of the row, then step along the row
+				access.setPosition( new long[] { screenInterval.min( 0 ), y, z } );
+				for ( long x = screenInterval.min( 0 ); x <= screenInterval.max( 0 ); ++x )
+				{
+					screenPos[ 0 ] = x;
+					screenPos[ 1 ] = y;
+					screenPos[ 2 ] = z;
+					screenToSource.apply( screenPos, sourcePos );
+					interpolated.setPosition( sourcePos );
+					assertEquals( String.format( "screen position (%d, %d, %d)", x, y, z ), interpolated.get().get(), access.get().get() );
+					access.fwd( 0 );
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testTranslation()
+	{
+		final AffineTransform3D sourceToScreen = transform(
+				1, 0, 0, 2,
+				0, 1, 0, -1,
+				0, 0, 1, -3 );
+		assertSameAsInterpolated( sourceToScreen, Interpolation.NEARESTNEIGHBOR );
+		assertSameAsInterpolated( sourceToScreen, Interpolation.NLINEAR );
+	}
+
+	@Test
+	public void testPermutedAndFlippedAxes()
+	{
+		// screen x = -source y, screen y = source z, screen z = source x
+		final AffineTransform3D sourceToScreen = transform(
+				0, -1, 0, 8,
+				0, 0, 1, 0,
+				1, 0, 0, -2 );
+		assertSameAsInterpolated( sourceToScreen, Interpolation.NEARESTNEIGHBOR );
+		assertSameAsInterpolated( sourceToScreen, Interpolation.NLINEAR );
+	}
+
+	@Test
+	public void testZoomedOut()
+	{
+		// every screen pixel steps over two voxels in x and y
+		final AffineTransform3D sourceToScreen = transform(
+				0.5, 0, 0, 1,
+				0, 0.5, 0, 0,
+				0, 0, 1, -3 );
+		assertSameAsInterpolated( sourceToScreen, Interpolation.NEARESTNEIGHBOR );
+		assertSameAsInterpolated( sourceToScreen, Interpolation.NLINEAR );
+	}
+
+	@Test
+	public void testNearestNeighborBetweenVoxels()
+	{
+		// screen pixels do not hit voxel centers, and screen z is scaled
+		final AffineTransform3D sourceToScreen = transform(
+				1, 0, 0, 0.3,
+				0, 1, 0, -0.2,
+				0, 0, 1 / 0.3, -1 );
+		assertSameAsInterpolated( sourceToScreen, Interpolation.NEARESTNEIGHBOR );
+	}
+
+	@Test
+	public void testNotApplicable()
+	{
+		final RandomAccessibleInterval< UnsignedShortType > img = createImage();
+
+		// rotated
+		final AffineTransform3D rotated = new AffineTransform3D();
+		rotated.rotate( 2, 0.3 );
+		assertNull( AxisAlignedRandomAccessible.create( img, new UnsignedShortType(), rotated, Interpolation.NEARESTNEIGHBOR ) );
+
+		// screen x steps 4/3 voxels
+		final AffineTransform3D scaled = transform(
+				0.75, 0, 0, 0,
+				0, 1, 0, 0,
+				0, 0, 1, 0 );
+		assertNull( AxisAlignedRandomAccessible.create( img, new UnsignedShortType(), scaled, Interpolation.NEARESTNEIGHBOR ) );
+
+		// interpolation between voxels
+		final AffineTransform3D between = transform(
+				1, 0, 0, 0.3,
+				0, 1, 0, 0,
+				0, 0, 1, 0 );
+		assertNull( AxisAlignedRandomAccessible.create( img, new UnsignedShortType(), between, Interpolation.NLINEAR ) );
+	}
+}
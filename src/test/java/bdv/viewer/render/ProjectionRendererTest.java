@@ -0,0 +1,125 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import bdv.viewer.render.ProjectionRenderer.Mode;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealRandomAccess;
+import net.imglib2.converter.Converter;
+import net.imglib2.display.ColorConverter;
+import net.imglib2.display.LinearRange;
+import net.imglib2.display.RealARGBColorConverter;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.NumericType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.view.Views;
+
+public class ProjectionRendererTest
+{
+	private static < T extends NumericType< T > > RealRandomAccess< T > ray( final RandomAccessibleInterval< T > img )
+	{
+		return Views.interpolate( Views.extendZero( img ), new NearestNeighborInterpolatorFactory< T >() ).realRandomAccess();
+	}
+
+	private static double project( final RealRandomAccess< ? > access, final int numSteps, final Mode mode )
+	{
+		final double[] pos = new double[] { 0, 0, 0 };
+		final double[] dz = new double[] { 0, 0, 1 };
+		final double value = ProjectionRenderer.projectReal( access, pos, dz, numSteps, mode );
+		assertEquals( "ray should be advanced by numSteps", numSteps, pos[ 2 ], 0 );
+		return value;
+	}
+
+	@Test
+	public void testProjectReal()
+	{
+		final RealRandomAccess< UnsignedShortType > access = ray( ArrayImgs.unsignedShorts( new short[] { 1, 5, 2, 3 }, 1, 1, 4 ) );
+		assertEquals( 5, project( access, 4, Mode.MAX ), 0 );
+		assertEquals( 11, project( access, 4, Mode.SUM ), 0 );
+		assertEquals( 2.75, project( access, 4, Mode.MEAN ), 0 );
+
+		// only the first numSteps samples are used
+		assertEquals( 6, project( access, 2, Mode.SUM ), 0 );
+	}
+
+	@Test
+	public void testProjectRealMaxOfNegativeValues()
+	{
+		final RealRandomAccess< DoubleType > access = ray( ArrayImgs.doubles( new double[] { -3, -1, -2 }, 1, 1, 3 ) );
+		assertEquals( -1, project( access, 3, Mode.MAX ), 0 );
+	}
+
+	@Test
+	public void testSumConverterScalesDisplayRange()
+	{
+		final RealARGBColorConverter< UnsignedShortType > converter = new RealARGBColorConverter.Imp0<>( 10, 110 );
+		converter.setColor( new ARGBType( ARGBType.rgba( 0, 255, 0, 255 ) ) );
+		final int numSteps = 4;
+		final Converter< DoubleType, ARGBType > sumConverter = ProjectionRenderer.createSumConverter( converter, new UnsignedShortType(), numSteps );
+
+		assertEquals( 40, ( ( LinearRange ) sumConverter ).getMin(), 0 );
+		assertEquals( 440, ( ( LinearRange ) sumConverter ).getMax(), 0 );
+		assertEquals( converter.getColor().get(), ( ( ColorConverter ) sumConverter ).getColor().get() );
+
+		// the sum of numSteps equal values looks like one value
+		final ARGBType expected = new ARGBType();
+		final ARGBType actual = new ARGBType();
+		for ( final int value : new int[] { 0, 10, 35, 50, 110, 200 } )
+		{
+			converter.convert( new UnsignedShortType( value ), expected );
+			sumConverter.convert( new DoubleType( numSteps * value ), actual );
+			assertEquals( "value " + value, expected.get(), actual.get() );
+		}
+	}
+
+	@Test
+	public void testSumConverterWithoutDisplayRange()
+	{
+		final Converter< UnsignedByteType, ARGBType > converter = ( input, output ) -> output.set( input.get() );
+		final Converter< DoubleType, ARGBType > sumConverter = ProjectionRenderer.createSumConverter( converter, new UnsignedByteType(), 3 );
+
+		assertEquals( 0, ( ( LinearRange ) sumConverter ).getMin(), 0 );
+		assertEquals( 3 * 255, ( ( LinearRange ) sumConverter ).getMax(), 0 );
+
+		final ARGBType actual = new ARGBType();
+		sumConverter.convert( new DoubleType( 3 * 255 ), actual );
+		assertEquals( ARGBType.rgba( 255, 255, 255, 255 ), actual.get() );
+		sumConverter.convert( new DoubleType( 0 ), actual );
+		assertEquals( ARGBType.rgba( 0, 0, 0, 255 ), actual.get() );
+	}
+}
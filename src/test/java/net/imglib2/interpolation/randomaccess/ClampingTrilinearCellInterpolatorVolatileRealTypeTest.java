@@ -0,0 +1,192 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.interpolation.randomaccess;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.function.BiFunction;
+import java.util.function.ToDoubleFunction;
+
+import org.junit.Test;
+
+import bdv.img.cache.VolatileCachedCellImg;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RealRandomAccess;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileFloatArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.volatiles.AbstractVolatileNativeRealType;
+import net.imglib2.type.volatiles.VolatileFloatType;
+import net.imglib2.type.volatiles.VolatileShortType;
+import net.imglib2.type.volatiles.VolatileUnsignedByteType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+import net.imglib2.view.Views;
+
+/**
+ * Checks that {@link ClampingTrilinearCellInterpolatorVolatileRealType}
+ * computes the same values and validity as the generic
+ * {@link ClampingNLinearInterpolatorVolatileRealType}, in particular at cell
+ * borders (where the cell-local fast path does not apply) and at image
+ * borders.
+ */
+public class ClampingTrilinearCellInterpolatorVolatileRealTypeTest
+{
+	/**
+	 * 10x9x7 image with 4x4x3 cells, that is, 3x3x3 cells. The last cell in
+	 * each dimension is smaller than the others.
+	 */
+	private static final long[] dimensions = new long[] { 10, 9, 7 };
+
+	private static final int[] cellDimensions = new int[] { 4, 4, 3 };
+
+	/**
+	 * Sample positions are multiples of 1/8 from outside the image to beyond
+	 * its max. With such positions and integral voxel values, weights and
+	 * interpolated values are exact, so that both interpolators must round
+	 * to the same integral values.
+	 */
+	private static final double step = 0.375;
+
+	private static final double margin = 1.25;
+
+	/**
+	 * Cells with index {@code i % 3 == 1} are invalid.
+	 */
+	private static boolean isValid( final long cellIndex )
+	{
+		return cellIndex % 3 != 1;
+	}
+
+	private static < R extends RealType< R > & NativeType< R >, T extends AbstractVolatileNativeRealType< R, T >, A > VolatileCachedCellImg< T, A > createImg(
+			final T type,
+			final BiFunction< Integer, Boolean, A > createData,
+			final ToDoubleFunction< long[] > value )
+	{
+		final CellGrid grid = new CellGrid( dimensions, cellDimensions );
+		final ArrayList< Cell< A > > cells = new ArrayList<>();
+		final long numCells = grid.getGridDimensions()[ 0 ] * grid.getGridDimensions()[ 1 ] * grid.getGridDimensions()[ 2 ];
+		for ( long i = 0; i < numCells; ++i )
+		{
+			final long[] cellMin = new long[ 3 ];
+			final int[] cellDims = new int[ 3 ];
+			grid.getCellDimensions( i, cellMin, cellDims );
+			cells.add( new Cell<>( cellDims, cellMin, createData.apply( cellDims[ 0 ] * cellDims[ 1 ] * cellDims[ 2 ], isValid( i ) ) ) );
+		}
+		final VolatileCachedCellImg< T, A > img = new VolatileCachedCellImg<>( grid, type, new CacheHints( LoadingStrategy.VOLATILE, 0, false ), ( i, h ) -> cells.get( ( int ) i ) );
+
+		final long[] pos = new long[ 3 ];
+		final Cursor< T > c = img.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			c.localize( pos );
+			c.get().get().setReal( value.applyAsDouble( pos ) );
+		}
+		return img;
+	}
+
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	private static < R extends RealType< R > & NativeType< R >, T extends AbstractVolatileNativeRealType< R, T > > void assertSameAsGeneric( final VolatileCachedCellImg< T, ? > img )
+	{
+		final RandomAccessible< T > extended = Views.extendBorder( img );
+		final RealRandomAccess< T > trilinear = new ClampingNLinearInterpolatorFactory().create( extended );
+		assertTrue( trilinear instanceof ClampingTrilinearCellInterpolatorVolatileRealType );
+		final RealRandomAccess< T > generic = new ClampingNLinearInterpolatorVolatileRealType<>( extended );
+
+		int numValid = 0;
+		int numInvalid = 0;
+		final double[] pos = new double[ 3 ];
+		for ( pos[ 2 ] = -margin; pos[ 2 ] < dimensions[ 2 ] + margin; pos[ 2 ] += step )
+			for ( pos[ 1 ] = -margin; pos[ 1 ] < dimensions[ 1 ] + margin; pos[ 1 ] += step )
+				for ( pos[ 0 ] = -margin; pos[ 0 ] < dimensions[ 0 ] + margin; pos[ 0 ] += step )
+				{
+					trilinear.setPosition( pos );
+					generic.setPosition( pos );
+					final T expected = generic.get();
+					final T actual = trilinear.get();
+					final String at = String.format( "at (%.3f, %.3f, %.3f)", pos[ 0 ], pos[ 1 ], pos[ 2 ] );
+					assertEquals( "value " + at, expected.getRealDouble(), actual.getRealDouble(), 0 );
+					assertEquals( "validity " + at, expected.isValid(), actual.isValid() );
+					if ( expected.isValid() )
+						++numValid;
+					else
+						++numInvalid;
+				}
+
+		// make sure that both valid and invalid cells were sampled
+		assertTrue( numValid > 0 );
+		assertTrue( numInvalid > 0 );
+	}
+
+	@Test
+	public void testUnsignedByte()
+	{
+		assertSameAsGeneric( createImg(
+				new VolatileUnsignedByteType(),
+				VolatileByteArray::new,
+				p -> ( 37 * p[ 0 ] + 11 * p[ 1 ] + 101 * p[ 2 ] ) % 256 ) );
+	}
+
+	@Test
+	public void testShort()
+	{
+		assertSameAsGeneric( createImg(
+				new VolatileShortType(),
+				VolatileShortArray::new,
+				p -> ( 1031 * p[ 0 ] + 517 * p[ 1 ] + 2053 * p[ 2 ] ) % 40000 - 20000 ) );
+	}
+
+	@Test
+	public void testUnsignedShort()
+	{
+		assertSameAsGeneric( createImg(
+				new VolatileUnsignedShortType(),
+				VolatileShortArray::new,
+				p -> ( 1031 * p[ 0 ] + 517 * p[ 1 ] + 2053 * p[ 2 ] ) % 65536 ) );
+	}
+
+	@Test
+	public void testFloat()
+	{
+		assertSameAsGeneric( createImg(
+				new VolatileFloatType(),
+				VolatileFloatArray::new,
+				p -> ( ( 37 * p[ 0 ] + 11 * p[ 1 ] + 101 * p[ 2 ] ) % 1000 - 500 ) / 4.0 ) );
+	}
+}